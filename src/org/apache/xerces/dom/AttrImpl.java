@@ -1132,6 +1132,18 @@ public class AttrImpl
     // Protected methods
     //
 
+    /**
+     * Denotes that this attribute has changed. As live lists may select
+     * elements by attribute value, the subtrees of the owner element and
+     * of its ancestors are marked as changed too.
+     */
+    protected void changed() {
+        super.changed();
+        if (isOwned()) {
+            ownerDocument().subtreeChanged((ParentNode) ownerNode);
+        }
+    }
+
     /**
      * Override this method in subclass to hook in efficient
      * internal data structure.
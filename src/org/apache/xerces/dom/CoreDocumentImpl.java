@@ -171,18 +171,22 @@ extends ParentNode implements Document  {
      * unlikely" and "absurdly unlikely". IF we start maintaining digests,
      * we should consider taking advantage of them.
      *
-     * Note: This used to be done a node basis, so that we knew what
-     * subtree changed. But since only DeepNodeList really use this today,
-     * the gain appears to be really small compared to the cost of having
-     * an int on every (parent) node plus having to walk up the tree all the
-     * way to the root to mark the branch as changed everytime a node is
-     * changed.
-     * So we now have a single counter global to the document. It means that
-     * some objects may flush their cache more often than necessary, but this
-     * makes nodes smaller and only the document needs to be marked as changed.
+     * Note: Each ParentNode also has a stamp of the changes to its own
+     * subtree, so that a DeepNodeList rooted at an element is not flushed
+     * by changes made elsewhere in the document. See subtreeChanged().
      */
     protected int changes = 0;
 
+    /**
+     * Current subtree stamp. When a subtree changes, the branch from the
+     * changed node up to the root is given this stamp, and a stamp read
+     * while equal to it moves it on. So once a node has the current stamp,
+     * all its ancestors have it too, and the walk up the tree can stop at
+     * the first node that has it: only the first change after a read walks
+     * the whole branch.
+     */
+    private transient int fSubtreeStamp = 0;
+
     // experimental
 
     /** Allow grammar access. */
@@ -191,6 +195,27 @@ extends ParentNode implements Document  {
     /** Bypass error checking. */
     protected boolean errorChecking = true;
 
+    /** Serve getElementsByTagName(NS) from an index of the elements. */
+    protected boolean elementIndexing = false;
+
+    /** The index of the elements, built when first queried. */
+    transient ElementIndex fElementIndex;
+
+    /** Index the order of the nodes of the document tree. */
+    protected boolean documentOrderIndexing = false;
+
+    /** The index of the order of the nodes, built when first queried. */
+    transient DocumentOrderIndex fDocumentOrderIndex;
+
+    /** Keep the simple attributes of elements without Attr nodes. */
+    protected boolean compactAttributes = false;
+
+    /** Keep the data of parsed text nodes in a shared store. */
+    protected boolean sharedText = false;
+
+    /** The store of the data of shared text nodes, created when needed. */
+    transient SharedTextStore fSharedTextStore;
+
     //Did version change at any point when the document was created ?
     //this field helps us to optimize when normalizingDocument.
     protected boolean xmlVersionChanged = false ;
@@ -355,11 +380,24 @@ extends ParentNode implements Document  {
             }
         }
 
+        copySettings(newdoc);
+
+    } // cloneNode(CoreDocumentImpl,boolean):void
+
+    /**
+     * Copies the settings of this document to the given clone of it.
+     */
+    void copySettings(CoreDocumentImpl newdoc) {
+
         // experimental
         newdoc.allowGrammarAccess = allowGrammarAccess;
         newdoc.errorChecking = errorChecking;
+        newdoc.elementIndexing = elementIndexing;
+        newdoc.documentOrderIndexing = documentOrderIndexing;
+        newdoc.compactAttributes = compactAttributes;
+        newdoc.sharedText = sharedText;
 
-    } // cloneNode(CoreDocumentImpl,boolean):void
+    } // copySettings(CoreDocumentImpl):void
 
     /**
      * Since a Document may contain at most one top-level Element child,
@@ -676,6 +714,28 @@ extends ParentNode implements Document  {
         return new TextImpl(this, data);
     }
 
+    /**
+     * NON-DOM: Factory method; creates a Text node given the characters of
+     * its data. If the document shares the data of its text nodes, the
+     * characters are copied to its store instead of a string.
+     *
+     * @param ch The characters of the data.
+     * @param offset The offset of the first character.
+     * @param length The number of characters.
+     */
+    public Text createTextNode(char[] ch, int offset, int length) {
+        if (sharedText) {
+            if (fSharedTextStore == null) {
+                fSharedTextStore = new SharedTextStore();
+            }
+            long ref = fSharedTextStore.add(ch, offset, length);
+            if (ref != SharedTextStore.NONE) {
+                return new SharedTextImpl(this, ref);
+            }
+        }
+        return createTextNode(new String(ch, offset, length));
+    }
+
     // other document methods
 
     /**
@@ -782,6 +842,129 @@ extends ParentNode implements Document  {
         return errorChecking;
     }
 
+    /**
+     * Sets whether getElementsByTagName and getElementsByTagNameNS are
+     * served by an index of the elements of the document by name, instead
+     * of walking the tree. The index is built when first queried and then
+     * kept up to date as the tree changes, which adds some cost to each
+     * insertion, removal and renaming of elements. It pays off when the
+     * tree is queried repeatedly while being modified.
+     * <p>
+     * The index serves the lists of the nodes that are in the document
+     * tree, for all names and for "*", but not for queries on any
+     * namespace or any local name alone.
+     */
+    public void setElementIndexing(boolean indexing) {
+        elementIndexing = indexing;
+        if (!indexing) {
+            fElementIndex = null;
+        }
+    }
+
+    /**
+     * Returns true if the elements of the document are indexed by name.
+     */
+    public boolean getElementIndexing() {
+        return elementIndexing;
+    }
+
+    /**
+     * Sets whether compareDocumentPosition is served by an index of the
+     * order of the nodes of the document tree, instead of walking their
+     * ancestors and siblings. The index is built when first queried. It
+     * then keeps the numbers of the nodes that are not moved, numbering
+     * inserted subtrees in the space left between their neighbours, and
+     * is rebuilt by the next comparison when that space runs out. It pays
+     * off when the document is compared much more than it is modified,
+     * as when sorting the results of queries.
+     * <p>
+     * The index only serves comparisons between nodes of the document
+     * tree, not those involving attributes or detached nodes.
+     */
+    public void setDocumentOrderIndexing(boolean indexing) {
+        documentOrderIndexing = indexing;
+        if (!indexing) {
+            fDocumentOrderIndex = null;
+        }
+    }
+
+    /**
+     * Returns true if the order of the nodes of the document is indexed.
+     */
+    public boolean getDocumentOrderIndexing() {
+        return documentOrderIndexing;
+    }
+
+    /**
+     * Sets whether setAttribute stores the values of new attributes on
+     * their element, without creating Attr nodes. The nodes of the
+     * attributes of an element are created when its attribute map or any
+     * of its attribute nodes are accessed, and once created are kept.
+     * getAttribute, getAttributeNS, setAttribute, hasAttribute and
+     * removeAttribute do not create them. This saves most of the memory
+     * of attribute-heavy documents that are read by name.
+     * <p>
+     * The parsers store the specified attributes this way, except for
+     * ID attributes, when the
+     * http://apache.org/xml/features/dom/compact-attributes feature is set.
+     */
+    public void setCompactAttributes(boolean compact) {
+        compactAttributes = compact;
+    }
+
+    /**
+     * Returns true if the values of new attributes are stored on their
+     * element until their nodes are needed.
+     */
+    public boolean getCompactAttributes() {
+        return compactAttributes;
+    }
+
+    /**
+     * Sets whether the text nodes created from characters by the parsers
+     * keep their data as slices of a store shared by the document, which
+     * saves a string per node. Their data is then read into a new string
+     * each time it is requested, until it is modified. Adjacent text
+     * nodes merged by normalize also keep the result in the store.
+     * <p>
+     * The parsers set this when the
+     * http://apache.org/xml/features/dom/shared-text feature is set.
+     */
+    public void setSharedText(boolean shared) {
+        sharedText = shared;
+    }
+
+    /**
+     * Returns true if the parsed text nodes keep their data in a store
+     * shared by the document.
+     */
+    public boolean getSharedText() {
+        return sharedText;
+    }
+
+    /**
+     * Returns the index of the elements, building it if needed, or
+     * null if the elements are not indexed.
+     */
+    ElementIndex getElementIndex() {
+        if (elementIndexing && fElementIndex == null) {
+            fElementIndex = new ElementIndex(this);
+        }
+        return fElementIndex;
+    }
+
+    /**
+     * Returns the position of the other node relative to the given node
+     * from the index of the order of the nodes, building it if needed, or
+     * 0 if either node is not in the index.
+     */
+    short compareDocumentOrder(NodeImpl node, NodeImpl other) {
+        if (fDocumentOrderIndex == null) {
+            fDocumentOrderIndex = new DocumentOrderIndex(this);
+        }
+        return fDocumentOrderIndex.compare(node, other);
+    }
+
 
     /**
      * DOM Level 3 CR - Experimental. (Was getActualEncoding)
@@ -989,7 +1172,15 @@ extends ParentNode implements Document  {
                 ElementImpl el = (ElementImpl) n;
                 if (el instanceof ElementNSImpl) {
                     if (canRenameElements(namespaceURI, name, el)) {
+                        if (fElementIndex != null) {
+                            fElementIndex.renamingElement(el);
+                        }
                         ((ElementNSImpl) el).rename(namespaceURI, name);
+                        if (fElementIndex != null) {
+                            fElementIndex.renamedElement(el);
+                        }
+                        // the lists of elements by name are out of date
+                        el.changed();
                         // fire user data NODE_RENAMED event
                         callUserDataHandlers(el, null, UserDataHandler.NODE_RENAMED);
                     } 
@@ -999,7 +1190,15 @@ extends ParentNode implements Document  {
                 }
                 else {
                     if (namespaceURI == null && canRenameElements(null, name, el)) {
+                        if (fElementIndex != null) {
+                            fElementIndex.renamingElement(el);
+                        }
                         el.rename(name);
+                        if (fElementIndex != null) {
+                            fElementIndex.renamedElement(el);
+                        }
+                        // the lists of elements by name are out of date
+                        el.changed();
                         // fire user data NODE_RENAMED event
                         callUserDataHandlers(el, null, UserDataHandler.NODE_RENAMED);
                     }
@@ -1513,6 +1712,30 @@ extends ParentNode implements Document  {
      */
     private Node importNode(Node source, boolean deep, boolean cloningDoc,
     HashMap<Object, Object> reversedIdentifiers)
+    throws DOMException {
+        // what is found out from the source document holds for every node
+        // of the subtree: whether it supports namespaces and, for this
+        // implementation, whether any of its nodes has user data
+        Document sourceDoc = source.getOwnerDocument();
+        boolean domLevel20 = sourceDoc != null &&
+            sourceDoc.getImplementation().hasFeature("XML", "2.0");
+        boolean copying = source instanceof NodeImpl &&
+            !((NodeImpl) source).ownerDocument().hasUserData();
+        return importNode(source, deep, cloningDoc, reversedIdentifiers,
+                          domLevel20, copying);
+    } // importNode(Node,boolean,boolean,HashMap):Node
+
+    /**
+     * Copies the given node as importNode does. The domLevel20 parameter
+     * tells whether the source document supports namespaces. The copying
+     * parameter tells that the source is a node of this implementation
+     * whose document has no user data: there is then no handler to call,
+     * and the new nodes are linked with ParentNode.appendCopiedChild,
+     * which spares the checks that cannot fail for them.
+     */
+    private Node importNode(Node source, boolean deep, boolean cloningDoc,
+    HashMap<Object, Object> reversedIdentifiers, boolean domLevel20,
+    boolean copying)
     throws DOMException {
         Node newnode=null;
 		Hashtable<?, ?> userData = null;
@@ -1528,13 +1751,12 @@ extends ParentNode implements Document  {
         //  newnode.ownerDocument=this;
         // }
         // else
-		if(source instanceof NodeImpl)
+		if(source instanceof NodeImpl && !copying)
 			userData = ((NodeImpl)source).getUserDataRecord();
         int type = source.getNodeType();
         switch (type) {
             case ELEMENT_NODE: {
                 Element newElement;
-                boolean domLevel20 = source.getOwnerDocument().getImplementation().hasFeature("XML", "2.0");
                 // Create element according to namespace support/qualification.
                 if(domLevel20 == false || source.getLocalName() == null)
                     newElement = createElement(source.getNodeName());
@@ -1542,8 +1764,15 @@ extends ParentNode implements Document  {
                     newElement = createElementNS(source.getNamespaceURI(),
                     source.getNodeName());
 
-                // Copy element's attributes, if any.
-                NamedNodeMap sourceAttrs = source.getAttributes();
+                // Copy element's attributes, if any: compact attributes
+                // are copied as they are, without creating their nodes.
+                NamedNodeMap sourceAttrs = null;
+                if (!(source instanceof ElementImpl) ||
+                    !(newElement instanceof ElementImpl) ||
+                    !((ElementImpl) newElement).copyCompactAttributes(
+                        (ElementImpl) source)) {
+                    sourceAttrs = source.getAttributes();
+                }
                 if (sourceAttrs != null) {
                     int length = sourceAttrs.getLength();
                     for (int index = 0; index < length; index++) {
@@ -1555,7 +1784,7 @@ extends ParentNode implements Document  {
                         // But for importNode defaults should be ignored.
                         if (attr.getSpecified() || cloningDoc) {
                             Attr newAttr = (Attr)importNode(attr, true, cloningDoc,
-                            reversedIdentifiers);
+                            reversedIdentifiers, domLevel20, copying);
 
                             // Attach attribute according to namespace
                             // support/qualification.
@@ -1586,7 +1815,7 @@ extends ParentNode implements Document  {
 
             case ATTRIBUTE_NODE: {
 
-                if( source.getOwnerDocument().getImplementation().hasFeature("XML", "2.0") ){
+                if (domLevel20) {
                     if (source.getLocalName() == null) {
                         newnode = createAttribute(source.getNodeName());
                     } else {
@@ -1688,7 +1917,7 @@ extends ParentNode implements Document  {
                 if(smap != null) {
                     for(int i = 0; i < smap.getLength(); i++) {
                         tmap.setNamedItem(importNode(smap.item(i), true, true,
-                        reversedIdentifiers));
+                        reversedIdentifiers, domLevel20, copying));
                     }
                 }
                 smap = srcdoctype.getNotations();
@@ -1696,7 +1925,7 @@ extends ParentNode implements Document  {
                 if (smap != null) {
                     for(int i = 0; i < smap.getLength(); i++) {
                         tmap.setNamedItem(importNode(smap.item(i), true, true,
-                        reversedIdentifiers));
+                        reversedIdentifiers, domLevel20, copying));
                     }
                 }
 
@@ -1738,11 +1967,19 @@ extends ParentNode implements Document  {
 
         // If deep, replicate and attach the kids.
         if (deep) {
+            ParentNode parent = (copying && newnode instanceof ParentNode)
+                ? (ParentNode) newnode : null;
             for (Node srckid = source.getFirstChild();
             srckid != null;
             srckid = srckid.getNextSibling()) {
-                newnode.appendChild(importNode(srckid, true, cloningDoc,
-                reversedIdentifiers));
+                Node newkid = importNode(srckid, true, cloningDoc,
+                reversedIdentifiers, domLevel20, copying);
+                if (parent != null && newkid instanceof ChildNode) {
+                    parent.appendCopiedChild((ChildNode) newkid);
+                }
+                else {
+                    newnode.appendChild(newkid);
+                }
             }
         }
         if (newnode.getNodeType() == Node.ENTITY_NODE) {
@@ -1750,7 +1987,7 @@ extends ParentNode implements Document  {
         }
         return newnode;
 
-    } // importNode(Node,boolean,boolean,Hashtable):Node
+    } // importNode(Node,boolean,boolean,HashMap,boolean,boolean):Node
 
     /**
      * DOM Level 3 WD - Experimental
@@ -1969,6 +2206,33 @@ extends ParentNode implements Document  {
         return getIdentifier(elementId);
     }
 
+    /**
+     * NON-DOM: Makes this document the owner of the given nodes, which
+     * were built without a parent in another document of the same
+     * implementation, and registers the identifiers held by that document.
+     * Unlike <code>adoptNode</code>, default attributes are not reconciled
+     * and no user data handler is called: this lets a parser build parts
+     * of this document on other threads, each in a private document that
+     * is discarded afterwards. The nodes are not inserted in this document.
+     *
+     * @param source the document in which the nodes were built
+     * @param nodes  the nodes, which must be instances of NodeImpl
+     */
+    public void takeOwnership(CoreDocumentImpl source, Node[] nodes) {
+        for (int i = 0; i < nodes.length; i++) {
+            ((NodeImpl) nodes[i]).setOwnerDocument(this);
+        }
+        if (source.identifiers != null) {
+            Iterator<Map.Entry<String, Element>> entries =
+                source.identifiers.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, Element> entry = entries.next();
+                putIdentifier(entry.getKey(), entry.getValue());
+            }
+            source.identifiers = null;
+        }
+    } // takeOwnership(CoreDocumentImpl,Node[])
+
     /**
      * Remove all identifiers from the ID table
      */
@@ -2277,6 +2541,38 @@ extends ParentNode implements Document  {
         return changes;
     }
 
+    /**
+     * Marks the subtree of the given node, and those of its ancestors, as
+     * changed.
+     */
+    void subtreeChanged(ParentNode node) {
+        final int stamp = fSubtreeStamp;
+        while (node != null && node.fSubtreeStamp != stamp) {
+            node.fSubtreeStamp = stamp;
+            node = (ParentNode) node.parentNode();
+        }
+    }
+
+    /**
+     * Returns the current subtree stamp, which marks as changed the nodes
+     * given it. It differs from any stamp read before.
+     */
+    int getCurrentSubtreeStamp() {
+        return fSubtreeStamp;
+    }
+
+    /**
+     * Returns the stamp of the last change to the subtree of the given node.
+     */
+    int getSubtreeStamp(ParentNode node) {
+        final int stamp = node.fSubtreeStamp;
+        if (stamp == fSubtreeStamp) {
+            // later changes must get a different stamp
+            fSubtreeStamp++;
+        }
+        return stamp;
+    }
+
     //  NodeListCache pool
 
     /**
@@ -2393,6 +2689,13 @@ extends ParentNode implements Document  {
         return null;
     }
 
+    /**
+     * Returns true if user data is attached to any node of this document.
+     */
+    boolean hasUserData() {
+        return userData != null && !userData.isEmpty();
+    }
+
 	protected Hashtable<?, ?> getUserDataRecord(Node n){
         if (userData == null) {
             return null;
@@ -2702,12 +3005,25 @@ extends ParentNode implements Document  {
      * A method to be called when a node has been inserted in the tree.
      */
     void insertedNode(NodeImpl node, NodeImpl newInternal, boolean replace) {
+        if (fElementIndex != null) {
+            fElementIndex.insertedNode(node, newInternal);
+        }
+        if (fDocumentOrderIndex != null &&
+            !fDocumentOrderIndex.insertedNode(node, newInternal)) {
+            fDocumentOrderIndex = null;
+        }
     }
 
     /**
      * A method to be called when a node is about to be removed from the tree.
      */
     void removingNode(NodeImpl node, NodeImpl oldChild, boolean replace) {
+        if (fElementIndex != null) {
+            fElementIndex.removingNode(oldChild);
+        }
+        if (fDocumentOrderIndex != null) {
+            fDocumentOrderIndex.removingNode(oldChild);
+        }
     }
 
     /**
@@ -2751,12 +3067,15 @@ extends ParentNode implements Document  {
      * A method to be called when an attribute node has been set
      */
     void setAttrNode(AttrImpl attr, AttrImpl previous) {
+        // live lists may select elements by attribute
+        subtreeChanged((ParentNode) attr.ownerNode);
     }
 
     /**
      * A method to be called when an attribute node has been removed
      */
     void removedAttrNode(AttrImpl attr, NodeImpl oldOwner, String name) {
+        subtreeChanged((ParentNode) oldOwner);
     }
 
     /**
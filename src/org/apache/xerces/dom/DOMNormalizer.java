@@ -593,8 +593,14 @@ public class DOMNormalizer implements XMLDocumentHandler {
                 Node next = node.getNextSibling();
                 // If an adjacent text node, merge it with this node
                 if ( next!=null && next.getNodeType() == Node.TEXT_NODE ) {
-                    ((Text)node).appendData(next.getNodeValue());
-                    node.getParentNode().removeChild( next );
+                    if (!fDocument.getMutationEvents() && node instanceof TextImpl) {
+                        // merge all the adjacent text nodes at once
+                        ((TextImpl)node).mergeAdjacentText();
+                    }
+                    else {
+                        ((Text)node).appendData(next.getNodeValue());
+                        node.getParentNode().removeChild( next );
+                    }
                     // We don't need to check well-formness here since we are not yet
                     // done with this node.
                     
@@ -82,10 +82,22 @@ public class DeepNodeListImpl
     protected String tagName;   // Or "*" to mean all-tags-acceptable
     protected int changes=0;
     protected ArrayList<Node> nodes;
+
+    // the document the changes were counted in, as the stamps of different
+    // documents cannot be compared
+    private CoreDocumentImpl changesDocument;
     
     protected String nsName;
     protected boolean enableNS = false;
 
+    // the elements of the document's element index with the name of this
+    // list, when it is served by the index, and the range of them that are
+    // in the subtree of the root node
+    private ArrayList<ElementImpl> indexedNodes;
+    private int indexStart;
+    private int indexEnd;
+    private int indexChanges;
+
     //
     // Constructors
     //
@@ -111,6 +123,9 @@ public class DeepNodeListImpl
 
     /** Returns the length of the node list. */
     public int getLength() {
+        if (synchronizeWithIndex()) {
+            return indexEnd - indexStart;
+        }
         // Preload all matching elements. (Stops when we run out of subtree!)
         item(java.lang.Integer.MAX_VALUE);
         return nodes.size();
@@ -120,10 +135,18 @@ public class DeepNodeListImpl
     public Node item(int index) {
     	Node thisNode;
 
+        // Served by the element index.
+        if (synchronizeWithIndex()) {
+            return index >= 0 && index < indexEnd - indexStart ?
+                indexedNodes.get(indexStart + index) : null;
+        }
+
         // Tree changed. Do it all from scratch!
-    	if (rootNode.changes() != changes) {
+    	if (rootNode.changes() != changes ||
+            rootNode.ownerDocument() != changesDocument) {
             nodes   = new ArrayList<Node>();     
             changes = rootNode.changes();
+            changesDocument = rootNode.ownerDocument();
     	}
     
         // In the cache
@@ -156,6 +179,48 @@ public class DeepNodeListImpl
 
     } // item(int):Node
 
+    /**
+     * Returns whether this list is served by the element index of the
+     * document, after updating the range of the indexed elements that
+     * are in the list if the index changed.
+     */
+    private boolean synchronizeWithIndex() {
+        // subclasses may match elements in other ways
+        if (getClass() != DeepNodeListImpl.class) {
+            return false;
+        }
+        final ElementIndex index = rootNode.ownerDocument().getElementIndex();
+        if (index == null) {
+            indexedNodes = null;
+            return false;
+        }
+        if (indexedNodes != null && indexChanges == index.getChanges()) {
+            return true;
+        }
+        indexedNodes = null;
+        final ArrayList<ElementImpl> elements = enableNS ?
+            index.getElementsNS(nsName, tagName) : index.getElements(tagName);
+        if (elements == null || !index.isIndexed(rootNode)) {
+            return false;
+        }
+        if (rootNode.getNodeType() == Node.DOCUMENT_NODE) {
+            indexStart = 0;
+            indexEnd = elements.size();
+        }
+        else {
+            // the root node is not in its own list
+            int start = ElementIndex.lowerBound(elements, rootNode);
+            if (start < elements.size() && elements.get(start) == rootNode) {
+                start++;
+            }
+            indexStart = start;
+            indexEnd = ElementIndex.subtreeEnd(elements, start, rootNode);
+        }
+        indexedNodes = elements;
+        indexChanges = index.getChanges();
+        return true;
+    }
+
     //
     // Protected methods (might be overridden by an extending DOM)
     //
@@ -17,11 +17,16 @@
 
 package org.apache.xerces.dom;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 
+import org.w3c.dom.DOMException;
 import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
+import org.w3c.dom.UserDataHandler;
 
 /**
  * The Document interface represents the entire HTML or XML document.
@@ -88,7 +93,7 @@ public class DeferredDocumentImpl
     protected transient int fNodeCount = 0;
 
     /** Node types. */
-    protected transient int fNodeType[][];
+    protected transient DeferredIntTable fNodeType;
 
     /** Node names. */
     protected transient Object fNodeName[][];
@@ -97,19 +102,19 @@ public class DeferredDocumentImpl
     protected transient Object fNodeValue[][];
 
     /** Node parents. */
-    protected transient int fNodeParent[][];
+    protected transient DeferredIntTable fNodeParent;
 
     /** Node first children. */
-    protected transient int fNodeLastChild[][];
+    protected transient DeferredIntTable fNodeLastChild;
 
     /** Node prev siblings. */
-    protected transient int fNodePrevSib[][];
+    protected transient DeferredIntTable fNodePrevSib;
 
     /** Node namespace URI. */
     protected transient Object fNodeURI[][];
 
     /** Extra data. */
-    protected transient int fNodeExtra[][];
+    protected transient DeferredIntTable fNodeExtra;
 
     /** Identifier count. */
     protected transient int fIdCount;
@@ -132,6 +137,18 @@ public class DeferredDocumentImpl
     private transient final StringBuffer fBufferStr = new StringBuffer();
     private transient final ArrayList<String> fStrChunks = new ArrayList<String>();
 
+    /** Off-heap store of the character data, if any. */
+    private transient DeferredTextStore fTextStore;
+
+    /** True if the character data is added to the off-heap store. */
+    private transient boolean fOffHeapStorage = false;
+
+    /** Read-only view of the tables, if one was requested. */
+    private transient DeferredDocumentView fView;
+
+    /** Pool the chunks of the tables are taken from and given back to. */
+    private transient DeferredTablePool fTablePool;
+
     //
     // Constructors
     //
@@ -188,6 +205,154 @@ public class DeferredDocumentImpl
         fNamespacesEnabled = enable;
     }
 
+    /**
+     * NON-DOM: Keeps the character data of the text, CDATA section,
+     * comment and processing instruction nodes and of the attributes added
+     * from now on outside of the Java heap, until the nodes are created.
+     * The data is held in direct buffers, or in memory-mapped temporary
+     * files when a directory is given. Only the directory given when the
+     * store is first needed is used.
+     * <p>
+     * If this is set before the first node is added, the int tables of
+     * the nodes (types, parents, children, siblings and extra data) are
+     * held in direct buffers as well. The names and namespace URIs are
+     * symbols shared with the parser and stay on the heap, and so do the
+     * references to the character data.
+     *
+     * @param offHeap   true to store the character data off the heap
+     * @param directory the directory of the temporary files, or null
+     */
+    public void setOffHeapStorage(boolean offHeap, File directory) {
+        if (offHeap && fTextStore == null) {
+            fTextStore = new DeferredTextStore(directory);
+        }
+        fOffHeapStorage = offHeap;
+    }
+
+    /** NON-DOM: Returns true if the character data is stored off the heap. */
+    public boolean getOffHeapStorage() {
+        return fOffHeapStorage;
+    }
+
+    /**
+     * NON-DOM: Returns a read-only view of this document, whose nodes are
+     * read directly from the tables built by the parser instead of being
+     * created as the tree is traversed. The nodes of the view are created
+     * on each access, so they must be compared with <code>isSameNode</code>
+     * rather than with <code>==</code>; any attempt to modify them raises
+     * a NO_MODIFICATION_ALLOWED_ERR. The view only shows the document as
+     * it was parsed.
+     * <p>
+     * The view must be requested before the children of this document are
+     * accessed. Once it exists, the tables are no longer emptied as nodes
+     * of the document are created, so that both can be used.
+     *
+     * @exception DOMException INVALID_STATE_ERR: Raised if the nodes of
+     *                         this document have already been created.
+     */
+    public Document getReadOnlyView() {
+        if (fView == null) {
+            if (!needsSyncChildren()) {
+                String msg = DOMMessageFormatter.formatMessage(
+                        DOMMessageFormatter.DOM_DOMAIN, "INVALID_STATE_ERR", null);
+                throw new DOMException(DOMException.INVALID_STATE_ERR, msg);
+            }
+            fView = new DeferredDocumentView(this);
+        }
+        return fView.getDocument();
+    }
+
+    /**
+     * NON-DOM: Takes the chunks of the tables of this document from the
+     * given pool, and gives them back to it as they are emptied by the
+     * creation of the nodes. Must be set before any node is added.
+     */
+    public void setTablePool(DeferredTablePool pool) {
+        fTablePool = pool;
+    }
+
+    /**
+     * NON-DOM: Gives the tables of this document back to its pool, to be
+     * reused by the next documents. Does nothing if the document has no
+     * pool.
+     * <p>
+     * The nodes of this document that were already created keep working
+     * as long as they need nothing more from the tables; its clones are
+     * not affected. Any other use of the document, of its nodes or of its
+     * read-only view raises an INVALID_STATE_ERR.
+     */
+    public void releaseTables() {
+        if (fTablePool == null) {
+            return;
+        }
+        releaseChunks(fNodeType);
+        releaseChunks(fNodeName);
+        releaseChunks(fNodeValue);
+        releaseChunks(fNodeParent);
+        releaseChunks(fNodeLastChild);
+        releaseChunks(fNodePrevSib);
+        releaseChunks(fNodeURI);
+        releaseChunks(fNodeExtra);
+        fNodeType = null;
+        fNodeName = null;
+        fNodeValue = null;
+        fNodeParent = null;
+        fNodeLastChild = null;
+        fNodePrevSib = null;
+        fNodeURI = null;
+        fNodeExtra = null;
+        fNodeCount = 0;
+        if (fIdName != null) {
+            fTablePool.putIdTables(fIdName, fIdElement);
+            fIdName = null;
+            fIdElement = null;
+        }
+        fIdCount = 0;
+        fTablePool = null;
+    }
+
+    /**
+     * Deep-clones the document. As long as none of its nodes has been
+     * created, the clone is made of copies of the tables built by the
+     * parser, from which its nodes are created as it is traversed, like
+     * those of this document; the character data of an off-heap store is
+     * shared. Otherwise the nodes are imported as in DocumentImpl.
+     */
+    public Node cloneNode(boolean deep) {
+
+        if (!deep || getClass() != DeferredDocumentImpl.class ||
+            !needsSyncData() || !needsSyncChildren() || identifiers != null) {
+            return super.cloneNode(deep);
+        }
+
+        DeferredDocumentImpl newdoc =
+            new DeferredDocumentImpl(fNamespacesEnabled, allowGrammarAccess);
+        callUserDataHandlers(this, newdoc, UserDataHandler.NODE_CLONED);
+
+        newdoc.fNodeCount = fNodeCount;
+        newdoc.fNodeType = copyChunks(fNodeType);
+        newdoc.fNodeName = copyChunks(fNodeName);
+        newdoc.fNodeValue = copyChunks(fNodeValue);
+        newdoc.fNodeParent = copyChunks(fNodeParent);
+        newdoc.fNodeLastChild = copyChunks(fNodeLastChild);
+        newdoc.fNodePrevSib = copyChunks(fNodePrevSib);
+        newdoc.fNodeURI = copyChunks(fNodeURI);
+        newdoc.fNodeExtra = copyChunks(fNodeExtra);
+        newdoc.fIdCount = fIdCount;
+        if (fIdName != null) {
+            newdoc.fIdName = fIdName.clone();
+            newdoc.fIdElement = fIdElement.clone();
+        }
+        // the store is only added to while parsing
+        newdoc.fTextStore = fTextStore;
+
+        copySettings(newdoc);
+        newdoc.mutationEvents = mutationEvents;
+
+        return newdoc;
+
+    } // cloneNode(boolean):Node
+
     // internal factory methods
 
     /** Creates a document node in the table. */
@@ -519,7 +684,7 @@ public class DeferredDocumentImpl
         int index = nodeIndex & CHUNK_MASK;
         setChunkValue(fNodeName, attrName, chunk, index);
         setChunkValue(fNodeURI, attrURI, chunk, index);
-        setChunkValue(fNodeValue, attrValue, chunk, index);
+        setChunkValue(fNodeValue, storeText(attrValue), chunk, index);
         int extra = specified ? SPECIFIED : 0;
         setChunkIndex(fNodeExtra, extra, chunk, index);
 
@@ -550,7 +715,7 @@ public class DeferredDocumentImpl
         int nodeIndex = createNode(Node.TEXT_NODE);
         int chunk = nodeIndex >> CHUNK_SHIFT;
         int index = nodeIndex & CHUNK_MASK;
-        setChunkValue(fNodeValue, data, chunk, index);
+        setChunkValue(fNodeValue, storeText(data), chunk, index);
         // use extra to store ignorableWhitespace info
         setChunkIndex(fNodeExtra, ignorableWhitespace ?  1 : 0, chunk, index);
 
@@ -566,7 +731,7 @@ public class DeferredDocumentImpl
         int nodeIndex = createNode(Node.CDATA_SECTION_NODE);
         int chunk = nodeIndex >> CHUNK_SHIFT;
         int index = nodeIndex & CHUNK_MASK;
-        setChunkValue(fNodeValue, data, chunk, index);
+        setChunkValue(fNodeValue, storeText(data), chunk, index);
 
         // return node index
         return nodeIndex;
@@ -581,7 +746,7 @@ public class DeferredDocumentImpl
         int chunk = nodeIndex >> CHUNK_SHIFT;
         int index = nodeIndex & CHUNK_MASK;
         setChunkValue(fNodeName, target, chunk, index);
-        setChunkValue(fNodeValue, data, chunk, index);
+        setChunkValue(fNodeValue, storeText(data), chunk, index);
         // return node index
         return nodeIndex;
 
@@ -594,7 +759,7 @@ public class DeferredDocumentImpl
         int nodeIndex = createNode(Node.COMMENT_NODE);
         int chunk = nodeIndex >> CHUNK_SHIFT;
         int index = nodeIndex & CHUNK_MASK;
-        setChunkValue(fNodeValue, data, chunk, index);
+        setChunkValue(fNodeValue, storeText(data), chunk, index);
 
         // return node index
         return nodeIndex;
@@ -608,14 +773,14 @@ public class DeferredDocumentImpl
         
         int nchunk = nodeIndex >> CHUNK_SHIFT;
         int nindex = nodeIndex & CHUNK_MASK;
-        int nodeType = fNodeType[nchunk][nindex];
+        int nodeType = getChunkIndex(fNodeType, nchunk, nindex);
         int cloneIndex = createNode((short)nodeType);
         int cchunk = cloneIndex >> CHUNK_SHIFT;
         int cindex = cloneIndex & CHUNK_MASK;
         setChunkValue(fNodeName, fNodeName[nchunk][nindex], cchunk, cindex);
         setChunkValue(fNodeValue, fNodeValue[nchunk][nindex], cchunk, cindex);
         setChunkValue(fNodeURI, fNodeURI[nchunk][nindex], cchunk, cindex);
-        int extraIndex = fNodeExtra[nchunk][nindex];
+        int extraIndex = getChunkIndex(fNodeExtra, nchunk, nindex);
         if (extraIndex != -1) {
             if (nodeType != Node.ATTRIBUTE_NODE && nodeType != Node.TEXT_NODE) {
                 extraIndex = cloneNode(extraIndex, false);
@@ -1229,20 +1394,35 @@ public class DeferredDocumentImpl
 	 * @return Object - type information for the attribute/element node
 	 */
     public Object getTypeInfo(int nodeIndex) {
+        return getTypeInfo(nodeIndex, true);
+    }
+
+    /**
+     * Returns the type info that is stored in the fNodeValue array
+     * @param nodeIndex
+     * @param free True to clear the type info.
+     * @return Object - type information for the attribute/element node
+     */
+    public Object getTypeInfo(int nodeIndex, boolean free) {
         if (nodeIndex == -1) {
             return null;
         }
 
         int chunk = nodeIndex >> CHUNK_SHIFT;
         int index = nodeIndex & CHUNK_MASK;
-        
+        if (fNodeValue == null) {
+            throw tablesReleased();
+        }
         
         Object value = fNodeValue[chunk] != null ? fNodeValue[chunk][index] : null;
-        if (value != null) {
+        if (value != null && free && fView == null) {
             fNodeValue[chunk][index] = null;
             RefCount c = (RefCount) fNodeValue[chunk][CHUNK_SIZE];
             c.fCount--;
             if (c.fCount == 0) {
+                if (fTablePool != null) {
+                    fTablePool.putObjectChunk(fNodeValue[chunk]);
+                }
                 fNodeValue[chunk] = null;
             }
         }
@@ -1368,7 +1548,8 @@ public class DeferredDocumentImpl
         }
 
         // initialize arrays
-        if (fIdName == null) {
+        if (fIdName == null &&
+            (fTablePool == null || !fTablePool.getIdTables(this))) {
             fIdName    = new String[64];
             fIdElement = new int[64];
         }
@@ -1407,8 +1588,8 @@ public class DeferredDocumentImpl
             System.out.print("lch\t");
             System.out.print("psib");
             System.out.println();
-            for (int i = 0; i < fNodeType.length; i++) {
-                if (fNodeType[i] != null) {
+            for (int i = 0; i < fNodeType.getLength(); i++) {
+                if (fNodeType.hasChunk(i)) {
                     // separator
                     System.out.print("--------");
                     System.out.print("--------");
@@ -1422,7 +1603,7 @@ public class DeferredDocumentImpl
                     // ref count
                     System.out.print(i);
                     System.out.print('\t');
-                    switch (fNodeType[i][CHUNK_SIZE]) {
+                    switch (fNodeType.getCount(i)) {
                         case DocumentImpl.ELEMENT_DEFINITION_NODE: { System.out.print("EDef"); break; }
                         case Node.DOCUMENT_NODE: { System.out.print("Doc"); break; }
                         case Node.DOCUMENT_TYPE_NODE: { System.out.print("DType"); break; }
@@ -1434,7 +1615,7 @@ public class DeferredDocumentImpl
                         case Node.TEXT_NODE: { System.out.print("Text"); break; }
                         case Node.ATTRIBUTE_NODE: { System.out.print("Attr"); break; }
                         case DeferredNode.TYPE_NODE: { System.out.print("TypeInfo"); break; }
-                        default: { System.out.print("?"+fNodeType[i][CHUNK_SIZE]); }
+                        default: { System.out.print("?"+fNodeType.getCount(i)); }
                     }
                     System.out.print('\t');
                     System.out.print(fNodeName[i][CHUNK_SIZE]);
@@ -1443,13 +1624,13 @@ public class DeferredDocumentImpl
                     System.out.print('\t');
                     System.out.print(fNodeURI[i][CHUNK_SIZE]);
                     System.out.print('\t');
-                    System.out.print(fNodeParent[i][CHUNK_SIZE]);
+                    System.out.print(fNodeParent.getCount(i));
                     System.out.print('\t');
-                    System.out.print(fNodeLastChild[i][CHUNK_SIZE]);
+                    System.out.print(fNodeLastChild.getCount(i));
                     System.out.print('\t');
-                    System.out.print(fNodePrevSib[i][CHUNK_SIZE]);
+                    System.out.print(fNodePrevSib.getCount(i));
                     System.out.print('\t');
-                    System.out.print(fNodeExtra[i][CHUNK_SIZE]);
+                    System.out.print(fNodeExtra.getCount(i));
                     System.out.println();
                 }
             }
@@ -1725,6 +1906,47 @@ public class DeferredDocumentImpl
 
     } // synchronizeChildren(AttrImpl,int):void
 
+    /**
+     * Sets the attributes of the given element, starting from its last
+     * attribute, as compact attributes of the element, if the document
+     * keeps them so and if they are all specified, non-ID attributes.
+     *
+     * @return false if nothing was done
+     */
+    final boolean synchronizeCompactAttributes(ElementImpl el, int attrIndex) {
+
+        if (!compactAttributes || el.attributes != null) {
+            return false;
+        }
+        for (int index = attrIndex; index != -1;
+             index = getPrevSibling(index, false)) {
+            int extra = getNodeExtra(index, false);
+            if ((extra & SPECIFIED) == 0 || (extra & ID) != 0 ||
+                getPrevSibling(getLastChild(index, false), false) != -1) {
+                return false;
+            }
+        }
+
+        // read the attributes as their deferred nodes would
+        for (int index = attrIndex; index != -1;
+             index = getPrevSibling(index)) {
+            String name = getNodeName(index);
+            String localName = null;
+            String namespaceURI = null;
+            if (fNamespacesEnabled) {
+                int colon = name.indexOf(':');
+                localName = (colon < 0) ? name : name.substring(colon + 1);
+                namespaceURI = getNodeURI(index);
+            }
+            getNodeExtra(index);
+            Object type = getTypeInfo(getLastChild(index));
+            el.setCompactAttribute(name, localName, namespaceURI,
+                                   getNodeValueString(index), type);
+        }
+        return true;
+
+    } // synchronizeCompactAttributes(ElementImpl,int):boolean
+
 
     /**
      * Synchronizes the node's children with the internal structure.
@@ -1779,23 +2001,19 @@ public class DeferredDocumentImpl
     protected void ensureCapacity(int chunk) {
         if (fNodeType == null) {
             // create buffers
-            fNodeType       = new int[INITIAL_CHUNK_COUNT][];
+            fNodeType       = createTable();
             fNodeName       = new Object[INITIAL_CHUNK_COUNT][];
             fNodeValue      = new Object[INITIAL_CHUNK_COUNT][];
-            fNodeParent     = new int[INITIAL_CHUNK_COUNT][];
-            fNodeLastChild  = new int[INITIAL_CHUNK_COUNT][];
-            fNodePrevSib    = new int[INITIAL_CHUNK_COUNT][];
+            fNodeParent     = createTable();
+            fNodeLastChild  = createTable();
+            fNodePrevSib    = createTable();
             fNodeURI        = new Object[INITIAL_CHUNK_COUNT][];
-            fNodeExtra      = new int[INITIAL_CHUNK_COUNT][];
+            fNodeExtra      = createTable();
         }
-        else if (fNodeType.length <= chunk) {
-            // resize the tables
+        else if (fNodeName.length <= chunk) {
+            // resize the tables; the int tables make room for their chunks
             int newsize = chunk * 2;
 
-            int[][] newArray = new int[newsize][];
-            System.arraycopy(fNodeType, 0, newArray, 0, chunk);
-            fNodeType = newArray;
-
             Object[][] newStrArray = new Object[newsize][];
             System.arraycopy(fNodeName, 0, newStrArray, 0, chunk);
             fNodeName = newStrArray;
@@ -1804,40 +2022,24 @@ public class DeferredDocumentImpl
             System.arraycopy(fNodeValue, 0, newStrArray, 0, chunk);
             fNodeValue = newStrArray;
 
-            newArray = new int[newsize][];
-            System.arraycopy(fNodeParent, 0, newArray, 0, chunk);
-            fNodeParent = newArray;
-
-            newArray = new int[newsize][];
-            System.arraycopy(fNodeLastChild, 0, newArray, 0, chunk);
-            fNodeLastChild = newArray;
-
-            newArray = new int[newsize][];
-            System.arraycopy(fNodePrevSib, 0, newArray, 0, chunk);
-            fNodePrevSib = newArray;
-
             newStrArray = new Object[newsize][];
             System.arraycopy(fNodeURI, 0, newStrArray, 0, chunk);
             fNodeURI = newStrArray;
-
-            newArray = new int[newsize][];
-            System.arraycopy(fNodeExtra, 0, newArray, 0, chunk);
-            fNodeExtra = newArray;
         }
-        else if (fNodeType[chunk] != null) {
+        else if (fNodeType.hasChunk(chunk)) {
             // Done - there's sufficient capacity
             return;
         }
 
         // create new chunks
-        createChunk(fNodeType, chunk);
+        fNodeType.createChunk(chunk);
         createChunk(fNodeName, chunk);
         createChunk(fNodeValue, chunk);
-        createChunk(fNodeParent, chunk);
-        createChunk(fNodeLastChild, chunk);
-        createChunk(fNodePrevSib, chunk);
+        fNodeParent.createChunk(chunk);
+        fNodeLastChild.createChunk(chunk);
+        fNodePrevSib.createChunk(chunk);
         createChunk(fNodeURI, chunk);
-        createChunk(fNodeExtra, chunk);
+        fNodeExtra.createChunk(chunk);
 
         // Done
         return;
@@ -1922,25 +2124,67 @@ public class DeferredDocumentImpl
     //
     // Private methods
     //
-    private static final int[] INIT_ARRAY = new int[CHUNK_SIZE + 1];
-    static {
-        for (int i = 0; i < CHUNK_SIZE; i++) {
-            INIT_ARRAY[i] = -1;
-        }
-    }
-    /** Creates the specified chunk in the given array of chunks. */
-    private final void createChunk(int data[][], int chunk) {
-        data[chunk] = new int[CHUNK_SIZE + 1];
-        System.arraycopy(INIT_ARRAY, 0, data[chunk], 0, CHUNK_SIZE);
+
+    /**
+     * Creates an int table, whose chunks are direct buffers if the
+     * character data is stored off the heap.
+     */
+    private final DeferredIntTable createTable() {
+        return fOffHeapStorage
+            ? DeferredIntTable.newDirectTable(INITIAL_CHUNK_COUNT)
+            : DeferredIntTable.newHeapTable(INITIAL_CHUNK_COUNT, fTablePool);
     }
 
     static final class RefCount {
         int fCount;
     }
 
+    /** Returns a copy of the given chunks, with their counts. */
+    private static DeferredIntTable copyChunks(DeferredIntTable data) {
+        return data != null ? data.copy() : null;
+    }
+    private static Object[][] copyChunks(Object data[][]) {
+        if (data == null) {
+            return null;
+        }
+        Object[][] copy = new Object[data.length][];
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != null) {
+                copy[i] = data[i].clone();
+                RefCount c = new RefCount();
+                c.fCount = ((RefCount) data[i][CHUNK_SIZE]).fCount;
+                copy[i][CHUNK_SIZE] = c;
+            }
+        }
+        return copy;
+    }
+
     private final void createChunk(Object data[][], int chunk) {
-        data[chunk] = new Object[CHUNK_SIZE + 1];
-        data[chunk][CHUNK_SIZE] = new RefCount();
+        Object[] dataChunk = fTablePool != null ? fTablePool.getObjectChunk() : null;
+        if (dataChunk == null) {
+            dataChunk = new Object[CHUNK_SIZE + 1];
+        }
+        else {
+            Arrays.fill(dataChunk, 0, CHUNK_SIZE, null);
+        }
+        dataChunk[CHUNK_SIZE] = new RefCount();
+        data[chunk] = dataChunk;
+    }
+
+    /** Gives the chunks of the given table back to the pool. */
+    private final void releaseChunks(DeferredIntTable data) {
+        if (data != null) {
+            data.release();
+        }
+    }
+    private final void releaseChunks(Object data[][]) {
+        if (data != null) {
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] != null) {
+                    fTablePool.putObjectChunk(data[i]);
+                }
+            }
+        }
     }
 
     /**
@@ -1948,23 +2192,12 @@ public class DeferredDocumentImpl
      *
      * @return Returns the old value.
      */
-    private final int setChunkIndex(int data[][], int value,
+    private final int setChunkIndex(DeferredIntTable data, int value,
                                     int chunk, int index) {
         if (value == -1) {
             return clearChunkIndex(data, chunk, index);
         }
-        int [] dataChunk = data[chunk];
-        // Re-create chunk if it was deleted.
-        if (dataChunk == null) {
-            createChunk(data, chunk);
-            dataChunk = data[chunk];
-        }
-        int ovalue = dataChunk[index];
-        if (ovalue == -1) {
-            dataChunk[CHUNK_SIZE]++;
-        }
-        dataChunk[index] = value;
-        return ovalue;
+        return data.set(chunk, index, value);
     }
     private final String setChunkValue(Object data[][], Object value,
                                        int chunk, int index) {
@@ -1977,7 +2210,7 @@ public class DeferredDocumentImpl
             createChunk(data, chunk);
             dataChunk = data[chunk];
         }
-        String ovalue = (String) dataChunk[index];
+        String ovalue = getString(dataChunk[index]);
         if (ovalue == null) {
             RefCount c = (RefCount) dataChunk[CHUNK_SIZE];
             c.fCount++;
@@ -1989,11 +2222,17 @@ public class DeferredDocumentImpl
     /**
      * Returns the specified value in the given data at the chunk and index.
      */
-    private final int getChunkIndex(int data[][], int chunk, int index) {
-        return data[chunk] != null ? data[chunk][index] : -1;
+    private final int getChunkIndex(DeferredIntTable data, int chunk, int index) {
+        if (data == null) {
+            throw tablesReleased();
+        }
+        return data.get(chunk, index);
     }
     private final String getChunkValue(Object data[][], int chunk, int index) {
-        return data[chunk] != null ? (String) data[chunk][index] : null;
+        if (data == null) {
+            throw tablesReleased();
+        }
+        return data[chunk] != null ? getString(data[chunk][index]) : null;
     }
     private final String getNodeValue(int chunk, int index) {
         Object data = fNodeValue[chunk][index];
@@ -2003,6 +2242,9 @@ public class DeferredDocumentImpl
         else if (data instanceof String){
             return (String)data;
         }
+        else if (data instanceof DeferredTextStore.Ref) {
+            return getString(data);
+        }
         else {
             // type information
             return data.toString();
@@ -2013,35 +2255,62 @@ public class DeferredDocumentImpl
     /**
      * Clears the specified value in the given data at the chunk and index.
      * Note that this method will clear the given chunk if the reference
-     * count becomes zero.
+     * count becomes zero. Nothing is cleared once a read-only view exists.
      *
      * @return Returns the old value.
      */
-    private final int clearChunkIndex(int data[][], int chunk, int index) {
-        int value = data[chunk] != null ? data[chunk][index] : -1;
-        if (value != -1) {
-            data[chunk][CHUNK_SIZE]--;
-            data[chunk][index] = -1;
-            if (data[chunk][CHUNK_SIZE] == 0) {
-                data[chunk] = null;
-            }
+    private final int clearChunkIndex(DeferredIntTable data, int chunk, int index) {
+        if (data == null) {
+            throw tablesReleased();
         }
-        return value;
+        return fView == null ? data.clear(chunk, index) : data.get(chunk, index);
     }
     private final String clearChunkValue(Object data[][],
                                          int chunk, int index) {
-        String value = data[chunk] != null ? (String)data[chunk][index] : null;
-        if (value != null) {
+        if (data == null) {
+            throw tablesReleased();
+        }
+        String value = data[chunk] != null ? getString(data[chunk][index]) : null;
+        if (value != null && fView == null) {
             data[chunk][index] = null;
             RefCount c = (RefCount) data[chunk][CHUNK_SIZE];
             c.fCount--;
             if (c.fCount == 0) {
+                if (fTablePool != null) {
+                    fTablePool.putObjectChunk(data[chunk]);
+                }
                 data[chunk] = null;
             }
         }
         return value;
     }
 
+    /**
+     * Returns the exception raised when a node is to be read from the
+     * tables after releaseTables has given them back to their pool.
+     */
+    private static DOMException tablesReleased() {
+        String msg = DOMMessageFormatter.formatMessage(
+                DOMMessageFormatter.DOM_DOMAIN, "INVALID_STATE_ERR", null);
+        return new DOMException(DOMException.INVALID_STATE_ERR, msg);
+    }
+
+    /**
+     * Returns the value to keep in the tables for the given character
+     * data: a reference to the off-heap store if there is one.
+     */
+    private final Object storeText(String data) {
+        return fOffHeapStorage && data != null && data.length() > 0
+            ? fTextStore.add(data) : data;
+    }
+
+    /** Returns the string held in the tables as the given value. */
+    private final String getString(Object value) {
+        return value instanceof DeferredTextStore.Ref
+            ? fTextStore.getString((DeferredTextStore.Ref) value)
+            : (String) value;
+    }
+
     /**
      * This version of putIdentifier is needed to avoid fluffing
      * all of the paths to ID attributes when a node object is
@@ -0,0 +1,1897 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
+import org.apache.xerces.impl.xs.XSComplexTypeDecl;
+import org.apache.xerces.util.URI;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xs.XSTypeDefinition;
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Comment;
+import org.w3c.dom.DOMConfiguration;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.Entity;
+import org.w3c.dom.EntityReference;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.Notation;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.Text;
+import org.w3c.dom.TypeInfo;
+import org.w3c.dom.UserDataHandler;
+
+/**
+ * A read-only view of a deferred document, whose nodes are read from the
+ * tables of the document instead of being created and linked into a tree.
+ * The node objects of the view are small cursors holding a node index:
+ * they are created on each access and can be discarded as soon as they
+ * are no longer used, so that walking the whole document keeps the memory
+ * close to the size of the tables.
+ * <p>
+ * As the same node may be returned as different objects, nodes must be
+ * compared with <code>isSameNode</code> or <code>equals</code>, not with
+ * <code>==</code>. The view shows the document as it was parsed: changes
+ * made through the regular nodes of the document are not seen. Any attempt
+ * to modify the view raises a NO_MODIFICATION_ALLOWED_ERR.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class DeferredDocumentView {
+
+    //
+    // Constants
+    //
+
+    private static final int CHUNK_SHIFT = DeferredDocumentImpl.CHUNK_SHIFT;
+    private static final int CHUNK_SIZE = DeferredDocumentImpl.CHUNK_SIZE;
+    private static final int CHUNK_MASK = DeferredDocumentImpl.CHUNK_MASK;
+
+    //
+    // Data
+    //
+
+    /** The deferred document. */
+    final DeferredDocumentImpl fDocument;
+
+    /** The document node of the view. */
+    private final ViewDocument fViewDocument;
+
+    /** First children of the nodes, before normalization of text nodes. */
+    private final int[][] fFirstChild;
+
+    /** Next siblings of the nodes, before normalization of text nodes. */
+    private final int[][] fNextSibling;
+
+    /**
+     * Parents of the nodes, and owner elements of the attributes, as some
+     * of them are not recorded in the tables.
+     */
+    private final int[][] fParent;
+
+    /** Identifier names and elements, as they were parsed. */
+    private final String[] fIdName;
+    private final int[] fIdElement;
+
+    /** Identifiers, built on the first lookup. */
+    private HashMap<String, Integer> fIdentifiers;
+
+    /** User data of the nodes of the view. */
+    private HashMap<ViewNode, HashMap<String, Object>> fUserData;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Creates a view of the given document, whose tables must not have
+     * been emptied by the creation of nodes.
+     */
+    DeferredDocumentView(DeferredDocumentImpl document) {
+        fDocument = document;
+        fViewDocument = new ViewDocument(this);
+
+        // link the children forward, as the tables only link them
+        // backward; the nodes are reached from the document, since the
+        // tables still hold the entity references removed by the parser
+        final int chunks = (document.fNodeCount >> CHUNK_SHIFT) + 1;
+        fFirstChild = new int[chunks][];
+        fNextSibling = new int[chunks][];
+        fParent = new int[chunks][];
+        for (int i = 0; i < chunks; i++) {
+            fFirstChild[i] = new int[CHUNK_SIZE];
+            fNextSibling[i] = new int[CHUNK_SIZE];
+            fParent[i] = new int[CHUNK_SIZE];
+            Arrays.fill(fFirstChild[i], -1);
+            Arrays.fill(fNextSibling[i], -1);
+            Arrays.fill(fParent[i], -1);
+        }
+        final IntList stack = new IntList();
+        stack.add(0);
+        while (stack.size() > 0) {
+            final int node = stack.pop();
+            switch (document.getNodeType(node, false)) {
+                case Node.ELEMENT_NODE:
+                    for (int attr = document.getNodeExtra(node, false);
+                         attr > 0;
+                         attr = document.getRealPrevSibling(attr, false)) {
+                        fParent[attr >> CHUNK_SHIFT][attr & CHUNK_MASK] = node;
+                    }
+                    linkChildren(node, stack);
+                    break;
+                case Node.DOCUMENT_NODE:
+                case Node.ENTITY_REFERENCE_NODE:
+                case Node.ENTITY_NODE:
+                    linkChildren(node, stack);
+                    break;
+                case Node.DOCUMENT_TYPE_NODE:
+                    // the entities, which are not children of the doctype
+                    for (int child = document.getLastChild(node, false);
+                         child != -1;
+                         child = document.getRealPrevSibling(child, false)) {
+                        if (document.getNodeType(child, false) == Node.ENTITY_NODE) {
+                            stack.add(child);
+                        }
+                    }
+                    break;
+            }
+        }
+
+        if (document.fIdName != null) {
+            fIdName = new String[document.fIdCount];
+            fIdElement = new int[document.fIdCount];
+            System.arraycopy(document.fIdName, 0, fIdName, 0, fIdName.length);
+            System.arraycopy(document.fIdElement, 0, fIdElement, 0, fIdElement.length);
+        }
+        else {
+            fIdName = null;
+            fIdElement = null;
+        }
+    }
+
+    /**
+     * Links the children of the given node forward and to their parent,
+     * and adds them to the given stack of nodes to visit.
+     */
+    private void linkChildren(int node, IntList stack) {
+        int next = -1;
+        for (int child = fDocument.getLastChild(node, false);
+             child != -1;
+             child = fDocument.getRealPrevSibling(child, false)) {
+            fNextSibling[child >> CHUNK_SHIFT][child & CHUNK_MASK] = next;
+            fParent[child >> CHUNK_SHIFT][child & CHUNK_MASK] = node;
+            next = child;
+            stack.add(child);
+        }
+        fFirstChild[node >> CHUNK_SHIFT][node & CHUNK_MASK] = next;
+    }
+
+    //
+    // Methods
+    //
+
+    /** Returns the document node of the view. */
+    Document getDocument() {
+        return fViewDocument;
+    }
+
+    /** Returns the node of the view with the given index. */
+    Node getNode(int index) {
+        if (index == -1) {
+            return null;
+        }
+        switch (fDocument.getNodeType(index, false)) {
+            case Node.ELEMENT_NODE: return new ViewElement(this, index);
+            case Node.ATTRIBUTE_NODE: return new ViewAttr(this, index);
+            case Node.TEXT_NODE: return new ViewText(this, index);
+            case Node.CDATA_SECTION_NODE: return new ViewCDATASection(this, index);
+            case Node.ENTITY_REFERENCE_NODE: return new ViewEntityReference(this, index);
+            case Node.ENTITY_NODE: return new ViewEntity(this, index);
+            case Node.PROCESSING_INSTRUCTION_NODE: return new ViewProcessingInstruction(this, index);
+            case Node.COMMENT_NODE: return new ViewComment(this, index);
+            case Node.DOCUMENT_NODE: return fViewDocument;
+            case Node.DOCUMENT_TYPE_NODE: return new ViewDocumentType(this, index);
+            case Node.NOTATION_NODE: return new ViewNotation(this, index);
+            default: return null;
+        }
+    }
+
+    /**
+     * Returns the parent of the given node, or the owner element of the
+     * given attribute.
+     */
+    int getParent(int index) {
+        return fParent[index >> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    /** Returns the first child of the given node. */
+    int getFirstChild(int index) {
+        return lastOfText(fFirstChild[index >> CHUNK_SHIFT][index & CHUNK_MASK]);
+    }
+
+    /** Returns the next sibling of the given node. */
+    int getNextSibling(int index) {
+        return lastOfText(fNextSibling[index >> CHUNK_SHIFT][index & CHUNK_MASK]);
+    }
+
+    /**
+     * Returns the last of the adjacent text nodes starting at the given
+     * node, which holds the value of all of them, as a single text node.
+     */
+    private int lastOfText(int index) {
+        if (index != -1 && fDocument.getNodeType(index, false) == Node.TEXT_NODE) {
+            for (int next = fNextSibling[index >> CHUNK_SHIFT][index & CHUNK_MASK];
+                 next != -1 && fDocument.getNodeType(next, false) == Node.TEXT_NODE;
+                 next = fNextSibling[index >> CHUNK_SHIFT][index & CHUNK_MASK]) {
+                index = next;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the attributes of the given element, ordered by name as in
+     * the attribute map of the element.
+     */
+    int[] getAttributes(int element) {
+        int count = 0;
+        int attr = fDocument.getNodeExtra(element, false);
+        for (int i = attr; i > 0; i = fDocument.getRealPrevSibling(i, false)) {
+            count++;
+        }
+        final int[] attributes = new int[count];
+        final String[] names = new String[count];
+        count = 0;
+        for (int i = attr; i > 0; i = fDocument.getRealPrevSibling(i, false)) {
+            // insert the attribute at its place among those before it
+            final String name = fDocument.getNodeName(i, false);
+            int j = count++;
+            for (; j > 0 && names[j - 1].compareTo(name) > 0; j--) {
+                attributes[j] = attributes[j - 1];
+                names[j] = names[j - 1];
+            }
+            attributes[j] = i;
+            names[j] = name;
+        }
+        return attributes;
+    }
+
+    /** Returns the type information of the given element, or null. */
+    Object getElementType(int element) {
+        return fDocument.getNamespacesEnabled()
+            ? fDocument.getTypeInfo(element, false) : null;
+    }
+
+    /** Returns the type information of the given attribute, or null. */
+    Object getAttrType(int attr) {
+        final int type = fDocument.getLastChild(attr, false);
+        return type != -1 && fDocument.getNodeType(type, false) == DeferredNode.TYPE_NODE
+            ? fDocument.getTypeInfo(type, false) : null;
+    }
+
+    /** Returns the nodes of the given type among those of a doctype. */
+    int[] getDoctypeNodes(int doctype, short type) {
+        final IntList nodes = new IntList();
+        for (int i = fDocument.getLastChild(doctype, false); i != -1;
+             i = fDocument.getRealPrevSibling(i, false)) {
+            if (fDocument.getNodeType(i, false) == type) {
+                nodes.add(i);
+            }
+        }
+        nodes.reverse();
+        return nodes.toArray();
+    }
+
+    /**
+     * Returns the elements under the given node with the given name, or the
+     * given local name and namespace if <code>namespaces</code> is true,
+     * in document order.
+     */
+    int[] getElements(int root, String namespaceURI, String name, boolean namespaces) {
+        final IntList elements = new IntList();
+        final boolean anyName = "*".equals(name);
+        final boolean anyNamespace = "*".equals(namespaceURI);
+        if (namespaceURI != null && namespaceURI.length() == 0) {
+            namespaceURI = null;
+        }
+        int node = getFirstChild(root);
+        while (node != -1) {
+            if (fDocument.getNodeType(node, false) == Node.ELEMENT_NODE) {
+                final String nodeName = fDocument.getNodeName(node, false);
+                boolean match;
+                if (!namespaces) {
+                    match = anyName || name.equals(nodeName);
+                }
+                else if (!fDocument.getNamespacesEnabled()) {
+                    // elements without a local name only match wildcards
+                    match = anyName && (anyNamespace || namespaceURI == null);
+                }
+                else {
+                    final String uri = fDocument.getNodeURI(node, false);
+                    match = (anyName || name.equals(localPart(nodeName))) &&
+                        (anyNamespace || (namespaceURI == null ? uri == null : namespaceURI.equals(uri)));
+                }
+                if (match) {
+                    elements.add(node);
+                }
+            }
+            // move on in document order
+            int next = getFirstChild(node);
+            while (next == -1 && node != root) {
+                next = getNextSibling(node);
+                if (next == -1) {
+                    node = getParent(node);
+                }
+            }
+            node = node == root && next == -1 ? -1 : next;
+        }
+        return elements.toArray();
+    }
+
+    /** Returns the element with the given identifier, or -1. */
+    int getElementById(String id) {
+        if (fIdName == null) {
+            return -1;
+        }
+        if (fIdentifiers == null) {
+            fIdentifiers = new HashMap<String, Integer>();
+            for (int i = 0; i < fIdName.length; i++) {
+                if (fIdName[i] != null && !fIdentifiers.containsKey(fIdName[i])) {
+                    fIdentifiers.put(fIdName[i], fIdElement[i]);
+                }
+            }
+        }
+        final Integer element = fIdentifiers.get(id);
+        return element != null ? element.intValue() : -1;
+    }
+
+    Object setUserData(ViewNode node, String key, Object data) {
+        if (fUserData == null) {
+            fUserData = new HashMap<ViewNode, HashMap<String, Object>>();
+        }
+        HashMap<String, Object> map = fUserData.get(node);
+        if (map == null) {
+            if (data == null) {
+                return null;
+            }
+            map = new HashMap<String, Object>();
+            fUserData.put(node, map);
+        }
+        return data != null ? map.put(key, data) : map.remove(key);
+    }
+
+    Object getUserData(ViewNode node, String key) {
+        if (fUserData == null) {
+            return null;
+        }
+        final HashMap<String, Object> map = fUserData.get(node);
+        return map != null ? map.get(key) : null;
+    }
+
+    //
+    // Utility methods
+    //
+
+    static String localPart(String name) {
+        final int colon = name.indexOf(':');
+        return colon < 0 ? name : name.substring(colon + 1);
+    }
+
+    static String prefix(String name) {
+        final int colon = name.indexOf(':');
+        return colon < 0 ? null : name.substring(0, colon);
+    }
+
+    static DOMException readOnly() {
+        String msg = DOMMessageFormatter.formatMessage(
+                DOMMessageFormatter.DOM_DOMAIN, "NO_MODIFICATION_ALLOWED_ERR", null);
+        return new DOMException(DOMException.NO_MODIFICATION_ALLOWED_ERR, msg);
+    }
+
+    static DOMException indexSize() {
+        String msg = DOMMessageFormatter.formatMessage(
+                DOMMessageFormatter.DOM_DOMAIN, "INDEX_SIZE_ERR", null);
+        return new DOMException(DOMException.INDEX_SIZE_ERR, msg);
+    }
+
+    private static boolean equalStrings(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
+
+    /** Compares two nodes as defined by <code>Node.isEqualNode</code>. */
+    static boolean isEqual(Node n1, Node n2) {
+        if (n1.getNodeType() != n2.getNodeType() ||
+                !equalStrings(n1.getNodeName(), n2.getNodeName()) ||
+                !equalStrings(n1.getLocalName(), n2.getLocalName()) ||
+                !equalStrings(n1.getNamespaceURI(), n2.getNamespaceURI()) ||
+                !equalStrings(n1.getPrefix(), n2.getPrefix()) ||
+                !equalStrings(n1.getNodeValue(), n2.getNodeValue())) {
+            return false;
+        }
+        if (n1.getNodeType() == Node.ELEMENT_NODE) {
+            final NamedNodeMap attrs1 = n1.getAttributes();
+            final NamedNodeMap attrs2 = n2.getAttributes();
+            if (attrs1.getLength() != attrs2.getLength()) {
+                return false;
+            }
+            for (int i = 0; i < attrs1.getLength(); i++) {
+                final Node attr1 = attrs1.item(i);
+                final Node attr2 = attr1.getLocalName() == null
+                    ? attrs2.getNamedItem(attr1.getNodeName())
+                    : attrs2.getNamedItemNS(attr1.getNamespaceURI(), attr1.getLocalName());
+                if (attr2 == null || !isEqual(attr1, attr2)) {
+                    return false;
+                }
+            }
+        }
+        else if (n1.getNodeType() == Node.DOCUMENT_TYPE_NODE) {
+            final DocumentType type1 = (DocumentType) n1;
+            final DocumentType type2 = (DocumentType) n2;
+            if (!equalStrings(type1.getPublicId(), type2.getPublicId()) ||
+                    !equalStrings(type1.getSystemId(), type2.getSystemId()) ||
+                    !equalStrings(type1.getInternalSubset(), type2.getInternalSubset()) ||
+                    !isEqualMap(type1.getEntities(), type2.getEntities()) ||
+                    !isEqualMap(type1.getNotations(), type2.getNotations())) {
+                return false;
+            }
+        }
+        Node child1 = n1.getFirstChild();
+        Node child2 = n2.getFirstChild();
+        while (child1 != null && child2 != null) {
+            if (!isEqual(child1, child2)) {
+                return false;
+            }
+            child1 = child1.getNextSibling();
+            child2 = child2.getNextSibling();
+        }
+        return child1 == child2;
+    }
+
+    private static boolean isEqualMap(NamedNodeMap map1, NamedNodeMap map2) {
+        if (map1.getLength() != map2.getLength()) {
+            return false;
+        }
+        for (int i = 0; i < map1.getLength(); i++) {
+            final Node node1 = map1.item(i);
+            final Node node2 = map2.getNamedItem(node1.getNodeName());
+            if (node2 == null || !isEqual(node1, node2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //
+    // Classes
+    //
+
+    /** A growable list of node indexes. */
+    static final class IntList {
+
+        private int[] fData = new int[16];
+        private int fSize = 0;
+
+        void add(int value) {
+            if (fSize == fData.length) {
+                final int[] newData = new int[fSize << 1];
+                System.arraycopy(fData, 0, newData, 0, fSize);
+                fData = newData;
+            }
+            fData[fSize++] = value;
+        }
+
+        void reverse() {
+            for (int i = 0, j = fSize - 1; i < j; i++, j--) {
+                final int value = fData[i];
+                fData[i] = fData[j];
+                fData[j] = value;
+            }
+        }
+
+        int size() {
+            return fSize;
+        }
+
+        int pop() {
+            return fData[--fSize];
+        }
+
+        int[] toArray() {
+            final int[] array = new int[fSize];
+            System.arraycopy(fData, 0, array, 0, fSize);
+            return array;
+        }
+    }
+
+    /** The children of a node. */
+    static final class ChildList implements NodeList {
+
+        private final Node fParent;
+        private int fLength = -1;
+
+        /** Last node returned, to walk forward from it. */
+        private Node fLastNode;
+        private int fLastIndex = -1;
+
+        ChildList(Node parent) {
+            fParent = parent;
+        }
+
+        public Node item(int index) {
+            if (index < 0) {
+                return null;
+            }
+            Node node;
+            int i;
+            if (fLastNode != null && fLastIndex <= index) {
+                node = fLastNode;
+                i = fLastIndex;
+            }
+            else {
+                node = fParent.getFirstChild();
+                i = 0;
+            }
+            for (; node != null && i < index; i++) {
+                node = node.getNextSibling();
+            }
+            if (node != null) {
+                fLastNode = node;
+                fLastIndex = index;
+            }
+            return node;
+        }
+
+        public int getLength() {
+            if (fLength == -1) {
+                int length = 0;
+                for (Node node = fParent.getFirstChild(); node != null;
+                     node = node.getNextSibling()) {
+                    length++;
+                }
+                fLength = length;
+            }
+            return fLength;
+        }
+    }
+
+    /** A fixed list of nodes given by index. */
+    static final class IndexList implements NodeList {
+
+        private final DeferredDocumentView fView;
+        private final int[] fNodes;
+
+        IndexList(DeferredDocumentView view, int[] nodes) {
+            fView = view;
+            fNodes = nodes;
+        }
+
+        public Node item(int index) {
+            return index >= 0 && index < fNodes.length ? fView.getNode(fNodes[index]) : null;
+        }
+
+        public int getLength() {
+            return fNodes.length;
+        }
+    }
+
+    /** A fixed map of nodes given by index. */
+    static final class IndexMap implements NamedNodeMap {
+
+        private final DeferredDocumentView fView;
+        private final int[] fNodes;
+
+        IndexMap(DeferredDocumentView view, int[] nodes) {
+            fView = view;
+            fNodes = nodes;
+        }
+
+        public Node getNamedItem(String name) {
+            for (int i = 0; i < fNodes.length; i++) {
+                if (name.equals(fView.fDocument.getNodeName(fNodes[i], false))) {
+                    return fView.getNode(fNodes[i]);
+                }
+            }
+            return null;
+        }
+
+        public Node getNamedItemNS(String namespaceURI, String localName) {
+            if (namespaceURI != null && namespaceURI.length() == 0) {
+                namespaceURI = null;
+            }
+            for (int i = 0; i < fNodes.length; i++) {
+                final Node node = fView.getNode(fNodes[i]);
+                if (equalStrings(localName, node.getLocalName()) &&
+                        equalStrings(namespaceURI, node.getNamespaceURI())) {
+                    return node;
+                }
+            }
+            return null;
+        }
+
+        public Node item(int index) {
+            return index >= 0 && index < fNodes.length ? fView.getNode(fNodes[index]) : null;
+        }
+
+        public int getLength() {
+            return fNodes.length;
+        }
+
+        public Node setNamedItem(Node arg) {
+            throw readOnly();
+        }
+
+        public Node removeNamedItem(String name) {
+            throw readOnly();
+        }
+
+        public Node setNamedItemNS(Node arg) {
+            throw readOnly();
+        }
+
+        public Node removeNamedItemNS(String namespaceURI, String localName) {
+            throw readOnly();
+        }
+    }
+
+    /** A node of the view. */
+    abstract static class ViewNode implements Node {
+
+        final DeferredDocumentView fView;
+        final int fIndex;
+
+        ViewNode(DeferredDocumentView view, int index) {
+            fView = view;
+            fIndex = index;
+        }
+
+        public String getNodeName() {
+            return fView.fDocument.getNodeName(fIndex, false);
+        }
+
+        public String getNodeValue() {
+            return null;
+        }
+
+        public void setNodeValue(String nodeValue) {
+            if (getNodeValue() != null) {
+                throw readOnly();
+            }
+        }
+
+        public Node getParentNode() {
+            return fView.getNode(fView.getParent(fIndex));
+        }
+
+        public NodeList getChildNodes() {
+            return new ChildList(this);
+        }
+
+        public Node getFirstChild() {
+            return null;
+        }
+
+        public Node getLastChild() {
+            return null;
+        }
+
+        public Node getPreviousSibling() {
+            return fView.getNode(fView.fDocument.getPrevSibling(fIndex, false));
+        }
+
+        public Node getNextSibling() {
+            return fView.getNode(fView.getNextSibling(fIndex));
+        }
+
+        public NamedNodeMap getAttributes() {
+            return null;
+        }
+
+        public Document getOwnerDocument() {
+            return fView.fViewDocument;
+        }
+
+        public Node insertBefore(Node newChild, Node refChild) {
+            throw readOnly();
+        }
+
+        public Node replaceChild(Node newChild, Node oldChild) {
+            throw readOnly();
+        }
+
+        public Node removeChild(Node oldChild) {
+            throw readOnly();
+        }
+
+        public Node appendChild(Node newChild) {
+            throw readOnly();
+        }
+
+        public boolean hasChildNodes() {
+            return getFirstChild() != null;
+        }
+
+        /**
+         * Returns a copy of this node, owned by the deferred document: the
+         * copy is a regular node that can be modified.
+         */
+        public Node cloneNode(boolean deep) {
+            return fView.fDocument.importNode(this, deep);
+        }
+
+        public void normalize() {
+            // the adjacent text nodes are already seen as one
+        }
+
+        public boolean isSupported(String feature, String version) {
+            return fView.fDocument.getImplementation().hasFeature(feature, version);
+        }
+
+        public String getNamespaceURI() {
+            return null;
+        }
+
+        public String getPrefix() {
+            return null;
+        }
+
+        public void setPrefix(String prefix) {
+            throw readOnly();
+        }
+
+        public String getLocalName() {
+            return null;
+        }
+
+        public boolean hasAttributes() {
+            return false;
+        }
+
+        public String getBaseURI() {
+            return null;
+        }
+
+        public short compareDocumentPosition(Node other) {
+            if (equals(other)) {
+                return 0;
+            }
+            if (!(other instanceof ViewNode) || ((ViewNode) other).fView != fView) {
+                return (short) (DOCUMENT_POSITION_DISCONNECTED |
+                        DOCUMENT_POSITION_IMPLEMENTATION_SPECIFIC |
+                        (System.identityHashCode(this) < System.identityHashCode(other)
+                            ? DOCUMENT_POSITION_FOLLOWING : DOCUMENT_POSITION_PRECEDING));
+            }
+            final ArrayList<Node> path = getPath(this);
+            final ArrayList<Node> otherPath = getPath(other);
+            if (!path.get(0).equals(otherPath.get(0))) {
+                return (short) (DOCUMENT_POSITION_DISCONNECTED |
+                        DOCUMENT_POSITION_IMPLEMENTATION_SPECIFIC |
+                        (((ViewNode) path.get(0)).fIndex < ((ViewNode) otherPath.get(0)).fIndex
+                            ? DOCUMENT_POSITION_FOLLOWING : DOCUMENT_POSITION_PRECEDING));
+            }
+            int common = 1;
+            while (common < path.size() && common < otherPath.size() &&
+                    path.get(common).equals(otherPath.get(common))) {
+                common++;
+            }
+            if (common == path.size()) {
+                return DOCUMENT_POSITION_CONTAINED_BY | DOCUMENT_POSITION_FOLLOWING;
+            }
+            if (common == otherPath.size()) {
+                return DOCUMENT_POSITION_CONTAINS | DOCUMENT_POSITION_PRECEDING;
+            }
+            final Node node = path.get(common);
+            final Node otherNode = otherPath.get(common);
+            final boolean attr = node.getNodeType() == ATTRIBUTE_NODE;
+            final boolean otherAttr = otherNode.getNodeType() == ATTRIBUTE_NODE;
+            if (attr && otherAttr) {
+                // the order of the attributes is not significant
+                return (short) (DOCUMENT_POSITION_IMPLEMENTATION_SPECIFIC |
+                        (((ViewNode) node).fIndex < ((ViewNode) otherNode).fIndex
+                            ? DOCUMENT_POSITION_FOLLOWING : DOCUMENT_POSITION_PRECEDING));
+            }
+            if (attr || otherAttr) {
+                // the attributes come before the children
+                return attr ? DOCUMENT_POSITION_FOLLOWING : DOCUMENT_POSITION_PRECEDING;
+            }
+            for (Node sibling = node.getNextSibling(); sibling != null;
+                 sibling = sibling.getNextSibling()) {
+                if (sibling.equals(otherNode)) {
+                    return DOCUMENT_POSITION_FOLLOWING;
+                }
+            }
+            return DOCUMENT_POSITION_PRECEDING;
+        }
+
+        /** Returns the containers of the given node, from the root down. */
+        private static ArrayList<Node> getPath(Node node) {
+            final ArrayList<Node> path = new ArrayList<Node>();
+            while (node != null) {
+                path.add(node);
+                node = node.getNodeType() == ATTRIBUTE_NODE
+                    ? ((Attr) node).getOwnerElement() : node.getParentNode();
+            }
+            for (int i = 0, j = path.size() - 1; i < j; i++, j--) {
+                final Node swap = path.get(i);
+                path.set(i, path.get(j));
+                path.set(j, swap);
+            }
+            return path;
+        }
+
+        public String getTextContent() {
+            return getNodeValue();
+        }
+
+        public void setTextContent(String textContent) {
+            throw readOnly();
+        }
+
+        public boolean isSameNode(Node other) {
+            return equals(other);
+        }
+
+        /** Returns the element used for the namespace lookups, if any. */
+        ViewElement getNamespaceContext() {
+            for (Node node = getParentNode(); node != null; node = node.getParentNode()) {
+                if (node.getNodeType() == ELEMENT_NODE) {
+                    return (ViewElement) node;
+                }
+            }
+            return null;
+        }
+
+        public String lookupPrefix(String namespaceURI) {
+            final ViewElement element = getNamespaceContext();
+            return element != null ? element.lookupPrefix(namespaceURI) : null;
+        }
+
+        public boolean isDefaultNamespace(String namespaceURI) {
+            final ViewElement element = getNamespaceContext();
+            return element != null && element.isDefaultNamespace(namespaceURI);
+        }
+
+        public String lookupNamespaceURI(String prefix) {
+            final ViewElement element = getNamespaceContext();
+            return element != null ? element.lookupNamespaceURI(prefix) : null;
+        }
+
+        public boolean isEqualNode(Node arg) {
+            return isEqual(this, arg);
+        }
+
+        public Object getFeature(String feature, String version) {
+            return isSupported(feature, version) ? this : null;
+        }
+
+        /**
+         * Associates an object to a key on this node. The handler is not
+         * called, as the nodes of the view are not cloned, imported,
+         * renamed or deleted.
+         */
+        public Object setUserData(String key, Object data, UserDataHandler handler) {
+            return fView.setUserData(this, key, data);
+        }
+
+        public Object getUserData(String key) {
+            return fView.getUserData(this, key);
+        }
+
+        public boolean equals(Object o) {
+            return o != null && o.getClass() == getClass() &&
+                ((ViewNode) o).fView == fView && ((ViewNode) o).fIndex == fIndex;
+        }
+
+        public int hashCode() {
+            return fIndex * 31 + getNodeType();
+        }
+
+        public String toString() {
+            return "[" + getNodeName() + ": " + getNodeValue() + "]";
+        }
+    }
+
+    /** A node of the view that can have children. */
+    abstract static class ViewParentNode extends ViewNode {
+
+        ViewParentNode(DeferredDocumentView view, int index) {
+            super(view, index);
+        }
+
+        public Node getFirstChild() {
+            return fView.getNode(fView.getFirstChild(fIndex));
+        }
+
+        public Node getLastChild() {
+            return fView.getNode(fView.fDocument.getLastChild(fIndex, false));
+        }
+
+        public String getTextContent() {
+            final StringBuffer buffer = new StringBuffer();
+            getTextContent(this, buffer);
+            return buffer.toString();
+        }
+
+        private static void getTextContent(Node node, StringBuffer buffer) {
+            for (Node child = node.getFirstChild(); child != null;
+                 child = child.getNextSibling()) {
+                switch (child.getNodeType()) {
+                    case TEXT_NODE:
+                    case CDATA_SECTION_NODE:
+                        buffer.append(child.getNodeValue());
+                        break;
+                    case ELEMENT_NODE:
+                    case ENTITY_REFERENCE_NODE:
+                        getTextContent(child, buffer);
+                        break;
+                }
+            }
+        }
+    }
+
+    /** The document node of the view. */
+    static final class ViewDocument extends ViewParentNode implements Document {
+
+        private boolean fStrictErrorChecking = true;
+
+        ViewDocument(DeferredDocumentView view) {
+            super(view, 0);
+        }
+
+        public short getNodeType() {
+            return DOCUMENT_NODE;
+        }
+
+        public String getNodeName() {
+            return "#document";
+        }
+
+        public Node getParentNode() {
+            return null;
+        }
+
+        public Node getPreviousSibling() {
+            return null;
+        }
+
+        public Node getNextSibling() {
+            return null;
+        }
+
+        public Document getOwnerDocument() {
+            return null;
+        }
+
+        public String getTextContent() {
+            return null;
+        }
+
+        public String getBaseURI() {
+            return fView.fDocument.getDocumentURI();
+        }
+
+        ViewElement getNamespaceContext() {
+            return (ViewElement) getDocumentElement();
+        }
+
+        public Node cloneNode(boolean deep) {
+            String msg = DOMMessageFormatter.formatMessage(
+                    DOMMessageFormatter.DOM_DOMAIN, "NOT_SUPPORTED_ERR", null);
+            throw new DOMException(DOMException.NOT_SUPPORTED_ERR, msg);
+        }
+
+        private Node getChild(short type) {
+            for (int child = fView.getFirstChild(fIndex); child != -1;
+                 child = fView.getNextSibling(child)) {
+                if (fView.fDocument.getNodeType(child, false) == type) {
+                    return fView.getNode(child);
+                }
+            }
+            return null;
+        }
+
+        public DocumentType getDoctype() {
+            return (DocumentType) getChild(DOCUMENT_TYPE_NODE);
+        }
+
+        public DOMImplementation getImplementation() {
+            return fView.fDocument.getImplementation();
+        }
+
+        public Element getDocumentElement() {
+            return (Element) getChild(ELEMENT_NODE);
+        }
+
+        public Element createElement(String tagName) {
+            throw readOnly();
+        }
+
+        public DocumentFragment createDocumentFragment() {
+            throw readOnly();
+        }
+
+        public Text createTextNode(String data) {
+            throw readOnly();
+        }
+
+        public Comment createComment(String data) {
+            throw readOnly();
+        }
+
+        public CDATASection createCDATASection(String data) {
+            throw readOnly();
+        }
+
+        public ProcessingInstruction createProcessingInstruction(String target, String data) {
+            throw readOnly();
+        }
+
+        public Attr createAttribute(String name) {
+            throw readOnly();
+        }
+
+        public EntityReference createEntityReference(String name) {
+            throw readOnly();
+        }
+
+        public NodeList getElementsByTagName(String tagname) {
+            return new IndexList(fView, fView.getElements(fIndex, null, tagname, false));
+        }
+
+        public Node importNode(Node importedNode, boolean deep) {
+            throw readOnly();
+        }
+
+        public Element createElementNS(String namespaceURI, String qualifiedName) {
+            throw readOnly();
+        }
+
+        public Attr createAttributeNS(String namespaceURI, String qualifiedName) {
+            throw readOnly();
+        }
+
+        public NodeList getElementsByTagNameNS(String namespaceURI, String localName) {
+            return new IndexList(fView, fView.getElements(fIndex, namespaceURI, localName, true));
+        }
+
+        public Element getElementById(String elementId) {
+            return (Element) fView.getNode(fView.getElementById(elementId));
+        }
+
+        public String getInputEncoding() {
+            return fView.fDocument.getInputEncoding();
+        }
+
+        public String getXmlEncoding() {
+            return fView.fDocument.getXmlEncoding();
+        }
+
+        public boolean getXmlStandalone() {
+            return fView.fDocument.getXmlStandalone();
+        }
+
+        public void setXmlStandalone(boolean xmlStandalone) {
+            throw readOnly();
+        }
+
+        public String getXmlVersion() {
+            return fView.fDocument.getXmlVersion();
+        }
+
+        public void setXmlVersion(String xmlVersion) {
+            throw readOnly();
+        }
+
+        public boolean getStrictErrorChecking() {
+            return fStrictErrorChecking;
+        }
+
+        public void setStrictErrorChecking(boolean strictErrorChecking) {
+            fStrictErrorChecking = strictErrorChecking;
+        }
+
+        public String getDocumentURI() {
+            return fView.fDocument.getDocumentURI();
+        }
+
+        public void setDocumentURI(String documentURI) {
+            throw readOnly();
+        }
+
+        public Node adoptNode(Node source) {
+            throw readOnly();
+        }
+
+        public DOMConfiguration getDomConfig() {
+            return fView.fDocument.getDomConfig();
+        }
+
+        public void normalizeDocument() {
+            throw readOnly();
+        }
+
+        public Node renameNode(Node n, String namespaceURI, String qualifiedName) {
+            throw readOnly();
+        }
+    }
+
+    /** A document type node of the view. */
+    static final class ViewDocumentType extends ViewNode implements DocumentType {
+
+        ViewDocumentType(DeferredDocumentView view, int index) {
+            super(view, index);
+        }
+
+        public short getNodeType() {
+            return DOCUMENT_TYPE_NODE;
+        }
+
+        ViewElement getNamespaceContext() {
+            return null;
+        }
+
+        public String getName() {
+            return getNodeName();
+        }
+
+        public NamedNodeMap getEntities() {
+            return new IndexMap(fView, fView.getDoctypeNodes(fIndex, ENTITY_NODE));
+        }
+
+        public NamedNodeMap getNotations() {
+            return new IndexMap(fView, fView.getDoctypeNodes(fIndex, NOTATION_NODE));
+        }
+
+        public String getPublicId() {
+            return fView.fDocument.getNodeValue(fIndex, false);
+        }
+
+        public String getSystemId() {
+            return fView.fDocument.getNodeURI(fIndex, false);
+        }
+
+        public String getInternalSubset() {
+            return fView.fDocument.getNodeValue(fView.fDocument.getNodeExtra(fIndex, false), false);
+        }
+    }
+
+    /** An element of the view. */
+    static final class ViewElement extends ViewParentNode implements Element, TypeInfo {
+
+        ViewElement(DeferredDocumentView view, int index) {
+            super(view, index);
+        }
+
+        public short getNodeType() {
+            return ELEMENT_NODE;
+        }
+
+        public String getTagName() {
+            return getNodeName();
+        }
+
+        public String getNamespaceURI() {
+            return fView.fDocument.getNamespacesEnabled()
+                ? fView.fDocument.getNodeURI(fIndex, false) : null;
+        }
+
+        public String getPrefix() {
+            return fView.fDocument.getNamespacesEnabled() ? prefix(getNodeName()) : null;
+        }
+
+        public String getLocalName() {
+            return fView.fDocument.getNamespacesEnabled() ? localPart(getNodeName()) : null;
+        }
+
+        public NamedNodeMap getAttributes() {
+            return new IndexMap(fView, fView.getAttributes(fIndex));
+        }
+
+        public boolean hasAttributes() {
+            return fView.fDocument.getNodeExtra(fIndex, false) > 0;
+        }
+
+        private ViewAttr getAttr(String namespaceURI, String name, boolean namespaces) {
+            final NamedNodeMap attributes = getAttributes();
+            return (ViewAttr) (namespaces
+                ? attributes.getNamedItemNS(namespaceURI, name)
+                : attributes.getNamedItem(name));
+        }
+
+        public String getAttribute(String name) {
+            final Attr attr = getAttr(null, name, false);
+            return attr != null ? attr.getValue() : "";
+        }
+
+        public void setAttribute(String name, String value) {
+            throw readOnly();
+        }
+
+        public void removeAttribute(String name) {
+            throw readOnly();
+        }
+
+        public Attr getAttributeNode(String name) {
+            return getAttr(null, name, false);
+        }
+
+        public Attr setAttributeNode(Attr newAttr) {
+            throw readOnly();
+        }
+
+        public Attr removeAttributeNode(Attr oldAttr) {
+            throw readOnly();
+        }
+
+        public NodeList getElementsByTagName(String name) {
+            return new IndexList(fView, fView.getElements(fIndex, null, name, false));
+        }
+
+        public String getAttributeNS(String namespaceURI, String localName) {
+            final Attr attr = getAttr(namespaceURI, localName, true);
+            return attr != null ? attr.getValue() : "";
+        }
+
+        public void setAttributeNS(String namespaceURI, String qualifiedName, String value) {
+            throw readOnly();
+        }
+
+        public void removeAttributeNS(String namespaceURI, String localName) {
+            throw readOnly();
+        }
+
+        public Attr getAttributeNodeNS(String namespaceURI, String localName) {
+            return getAttr(namespaceURI, localName, true);
+        }
+
+        public Attr setAttributeNodeNS(Attr newAttr) {
+            throw readOnly();
+        }
+
+        public NodeList getElementsByTagNameNS(String namespaceURI, String localName) {
+            return new IndexList(fView, fView.getElements(fIndex, namespaceURI, localName, true));
+        }
+
+        public boolean hasAttribute(String name) {
+            return getAttr(null, name, false) != null;
+        }
+
+        public boolean hasAttributeNS(String namespaceURI, String localName) {
+            return getAttr(namespaceURI, localName, true) != null;
+        }
+
+        public TypeInfo getSchemaTypeInfo() {
+            return this;
+        }
+
+        // the type information of ElementNSImpl, or none for ElementImpl
+
+        public String getTypeName() {
+            final Object type = fView.getElementType(fIndex);
+            if (type instanceof XSSimpleTypeDecl) {
+                return ((XSSimpleTypeDecl) type).getTypeName();
+            }
+            else if (type instanceof XSComplexTypeDecl) {
+                return ((XSComplexTypeDecl) type).getTypeName();
+            }
+            return null;
+        }
+
+        public String getTypeNamespace() {
+            final Object type = fView.getElementType(fIndex);
+            return type instanceof XSTypeDefinition
+                ? ((XSTypeDefinition) type).getNamespace() : null;
+        }
+
+        public boolean isDerivedFrom(String typeNamespaceArg, String typeNameArg,
+                int derivationMethod) {
+            final Object type = fView.getElementType(fIndex);
+            if (type instanceof XSSimpleTypeDecl) {
+                return ((XSSimpleTypeDecl) type).isDOMDerivedFrom(
+                        typeNamespaceArg, typeNameArg, derivationMethod);
+            }
+            else if (type instanceof XSComplexTypeDecl) {
+                return ((XSComplexTypeDecl) type).isDOMDerivedFrom(
+                        typeNamespaceArg, typeNameArg, derivationMethod);
+            }
+            return false;
+        }
+
+        public void setIdAttribute(String name, boolean isId) {
+            throw readOnly();
+        }
+
+        public void setIdAttributeNS(String namespaceURI, String localName, boolean isId) {
+            throw readOnly();
+        }
+
+        public void setIdAttributeNode(Attr idAttr, boolean isId) {
+            throw readOnly();
+        }
+
+        public String getBaseURI() {
+            // the base URI given by xml:base, as for ElementImpl
+            final Attr base = getAttr(NamespaceContext.XML_URI, "base", true);
+            final Node parent = getParentNode();
+            final String parentBaseURI = parent != null ? parent.getBaseURI() : null;
+            if (base != null && base.getValue().length() != 0) {
+                try {
+                    URI uri = new URI(base.getValue(), true);
+                    if (uri.isAbsoluteURI()) {
+                        return uri.toString();
+                    }
+                    if (parentBaseURI == null) {
+                        return null;
+                    }
+                    uri.absolutize(new URI(parentBaseURI));
+                    return uri.toString();
+                }
+                catch (URI.MalformedURIException e) {
+                    return null;
+                }
+            }
+            return parentBaseURI;
+        }
+
+        ViewElement getNamespaceContext() {
+            return this;
+        }
+
+        public String lookupNamespaceURI(String specifiedPrefix) {
+            for (ViewElement element = this; element != null;
+                 element = element.getParentElement()) {
+                final String namespace = element.getNamespaceURI();
+                final String prefix = element.getPrefix();
+                if (namespace != null && equalStrings(prefix, specifiedPrefix)) {
+                    return namespace;
+                }
+                final NamedNodeMap attributes = element.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    final Node attr = attributes.item(i);
+                    if (NamespaceContext.XMLNS_URI.equals(attr.getNamespaceURI())) {
+                        final String value = attr.getNodeValue();
+                        if ("xmlns".equals(attr.getPrefix()) &&
+                                attr.getLocalName().equals(specifiedPrefix)) {
+                            return value.length() > 0 ? value : null;
+                        }
+                        if ("xmlns".equals(attr.getLocalName()) && specifiedPrefix == null) {
+                            return value.length() > 0 ? value : null;
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        public String lookupPrefix(String namespaceURI) {
+            if (namespaceURI == null) {
+                return null;
+            }
+            for (ViewElement element = this; element != null;
+                 element = element.getParentElement()) {
+                final String prefix = element.getPrefix();
+                if (namespaceURI.equals(element.getNamespaceURI()) && prefix != null &&
+                        namespaceURI.equals(lookupNamespaceURI(prefix))) {
+                    return prefix;
+                }
+                final NamedNodeMap attributes = element.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    final Node attr = attributes.item(i);
+                    if ("xmlns".equals(attr.getPrefix()) &&
+                            namespaceURI.equals(attr.getNodeValue()) &&
+                            namespaceURI.equals(lookupNamespaceURI(attr.getLocalName()))) {
+                        return attr.getLocalName();
+                    }
+                }
+            }
+            return null;
+        }
+
+        public boolean isDefaultNamespace(String namespaceURI) {
+            for (ViewElement element = this; element != null;
+                 element = element.getParentElement()) {
+                if (element.getPrefix() == null) {
+                    return equalStrings(namespaceURI, element.getNamespaceURI());
+                }
+                final Attr xmlns = element.getAttr(NamespaceContext.XMLNS_URI, "xmlns", true);
+                if (xmlns != null) {
+                    return equalStrings(namespaceURI, xmlns.getValue());
+                }
+            }
+            return false;
+        }
+
+        private ViewElement getParentElement() {
+            final Node parent = getParentNode();
+            return parent != null && parent.getNodeType() == ELEMENT_NODE
+                ? (ViewElement) parent : null;
+        }
+    }
+
+    /** An attribute of the view. */
+    static final class ViewAttr extends ViewNode implements Attr, TypeInfo {
+
+        ViewAttr(DeferredDocumentView view, int index) {
+            super(view, index);
+        }
+
+        public short getNodeType() {
+            return ATTRIBUTE_NODE;
+        }
+
+        public String getNodeValue() {
+            return getValue();
+        }
+
+        public Node getParentNode() {
+            return null;
+        }
+
+        public Node getPreviousSibling() {
+            return null;
+        }
+
+        public Node getNextSibling() {
+            return null;
+        }
+
+        public Node getFirstChild() {
+            return getValue().length() > 0 ? new ViewAttrText(fView, fIndex) : null;
+        }
+
+        public Node getLastChild() {
+            return getFirstChild();
+        }
+
+        public String getNamespaceURI() {
+            return fView.fDocument.getNamespacesEnabled()
+                ? fView.fDocument.getNodeURI(fIndex, false) : null;
+        }
+
+        public String getPrefix() {
+            return fView.fDocument.getNamespacesEnabled() ? prefix(getNodeName()) : null;
+        }
+
+        public String getLocalName() {
+            return fView.fDocument.getNamespacesEnabled() ? localPart(getNodeName()) : null;
+        }
+
+        ViewElement getNamespaceContext() {
+            return (ViewElement) getOwnerElement();
+        }
+
+        public String getName() {
+            return getNodeName();
+        }
+
+        public boolean getSpecified() {
+            return (fView.fDocument.getNodeExtra(fIndex, false) & NodeImpl.SPECIFIED) != 0;
+        }
+
+        public String getValue() {
+            return fView.fDocument.getNodeValueString(fIndex, false);
+        }
+
+        public void setValue(String value) {
+            throw readOnly();
+        }
+
+        public Element getOwnerElement() {
+            return (Element) fView.getNode(fView.getParent(fIndex));
+        }
+
+        public TypeInfo getSchemaTypeInfo() {
+            return this;
+        }
+
+        public boolean isId() {
+            return (fView.fDocument.getNodeExtra(fIndex, false) & NodeImpl.ID) != 0;
+        }
+
+        // the type information of AttrImpl and AttrNSImpl: a schema
+        // simple type, or the name of a DTD attribute type
+
+        public String getTypeName() {
+            final Object type = fView.getAttrType(fIndex);
+            if (type instanceof XSSimpleTypeDecl) {
+                return ((XSSimpleTypeDecl) type).getName();
+            }
+            return (String) type;
+        }
+
+        public String getTypeNamespace() {
+            final Object type = fView.getAttrType(fIndex);
+            if (type instanceof XSSimpleTypeDecl) {
+                return ((XSSimpleTypeDecl) type).getNamespace();
+            }
+            return type != null ? AttrImpl.DTD_URI : null;
+        }
+
+        public boolean isDerivedFrom(String typeNamespaceArg, String typeNameArg,
+                int derivationMethod) {
+            final Object type = fView.getAttrType(fIndex);
+            if (type instanceof XSSimpleTypeDecl) {
+                return ((XSSimpleTypeDecl) type).isDOMDerivedFrom(
+                        typeNamespaceArg, typeNameArg, derivationMethod);
+            }
+            return false;
+        }
+    }
+
+    /** A character data node of the view. */
+    abstract static class ViewCharacterData extends ViewNode {
+
+        ViewCharacterData(DeferredDocumentView view, int index) {
+            super(view, index);
+        }
+
+        public String getNodeValue() {
+            return fView.fDocument.getNodeValueString(fIndex, false);
+        }
+
+        public String getData() {
+            return getNodeValue();
+        }
+
+        public void setData(String data) {
+            throw readOnly();
+        }
+
+        public int getLength() {
+            return getData().length();
+        }
+
+        public String substringData(int offset, int count) {
+            final String data = getData();
+            if (count < 0 || offset < 0 || offset > data.length()) {
+                throw indexSize();
+            }
+            return data.substring(offset, Math.min(offset + count, data.length()));
+        }
+
+        public void appendData(String arg) {
+            throw readOnly();
+        }
+
+        public void insertData(int offset, String arg) {
+            throw readOnly();
+        }
+
+        public void deleteData(int offset, int count) {
+            throw readOnly();
+        }
+
+        public void replaceData(int offset, int count, String arg) {
+            throw readOnly();
+        }
+    }
+
+    /** A text node of the view. */
+    static class ViewText extends ViewCharacterData implements Text {
+
+        ViewText(DeferredDocumentView view, int index) {
+            super(view, index);
+        }
+
+        public short getNodeType() {
+            return TEXT_NODE;
+        }
+
+        public String getNodeName() {
+            return "#text";
+        }
+
+        public Text splitText(int offset) {
+            throw readOnly();
+        }
+
+        public boolean isElementContentWhitespace() {
+            return fView.fDocument.getNodeExtra(fIndex, false) == 1;
+        }
+
+        public String getWholeText() {
+            // as for TextImpl, the text of the logically adjacent nodes
+            final StringBuffer buffer = new StringBuffer();
+            getWholeTextBackward(getPreviousSibling(), buffer, getParentNode());
+            buffer.append(getNodeValue());
+            getWholeTextForward(getNextSibling(), buffer, getParentNode());
+            return buffer.toString();
+        }
+
+        private static boolean getWholeTextForward(Node node, StringBuffer buffer, Node parent) {
+            for (; node != null; node = node.getNextSibling()) {
+                final short type = node.getNodeType();
+                if (type == ENTITY_REFERENCE_NODE) {
+                    if (getWholeTextForward(node.getFirstChild(), buffer, node)) {
+                        return true;
+                    }
+                }
+                else if (type == TEXT_NODE || type == CDATA_SECTION_NODE) {
+                    buffer.append(node.getNodeValue());
+                }
+                else {
+                    return true;
+                }
+            }
+            if (parent != null && parent.getNodeType() == ENTITY_REFERENCE_NODE) {
+                getWholeTextForward(parent.getNextSibling(), buffer, parent.getParentNode());
+                return true;
+            }
+            return false;
+        }
+
+        private static boolean getWholeTextBackward(Node node, StringBuffer buffer, Node parent) {
+            for (; node != null; node = node.getPreviousSibling()) {
+                final short type = node.getNodeType();
+                if (type == ENTITY_REFERENCE_NODE) {
+                    if (getWholeTextBackward(node.getLastChild(), buffer, node)) {
+                        return true;
+                    }
+                }
+                else if (type == TEXT_NODE || type == CDATA_SECTION_NODE) {
+                    buffer.insert(0, node.getNodeValue());
+                }
+                else {
+                    return true;
+                }
+            }
+            if (parent != null && parent.getNodeType() == ENTITY_REFERENCE_NODE) {
+                getWholeTextBackward(parent.getPreviousSibling(), buffer, parent.getParentNode());
+                return true;
+            }
+            return false;
+        }
+
+        public Text replaceWholeText(String content) {
+            throw readOnly();
+        }
+    }
+
+    /** The text of an attribute of the view. */
+    static final class ViewAttrText extends ViewText {
+
+        ViewAttrText(DeferredDocumentView view, int index) {
+            super(view, index);
+        }
+
+        public String getNodeValue() {
+            return fView.fDocument.getNodeValueString(fIndex, false);
+        }
+
+        public Node getParentNode() {
+            return new ViewAttr(fView, fIndex);
+        }
+
+        public Node getPreviousSibling() {
+            return null;
+        }
+
+        public Node getNextSibling() {
+            return null;
+        }
+
+        public boolean isElementContentWhitespace() {
+            return false;
+        }
+
+        ViewElement getNamespaceContext() {
+            return (ViewElement) ((Attr) getParentNode()).getOwnerElement();
+        }
+    }
+
+    /** A CDATA section of the view. */
+    static final class ViewCDATASection extends ViewText implements CDATASection {
+
+        ViewCDATASection(DeferredDocumentView view, int index) {
+            super(view, index);
+        }
+
+        public short getNodeType() {
+            return CDATA_SECTION_NODE;
+        }
+
+        public String getNodeName() {
+            return "#cdata-section";
+        }
+
+        public boolean isElementContentWhitespace() {
+            return false;
+        }
+    }
+
+    /** A comment of the view. */
+    static final class ViewComment extends ViewCharacterData implements Comment {
+
+        ViewComment(DeferredDocumentView view, int index) {
+            super(view, index);
+        }
+
+        public short getNodeType() {
+            return COMMENT_NODE;
+        }
+
+        public String getNodeName() {
+            return "#comment";
+        }
+    }
+
+    /** A processing instruction of the view. */
+    static final class ViewProcessingInstruction extends ViewNode
+        implements ProcessingInstruction {
+
+        ViewProcessingInstruction(DeferredDocumentView view, int index) {
+            super(view, index);
+        }
+
+        public short getNodeType() {
+            return PROCESSING_INSTRUCTION_NODE;
+        }
+
+        public String getNodeValue() {
+            return fView.fDocument.getNodeValueString(fIndex, false);
+        }
+
+        public String getBaseURI() {
+            final Node parent = getParentNode();
+            return parent != null ? parent.getBaseURI() : null;
+        }
+
+        public String getTarget() {
+            return getNodeName();
+        }
+
+        public String getData() {
+            return getNodeValue();
+        }
+
+        public void setData(String data) {
+            throw readOnly();
+        }
+    }
+
+    /** An entity reference of the view. */
+    static final class ViewEntityReference extends ViewParentNode implements EntityReference {
+
+        ViewEntityReference(DeferredDocumentView view, int index) {
+            super(view, index);
+        }
+
+        public short getNodeType() {
+            return ENTITY_REFERENCE_NODE;
+        }
+
+        public String getBaseURI() {
+            final String baseURI = fView.fDocument.getNodeValue(fIndex, false);
+            if (baseURI != null) {
+                return baseURI;
+            }
+            final Node parent = getParentNode();
+            return parent != null ? parent.getBaseURI() : null;
+        }
+    }
+
+    /** An entity of the view. */
+    static final class ViewEntity extends ViewParentNode implements Entity {
+
+        ViewEntity(DeferredDocumentView view, int index) {
+            super(view, index);
+        }
+
+        public short getNodeType() {
+            return ENTITY_NODE;
+        }
+
+        public Node getParentNode() {
+            return null;
+        }
+
+        public Node getPreviousSibling() {
+            return null;
+        }
+
+        public Node getNextSibling() {
+            return null;
+        }
+
+        public String getBaseURI() {
+            return fView.fDocument.getNodeName(getExtra2(), false);
+        }
+
+        private int getExtra() {
+            return fView.fDocument.getNodeExtra(fIndex, false);
+        }
+
+        private int getExtra2() {
+            return fView.fDocument.getNodeExtra(getExtra(), false);
+        }
+
+        public String getPublicId() {
+            return fView.fDocument.getNodeValue(fIndex, false);
+        }
+
+        public String getSystemId() {
+            return fView.fDocument.getNodeURI(fIndex, false);
+        }
+
+        public String getNotationName() {
+            return fView.fDocument.getNodeName(getExtra(), false);
+        }
+
+        public String getInputEncoding() {
+            return fView.fDocument.getNodeValue(getExtra2(), false);
+        }
+
+        public String getXmlEncoding() {
+            return fView.fDocument.getNodeURI(getExtra(), false);
+        }
+
+        public String getXmlVersion() {
+            return fView.fDocument.getNodeValue(getExtra(), false);
+        }
+    }
+
+    /** A notation of the view. */
+    static final class ViewNotation extends ViewNode implements Notation {
+
+        ViewNotation(DeferredDocumentView view, int index) {
+            super(view, index);
+        }
+
+        public short getNodeType() {
+            return NOTATION_NODE;
+        }
+
+        public Node getParentNode() {
+            return null;
+        }
+
+        public Node getPreviousSibling() {
+            return null;
+        }
+
+        public Node getNextSibling() {
+            return null;
+        }
+
+        public String getBaseURI() {
+            return fView.fDocument.getNodeName(
+                    fView.fDocument.getNodeExtra(fIndex, false), false);
+        }
+
+        public String getPublicId() {
+            return fView.fDocument.getNodeValue(fIndex, false);
+        }
+
+        public String getSystemId() {
+            return fView.fDocument.getNodeURI(fIndex, false);
+        }
+    }
+
+} // class DeferredDocumentView
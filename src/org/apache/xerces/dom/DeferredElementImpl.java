@@ -113,7 +113,8 @@ public class DeferredElementImpl
         // attributes
         setupDefaultAttributes();
         int index = ownerDocument.getNodeExtra(fNodeIndex);
-        if (index != -1) {
+        if (index != -1 &&
+            !ownerDocument.synchronizeCompactAttributes(this, index)) {
             NamedNodeMap attrs = getAttributes();
             do {
                 NodeImpl attr = (NodeImpl)ownerDocument.getNodeObject(index);
@@ -116,7 +116,8 @@ public class DeferredElementNSImpl
         // attributes
         setupDefaultAttributes();
         int attrIndex = ownerDocument.getNodeExtra(fNodeIndex);
-        if (attrIndex != -1) {
+        if (attrIndex != -1 &&
+            !ownerDocument.synchronizeCompactAttributes(this, attrIndex)) {
             NamedNodeMap attrs = getAttributes();
             boolean seenSchemaDefault = false;
             do {
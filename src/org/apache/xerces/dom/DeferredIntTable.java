@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * A table of ints of a deferred document, with one value for each node.
+ * <p>
+ * The values are held in chunks of <code>CHUNK_SIZE</code> values
+ * followed by the number of values of the chunk that are not -1, so that
+ * a chunk is dropped once all the nodes it holds a value for have been
+ * created. A missing value, and any value of a missing chunk, is -1.
+ * <p>
+ * The chunks are either arrays on the heap, which may be taken from and
+ * given back to a table pool, or direct buffers, which are outside of
+ * the Java heap and are not traced by the garbage collector.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+abstract class DeferredIntTable {
+
+    //
+    // Constants
+    //
+
+    /** Number of values of a chunk. */
+    static final int CHUNK_SIZE = DeferredDocumentImpl.CHUNK_SIZE;
+
+    /** A chunk with all its values cleared. */
+    private static final int[] INIT_ARRAY = new int[CHUNK_SIZE + 1];
+    static {
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            INIT_ARRAY[i] = -1;
+        }
+    }
+
+    //
+    // Factory methods
+    //
+
+    /**
+     * Returns a table of arrays, taken from the given pool if it is not
+     * null.
+     */
+    static DeferredIntTable newHeapTable(int chunks, DeferredTablePool pool) {
+        return new HeapTable(new int[chunks][], pool);
+    }
+
+    /** Returns a table of direct buffers. */
+    static DeferredIntTable newDirectTable(int chunks) {
+        return new DirectTable(new IntBuffer[chunks]);
+    }
+
+    //
+    // Methods
+    //
+
+    /** Returns the number of chunks the table has room for. */
+    abstract int getLength();
+
+    /** Returns true if the given chunk exists. */
+    abstract boolean hasChunk(int chunk);
+
+    /**
+     * Creates the given chunk, with all its values cleared, making room
+     * for it if needed.
+     */
+    abstract void createChunk(int chunk);
+
+    /** Returns the number of values of the given chunk that are set. */
+    abstract int getCount(int chunk);
+
+    /** Returns the value at the given chunk and index. */
+    abstract int get(int chunk, int index);
+
+    /**
+     * Sets the value, other than -1, at the given chunk and index,
+     * re-creating the chunk if it was dropped.
+     *
+     * @return Returns the old value.
+     */
+    abstract int set(int chunk, int index, int value);
+
+    /**
+     * Clears the value at the given chunk and index, dropping the chunk
+     * if it has no value left.
+     *
+     * @return Returns the old value.
+     */
+    abstract int clear(int chunk, int index);
+
+    /** Returns a copy of this table, which is not pooled. */
+    abstract DeferredIntTable copy();
+
+    /** Gives the chunks of this table back to its pool, if any. */
+    abstract void release();
+
+    //
+    // Classes
+    //
+
+    /** A table of arrays on the heap. */
+    private static final class HeapTable extends DeferredIntTable {
+
+        /** Chunks. */
+        private int[][] fChunks;
+
+        /** Pool of the chunks, or null. */
+        private final DeferredTablePool fPool;
+
+        HeapTable(int[][] chunks, DeferredTablePool pool) {
+            fChunks = chunks;
+            fPool = pool;
+        }
+
+        int getLength() {
+            return fChunks.length;
+        }
+
+        boolean hasChunk(int chunk) {
+            return chunk < fChunks.length && fChunks[chunk] != null;
+        }
+
+        void createChunk(int chunk) {
+            if (fChunks.length <= chunk) {
+                int[][] newChunks = new int[chunk * 2][];
+                System.arraycopy(fChunks, 0, newChunks, 0, fChunks.length);
+                fChunks = newChunks;
+            }
+            int[] dataChunk = fPool != null ? fPool.getIntChunk() : null;
+            if (dataChunk == null) {
+                dataChunk = new int[CHUNK_SIZE + 1];
+            }
+            System.arraycopy(INIT_ARRAY, 0, dataChunk, 0, CHUNK_SIZE + 1);
+            fChunks[chunk] = dataChunk;
+        }
+
+        int getCount(int chunk) {
+            return fChunks[chunk] != null ? fChunks[chunk][CHUNK_SIZE] : 0;
+        }
+
+        int get(int chunk, int index) {
+            return fChunks[chunk] != null ? fChunks[chunk][index] : -1;
+        }
+
+        int set(int chunk, int index, int value) {
+            int[] dataChunk = fChunks[chunk];
+            // Re-create chunk if it was deleted.
+            if (dataChunk == null) {
+                createChunk(chunk);
+                dataChunk = fChunks[chunk];
+            }
+            int ovalue = dataChunk[index];
+            if (ovalue == -1) {
+                dataChunk[CHUNK_SIZE]++;
+            }
+            dataChunk[index] = value;
+            return ovalue;
+        }
+
+        int clear(int chunk, int index) {
+            int[] dataChunk = fChunks[chunk];
+            int value = dataChunk != null ? dataChunk[index] : -1;
+            if (value != -1) {
+                dataChunk[CHUNK_SIZE]--;
+                dataChunk[index] = -1;
+                if (dataChunk[CHUNK_SIZE] == 0) {
+                    if (fPool != null) {
+                        fPool.putIntChunk(dataChunk);
+                    }
+                    fChunks[chunk] = null;
+                }
+            }
+            return value;
+        }
+
+        DeferredIntTable copy() {
+            int[][] copy = new int[fChunks.length][];
+            for (int i = 0; i < fChunks.length; i++) {
+                if (fChunks[i] != null) {
+                    copy[i] = fChunks[i].clone();
+                }
+            }
+            return new HeapTable(copy, null);
+        }
+
+        void release() {
+            if (fPool != null) {
+                for (int i = 0; i < fChunks.length; i++) {
+                    if (fChunks[i] != null) {
+                        fPool.putIntChunk(fChunks[i]);
+                        fChunks[i] = null;
+                    }
+                }
+            }
+        }
+
+    } // class HeapTable
+
+    /** A table of direct buffers. */
+    private static final class DirectTable extends DeferredIntTable {
+
+        /** Chunks. */
+        private IntBuffer[] fChunks;
+
+        DirectTable(IntBuffer[] chunks) {
+            fChunks = chunks;
+        }
+
+        int getLength() {
+            return fChunks.length;
+        }
+
+        boolean hasChunk(int chunk) {
+            return chunk < fChunks.length && fChunks[chunk] != null;
+        }
+
+        void createChunk(int chunk) {
+            if (fChunks.length <= chunk) {
+                IntBuffer[] newChunks = new IntBuffer[chunk * 2];
+                System.arraycopy(fChunks, 0, newChunks, 0, fChunks.length);
+                fChunks = newChunks;
+            }
+            IntBuffer dataChunk = allocateChunk();
+            dataChunk.put(INIT_ARRAY);
+            fChunks[chunk] = dataChunk;
+        }
+
+        int getCount(int chunk) {
+            return fChunks[chunk] != null ? fChunks[chunk].get(CHUNK_SIZE) : 0;
+        }
+
+        int get(int chunk, int index) {
+            return fChunks[chunk] != null ? fChunks[chunk].get(index) : -1;
+        }
+
+        int set(int chunk, int index, int value) {
+            IntBuffer dataChunk = fChunks[chunk];
+            // Re-create chunk if it was deleted.
+            if (dataChunk == null) {
+                createChunk(chunk);
+                dataChunk = fChunks[chunk];
+            }
+            int ovalue = dataChunk.get(index);
+            if (ovalue == -1) {
+                dataChunk.put(CHUNK_SIZE, dataChunk.get(CHUNK_SIZE) + 1);
+            }
+            dataChunk.put(index, value);
+            return ovalue;
+        }
+
+        int clear(int chunk, int index) {
+            IntBuffer dataChunk = fChunks[chunk];
+            int value = dataChunk != null ? dataChunk.get(index) : -1;
+            if (value != -1) {
+                int count = dataChunk.get(CHUNK_SIZE) - 1;
+                dataChunk.put(CHUNK_SIZE, count);
+                dataChunk.put(index, -1);
+                if (count == 0) {
+                    // the memory is freed with the buffer
+                    fChunks[chunk] = null;
+                }
+            }
+            return value;
+        }
+
+        DeferredIntTable copy() {
+            IntBuffer[] copy = new IntBuffer[fChunks.length];
+            for (int i = 0; i < fChunks.length; i++) {
+                if (fChunks[i] != null) {
+                    IntBuffer source = fChunks[i].duplicate();
+                    source.clear();
+                    copy[i] = allocateChunk();
+                    copy[i].put(source);
+                }
+            }
+            return new DirectTable(copy);
+        }
+
+        void release() {
+            // the memory is freed with the buffers
+        }
+
+        /** Allocates a chunk, in any state. */
+        private static IntBuffer allocateChunk() {
+            return ByteBuffer.allocateDirect((CHUNK_SIZE + 1) << 2)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+
+    } // class DirectTable
+
+} // class DeferredIntTable
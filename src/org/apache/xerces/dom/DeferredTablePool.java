@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+/**
+ * A pool of the chunks of the tables of deferred documents, so that the
+ * documents built one after the other by a parser reuse the chunks of
+ * the previous ones instead of allocating their own.
+ * <p>
+ * A chunk is given back to the pool when it is emptied as the nodes of
+ * its document are created, and all the chunks and identifier tables of a
+ * document are given back when the document is released. The pool keeps
+ * a bounded number of them; the others are left to the garbage collector.
+ * <p>
+ * The pool may be used by several documents at once, from different
+ * threads.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public final class DeferredTablePool {
+
+    //
+    // Constants
+    //
+
+    /** Default number of chunks of each kind kept. */
+    private static final int DEFAULT_SIZE = 128;
+
+    /** Number of identifier tables kept. */
+    private static final int ID_TABLES_SIZE = 4;
+
+    //
+    // Data
+    //
+
+    /** Chunks of the int tables. */
+    private final int[][] fIntChunks;
+
+    /** Number of chunks of the int tables. */
+    private int fIntChunkCount = 0;
+
+    /** Chunks of the Object tables. */
+    private final Object[][] fObjectChunks;
+
+    /** Number of chunks of the Object tables. */
+    private int fObjectChunkCount = 0;
+
+    /** Identifier name tables. */
+    private final String[][] fIdNames = new String[ID_TABLES_SIZE][];
+
+    /** Identifier element tables, matching the name tables. */
+    private final int[][] fIdElements = new int[ID_TABLES_SIZE][];
+
+    /** Number of identifier tables. */
+    private int fIdTableCount = 0;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a pool of the default size. */
+    public DeferredTablePool() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructs a pool keeping at most the given number of chunks of
+     * each kind.
+     */
+    public DeferredTablePool(int size) {
+        fIntChunks = new int[size][];
+        fObjectChunks = new Object[size][];
+    }
+
+    //
+    // Package methods
+    //
+
+    /** Returns a chunk of an int table, in any state, or null. */
+    synchronized int[] getIntChunk() {
+        if (fIntChunkCount == 0) {
+            return null;
+        }
+        final int[] chunk = fIntChunks[--fIntChunkCount];
+        fIntChunks[fIntChunkCount] = null;
+        return chunk;
+    }
+
+    /** Gives back a chunk of an int table. */
+    synchronized void putIntChunk(int[] chunk) {
+        if (fIntChunkCount < fIntChunks.length) {
+            fIntChunks[fIntChunkCount++] = chunk;
+        }
+    }
+
+    /** Returns a chunk of an Object table, in any state, or null. */
+    synchronized Object[] getObjectChunk() {
+        if (fObjectChunkCount == 0) {
+            return null;
+        }
+        final Object[] chunk = fObjectChunks[--fObjectChunkCount];
+        fObjectChunks[fObjectChunkCount] = null;
+        return chunk;
+    }
+
+    /** Gives back a chunk of an Object table. */
+    synchronized void putObjectChunk(Object[] chunk) {
+        if (fObjectChunkCount < fObjectChunks.length) {
+            fObjectChunks[fObjectChunkCount++] = chunk;
+        }
+    }
+
+    /**
+     * Gives the given document identifier tables, cleared, if there are
+     * any. Returns false otherwise.
+     */
+    synchronized boolean getIdTables(DeferredDocumentImpl document) {
+        if (fIdTableCount == 0) {
+            return false;
+        }
+        fIdTableCount--;
+        final String[] names = fIdNames[fIdTableCount];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = null;
+        }
+        document.fIdName = names;
+        document.fIdElement = fIdElements[fIdTableCount];
+        fIdNames[fIdTableCount] = null;
+        fIdElements[fIdTableCount] = null;
+        return true;
+    }
+
+    /** Gives back the identifier tables of a document. */
+    synchronized void putIdTables(String[] names, int[] elements) {
+        if (fIdTableCount < ID_TABLES_SIZE) {
+            fIdNames[fIdTableCount] = names;
+            fIdElements[fIdTableCount] = elements;
+            fIdTableCount++;
+        }
+    }
+
+} // class DeferredTablePool
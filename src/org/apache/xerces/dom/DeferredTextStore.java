@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.xerces.xni.XNIException;
+
+/**
+ * Holds the character data of a deferred document outside of the Java
+ * heap, so that the text of a document is not limited by the heap size
+ * and is not traced by the garbage collector until the nodes are created.
+ * <p>
+ * The characters are appended to slabs of a fixed size, which are either
+ * direct buffers or memory-mapped temporary files in a given directory.
+ * The first slab starts small and is doubled as it fills up, so that a
+ * small document does not take a whole slab.
+ * Each string added is represented by a small reference, from which the
+ * string is read back. Nothing is ever removed: the slabs are released
+ * when the store is no longer reachable.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class DeferredTextStore {
+
+    //
+    // Constants
+    //
+
+    /** Slab shift. */
+    private static final int SLAB_SHIFT = 22;       // 2^22 = 4M chars
+
+    /** Slab size, in characters. */
+    private static final int SLAB_SIZE = 1 << SLAB_SHIFT;
+
+    /** Slab mask. */
+    private static final int SLAB_MASK = SLAB_SIZE - 1;
+
+    /** Initial size of the first slab, in characters. */
+    private static final int INITIAL_SLAB_SIZE = 1 << 12;
+
+    //
+    // Data
+    //
+
+    /** Directory of the mapped files, or null for direct buffers. */
+    private final File fDirectory;
+
+    /** Slabs. */
+    private CharBuffer[] fSlabs = new CharBuffer[4];
+
+    /** Number of characters stored. */
+    private long fSize = 0;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Creates a store.
+     *
+     * @param directory the directory in which the slabs are mapped from
+     *                  temporary files, or null to use direct buffers
+     */
+    DeferredTextStore(File directory) {
+        fDirectory = directory;
+    }
+
+    //
+    // Methods
+    //
+
+    /** Appends the given string and returns its reference. */
+    Ref add(String data) {
+        final long offset = fSize;
+        final int length = data.length();
+        int start = 0;
+        while (start < length) {
+            final int index = (int) (fSize & SLAB_MASK);
+            final CharBuffer slab = getSlab((int) (fSize >> SLAB_SHIFT), index, length - start);
+            final int end = Math.min(length, start + slab.capacity() - index);
+            slab.position(index);
+            slab.put(data, start, end);
+            fSize += end - start;
+            start = end;
+        }
+        return new Ref(offset, length);
+    }
+
+    /** Returns the string with the given reference. */
+    String getString(Ref ref) {
+        final char[] chars = new char[ref.fLength];
+        long offset = ref.fOffset;
+        int start = 0;
+        while (start < chars.length) {
+            final CharBuffer slab = fSlabs[(int) (offset >> SLAB_SHIFT)].duplicate();
+            final int index = (int) (offset & SLAB_MASK);
+            final int count = Math.min(chars.length - start, SLAB_SIZE - index);
+            slab.position(index);
+            slab.get(chars, start, count);
+            offset += count;
+            start += count;
+        }
+        return new String(chars);
+    }
+
+    /** Returns the number of characters stored. */
+    long getSize() {
+        return fSize;
+    }
+
+    /**
+     * Returns the slab with the given number, creating it if needed, or
+     * growing it if it is smaller than a slab and the given number of
+     * characters do not fit after the given number of used ones.
+     */
+    private CharBuffer getSlab(int slab, int used, int count) {
+        if (slab >= fSlabs.length) {
+            CharBuffer[] newSlabs = new CharBuffer[fSlabs.length * 2];
+            System.arraycopy(fSlabs, 0, newSlabs, 0, fSlabs.length);
+            fSlabs = newSlabs;
+        }
+        final CharBuffer current = fSlabs[slab];
+        if (current == null) {
+            // only the first slab starts small; once it is full, the
+            // document is large enough to take whole slabs
+            fSlabs[slab] = createSlab(slab == 0 ? getCapacity(INITIAL_SLAB_SIZE, count) : SLAB_SIZE);
+        }
+        else if (current.capacity() < SLAB_SIZE && current.capacity() - used < count) {
+            final CharBuffer grown = createSlab(getCapacity(current.capacity() << 1, used + count));
+            final CharBuffer chars = current.duplicate();
+            chars.position(0);
+            chars.limit(used);
+            grown.put(chars);
+            fSlabs[slab] = grown;
+        }
+        return fSlabs[slab];
+    }
+
+    /**
+     * Returns the capacity of a slab of at least the given capacity, big
+     * enough for the given number of characters if a slab is.
+     */
+    private static int getCapacity(int capacity, int count) {
+        while (capacity < count && capacity < SLAB_SIZE) {
+            capacity <<= 1;
+        }
+        return Math.min(capacity, SLAB_SIZE);
+    }
+
+    /** Creates a slab of the given number of characters. */
+    private CharBuffer createSlab(int capacity) {
+        if (fDirectory == null) {
+            return ByteBuffer.allocateDirect(capacity << 1).asCharBuffer();
+        }
+        try {
+            // the mapping stays valid once the file is closed and, on
+            // most systems, once it is deleted
+            File file = File.createTempFile("xerces", ".dom", fDirectory);
+            try {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    return raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                            0, capacity << 1).asCharBuffer();
+                }
+                finally {
+                    raf.close();
+                }
+            }
+            finally {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new XNIException(e);
+        }
+    }
+
+    //
+    // Classes
+    //
+
+    /** The reference of a string in the store. */
+    static final class Ref {
+
+        /** Offset of the first character. */
+        final long fOffset;
+
+        /** Number of characters. */
+        final int fLength;
+
+        Ref(long offset, int length) {
+            fOffset = offset;
+            fLength = length;
+        }
+    }
+
+} // class DeferredTextStore
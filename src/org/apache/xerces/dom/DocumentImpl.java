@@ -1196,6 +1196,8 @@ public class DocumentImpl
      * A method to be called when a node has been inserted in the tree.
      */
     void insertedNode(NodeImpl node, NodeImpl newInternal, boolean replace) {
+        super.insertedNode(node, newInternal, replace);
+
         if (mutationEvents) {
             mutationEventsInsertedNode(node, newInternal, replace);
         }
@@ -1291,7 +1293,9 @@ public class DocumentImpl
         // mutation events
         if (mutationEvents) {
             mutationEventsRemovingNode(node, oldChild, replace);
-        } 
+        }
+
+        super.removingNode(node, oldChild, replace);
     }
     
     private void notifyIteratorsRemovingNode(NodeImpl oldChild) {
@@ -1425,6 +1429,7 @@ public class DocumentImpl
      * A method to be called when an attribute node has been set
      */
     void setAttrNode(AttrImpl attr, AttrImpl previous) {
+        super.setAttrNode(attr, previous);
         if (mutationEvents) {
             // MUTATION POST-EVENTS:
             if (previous == null) {
@@ -1446,6 +1451,7 @@ public class DocumentImpl
         // We can't use the standard dispatchAggregate, since it assumes
         // that the Attr is still attached to an owner. This code is
         // similar but dispatches to the previous owner, "element".
+        super.removedAttrNode(attr, oldOwner, name);
         if (mutationEvents) {
             mutationEventsRemovedAttrNode(attr, oldOwner, name);
         }
@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.Node;
+
+/**
+ * An index of the order of the nodes of a document tree, used to serve
+ * compareDocumentPosition without walking the tree.
+ * <p>
+ * Each node of the document tree is given a start number, before those
+ * of its descendants, and an end number, after them, so that the order
+ * of two nodes and whether one contains the other follow from comparing
+ * their numbers. The numbers are spaced out when the index is built.
+ * A subtree inserted in the tree is numbered within the space left
+ * around its position and a subtree removed from the tree loses its
+ * numbers, so that other nodes keep theirs. When there is not enough
+ * space left for an inserted subtree the index must be rebuilt.
+ * <p>
+ * The numbers are kept in an open-addressing table keyed by node
+ * identity, each entry packing the start number in its upper 32 bits and
+ * the end number in the lower ones.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class DocumentOrderIndex {
+
+    //
+    // Constants
+    //
+
+    /** Largest space between consecutive numbers when building. */
+    private static final int MAX_SPACING = 1 << 16;
+
+    /** Initial table size. */
+    private static final int INITIAL_SIZE = 64;
+
+    /** The value returned for a node without numbers. */
+    private static final long NONE = -1L;
+
+    //
+    // Data
+    //
+
+    /** The nodes, by identity hash. */
+    private NodeImpl[] fNodes;
+
+    /** The numbers of the nodes. */
+    private long[] fNumbers;
+
+    /** Number of nodes. */
+    private int fSize = 0;
+
+    /**
+     * Whether the index is being updated. Walking a subtree may expand
+     * entity references, whose children are inserted while the walk is
+     * in progress; these insertions are seen by the walk itself.
+     */
+    private boolean fUpdating = false;
+
+    //
+    // Constructors
+    //
+
+    /** Builds the index of the given document. */
+    DocumentOrderIndex(CoreDocumentImpl document) {
+        fUpdating = true;
+        try {
+            final int count = countNodes(document);
+            int size = INITIAL_SIZE;
+            while (size < count * 2) {
+                size <<= 1;
+            }
+            fNodes = new NodeImpl[size];
+            fNumbers = new long[size];
+            final int spacing = (int) Math.min(MAX_SPACING,
+                    (Integer.MAX_VALUE - 1L) / (2L * count + 1));
+            numberNodes(document, spacing, spacing);
+        }
+        finally {
+            fUpdating = false;
+        }
+    }
+
+    //
+    // Queries
+    //
+
+    /**
+     * Returns the position of the other node relative to the given node,
+     * as compareDocumentPosition does, or 0 if either is not numbered.
+     */
+    short compare(NodeImpl node, NodeImpl other) {
+        final long numbers = get(node);
+        final long otherNumbers = get(other);
+        if (numbers == NONE || otherNumbers == NONE) {
+            return 0;
+        }
+        if ((int) (otherNumbers >>> 32) > (int) (numbers >>> 32)) {
+            return (int) otherNumbers < (int) numbers
+                ? (short) (NodeImpl.DOCUMENT_POSITION_IS_CONTAINED | NodeImpl.DOCUMENT_POSITION_FOLLOWING)
+                : NodeImpl.DOCUMENT_POSITION_FOLLOWING;
+        }
+        return (int) numbers < (int) otherNumbers
+            ? (short) (NodeImpl.DOCUMENT_POSITION_CONTAINS | NodeImpl.DOCUMENT_POSITION_PRECEDING)
+            : NodeImpl.DOCUMENT_POSITION_PRECEDING;
+    }
+
+    //
+    // Updates
+    //
+
+    /**
+     * Numbers the nodes of a subtree inserted under the given parent.
+     * Returns false if there is not enough space left for them, in which
+     * case the index must be rebuilt.
+     */
+    boolean insertedNode(NodeImpl parent, NodeImpl child) {
+        if (fUpdating) {
+            return true;
+        }
+        final long parentNumbers = get(parent);
+        if (parentNumbers == NONE) {
+            // not in the document tree
+            return true;
+        }
+        fUpdating = true;
+        try {
+            final Node previous = child.getPreviousSibling();
+            final Node next = child.getNextSibling();
+            long low = (int) (parentNumbers >>> 32);
+            long high = (int) parentNumbers;
+            if (previous != null) {
+                final long numbers = get((NodeImpl) previous);
+                if (numbers == NONE) {
+                    return false;
+                }
+                low = (int) numbers;
+            }
+            if (next != null) {
+                final long numbers = get((NodeImpl) next);
+                if (numbers == NONE) {
+                    return false;
+                }
+                high = (int) (numbers >>> 32);
+            }
+            final long spacing = (high - low) / (2L * countNodes(child) + 1);
+            if (spacing < 1) {
+                return false;
+            }
+            numberNodes(child, (int) (low + spacing), (int) spacing);
+            return true;
+        }
+        finally {
+            fUpdating = false;
+        }
+    }
+
+    /** Removes the numbers of a subtree about to be removed. */
+    void removingNode(NodeImpl child) {
+        if (fUpdating || get(child) == NONE) {
+            return;
+        }
+        fUpdating = true;
+        try {
+            Node node = child;
+            while (node != null) {
+                remove((NodeImpl) node);
+                node = nextNode(node, child);
+            }
+        }
+        finally {
+            fUpdating = false;
+        }
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Returns the node after the given one in the subtree of root. */
+    private static Node nextNode(Node node, Node root) {
+        Node next = node.getFirstChild();
+        if (next != null) {
+            return next;
+        }
+        while (node != root) {
+            next = node.getNextSibling();
+            if (next != null) {
+                return next;
+            }
+            node = node.getParentNode();
+        }
+        return null;
+    }
+
+    /** Returns the number of nodes in the subtree of root. */
+    private static int countNodes(Node root) {
+        int count = 0;
+        for (Node node = root; node != null; node = nextNode(node, root)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Numbers the nodes of the subtree of root, starting from the given
+     * number and with the given spacing.
+     */
+    private void numberNodes(Node root, int first, int spacing) {
+        int number = first;
+        Node node = root;
+        put((NodeImpl) node, (long) number << 32);
+        while (true) {
+            Node next = node.getFirstChild();
+            if (next == null) {
+                // close the node and those of its ancestors it ends
+                while (true) {
+                    number += spacing;
+                    put((NodeImpl) node, get((NodeImpl) node) | number);
+                    if (node == root) {
+                        return;
+                    }
+                    next = node.getNextSibling();
+                    if (next != null) {
+                        break;
+                    }
+                    node = node.getParentNode();
+                }
+            }
+            node = next;
+            number += spacing;
+            put((NodeImpl) node, (long) number << 32);
+        }
+    }
+
+    /** Returns the slot of the given node, or the empty slot for it. */
+    private int slot(NodeImpl node) {
+        final int mask = fNodes.length - 1;
+        final int hash = System.identityHashCode(node);
+        int i = (hash ^ (hash >>> 16)) & mask;
+        while (fNodes[i] != null && fNodes[i] != node) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /** Returns the numbers of the given node, or NONE. */
+    private long get(NodeImpl node) {
+        final int i = slot(node);
+        return fNodes[i] != null ? fNumbers[i] : NONE;
+    }
+
+    /** Sets the numbers of the given node. */
+    private void put(NodeImpl node, long numbers) {
+        int i = slot(node);
+        if (fNodes[i] == null) {
+            if (++fSize * 3 > fNodes.length * 2) {
+                resize(fNodes.length << 1);
+                i = slot(node);
+            }
+            fNodes[i] = node;
+        }
+        fNumbers[i] = numbers;
+    }
+
+    /** Removes the numbers of the given node. */
+    private void remove(NodeImpl node) {
+        final int mask = fNodes.length - 1;
+        int i = slot(node);
+        if (fNodes[i] == null) {
+            return;
+        }
+        fNodes[i] = null;
+        fSize--;
+        // move back the following entries that can no longer be reached
+        for (int j = (i + 1) & mask; fNodes[j] != null; j = (j + 1) & mask) {
+            final int hash = System.identityHashCode(fNodes[j]);
+            final int k = (hash ^ (hash >>> 16)) & mask;
+            if (i <= j ? (k <= i || k > j) : (k <= i && k > j)) {
+                fNodes[i] = fNodes[j];
+                fNumbers[i] = fNumbers[j];
+                fNodes[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    /** Resizes the table. */
+    private void resize(int size) {
+        final NodeImpl[] nodes = fNodes;
+        final long[] numbers = fNumbers;
+        fNodes = new NodeImpl[size];
+        fNumbers = new long[size];
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] != null) {
+                final int j = slot(nodes[i]);
+                fNodes[j] = nodes[i];
+                fNumbers[j] = numbers[i];
+            }
+        }
+    }
+
+} // class DocumentOrderIndex
@@ -17,6 +17,9 @@
 
 package org.apache.xerces.dom;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
 import org.apache.xerces.util.URI;
 import org.w3c.dom.Attr;
 import org.w3c.dom.DOMException;
@@ -66,6 +69,16 @@ public class ElementImpl
 
     /** Serialization version. */
     static final long serialVersionUID = 3717253516652722278L;
+
+    /** Number of slots of each compact attribute. */
+    private static final int COMPACT_STRIDE = 2;
+
+    /** Slot of the name, or of the name details, of a compact attribute. */
+    private static final int COMPACT_NAME = 0;
+
+    /** Slot of the value of a compact attribute. */
+    private static final int COMPACT_VALUE = 1;
+
     //
     // Data
     //
@@ -76,6 +89,16 @@ public class ElementImpl
     /** Attributes. */
     protected AttributeMap attributes;
 
+    /**
+     * Compact attributes, which have no Attr node yet: the name and value
+     * of each attribute, sorted by name, followed by unused slots. Only
+     * used while attributes is null. An attribute that has a namespace
+     * URI or a type, or whose kind is not the one of the element, has
+     * the array of its name, local name, namespace URI and type instead of
+     * its name.
+     */
+    transient Object[] fCompactAttributes;
+
     //
     // Constructors
     //
@@ -153,6 +176,9 @@ public class ElementImpl
         if (needsSyncData()) {
             synchronizeData();
         }
+        if (fCompactAttributes != null) {
+            synchronizeAttributes();
+        }
         if (attributes == null) {
             attributes = new AttributeMap(this, null);
         }
@@ -174,6 +200,9 @@ public class ElementImpl
         if (attributes != null) {
             newnode.attributes = (AttributeMap) attributes.cloneMap(newnode);
         }
+        else if (fCompactAttributes != null) {
+            newnode.fCompactAttributes = fCompactAttributes.clone();
+        }
     	return newnode;
 
     } // cloneNode(boolean):Node
@@ -191,6 +220,9 @@ public class ElementImpl
         // XML Base (http://www.w3.org/TR/xmlbase/#granularity)
         // 1. The base URI specified by an xml:base attribute on the element, 
         // if one exists
+        if (fCompactAttributes != null && findCompactAttribute("xml:base") >= 0) {
+            synchronizeAttributes();
+        }
         if (attributes != null) {
             final Attr attrNode = getXMLBaseAttribute();
             if (attrNode != null) {
@@ -272,6 +304,11 @@ public class ElementImpl
         if (needsSyncData()) {
             synchronizeData();
         }
+        if (fCompactAttributes != null) {
+            int i = findCompactAttribute(name);
+            Object value = (i < 0) ? null : fCompactAttributes[i + COMPACT_VALUE];
+            return (value == null) ? "" : (String) value;
+        }
         if (attributes == null) {
             return "";
         }
@@ -293,6 +330,9 @@ public class ElementImpl
         if (needsSyncData()) {
             synchronizeData();
         }
+        if (fCompactAttributes != null) {
+            synchronizeAttributes();
+        }
         if (attributes == null) {
             return null;
         }
@@ -370,8 +410,14 @@ public class ElementImpl
                 // If an adjacent text node, merge it with kid
                 if ( next!=null && next.getNodeType() == Node.TEXT_NODE )
                 {
-                    ((Text)kid).appendData(next.getNodeValue());
-                    removeChild( next );
+                    if (!ownerDocument.getMutationEvents()) {
+                        // merge all the adjacent text nodes at once
+                        ((TextImpl)kid).mergeAdjacentText();
+                    }
+                    else {
+                        ((Text)kid).appendData(next.getNodeValue());
+                        removeChild( next );
+                    }
                     next = kid; // Don't advance; there might be another.
                 }
                 else
@@ -431,6 +477,17 @@ public class ElementImpl
             synchronizeData();
         }
 
+        if (fCompactAttributes != null) {
+            if (!ownerDocument.getMutationEvents()) {
+                int i = findCompactAttribute(name);
+                if (i >= 0) {
+                    removeCompactAttribute(i);
+                }
+                return;
+            }
+            synchronizeAttributes();
+        }
+
         if (attributes == null) {
             return;
         }
@@ -467,6 +524,9 @@ public class ElementImpl
         if (needsSyncData()) {
             synchronizeData();
         }
+        if (fCompactAttributes != null) {
+            synchronizeAttributes();
+        }
 
         if (attributes == null) {
             String msg = DOMMessageFormatter.formatMessage(DOMMessageFormatter.DOM_DOMAIN, "NOT_FOUND_ERR", null);
@@ -511,6 +571,26 @@ public class ElementImpl
 			synchronizeData();
 		}
 
+		if ((fCompactAttributes != null ||
+		    (attributes == null && ownerDocument.compactAttributes)) &&
+		    !ownerDocument.getMutationEvents()) {
+			// set the value without creating any node
+			int i = (fCompactAttributes != null) ? findCompactAttribute(name) : -1;
+			if (i < 0) {
+				if (ownerDocument.errorChecking &&
+				    !CoreDocumentImpl.isXMLName(name, ownerDocument.isXML11Version())) {
+					String msg = DOMMessageFormatter.formatMessage(
+							DOMMessageFormatter.DOM_DOMAIN,
+							"INVALID_CHARACTER_ERR", null);
+					throw new DOMException(DOMException.INVALID_CHARACTER_ERR, msg);
+				}
+				i = insertCompactAttribute(-1 - i, name, null, null, null);
+			}
+			fCompactAttributes[i + COMPACT_VALUE] = value;
+			changed();
+			return;
+		}
+
 		Attr newAttr = getAttributeNode(name);
 		if (newAttr == null) {
 			newAttr = getOwnerDocument().createAttribute(name);
@@ -563,6 +643,9 @@ public class ElementImpl
             }
         }
 
+        if (fCompactAttributes != null) {
+            synchronizeAttributes();
+        }
         if (attributes == null) {
             attributes = new AttributeMap(this, null);
         }
@@ -595,6 +678,12 @@ public class ElementImpl
             synchronizeData();
         }
 
+        if (fCompactAttributes != null) {
+            int i = findCompactAttribute(namespaceURI, localName);
+            Object value = (i < 0) ? null : fCompactAttributes[i + COMPACT_VALUE];
+            return (value == null) ? "" : (String) value;
+        }
+
         if (attributes == null) {
             return "";
         }
@@ -670,6 +759,16 @@ public class ElementImpl
 			prefix = qualifiedName.substring(0, index);
 			localName = qualifiedName.substring(index + 1);
 		}
+		if (fCompactAttributes != null && !ownerDocument.getMutationEvents()) {
+			int i = findCompactAttribute(namespaceURI, localName);
+			// a change of prefix is left to the node
+			if (i >= 0 && getCompactLocalName(i) != null &&
+			    qualifiedName.equals(getCompactName(i))) {
+				fCompactAttributes[i + COMPACT_VALUE] = value;
+				changed();
+				return;
+			}
+		}
 		Attr newAttr = getAttributeNodeNS(namespaceURI, localName);
 		if (newAttr == null) {
             // REVISIT: this is not efficient, we are creating twice the same
@@ -731,6 +830,17 @@ public class ElementImpl
             synchronizeData();
         }
 
+        if (fCompactAttributes != null) {
+            if (!ownerDocument.getMutationEvents()) {
+                int i = findCompactAttribute(namespaceURI, localName);
+                if (i >= 0) {
+                    removeCompactAttribute(i);
+                }
+                return;
+            }
+            synchronizeAttributes();
+        }
+
         if (attributes == null) {
             return;
         }
@@ -755,6 +865,9 @@ public class ElementImpl
         if (needsSyncData()) {
             synchronizeData();
         }
+        if (fCompactAttributes != null) {
+            synchronizeAttributes();
+        }
         if (attributes == null) {
             return null;
         }
@@ -809,6 +922,9 @@ public class ElementImpl
             }
         }
 
+        if (fCompactAttributes != null) {
+            synchronizeAttributes();
+        }
         if (attributes == null) {
             attributes = new AttributeMap(this, null);
         }
@@ -826,6 +942,9 @@ public class ElementImpl
             synchronizeData();
         }
 
+        if (fCompactAttributes != null) {
+            synchronizeAttributes();
+        }
         if (attributes == null) {
             attributes = new AttributeMap(this, null);
         }
@@ -841,6 +960,9 @@ public class ElementImpl
         if (needsSyncData()) {
             synchronizeData();
         }
+        if (fCompactAttributes != null) {
+            synchronizeAttributes();
+        }
         if (attributes == null) {
             return -1;
         }
@@ -855,6 +977,9 @@ public class ElementImpl
         if (needsSyncData()) {
             synchronizeData();
         }
+        if (fCompactAttributes != null) {
+            return true;
+        }
         return (attributes != null && attributes.getLength() != 0);
     }
 
@@ -862,6 +987,12 @@ public class ElementImpl
      * Introduced in DOM Level 2.
      */
     public boolean hasAttribute(String name) {
+        if (needsSyncData()) {
+            synchronizeData();
+        }
+        if (fCompactAttributes != null) {
+            return findCompactAttribute(name) >= 0;
+        }
         return getAttributeNode(name) != null;
     }
 
@@ -869,6 +1000,12 @@ public class ElementImpl
      * Introduced in DOM Level 2.
      */
     public boolean hasAttributeNS(String namespaceURI, String localName) {
+        if (needsSyncData()) {
+            synchronizeData();
+        }
+        if (fCompactAttributes != null) {
+            return findCompactAttribute(namespaceURI, localName) >= 0;
+        }
         return getAttributeNodeNS(namespaceURI, localName) != null;
     }
 
@@ -1104,6 +1241,47 @@ public class ElementImpl
         }
     }
 
+    /**
+     * NON-DOM: Sets an attribute without creating its node, as long as
+     * the element has no attribute nodes. The attribute is specified and
+     * is not an ID attribute. Its node is created, with the given names
+     * and type, only when the attribute nodes of the element are accessed,
+     * while getAttribute, getAttributeNS and setAttribute work on the
+     * values directly.
+     * <p>
+     * No check is done on the name, and no mutation event is dispatched.
+     *
+     * @param name         The qualified name of the attribute.
+     * @param localName    The local name of the attribute, or null for a
+     *                     DOM Level 1 attribute.
+     * @param namespaceURI The namespace URI of the attribute, if any.
+     * @param value        The value of the attribute.
+     * @param type         The type information of the attribute, if any.
+     * @return false if the attribute was not set because the element has
+     *         attribute nodes or mutation events are enabled
+     */
+    public boolean setCompactAttribute(String name, String localName,
+                                       String namespaceURI, String value,
+                                       Object type) {
+        if (needsSyncData()) {
+            synchronizeData();
+        }
+        if (attributes != null || ownerDocument.getMutationEvents()) {
+            return false;
+        }
+        int i = findCompactAttribute(name);
+        if (i < 0) {
+            i = insertCompactAttribute(-1 - i, name, localName,
+                                       namespaceURI, type);
+        }
+        else {
+            fCompactAttributes[i + COMPACT_NAME] =
+                createCompactName(name, localName, namespaceURI, type);
+        }
+        fCompactAttributes[i + COMPACT_VALUE] = value;
+        return true;
+    }
+
 
 
     //
@@ -1128,6 +1306,230 @@ public class ElementImpl
 
     } // synchronizeData()
 
+    /**
+     * Creates the nodes of the compact attributes, in the attributes map.
+     */
+    void synchronizeAttributes() {
+
+        final Object[] compact = fCompactAttributes;
+        fCompactAttributes = null;
+
+        // we don't want to generate any event for this so turn them off
+        boolean orig = ownerDocument.getMutationEvents();
+        ownerDocument.setMutationEvents(false);
+
+        attributes = new AttributeMap(this, null);
+        for (int i = 0; i < compact.length && compact[i] != null;
+             i += COMPACT_STRIDE) {
+            String name;
+            String localName;
+            String namespaceURI = null;
+            Object type = null;
+            if (compact[i + COMPACT_NAME] instanceof String) {
+                name = (String) compact[i + COMPACT_NAME];
+                localName = (this instanceof ElementNSImpl) ? name : null;
+            }
+            else {
+                Object[] details = (Object[]) compact[i + COMPACT_NAME];
+                name = (String) details[0];
+                localName = (String) details[1];
+                namespaceURI = (String) details[2];
+                type = details[3];
+            }
+            AttrImpl attr = (AttrImpl) ((localName == null)
+                ? ownerDocument.createAttribute(name)
+                : ownerDocument.createAttributeNS(namespaceURI, name, localName));
+            attr.value = compact[i + COMPACT_VALUE];
+            attr.type = type;
+            attributes.setNamedItem(attr);
+        }
+        if (isReadOnly()) {
+            attributes.setReadOnly(true, true);
+        }
+
+        // set mutation events flag back to its original value
+        ownerDocument.setMutationEvents(orig);
+
+    } // synchronizeAttributes()
+
+    /**
+     * Gives this new element copies of the compact attributes of the given
+     * element, of the same kind, without their types as importNode does.
+     * Returns false, leaving this element unchanged, if the given element
+     * has attribute nodes or this one can only have attribute nodes.
+     */
+    boolean copyCompactAttributes(ElementImpl source) {
+        if ((this instanceof ElementNSImpl) != (source instanceof ElementNSImpl)) {
+            return false;
+        }
+        if (needsSyncData()) {
+            synchronizeData();
+        }
+        if (attributes != null || ownerDocument.getMutationEvents()) {
+            return false;
+        }
+        if (source.needsSyncData()) {
+            source.synchronizeData();
+        }
+        final Object[] compact = source.fCompactAttributes;
+        if (compact == null) {
+            return false;
+        }
+        fCompactAttributes = compact.clone();
+        for (int i = 0; i < compact.length && compact[i] != null;
+             i += COMPACT_STRIDE) {
+            if (compact[i + COMPACT_NAME] instanceof Object[]) {
+                Object[] details = (Object[]) compact[i + COMPACT_NAME];
+                if (details[3] != null) {
+                    fCompactAttributes[i + COMPACT_NAME] = createCompactName(
+                        (String) details[0], (String) details[1],
+                        (String) details[2], null);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the slot of the compact attribute with the given name, or
+     * -1 minus the slot at which it would be inserted.
+     */
+    private int findCompactAttribute(String name) {
+        final Object[] compact = fCompactAttributes;
+        if (compact == null) {
+            return -1;
+        }
+        // binary search on the names, as in NamedNodeMapImpl
+        int first = 0;
+        int last = compact.length / COMPACT_STRIDE - 1;
+        while (first <= last) {
+            int i = (first + last) >>> 1;
+            int test = (compact[i * COMPACT_STRIDE] == null) ? -1
+                     : name.compareTo(getCompactName(i * COMPACT_STRIDE));
+            if (test == 0) {
+                return i * COMPACT_STRIDE;
+            }
+            else if (test < 0) {
+                last = i - 1;
+            }
+            else {
+                first = i + 1;
+            }
+        }
+        return -1 - first * COMPACT_STRIDE;
+    }
+
+    /**
+     * Returns the slot of the compact attribute with the given namespace
+     * URI and local name, or -1. DOM Level 1 attributes match on their
+     * name when the namespace URI is null, as in NamedNodeMapImpl.
+     */
+    private int findCompactAttribute(String namespaceURI, String localName) {
+        final Object[] compact = fCompactAttributes;
+        if (compact == null || localName == null) {
+            return -1;
+        }
+        for (int i = 0; i < compact.length && compact[i] != null;
+             i += COMPACT_STRIDE) {
+            String aNamespaceURI = getCompactNamespaceURI(i);
+            String aLocalName = getCompactLocalName(i);
+            if (namespaceURI == null) {
+                if (aNamespaceURI == null &&
+                    (localName.equals(aLocalName) ||
+                     (aLocalName == null &&
+                      localName.equals(getCompactName(i))))) {
+                    return i;
+                }
+            }
+            else if (namespaceURI.equals(aNamespaceURI) &&
+                     localName.equals(aLocalName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Inserts a compact attribute with no value at the given slot and
+     * returns the slot.
+     */
+    private int insertCompactAttribute(int slot, String name, String localName,
+                                       String namespaceURI, Object type) {
+        Object[] compact = fCompactAttributes;
+        if (compact == null) {
+            compact = new Object[COMPACT_STRIDE];
+        }
+        else if (compact[compact.length - COMPACT_STRIDE] == null) {
+            System.arraycopy(compact, slot, compact, slot + COMPACT_STRIDE,
+                             compact.length - slot - COMPACT_STRIDE);
+        }
+        else {
+            // grow by half as many slots again, at least by one attribute
+            int length = compact.length + Math.max(COMPACT_STRIDE,
+                    compact.length / (2 * COMPACT_STRIDE) * COMPACT_STRIDE);
+            Object[] newCompact = new Object[length];
+            System.arraycopy(compact, 0, newCompact, 0, slot);
+            System.arraycopy(compact, slot, newCompact, slot + COMPACT_STRIDE,
+                             compact.length - slot);
+            compact = newCompact;
+        }
+        compact[slot + COMPACT_NAME] =
+            createCompactName(name, localName, namespaceURI, type);
+        compact[slot + COMPACT_VALUE] = null;
+        fCompactAttributes = compact;
+        return slot;
+    }
+
+    /**
+     * Returns the name of a compact attribute, or the array of its name
+     * details when it does not have the kind of the element or when it
+     * has a namespace URI or a type.
+     */
+    private Object createCompactName(String name, String localName,
+                                     String namespaceURI, Object type) {
+        if (namespaceURI == null && type == null &&
+            ((this instanceof ElementNSImpl) ? name.equals(localName)
+                                             : localName == null)) {
+            return name;
+        }
+        return new Object[] {name, localName, namespaceURI, type};
+    }
+
+    /** Returns the name of the compact attribute at the given slot. */
+    private String getCompactName(int slot) {
+        Object name = fCompactAttributes[slot + COMPACT_NAME];
+        return (String) ((name instanceof String) ? name : ((Object[]) name)[0]);
+    }
+
+    /** Returns the local name of the compact attribute at the given slot. */
+    private String getCompactLocalName(int slot) {
+        Object name = fCompactAttributes[slot + COMPACT_NAME];
+        if (name instanceof String) {
+            return (this instanceof ElementNSImpl) ? (String) name : null;
+        }
+        return (String) ((Object[]) name)[1];
+    }
+
+    /** Returns the namespace URI of the compact attribute at the given slot. */
+    private String getCompactNamespaceURI(int slot) {
+        Object name = fCompactAttributes[slot + COMPACT_NAME];
+        return (name instanceof String) ? null : (String) ((Object[]) name)[2];
+    }
+
+    /** Removes the compact attribute at the given slot. */
+    private void removeCompactAttribute(int slot) {
+        final Object[] compact = fCompactAttributes;
+        System.arraycopy(compact, slot + COMPACT_STRIDE, compact, slot,
+                         compact.length - slot - COMPACT_STRIDE);
+        for (int i = compact.length - COMPACT_STRIDE; i < compact.length; i++) {
+            compact[i] = null;
+        }
+        if (compact[0] == null) {
+            fCompactAttributes = null;
+        }
+        changed();
+    }
+
     // support for DOM Level 3 renameNode method
     // @param el The element from which to take the attributes
     void moveSpecifiedAttributes(ElementImpl el) {
@@ -1135,6 +1537,12 @@ public class ElementImpl
             synchronizeData();
         }
         if (el.hasAttributes()) {
+            if (el.fCompactAttributes != null) {
+                el.synchronizeAttributes();
+            }
+            if (fCompactAttributes != null) {
+                synchronizeAttributes();
+            }
             if (attributes == null) {
                 attributes = new AttributeMap(this, null);
             }
@@ -1152,6 +1560,9 @@ public class ElementImpl
 
     /** Reconcile default attributes. */
     protected void reconcileDefaultAttributes() {
+        if (fCompactAttributes != null && getDefaultAttributes() != null) {
+            synchronizeAttributes();
+        }
         if (attributes != null) {
             NamedNodeMapImpl defaults = getDefaultAttributes();
             attributes.reconcileDefaults(defaults);
@@ -1372,4 +1783,20 @@ public class ElementImpl
         return prev;
     } // getPreviousLogicalSibling(Node):Node
 
+    //
+    // Serialization methods
+    //
+
+    /** Serialize object. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+
+        // the compact attributes are written as nodes
+        if (fCompactAttributes != null) {
+            synchronizeAttributes();
+        }
+        // write object
+        out.defaultWriteObject();
+
+    } // writeObject(ObjectOutputStream)
+
 } // class ElementImpl
@@ -0,0 +1,436 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.w3c.dom.Node;
+
+/**
+ * An index of the elements of a document by tag name and by namespace
+ * name and local name, used to serve getElementsByTagName and
+ * getElementsByTagNameNS without walking the tree.
+ * <p>
+ * Each list holds the elements of the document tree with a given name in
+ * document order. Elements of subtrees that are not in the document tree
+ * are not indexed. The index is built when it is first queried, and is
+ * then kept up to date as nodes are inserted, removed and renamed. The
+ * elements of a subtree are contiguous in document order, so the elements
+ * below a node are a range of each list, found by binary search.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class ElementIndex {
+
+    private static final ArrayList<ElementImpl> EMPTY_LIST = new ArrayList<ElementImpl>(0);
+
+    private final CoreDocumentImpl fDocument;
+
+    /** All the elements. */
+    private final ArrayList<ElementImpl> fElements = new ArrayList<ElementImpl>();
+
+    /** The elements, by tag name. */
+    private final HashMap<String, ArrayList<ElementImpl>> fByTagName =
+        new HashMap<String, ArrayList<ElementImpl>>();
+
+    /** The elements with a local name, by local name and namespace name. */
+    private final HashMap<String, HashMap<String, ArrayList<ElementImpl>>> fByLocalName =
+        new HashMap<String, HashMap<String, ArrayList<ElementImpl>>>();
+
+    /** Number of changes made to the index. */
+    private int fChanges = 0;
+
+    /**
+     * Whether the index is being updated. Walking a subtree may expand
+     * entity references, whose children are inserted while the walk is
+     * in progress; these insertions are seen by the walk itself.
+     */
+    private boolean fUpdating = false;
+
+    /** Builds the index of the given document. */
+    ElementIndex(CoreDocumentImpl document) {
+        fDocument = document;
+        fUpdating = true;
+        try {
+            final ArrayList<ElementImpl> elements = new ArrayList<ElementImpl>();
+            collectElements(document, elements, false);
+            fElements.addAll(elements);
+            for (int i = 0; i < elements.size(); i++) {
+                final ElementImpl element = elements.get(i);
+                getTagNameList(element, true).add(element);
+                final ArrayList<ElementImpl> list = getLocalNameList(element, true);
+                if (list != null) {
+                    list.add(element);
+                }
+            }
+        }
+        finally {
+            fUpdating = false;
+        }
+    }
+
+    //
+    // Queries
+    //
+
+    /** Returns the number of changes made to the index. */
+    int getChanges() {
+        return fChanges;
+    }
+
+    /**
+     * Returns the elements with the given tag name, or all the elements
+     * for "*". The list must not be modified.
+     */
+    ArrayList<ElementImpl> getElements(String tagName) {
+        if (tagName.equals("*")) {
+            return fElements;
+        }
+        final ArrayList<ElementImpl> list = fByTagName.get(tagName);
+        return list != null ? list : EMPTY_LIST;
+    }
+
+    /**
+     * Returns the elements with the given namespace name and local name,
+     * or all the elements if both are "*". Returns null if only one of them
+     * is "*", as these are not indexed. The list must not be modified.
+     */
+    ArrayList<ElementImpl> getElementsNS(String namespaceURI, String localName) {
+        final boolean anyNamespace = namespaceURI != null && namespaceURI.equals("*");
+        final boolean anyName = localName.equals("*");
+        if (anyNamespace || anyName) {
+            return anyNamespace && anyName ? fElements : null;
+        }
+        final HashMap<String, ArrayList<ElementImpl>> byNamespace = fByLocalName.get(localName);
+        final ArrayList<ElementImpl> list = byNamespace != null ? byNamespace.get(namespaceURI) : null;
+        return list != null ? list : EMPTY_LIST;
+    }
+
+    /** Returns whether the given node is in the document tree. */
+    boolean isIndexed(NodeImpl node) {
+        NodeImpl top = node;
+        for (NodeImpl parent = node.parentNode(); parent != null; parent = parent.parentNode()) {
+            top = parent;
+        }
+        return top == fDocument;
+    }
+
+    /**
+     * Returns the index of the first element of the list that is the given
+     * node or follows it in document order. The node must be in the
+     * document tree.
+     */
+    static int lowerBound(ArrayList<ElementImpl> list, NodeImpl node) {
+        int low = 0;
+        int high = list.size();
+        // fast path for the end of the list, where most insertions happen
+        if (high == 0 || compare(list.get(high - 1), node) < 0) {
+            return high;
+        }
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compare(list.get(mid), node) < 0) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first element of the list at or after the
+     * given index that is not in the subtree of the given node; the
+     * elements from that index on must be in the subtree or follow it.
+     */
+    static int subtreeEnd(ArrayList<ElementImpl> list, int from, NodeImpl root) {
+        int low = from;
+        int high = list.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (isInSubtree(list.get(mid), root)) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    //
+    // Updates
+    //
+
+    /** Indexes the elements of a subtree inserted under the given parent. */
+    void insertedNode(NodeImpl parent, NodeImpl child) {
+        if (fUpdating || !isIndexed(parent)) {
+            return;
+        }
+        fUpdating = true;
+        try {
+            final ArrayList<ElementImpl> elements = new ArrayList<ElementImpl>();
+            collectElements(child, elements, true);
+            if (elements.isEmpty()) {
+                return;
+            }
+            // group the elements by list, keeping them in document order
+            final IdentityHashMap<ArrayList<ElementImpl>, ArrayList<ElementImpl>> batches =
+                new IdentityHashMap<ArrayList<ElementImpl>, ArrayList<ElementImpl>>();
+            batches.put(fElements, elements);
+            for (int i = 0; i < elements.size(); i++) {
+                final ElementImpl element = elements.get(i);
+                addToBatch(batches, getTagNameList(element, true), element);
+                addToBatch(batches, getLocalNameList(element, true), element);
+            }
+            // the elements of the subtree are contiguous in each list
+            final Iterator<Map.Entry<ArrayList<ElementImpl>, ArrayList<ElementImpl>>> entries =
+                batches.entrySet().iterator();
+            while (entries.hasNext()) {
+                final Map.Entry<ArrayList<ElementImpl>, ArrayList<ElementImpl>> entry = entries.next();
+                final ArrayList<ElementImpl> list = entry.getKey();
+                final ArrayList<ElementImpl> batch = entry.getValue();
+                list.addAll(lowerBound(list, batch.get(0)), batch);
+            }
+            fChanges++;
+        }
+        finally {
+            fUpdating = false;
+        }
+    }
+
+    /** Removes the elements of a subtree about to be removed from the index. */
+    void removingNode(NodeImpl child) {
+        if (fUpdating || !isIndexed(child)) {
+            return;
+        }
+        fUpdating = true;
+        try {
+            final ArrayList<ElementImpl> elements = new ArrayList<ElementImpl>();
+            collectElements(child, elements, true);
+            if (elements.isEmpty()) {
+                return;
+            }
+            final IdentityHashMap<ArrayList<ElementImpl>, Object> lists =
+                new IdentityHashMap<ArrayList<ElementImpl>, Object>();
+            lists.put(fElements, fElements);
+            for (int i = 0; i < elements.size(); i++) {
+                final ElementImpl element = elements.get(i);
+                lists.put(getTagNameList(element, false), element);
+                final ArrayList<ElementImpl> list = getLocalNameList(element, false);
+                if (list != null) {
+                    lists.put(list, element);
+                }
+            }
+            final Iterator<ArrayList<ElementImpl>> iter = lists.keySet().iterator();
+            while (iter.hasNext()) {
+                final ArrayList<ElementImpl> list = iter.next();
+                if (list != null) {
+                    final int start = lowerBound(list, child);
+                    list.subList(start, subtreeEnd(list, start, child)).clear();
+                }
+            }
+            fChanges++;
+        }
+        finally {
+            fUpdating = false;
+        }
+    }
+
+    /** Removes an element about to be renamed from the name lists. */
+    void renamingElement(ElementImpl element) {
+        if (fUpdating || !isIndexed(element)) {
+            return;
+        }
+        removeFromList(getTagNameList(element, false), element);
+        removeFromList(getLocalNameList(element, false), element);
+        fChanges++;
+    }
+
+    /** Adds an element that was renamed to the name lists. */
+    void renamedElement(ElementImpl element) {
+        if (fUpdating || !isIndexed(element)) {
+            return;
+        }
+        addToList(getTagNameList(element, true), element);
+        addToList(getLocalNameList(element, true), element);
+        fChanges++;
+    }
+
+    //
+    // Private methods
+    //
+
+    private ArrayList<ElementImpl> getTagNameList(ElementImpl element, boolean create) {
+        final String tagName = element.getTagName();
+        ArrayList<ElementImpl> list = fByTagName.get(tagName);
+        if (list == null && create) {
+            list = new ArrayList<ElementImpl>();
+            fByTagName.put(tagName, list);
+        }
+        return list;
+    }
+
+    private ArrayList<ElementImpl> getLocalNameList(ElementImpl element, boolean create) {
+        final String localName = element.getLocalName();
+        if (localName == null) {
+            return null;
+        }
+        HashMap<String, ArrayList<ElementImpl>> byNamespace = fByLocalName.get(localName);
+        if (byNamespace == null) {
+            if (!create) {
+                return null;
+            }
+            byNamespace = new HashMap<String, ArrayList<ElementImpl>>();
+            fByLocalName.put(localName, byNamespace);
+        }
+        final String namespaceURI = element.getNamespaceURI();
+        ArrayList<ElementImpl> list = byNamespace.get(namespaceURI);
+        if (list == null && create) {
+            list = new ArrayList<ElementImpl>();
+            byNamespace.put(namespaceURI, list);
+        }
+        return list;
+    }
+
+    private static void addToBatch(IdentityHashMap<ArrayList<ElementImpl>, ArrayList<ElementImpl>> batches,
+            ArrayList<ElementImpl> list, ElementImpl element) {
+        if (list != null) {
+            ArrayList<ElementImpl> batch = batches.get(list);
+            if (batch == null) {
+                batch = new ArrayList<ElementImpl>();
+                batches.put(list, batch);
+            }
+            batch.add(element);
+        }
+    }
+
+    private static void addToList(ArrayList<ElementImpl> list, ElementImpl element) {
+        if (list != null) {
+            list.add(lowerBound(list, element), element);
+        }
+    }
+
+    private static void removeFromList(ArrayList<ElementImpl> list, ElementImpl element) {
+        if (list != null) {
+            final int index = lowerBound(list, element);
+            if (index < list.size() && list.get(index) == element) {
+                list.remove(index);
+            }
+        }
+    }
+
+    /**
+     * Adds the elements of the subtree of the given node to the list, in
+     * document order, including the node itself if asked to.
+     */
+    private static void collectElements(Node root, ArrayList<ElementImpl> elements, boolean includeRoot) {
+        if (includeRoot && root.getNodeType() == Node.ELEMENT_NODE) {
+            elements.add((ElementImpl) root);
+        }
+        Node current = root.getFirstChild();
+        while (current != null) {
+            if (current.getNodeType() == Node.ELEMENT_NODE) {
+                elements.add((ElementImpl) current);
+            }
+            Node next = current.getFirstChild();
+            if (next == null) {
+                while ((next = current.getNextSibling()) == null) {
+                    current = current.getParentNode();
+                    if (current == root) {
+                        break;
+                    }
+                }
+            }
+            current = next;
+        }
+    }
+
+    private static boolean isInSubtree(NodeImpl node, NodeImpl root) {
+        for (NodeImpl n = node; n != null; n = n.parentNode()) {
+            if (n == root) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int depth(NodeImpl node) {
+        int depth = 0;
+        for (NodeImpl n = node.parentNode(); n != null; n = n.parentNode()) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Compares the document order of two nodes of the same tree. A node
+     * comes before its descendants.
+     */
+    static int compare(NodeImpl a, NodeImpl b) {
+        if (a == b) {
+            return 0;
+        }
+        int depthA = depth(a);
+        int depthB = depth(b);
+        NodeImpl x = a;
+        NodeImpl y = b;
+        for (; depthA > depthB; depthA--) {
+            x = x.parentNode();
+        }
+        for (; depthB > depthA; depthB--) {
+            y = y.parentNode();
+        }
+        if (x == y) {
+            // one node is an ancestor of the other
+            return x == a ? -1 : 1;
+        }
+        for (NodeImpl px = x.parentNode(), py = y.parentNode(); px != py;
+                px = px.parentNode(), py = py.parentNode()) {
+            x = px;
+            y = py;
+        }
+        // x and y are siblings; look for y on both sides of x at once,
+        // so that the cost is that of the distance between them
+        ChildNode next = (ChildNode) x;
+        ChildNode prev = (ChildNode) x;
+        while (next != null || prev != null) {
+            if (next != null) {
+                next = next.nextSibling;
+                if (next == y) {
+                    return -1;
+                }
+            }
+            if (prev != null) {
+                prev = prev.previousSibling();
+                if (prev == y) {
+                    return 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+} // class ElementIndex
@@ -282,12 +282,21 @@ public class ElementNSImpl
 
         }
         // update node name with new qualifiedName
+        final ElementIndex index = ownerDocument.fElementIndex;
+        if (index != null) {
+            index.renamingElement(this);
+        }
         if (prefix !=null && prefix.length() != 0) {
             name = prefix + ":" + localName;
         }
         else {
             name = localName;
         }
+        if (index != null) {
+            index.renamedElement(this);
+        }
+        // the lists of elements by name are out of date
+        changed();
     }
 
     /**
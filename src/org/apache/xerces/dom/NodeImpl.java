@@ -982,6 +982,17 @@ public abstract class NodeImpl
             throw new DOMException(DOMException.NOT_SUPPORTED_ERR, msg);
         }
 
+        // nodes of the same document tree may be compared by their numbers
+        CoreDocumentImpl ownerDocument = ownerDocument();
+        if (ownerDocument != null && ownerDocument.documentOrderIndexing &&
+            other != null &&
+            ((NodeImpl) other).ownerDocument() == ownerDocument) {
+            short position = ownerDocument.compareDocumentOrder(this, (NodeImpl) other);
+            if (position != 0) {
+                return position;
+            }
+        }
+
         Document thisOwnerDoc, otherOwnerDoc;
         // get the respective Document owners.  
         if (this.getNodeType() == Node.DOCUMENT_NODE) 
@@ -1877,9 +1888,8 @@ public abstract class NodeImpl
      * Denotes that this node has changed.
      */
     protected void changed() {
-        // we do not actually store this information on every node, we only
-        // have a global indicator on the Document. Doing otherwise cost us too
-        // much for little gain.
+        // leaf nodes do not store this information, only the Document and
+        // the ParentNodes do
         ownerDocument().changed();
     }
 
@@ -1887,9 +1897,8 @@ public abstract class NodeImpl
      * Returns the number of changes to this node.
      */
     protected int changes() {
-        // we do not actually store this information on every node, we only
-        // have a global indicator on the Document. Doing otherwise cost us too
-        // much for little gain.
+        // leaf nodes do not store this information, only the Document and
+        // the ParentNodes do
         return ownerDocument().changes();
     }
 
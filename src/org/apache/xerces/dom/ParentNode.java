@@ -84,6 +84,13 @@ public abstract class ParentNode
     /** NodeList cache */
     protected transient NodeListCache fNodeListCache = null;
 
+    /**
+     * Modification stamp of the subtree of this node: the stamp of the
+     * document at the time of the last change to the subtree seen since
+     * the stamp was last read.
+     */
+    transient int fSubtreeStamp = 0;
+
     //
     // Constructors
     //
@@ -140,10 +147,17 @@ public abstract class ParentNode
 
         // Then, if deep, clone the kids too.
     	if (deep) {
+            // without user data handlers the copies are only known here
+            final boolean copying = !ownerDocument.hasUserData();
             for (ChildNode child = firstChild;
                  child != null;
                  child = child.nextSibling) {
-                newnode.appendChild(child.cloneNode(true));
+                if (copying) {
+                    newnode.appendCopiedChild((ChildNode) child.cloneNode(true));
+                }
+                else {
+                    newnode.appendChild(child.cloneNode(true));
+                }
             }
         }
 
@@ -178,6 +192,9 @@ public abstract class ParentNode
         }
         super.setOwnerDocument(doc);
         ownerDocument = doc;
+        // the stamp was given by the previous document; the current one of
+        // the new document marks the subtree as changed
+        fSubtreeStamp = doc.getCurrentSubtreeStamp();
         for (ChildNode child = firstChild;
         child != null; child = child.nextSibling) {
             child.setOwnerDocument(doc);
@@ -249,6 +266,62 @@ public abstract class ParentNode
         }
     }
 
+    /**
+     * NON-DOM INTERNAL: Appends a child to this node while it is being
+     * copied, by cloneNode or importNode. Neither node has a parent and
+     * both belong to the same document, so that only the hierarchy check
+     * of insertBefore is made. The document is notified as it is by
+     * insertBefore.
+     *
+     * @throws DOMException(HIERARCHY_REQUEST_ERR) if the child is of a
+     * type that shouldn't be a child of this node.
+     */
+    final void appendCopiedChild(ChildNode newInternal) {
+
+        if (ownerDocument.errorChecking &&
+            !ownerDocument.isKidOK(this, newInternal)) {
+            throw new DOMException(DOMException.HIERARCHY_REQUEST_ERR, 
+                        DOMMessageFormatter.formatMessage(DOMMessageFormatter.DOM_DOMAIN, "HIERARCHY_REQUEST_ERR", null));
+        }
+
+        // notify document
+        ownerDocument.insertingNode(this, false);
+
+        // Attach up
+        newInternal.ownerNode = this;
+        newInternal.isOwned(true);
+
+        // Attach after the last child
+        if (firstChild == null) {
+            firstChild = newInternal;
+            newInternal.isFirstChild(true);
+            newInternal.previousSibling = newInternal;
+        }
+        else {
+            ChildNode lastChild = firstChild.previousSibling;
+            lastChild.nextSibling = newInternal;
+            newInternal.previousSibling = lastChild;
+            firstChild.previousSibling = newInternal;
+        }
+
+        changed();
+
+        // update cached length if we have any
+        if (fNodeListCache != null) {
+            if (fNodeListCache.fLength != -1) {
+                fNodeListCache.fLength++;
+            }
+            if (fNodeListCache.fChildIndex != -1) {
+                fNodeListCache.fChildIndex = -1;
+            }
+        }
+
+        // notify document
+        ownerDocument.insertedNode(this, newInternal, false);
+
+        checkNormalizationAfterInsert(newInternal);
+    }
+
     /**
      * Move one or more node(s) to our list of children. Note that this
      * implicitly removes them from their previous parent.
@@ -914,6 +987,25 @@ public abstract class ParentNode
     // Protected methods
     //
 
+    /**
+     * Denotes that this node has changed. The subtrees of this node and of
+     * its ancestors are marked as changed.
+     */
+    protected void changed() {
+        final CoreDocumentImpl ownerDocument = ownerDocument();
+        ownerDocument.changed();
+        ownerDocument.subtreeChanged(this);
+    }
+
+    /**
+     * Returns a stamp of the changes to the subtree of this node, which
+     * differs from the previous one returned if the subtree has changed
+     * in between.
+     */
+    protected int changes() {
+        return ownerDocument().getSubtreeStamp(this);
+    }
+
     /**
      * Override this method in subclass to hook in efficient
      * internal data structure.
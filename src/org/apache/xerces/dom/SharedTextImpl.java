@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * A text node whose data is a slice of the shared text store of its
+ * document, rather than a string of its own.
+ * <p>
+ * Reading the data creates a new string each time, which is not kept.
+ * Any other use of the data, such as modifying it, gives the node its own
+ * string for good, like the other text nodes, as does moving the node to
+ * another document.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class SharedTextImpl
+    extends TextImpl {
+
+    //
+    // Constants
+    //
+
+    /** Serialization version. */
+    static final long serialVersionUID = -3474120486284335376L;
+
+    //
+    // Data
+    //
+
+    /** Reference of the data in the store of the owner document. */
+    protected transient long fRef;
+
+    //
+    // Constructors
+    //
+
+    /** Creates a node with the data of the given reference. */
+    SharedTextImpl(CoreDocumentImpl ownerDoc, long ref) {
+        super(ownerDoc, null);
+        fRef = ref;
+        needsSyncData(true);
+    }
+
+    //
+    // Node methods
+    //
+
+    /** Returns the node value, without keeping it. */
+    public String getNodeValue() {
+        if (needsSyncData()) {
+            return ownerDocument().fSharedTextStore.getString(fRef);
+        }
+        return data;
+    }
+
+    //
+    // CharacterData methods
+    //
+
+    /** Returns the data, without keeping it. */
+    public String getData() {
+        if (needsSyncData()) {
+            return ownerDocument().fSharedTextStore.getString(fRef);
+        }
+        return data;
+    }
+
+    /** Returns the number of characters of the data. */
+    public int getLength() {
+        if (needsSyncData()) {
+            return SharedTextStore.getLength(fRef);
+        }
+        return data.length();
+    }
+
+    //
+    // Public methods
+    //
+
+    /**
+     * NON-DOM (used by DOMParser): Appends the given characters to the
+     * data, in place in the store, if the data is the last slice stored.
+     * Returns false, and leaves the data unchanged, if it is not possible.
+     */
+    public boolean appendData(char[] ch, int offset, int length) {
+        if (!needsSyncData()) {
+            return false;
+        }
+        long ref = ownerDocument().fSharedTextStore.append(fRef, ch, offset, length);
+        if (ref == SharedTextStore.NONE) {
+            return false;
+        }
+        fRef = ref;
+        return true;
+    }
+
+    /**
+     * NON-DOM (used by DOMParser): Resets the data of the node, keeping it
+     * in the store if possible.
+     */
+    public void replaceData(String value) {
+        long ref = ownerDocument().fSharedTextStore.add(value);
+        if (ref == SharedTextStore.NONE) {
+            needsSyncData(false);
+            data = value;
+        }
+        else {
+            fRef = ref;
+            data = null;
+            needsSyncData(true);
+        }
+    }
+
+    /**
+     * NON-DOM (used by DOMParser): Sets data to empty string.
+     * Returns the value the data was set to.
+     */
+    public String removeData() {
+        if (needsSyncData()) {
+            synchronizeData();
+        }
+        return super.removeData();
+    }
+
+    //
+    // Package methods
+    //
+
+    /** Keeps the merged data in the store if possible. */
+    void mergeAdjacentText() {
+        super.mergeAdjacentText();
+        replaceData(data);
+    }
+
+    //
+    // Protected methods
+    //
+
+    /** Gives the node its own string. */
+    protected void synchronizeData() {
+        needsSyncData(false);
+        data = ownerDocument().fSharedTextStore.getString(fRef);
+    }
+
+    //
+    // Serialization methods
+    //
+
+    /** Serialize object. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+
+        // the data is written as a string
+        if (needsSyncData()) {
+            synchronizeData();
+        }
+        // write object
+        out.defaultWriteObject();
+
+    } // writeObject(ObjectOutputStream)
+
+} // class SharedTextImpl
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import java.nio.charset.Charset;
+
+/**
+ * Holds the character data of the text nodes of a document in a few
+ * large byte arrays, so that a text node only needs to keep a reference
+ * to its slice instead of a string of its own.
+ * <p>
+ * A slice whose characters are all below 256 is stored with one byte per
+ * character, any other with two. Slices never span chunks; longer
+ * strings than a fraction of a chunk are not stored at all. Nothing is
+ * ever removed: the space of a slice that is no longer referenced is only
+ * released with the store itself.
+ * <p>
+ * A reference packs the position of the slice in its upper 32 bits and
+ * its length in the lower ones, the sign bit of the length being set for
+ * two bytes per character.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class SharedTextStore {
+
+    //
+    // Constants
+    //
+
+    /** Chunk shift. */
+    private static final int CHUNK_SHIFT = 16;      // 2^16 = 64k bytes
+
+    /** Chunk size, in bytes. */
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    /** Chunk mask. */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** Largest slice stored, in bytes. */
+    private static final int MAX_SLICE = CHUNK_SIZE >> 4;
+
+    /** Largest number of chunks, for positions to fit in 31 bits. */
+    private static final int MAX_CHUNKS = 1 << (31 - CHUNK_SHIFT);
+
+    /** Flag of the slices stored with two bytes per character. */
+    private static final int WIDE = 0x80000000;
+
+    /** The reference returned when a string is not stored. */
+    static final long NONE = -1L;
+
+    /** Charset of the slices with one byte per character. */
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    //
+    // Data
+    //
+
+    /** Chunks. */
+    private byte[][] fChunks = new byte[8][];
+
+    /** Number of chunks. */
+    private int fChunkCount = 0;
+
+    /** Position of the next slice. */
+    private int fPosition = 0;
+
+    //
+    // Methods
+    //
+
+    /**
+     * Stores the given characters and returns their reference, or NONE
+     * if they are not stored.
+     */
+    long add(char[] ch, int offset, int length) {
+        if (length == 0) {
+            return 0L;
+        }
+        final boolean wide = isWide(ch, offset, length);
+        final int position = allocate(wide ? length << 1 : length);
+        if (position == -1) {
+            return NONE;
+        }
+        put(position, ch, offset, length, wide);
+        return toRef(position, length, wide);
+    }
+
+    /**
+     * Stores the given string and returns its reference, or NONE if it is
+     * not stored.
+     */
+    long add(String data) {
+        final int length = data.length();
+        if (length > MAX_SLICE) {
+            return NONE;
+        }
+        final char[] ch = new char[length];
+        data.getChars(0, length, ch, 0);
+        return add(ch, 0, length);
+    }
+
+    /**
+     * Appends the given characters to the slice with the given reference
+     * and returns the reference of the result, or NONE if the slice
+     * cannot grow in place because it is not the last one stored or
+     * because of the size or width of the characters.
+     */
+    long append(long ref, char[] ch, int offset, int length) {
+        final int position = (int) (ref >>> 32);
+        final int oldLength = getLength(ref);
+        final boolean wide = isWide(ref);
+        final int start = position + (wide ? oldLength << 1 : oldLength);
+        final int size = wide ? length << 1 : length;
+        if (start != fPosition || (start & CHUNK_MASK) + size > CHUNK_SIZE ||
+            (start & CHUNK_MASK) - (position & CHUNK_MASK) + size > MAX_SLICE ||
+            (start & CHUNK_MASK) == 0 || (!wide && isWide(ch, offset, length))) {
+            return NONE;
+        }
+        put(start, ch, offset, length, wide);
+        fPosition = start + size;
+        return toRef(position, oldLength + length, wide);
+    }
+
+    /** Returns the string with the given reference. */
+    String getString(long ref) {
+        final int position = (int) (ref >>> 32);
+        final int length = getLength(ref);
+        if (length == 0) {
+            return "";
+        }
+        final byte[] chunk = fChunks[position >>> CHUNK_SHIFT];
+        int index = position & CHUNK_MASK;
+        if (!isWide(ref)) {
+            return new String(chunk, index, length, LATIN1);
+        }
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++, index += 2) {
+            chars[i] = (char) ((chunk[index] & 0xFF) << 8 | (chunk[index + 1] & 0xFF));
+        }
+        return new String(chars);
+    }
+
+    /** Returns the length of the string with the given reference. */
+    static int getLength(long ref) {
+        return (int) ref & ~WIDE;
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Returns true if the slice with the given reference is wide. */
+    private static boolean isWide(long ref) {
+        return ((int) ref & WIDE) != 0;
+    }
+
+    /** Returns true if any of the given characters is above 255. */
+    private static boolean isWide(char[] ch, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (ch[i] > 0xFF) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the reference of the given slice. */
+    private static long toRef(int position, int length, boolean wide) {
+        return (long) position << 32 | (wide ? length | WIDE : length) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Returns the position of a new slice of the given size, adding a
+     * chunk if needed, or -1 if the slice is too large or the store full.
+     */
+    private int allocate(int size) {
+        if (size > MAX_SLICE) {
+            return -1;
+        }
+        int position = fPosition;
+        if (fChunkCount == 0 || (position & CHUNK_MASK) + size > CHUNK_SIZE ||
+            (position & CHUNK_MASK) == 0) {
+            if (fChunkCount == MAX_CHUNKS) {
+                return -1;
+            }
+            if (fChunkCount == fChunks.length) {
+                byte[][] newChunks = new byte[fChunkCount << 1][];
+                System.arraycopy(fChunks, 0, newChunks, 0, fChunkCount);
+                fChunks = newChunks;
+            }
+            fChunks[fChunkCount] = new byte[CHUNK_SIZE];
+            position = fChunkCount++ << CHUNK_SHIFT;
+        }
+        fPosition = position + size;
+        return position;
+    }
+
+    /** Copies the given characters to the given position. */
+    private void put(int position, char[] ch, int offset, int length, boolean wide) {
+        final byte[] chunk = fChunks[position >>> CHUNK_SHIFT];
+        int index = position & CHUNK_MASK;
+        final int end = offset + length;
+        if (wide) {
+            for (int i = offset; i < end; i++) {
+                final char c = ch[i];
+                chunk[index++] = (byte) (c >> 8);
+                chunk[index++] = (byte) c;
+            }
+        }
+        else {
+            for (int i = offset; i < end; i++) {
+                chunk[index++] = (byte) ch[i];
+            }
+        }
+    }
+
+} // class SharedTextStore
@@ -655,4 +655,24 @@ public class TextImpl
         return olddata;
     }
 
+    /**
+     * Appends the data of the text nodes that follow this one to it and
+     * removes them, as normalize does one node after the other, but
+     * copying the characters only once. The mutation events would differ,
+     * so this is only used when they are disabled.
+     */
+    void mergeAdjacentText() {
+        StringBuffer buffer = new StringBuffer(getNodeValue());
+        Node next = getNextSibling();
+        do {
+            buffer.append(next.getNodeValue());
+            next = next.getNextSibling();
+        } while (next != null && next.getNodeType() == Node.TEXT_NODE);
+        setNodeValue(buffer.toString());
+        Node parent = getParentNode();
+        for (Node kid = getNextSibling(); kid != next; kid = getNextSibling()) {
+            parent.removeChild(kid);
+        }
+    }
+
 } // class TextImpl
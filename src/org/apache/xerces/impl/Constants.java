@@ -244,6 +244,21 @@ public final class Constants {
     /** Defer node expansion feature ("dom/defer-node-expansion"). */
     public static final String DEFER_NODE_EXPANSION_FEATURE = "dom/defer-node-expansion";
     
+    /** Off-heap deferred storage feature ("dom/off-heap-deferred-storage"). */
+    public static final String OFF_HEAP_DEFERRED_STORAGE_FEATURE = "dom/off-heap-deferred-storage";
+    
+    /** Parallel DOM construction feature ("dom/parallel-construction"). */
+    public static final String PARALLEL_DOM_CONSTRUCTION_FEATURE = "dom/parallel-construction";
+    
+    /** Compact attributes feature ("dom/compact-attributes"). */
+    public static final String COMPACT_ATTRIBUTES_FEATURE = "dom/compact-attributes";
+    
+    /** Shared text feature ("dom/shared-text"). */
+    public static final String SHARED_TEXT_FEATURE = "dom/shared-text";
+    
+    /** Deferred table pooling feature ("dom/deferred-table-pooling"). */
+    public static final String DEFERRED_TABLE_POOLING_FEATURE = "dom/deferred-table-pooling";
+    
     /** Create entity reference nodes feature ("dom/create-entity-ref-nodes"). */
     public static final String CREATE_ENTITY_REF_NODES_FEATURE = "dom/create-entity-ref-nodes";
     
@@ -286,6 +301,15 @@ public final class Constants {
     /** Tolerate duplicates feature ("internal/tolerate-duplicates"). */
     public static final String TOLERATE_DUPLICATES_FEATURE = "internal/tolerate-duplicates";
     
+    /** Parallel schema document parsing feature ("validation/schema/parallel-document-parsing"). */
+    public static final String PARALLEL_SCHEMA_PARSING_FEATURE = "validation/schema/parallel-document-parsing";
+    
+    /** Compact schema grammars feature ("validation/schema/compact-grammars"). */
+    public static final String SCHEMA_COMPACT_GRAMMARS_FEATURE = "validation/schema/compact-grammars";
+    
+    /** Discard schema metadata feature ("validation/schema/discard-metadata"). */
+    public static final String SCHEMA_DISCARD_METADATA_FEATURE = "validation/schema/discard-metadata";
+    
     /** String interned feature ("internal/strings-interned"). */
     public static final String STRINGS_INTERNED_FEATURE = "internal/strings-interned";
     
@@ -356,6 +380,15 @@ public final class Constants {
     /** Document class name property ("dom/document-class-name"). */
     public static final String DOCUMENT_CLASS_NAME_PROPERTY = "dom/document-class-name";
     
+    /** Deferred storage directory property ("dom/deferred-storage-directory"). */
+    public static final String DEFERRED_STORAGE_DIRECTORY_PROPERTY = "dom/deferred-storage-directory";
+    
+    /** DOM construction executor property ("dom/construction-executor"). */
+    public static final String DOM_CONSTRUCTION_EXECUTOR_PROPERTY = "dom/construction-executor";
+    
+    /** DOM construction parallelism property ("dom/construction-parallelism"). */
+    public static final String DOM_CONSTRUCTION_PARALLELISM_PROPERTY = "dom/construction-parallelism";
+    
     /** Symbol table property ("internal/symbol-table"). */
     public static final String SYMBOL_TABLE_PROPERTY = "internal/symbol-table";
     
@@ -434,6 +467,9 @@ public final class Constants {
     /** Schema element declaration for the root element in a document ("internal/validation/schema/dv-factory"). */
     public static final String SCHEMA_DV_FACTORY_PROPERTY = "internal/validation/schema/dv-factory";
     
+    /** Statistics collected while loading schemas ("validation/schema/load-statistics"). */
+    public static final String SCHEMA_LOAD_STATISTICS_PROPERTY = "validation/schema/load-statistics";
+    
     // general constants
     
     /** Element PSVI is stored in augmentations using string "ELEMENT_PSVI" */
@@ -508,6 +544,11 @@ public final class Constants {
             LOAD_DTD_GRAMMAR_FEATURE,
             LOAD_EXTERNAL_DTD_FEATURE,
             //DEFER_NODE_EXPANSION_FEATURE,
+            OFF_HEAP_DEFERRED_STORAGE_FEATURE,
+            PARALLEL_DOM_CONSTRUCTION_FEATURE,
+            COMPACT_ATTRIBUTES_FEATURE,
+            SHARED_TEXT_FEATURE,
+            DEFERRED_TABLE_POOLING_FEATURE,
             CREATE_ENTITY_REF_NODES_FEATURE,
             INCLUDE_IGNORABLE_WHITESPACE,
             //GRAMMAR_ACCESS_FEATURE,
@@ -531,6 +572,9 @@ public final class Constants {
             UNPARSED_ENTITY_CHECKING_FEATURE,
             NAMESPACE_GROWTH_FEATURE,
             TOLERATE_DUPLICATES_FEATURE,
+            PARALLEL_SCHEMA_PARSING_FEATURE,
+            SCHEMA_COMPACT_GRAMMARS_FEATURE,
+            SCHEMA_DISCARD_METADATA_FEATURE,
             STRINGS_INTERNED_FEATURE,
     };
     
@@ -538,6 +582,9 @@ public final class Constants {
     private static final String[] fgXercesProperties = {
             CURRENT_ELEMENT_NODE_PROPERTY,
             DOCUMENT_CLASS_NAME_PROPERTY,
+            DEFERRED_STORAGE_DIRECTORY_PROPERTY,
+            DOM_CONSTRUCTION_EXECUTOR_PROPERTY,
+            DOM_CONSTRUCTION_PARALLELISM_PROPERTY,
             SYMBOL_TABLE_PROPERTY,
             ERROR_HANDLER_PROPERTY,
             ERROR_REPORTER_PROPERTY,
@@ -557,6 +604,7 @@ public final class Constants {
             ROOT_TYPE_DEFINITION_PROPERTY,
             ROOT_ELEMENT_DECLARATION_PROPERTY,
             SCHEMA_DV_FACTORY_PROPERTY,
+            SCHEMA_LOAD_STATISTICS_PROPERTY,
     };
     
     /** Empty enumeration. */
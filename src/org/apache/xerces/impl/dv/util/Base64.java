@@ -306,4 +306,74 @@ public final class  Base64 {
     public static int getSixbit() {
         return SIXBIT;
     }
+
+    /**
+     * Checks Base64 data which is received in several pieces and computes
+     * the number of octets it decodes to, without decoding it or keeping
+     * the data. Accepts exactly the same input as {@link #decode(String)}.
+     */
+    public static final class LengthCounter {
+
+        // number of data and pad characters seen so far
+        private long fDataCount;
+        private int fPadCount;
+        // value of the last data character, for the trailing bits check
+        private byte fLastData;
+        private boolean fError;
+
+        public void reset() {
+            fDataCount = 0;
+            fPadCount = 0;
+            fLastData = 0;
+            fError = false;
+        }
+
+        public void append(char[] data, int offset, int length) {
+            if (fError)
+                return;
+            final int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                final char c = data[i];
+                if (isData(c)) {
+                    // data is not allowed after padding
+                    if (fPadCount != 0) {
+                        fError = true;
+                        return;
+                    }
+                    fLastData = base64Alphabet[c];
+                    fDataCount++;
+                }
+                else if (isPad(c)) {
+                    if (++fPadCount > 2) {
+                        fError = true;
+                        return;
+                    }
+                }
+                else if (!isWhiteSpace(c)) {
+                    fError = true;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return the number of octets the data decodes to, or -1 if
+         *         the data received is not valid Base64
+         */
+        public long getDecodedLength() {
+            if (fError || (fDataCount + fPadCount) % FOURBYTE != 0)
+                return -1;
+            if (fPadCount == 1) {
+                // One PAD  e.g. 3cQ[Pad], last 2 bits should be zero
+                if (fDataCount % FOURBYTE != 3 || (fLastData & 0x3) != 0)
+                    return -1;
+            }
+            else if (fPadCount == 2) {
+                // Two PAD e.g. 3c[Pad][Pad], last 4 bits should be zero
+                if (fDataCount % FOURBYTE != 2 || (fLastData & 0xf) != 0)
+                    return -1;
+            }
+            return fDataCount * 3 / FOURBYTE;
+        }
+    }
 }
@@ -110,4 +110,54 @@ public final class  HexBin {
         }
         return decodedData;
     }
+
+    /**
+     * Checks hex data which is received in several pieces and computes
+     * the number of octets it decodes to, without decoding it or keeping
+     * the data. Leading and trailing white space is ignored, as it would
+     * have been removed by whitespace collapsing before {@link #decode(String)}
+     * is called.
+     */
+    public static final class LengthCounter {
+
+        private long fDigitCount;
+        // white space has been seen after the first digit
+        private boolean fSawSpace;
+        private boolean fError;
+
+        public void reset() {
+            fDigitCount = 0;
+            fSawSpace = false;
+            fError = false;
+        }
+
+        public void append(char[] data, int offset, int length) {
+            if (fError)
+                return;
+            final int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                final char c = data[i];
+                if (c == 0x20 || c == 0xd || c == 0xa || c == 0x9) {
+                    fSawSpace = fDigitCount > 0;
+                }
+                else if (fSawSpace || c >= BASELENGTH || hexNumberTable[c] == -1) {
+                    fError = true;
+                    return;
+                }
+                else {
+                    fDigitCount++;
+                }
+            }
+        }
+
+        /**
+         * @return the number of octets the data decodes to, or -1 if
+         *         the data received is not valid hex
+         */
+        public long getDecodedLength() {
+            if (fError || fDigitCount % 2 != 0)
+                return -1;
+            return fDigitCount / 2;
+        }
+    }
 }
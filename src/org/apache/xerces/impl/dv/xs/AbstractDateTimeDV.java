@@ -17,6 +17,8 @@
 
 package org.apache.xerces.impl.dv.xs;
 
+import java.io.ObjectStreamException;
+import java.io.Serializable;
 import java.math.BigDecimal;
 
 import javax.xml.datatype.DatatypeFactory;
@@ -46,7 +48,10 @@ import org.apache.xerces.xs.datatypes.XSDateTime;
  *
  * @version $Id$
  */
-public abstract class AbstractDateTimeDV extends TypeValidator {
+public abstract class AbstractDateTimeDV extends TypeValidator implements Serializable {
+	
+	/** Serialization version. */
+	private static final long serialVersionUID = 4362304981382904527L;
 	
 	//debugging
 	private static final boolean DEBUG=false;
@@ -59,6 +64,20 @@ public abstract class AbstractDateTimeDV extends TypeValidator {
 	protected final static int YEAR=2000;
 	protected final static int MONTH=01;
 	protected final static int DAY = 01;
+	
+	// number of seconds in the largest time zone offset (14:00), used when
+	// comparing values with and without a time zone
+	private final static long MAX_TIMEZONE_SECONDS = 14 * 3600;
+	
+	private final static int NANOS_PER_SECOND = 1000000000;
+	
+	// the fractional seconds of a lexical value with at most this many
+	// digits are computed without creating a substring
+	private final static int MAX_FAST_FRACTION_DIGITS = 9;
+	
+	private final static double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9
+	};
     
     protected static final DatatypeFactory datatypeFactory = new DatatypeFactoryImpl();
 	
@@ -106,6 +125,14 @@ public abstract class AbstractDateTimeDV extends TypeValidator {
 		if (date1.utc == date2.utc) {
 			return compareOrder(date1, date2);
 		}
+		if (date1.type.isInstant() && date2.type.isInstant()) {
+			final int nanos1 = getNanoOfSecond(date1);
+			final int nanos2 = getNanoOfSecond(date2);
+			if (nanos1 != -1 && nanos2 != -1) {
+				return compareInstants(date1, getEpochSecond(date1), nanos1,
+						date2, getEpochSecond(date2), nanos2);
+			}
+		}
 		short c1, c2;
 		
 		DateTimeData tempDate = new DateTimeData(null, this);
@@ -176,6 +203,110 @@ public abstract class AbstractDateTimeDV extends TypeValidator {
 		
 	}
 	
+	/**
+	 * Same algorithm as {@link #compareDates(DateTimeData, DateTimeData, boolean)}
+	 * for a value with a time zone and one without, performed on the instants
+	 * of the two values, given as seconds since 1970-01-01T00:00:00 plus
+	 * nanoseconds, so no temporary date object needs to be created and
+	 * normalized. The +/-14 hour adjustment for the value without a time zone
+	 * is applied directly to the seconds.
+	 */
+	private static short compareInstants(DateTimeData date1, long seconds1, int nanos1,
+			DateTimeData date2, long seconds2, int nanos2) {
+		short c1, c2;
+		if ( date1.utc=='Z' ) {
+			//compare date1<=(date2 with time zone +14)
+			c1 = compareInstants(seconds1, nanos1,
+					seconds2 - MAX_TIMEZONE_SECONDS, nanos2);
+			if (c1 == LESS_THAN)
+				return c1;
+			//compare date1>=(date2 with time zone -14)
+			c2 = compareInstants(seconds1, nanos1,
+					seconds2 + MAX_TIMEZONE_SECONDS, nanos2);
+			if (c2 == GREATER_THAN)
+				return c2;
+			return INDETERMINATE;
+		}
+		else if ( date2.utc=='Z' ) {
+			//compare (date1 with time zone -14)<=date2
+			c1 = compareInstants(seconds1 + MAX_TIMEZONE_SECONDS, nanos1,
+					seconds2, nanos2);
+			if (c1 == LESS_THAN)
+				return c1;
+			//compare (date1 with time zone +14)>=date2
+			c2 = compareInstants(seconds1 - MAX_TIMEZONE_SECONDS, nanos1,
+					seconds2, nanos2);
+			if (c2 == GREATER_THAN)
+				return c2;
+			return INDETERMINATE;
+		}
+		return INDETERMINATE;
+	}
+	
+	private static short compareInstants(long seconds1, int nanos1, long seconds2, int nanos2) {
+		if (seconds1 != seconds2)
+			return seconds1 < seconds2 ? LESS_THAN : GREATER_THAN;
+		if (nanos1 != nanos2)
+			return nanos1 < nanos2 ? LESS_THAN : GREATER_THAN;
+		return EQUAL;
+	}
+	
+	/**
+	 * Returns true if the normalized values of this type are instants on
+	 * the time line, which can be ordered on the seconds since the epoch
+	 * (dateTime, date and time). Values of such types with and without a
+	 * time zone are compared on their instants.
+	 */
+	protected boolean isInstant() {
+		return false;
+	}
+	
+	/**
+	 * Returns the nanoseconds of the seconds of a normalized dateTime, date
+	 * or time value, or -1 if the value cannot be ordered on its instant:
+	 * years before 0001, or fractional seconds beyond nanosecond precision.
+	 * Such values are compared field by field.
+	 *
+	 * @param date normalized date/time object
+	 */
+	private static int getNanoOfSecond(DateTimeData date) {
+		if (date.year < 1) {
+			return -1;
+		}
+		final int wholeSeconds = (int) date.second;
+		final int nanos = (int) Math.round((date.second - wholeSeconds) * NANOS_PER_SECOND);
+		if (nanos >= NANOS_PER_SECOND ||
+				((double) (wholeSeconds * (long) NANOS_PER_SECOND + nanos)) / NANOS_PER_SECOND != date.second) {
+			return -1;
+		}
+		return nanos;
+	}
+	
+	/**
+	 * Returns the whole seconds since 1970-01-01T00:00:00 of a normalized
+	 * dateTime, date or time value; whether the value has a time zone is
+	 * kept in <code>utc</code>.
+	 *
+	 * @param date normalized date/time object
+	 */
+	private static long getEpochSecond(DateTimeData date) {
+		final long days = daysFromCivil(date.year, date.month, date.day);
+		return days * 86400L + date.hour * 3600 + date.minute * 60 + (int) date.second;
+	}
+	
+	/**
+	 * Number of days from 1970-01-01 to the given date in the proleptic
+	 * Gregorian calendar; only called for positive years.
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		final long y = (month <= 2) ? (long) year - 1 : year;
+		final long era = y / 400;
+		final long yearOfEra = y - era * 400;
+		final long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		final long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+	
 	/**
 	 * Given normalized values, determines order-relation
 	 * between give date/time objects.
@@ -887,7 +1018,20 @@ public abstract class AbstractDateTimeDV extends TypeValidator {
 		else if (start+2 != dot || dot+1 == end) {
 			throw new NumberFormatException("'" + buffer + "' has wrong format");
 		}
-		return Double.parseDouble(buffer.substring(start, end));
+		final int fractionDigits = (dot == -1) ? 0 : end - dot - 1;
+		if (fractionDigits > MAX_FAST_FRACTION_DIGITS) {
+			return Double.parseDouble(buffer.substring(start, end));
+		}
+		// All digits fit exactly in a long and the power of ten is exact, so
+		// the division is correctly rounded and gives the same result as
+		// Double.parseDouble() without the intermediate substring.
+		long digits = 0;
+		for (int i = start; i < end; i++) {
+			if (i != dot) {
+				digits = digits * 10 + (buffer.charAt(i) - '0');
+			}
+		}
+		return digits / POWERS_OF_TEN[fractionDigits];
 	}
 	
 	//
@@ -909,7 +1053,11 @@ public abstract class AbstractDateTimeDV extends TypeValidator {
 	/**
 	 * Represents date time data
 	 */
-	static final class DateTimeData implements XSDateTime {
+	static final class DateTimeData implements XSDateTime, Serializable {
+		
+		/** Serialization version. */
+		private static final long serialVersionUID = -1865770104235478506L;
+		
 		int year, month, day, hour, minute, utc;
 		double second;
 		int timezoneHr, timezoneMin;
@@ -952,6 +1100,26 @@ public abstract class AbstractDateTimeDV extends TypeValidator {
 				return false;
 			return type.compareDates(this, (DateTimeData)obj, true)==0;
 		}
+		public int hashCode() {
+			// durations that compare equal may have different fields
+			// (e.g. P1D and PT24H), but add up to the same months and
+			// seconds
+			if (type instanceof DurationDV) {
+				final long months = year * 12L + month;
+				final long seconds = ((day * 24L + hour) * 60L + minute) * 60L + (long) Math.floor(second);
+				final long bits = months * 31 + seconds;
+				return (int) (bits ^ (bits >>> 32));
+			}
+			// the fields that compareOrder() looks at
+			int hash = utc;
+			if (position < 1)
+				hash = hash * 31 + year;
+			if (position < 2)
+				hash = hash * 31 + month;
+			hash = ((hash * 31 + day) * 31 + hour) * 31 + minute;
+			long bits = Double.doubleToLongBits(second);
+			return hash * 31 + (int) (bits ^ (bits >>> 32));
+		}
 		public synchronized String toString() {
 			if (canonical == null) {
 				canonical = type.dateToString(this);
@@ -1103,4 +1271,13 @@ public abstract class AbstractDateTimeDV extends TypeValidator {
         }
         return _val;
     }
+
+    /**
+     * Date/time values refer to the validator which created them. When
+     * such a value is deserialized, the shared validator is used instead.
+     */
+    protected Object readResolve() throws ObjectStreamException {
+        final TypeValidator dv = XSSimpleTypeDecl.getBuiltInDV(getClass());
+        return (dv != null) ? dv : this;
+    }
 }
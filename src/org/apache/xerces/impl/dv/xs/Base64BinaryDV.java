@@ -46,16 +46,46 @@ public class Base64BinaryDV extends TypeValidator {
         return new XBase64(decoded);
     }
 
+    public StreamingValidator newStreamingValidator(XSSimpleTypeDecl type) {
+        return new StreamingBase64Validator(type);
+    }
+
     // length of a binary type is the number of bytes
     public int getDataLength(Object value) {
         return ((XBase64)value).getLength();
     }
 
+    /**
+     * checks base64Binary content as it is received, counting the number
+     * of octets without decoding them
+     */
+    private static final class StreamingBase64Validator extends StreamingValidator {
+
+        private final Base64.LengthCounter fCounter = new Base64.LengthCounter();
+
+        public StreamingBase64Validator(XSSimpleTypeDecl type) {
+            super(type);
+        }
+        protected void scan(char[] ch, int offset, int length) {
+            fCounter.append(ch, offset, length);
+        }
+        protected int getDataLength() {
+            final long length = fCounter.getDecodedLength();
+            return length > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) length;
+        }
+        protected String getTypeName() {
+            return "base64Binary";
+        }
+    }
+
     /**
      * represent base64 data
      */
     private static final class XBase64 extends ByteListImpl {
 
+        /** Serialization version. */
+        private static final long serialVersionUID = -3194400533140400346L;
+
         public XBase64(byte[] data) {
             super(data);
         }
@@ -35,6 +35,9 @@ import org.apache.xerces.impl.dv.ValidationContext;
  */
 public class DateDV extends DateTimeDV {
 
+    /** Serialization version. */
+    private static final long serialVersionUID = -8094210950273342523L;
+
     public Object getActualValue(String content, ValidationContext context) throws InvalidDatatypeValueException {
         try{
             return parse(content);
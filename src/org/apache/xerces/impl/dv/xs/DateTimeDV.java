@@ -37,6 +37,9 @@ import org.apache.xerces.impl.dv.ValidationContext;
  */
 public class DateTimeDV extends AbstractDateTimeDV {
 
+    /** Serialization version. */
+    private static final long serialVersionUID = -2221935782315013154L;
+
     public Object getActualValue(String content, ValidationContext context) throws InvalidDatatypeValueException {
         try{
             return parse(content);
@@ -83,6 +86,10 @@ public class DateTimeDV extends AbstractDateTimeDV {
         }
         return date;
     }
+
+    protected boolean isInstant() {
+        return true;
+    }
     
     protected XMLGregorianCalendar getXMLGregorianCalendar(DateTimeData date) {
         return datatypeFactory.newXMLGregorianCalendar(BigInteger.valueOf(date.unNormYear), date.unNormMonth, 
@@ -35,6 +35,9 @@ import org.apache.xerces.impl.dv.ValidationContext;
  * @version $Id$
  */
 class DayTimeDurationDV extends DurationDV {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 5014926636528327748L;
     
     public Object getActualValue(String content, ValidationContext context)
         throws InvalidDatatypeValueException {
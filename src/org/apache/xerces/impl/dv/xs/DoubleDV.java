@@ -17,6 +17,8 @@
 
 package org.apache.xerces.impl.dv.xs;
 
+import java.io.Serializable;
+
 import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
 import org.apache.xerces.impl.dv.ValidationContext;
 import org.apache.xerces.xs.datatypes.XSDouble;
@@ -77,7 +79,11 @@ public class DoubleDV extends TypeValidator {
         return true;
     }
 
-    private static final class XDouble implements XSDouble {
+    private static final class XDouble implements XSDouble, Serializable {
+
+        /** Serialization version. */
+        private static final long serialVersionUID = 6268666096639517225L;
+
         private final double value;
         public XDouble(String s) throws NumberFormatException {
             if (isPossibleFP(s)) {
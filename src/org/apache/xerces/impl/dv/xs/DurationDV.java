@@ -37,6 +37,9 @@ import org.apache.xerces.impl.dv.ValidationContext;
  */
 public class DurationDV extends AbstractDateTimeDV {
 
+    /** Serialization version. */
+    private static final long serialVersionUID = -6386625816051622235L;
+
 	public static final int DURATION_TYPE = 0;
 	public static final int YEARMONTHDURATION_TYPE = 1;
 	public static final int DAYTIMEDURATION_TYPE = 2;
@@ -46,13 +46,43 @@ public class HexBinaryDV extends TypeValidator {
         return new XHex(decoded);
     }
 
+    public StreamingValidator newStreamingValidator(XSSimpleTypeDecl type) {
+        return new StreamingHexValidator(type);
+    }
+
     // length of a binary type is the number of bytes
     public int getDataLength(Object value) {
         return ((XHex)value).getLength();
     }
 
+    /**
+     * checks hexBinary content as it is received, counting the number
+     * of octets without decoding them
+     */
+    private static final class StreamingHexValidator extends StreamingValidator {
+
+        private final HexBin.LengthCounter fCounter = new HexBin.LengthCounter();
+
+        public StreamingHexValidator(XSSimpleTypeDecl type) {
+            super(type);
+        }
+        protected void scan(char[] ch, int offset, int length) {
+            fCounter.append(ch, offset, length);
+        }
+        protected int getDataLength() {
+            final long length = fCounter.getDecodedLength();
+            return length > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) length;
+        }
+        protected String getTypeName() {
+            return "hexBinary";
+        }
+    }
+
     private static final class XHex extends ByteListImpl {
 
+        /** Serialization version. */
+        private static final long serialVersionUID = 1720844896869015470L;
+
         public XHex(byte[] data) {
             super(data);
         }
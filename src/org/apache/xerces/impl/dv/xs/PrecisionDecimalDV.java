@@ -17,6 +17,8 @@
 
 package org.apache.xerces.impl.dv.xs;
 
+import java.io.Serializable;
+
 import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
 import org.apache.xerces.impl.dv.ValidationContext;
 
@@ -31,7 +33,11 @@ import org.apache.xerces.impl.dv.ValidationContext;
  */
 class PrecisionDecimalDV extends TypeValidator {
     
-    static class XPrecisionDecimal {
+    static class XPrecisionDecimal implements Serializable {
+
+        /** Serialization version. */
+        private static final long serialVersionUID = 2563674223028741938L;
+
         
         // sign: 0 for absent; 1 for positive values; -1 for negative values (except in case of INF, -INF)
         int sign = 1;
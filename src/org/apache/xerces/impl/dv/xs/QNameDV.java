@@ -82,6 +82,10 @@ public class QNameDV extends TypeValidator {
      * represent QName data
      */
     private static final class XQName extends QName implements XSQName {
+
+        /** Serialization version. */
+        private static final long serialVersionUID = -125925801228262834L;
+
         /** Constructs a QName with the specified values. */
         public XQName(String prefix, String localpart, String rawname, String uri) {
             setValues(prefix, localpart, rawname, uri);
@@ -96,6 +100,11 @@ public class QNameDV extends TypeValidator {
             return false;
         } // equals(Object):boolean
 
+        /** Returns a hash code consistent with equals. */
+        public int hashCode() {
+            return (uri != null ? uri.hashCode() : 0) + localpart.hashCode();
+        } // hashCode():int
+
         public String toString() {
             return rawname;
         }
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.dv.xs;
+
+import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
+import org.apache.xerces.impl.dv.ValidatedInfo;
+import org.apache.xerces.impl.dv.ValidationContext;
+import org.apache.xerces.impl.dv.XSSimpleType;
+
+/**
+ * Validates the character content of an element against a simple type
+ * as the characters are received, instead of first accumulating the
+ * whole value into a String. Only available for types whose lexical space
+ * and facets can be checked this way (see
+ * {@link XSSimpleTypeDecl#getStreamingValidator()}). Since no value is
+ * kept, no actual value is available after validation.
+ * <p>
+ * The content is normalized according to the whiteSpace facet of the
+ * type before it is passed to {@link #scan(char[], int, int)}. The first
+ * {@link #MAX_RETAINED_CHARS} normalized characters are kept so that error
+ * messages can show the value.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public abstract class StreamingValidator {
+
+    /** Number of characters of the content kept for error messages. */
+    public static final int MAX_RETAINED_CHARS = 1024;
+
+    /** The type the content is validated against. */
+    protected final XSSimpleTypeDecl fType;
+
+    // the beginning of the content, for error messages
+    private final StringBuffer fRetained = new StringBuffer();
+    private boolean fTruncated = false;
+
+    // whiteSpace normalization state
+    private final short fWhiteSpace;
+    private char[] fNormalized = new char[64];
+    private boolean fLeading = true;
+    private boolean fPendingSpace = false;
+
+    protected StreamingValidator(XSSimpleTypeDecl type) {
+        fType = type;
+        fWhiteSpace = type.getWhiteSpaceFacet();
+    }
+
+    /**
+     * Receives the next chunk of character content.
+     */
+    public final void characters(char[] ch, int offset, int length) {
+        if (fWhiteSpace == XSSimpleType.WS_PRESERVE) {
+            append(ch, offset, length);
+            return;
+        }
+        // at most one extra space is carried over from the previous chunk
+        if (fNormalized.length <= length) {
+            fNormalized = new char[length + 1];
+        }
+        final char[] normalized = fNormalized;
+        final int end = offset + length;
+        int count = 0;
+        if (fWhiteSpace == XSSimpleType.WS_REPLACE) {
+            for (int i = offset; i < end; i++) {
+                final char c = ch[i];
+                normalized[count++] = (c == 0x9 || c == 0xa || c == 0xd) ? (char) 0x20 : c;
+            }
+        }
+        else {
+            // collapse: a run of whitespace becomes a single space, which
+            // is only written once the next non-whitespace character is seen
+            for (int i = offset; i < end; i++) {
+                final char c = ch[i];
+                if (c == 0x9 || c == 0xa || c == 0xd || c == 0x20) {
+                    fPendingSpace = !fLeading;
+                }
+                else {
+                    if (fPendingSpace) {
+                        normalized[count++] = (char) 0x20;
+                        fPendingSpace = false;
+                    }
+                    normalized[count++] = c;
+                    fLeading = false;
+                }
+            }
+        }
+        append(normalized, 0, count);
+    }
+
+    /**
+     * Receives the next chunk of character content.
+     */
+    public final void characters(String data) {
+        characters(data.toCharArray(), 0, data.length());
+    }
+
+    // passes normalized content on to scan()
+    private void append(char[] ch, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        final int room = MAX_RETAINED_CHARS - fRetained.length();
+        if (length <= room) {
+            fRetained.append(ch, offset, length);
+        }
+        else {
+            fRetained.append(ch, offset, room);
+            fTruncated = true;
+        }
+        scan(ch, offset, length);
+    }
+
+    /**
+     * Checks the content received against the lexical space and the facets
+     * of the type once the end of the element has been reached.
+     *
+     * @param context       the validation context
+     * @param validatedInfo receives the type information; the actual
+     *                      and normalized values are not available
+     * @return always <code>null</code>, as no actual value is computed
+     */
+    public final Object validate(ValidationContext context, ValidatedInfo validatedInfo)
+        throws InvalidDatatypeValueException {
+        final int length = getDataLength();
+        if (length < 0) {
+            throw new InvalidDatatypeValueException("cvc-datatype-valid.1.2.1",
+                    new Object[]{toString(), getTypeName()});
+        }
+        validatedInfo.normalizedValue = null;
+        validatedInfo.actualValue = null;
+        validatedInfo.memberType = null;
+        fType.setValidatedInfo(validatedInfo);
+        if (context.needFacetChecking()) {
+            fType.checkLengthFacets(length, toString());
+            checkEnumeration();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the content received so far, truncated to
+     * {@link #MAX_RETAINED_CHARS} characters.
+     */
+    public String toString() {
+        return fTruncated ? fRetained.toString() + "..." : fRetained.toString();
+    }
+
+    /**
+     * Checks the enumeration facet of the type, if the validator supports
+     * it. Called after the length facets have been checked.
+     */
+    protected void checkEnumeration() throws InvalidDatatypeValueException {
+    }
+
+    /**
+     * Checks the next chunk of normalized character content.
+     */
+    protected abstract void scan(char[] ch, int offset, int length);
+
+    /**
+     * Returns the length of the value as defined for the length facets of
+     * the type, or -1 if the content is not in the lexical space.
+     */
+    protected abstract int getDataLength();
+
+    /**
+     * Returns the name of the primitive type, for error messages.
+     */
+    protected abstract String getTypeName();
+
+} // class StreamingValidator
@@ -19,6 +19,7 @@ package org.apache.xerces.impl.dv.xs;
 
 import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
 import org.apache.xerces.impl.dv.ValidationContext;
+import org.apache.xerces.util.XMLChar;
 
 /**
  * Represent the schema type "string"
@@ -41,4 +42,69 @@ public class StringDV extends TypeValidator {
         return content;
     }
 
+    public StreamingValidator newStreamingValidator(XSSimpleTypeDecl type) {
+        return new StreamingStringValidator(type);
+    }
+
+    /**
+     * checks string content as it is received, counting its length and
+     * keeping only as many characters as needed to compare it with the
+     * longest value of the enumeration facet
+     */
+    private static final class StreamingStringValidator extends StreamingValidator {
+
+        private long fLength = 0;
+        private boolean fAfterHighSurrogate = false;
+        // -1 if the type has no enumeration facet
+        private final int fMaxEnumerationLength;
+        private final StringBuffer fValue;
+        private boolean fTooLong = false;
+
+        public StreamingStringValidator(XSSimpleTypeDecl type) {
+            super(type);
+            fMaxEnumerationLength = type.getMaxEnumerationLength();
+            fValue = fMaxEnumerationLength >= 0 ? new StringBuffer() : null;
+        }
+        protected void scan(char[] ch, int offset, int length) {
+            fLength += length;
+            if (USE_CODE_POINT_COUNT_FOR_STRING_LENGTH) {
+                // a surrogate pair counts as a single character
+                final int end = offset + length;
+                for (int i = offset; i < end; i++) {
+                    final char c = ch[i];
+                    if (fAfterHighSurrogate && XMLChar.isLowSurrogate(c)) {
+                        --fLength;
+                        fAfterHighSurrogate = false;
+                    }
+                    else {
+                        fAfterHighSurrogate = XMLChar.isHighSurrogate(c);
+                    }
+                }
+            }
+            if (fValue != null && !fTooLong) {
+                final int room = fMaxEnumerationLength - fValue.length();
+                if (length <= room) {
+                    fValue.append(ch, offset, length);
+                }
+                else {
+                    // longer than any value of the enumeration
+                    fTooLong = true;
+                    fValue.setLength(0);
+                }
+            }
+        }
+        protected int getDataLength() {
+            return fLength > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) fLength;
+        }
+        protected void checkEnumeration() throws InvalidDatatypeValueException {
+            if (fValue != null) {
+                fType.checkEnumeration(fTooLong ? null : fValue.toString(),
+                        toString(), fType.getBuiltInKind(), null);
+            }
+        }
+        protected String getTypeName() {
+            return "string";
+        }
+    }
+
 } // class StringDV
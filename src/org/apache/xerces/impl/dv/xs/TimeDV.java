@@ -35,6 +35,9 @@ import org.apache.xerces.impl.dv.ValidationContext;
  */
 public class TimeDV extends AbstractDateTimeDV {
 
+    /** Serialization version. */
+    private static final long serialVersionUID = 845839348348062395L;
+
     /**
      * Convert a string to a compiled form
      *
@@ -84,6 +87,10 @@ public class TimeDV extends AbstractDateTimeDV {
         return date;
     }
 
+    protected boolean isInstant() {
+        return true;
+    }
+
     /**
      * Converts time object representation to String
      *
@@ -39,7 +39,7 @@ import org.apache.xerces.util.XMLChar;
  */
 public abstract class TypeValidator {
     
-    private static final boolean USE_CODE_POINT_COUNT_FOR_STRING_LENGTH = AccessController.doPrivileged(new PrivilegedAction<Object>() {
+    static final boolean USE_CODE_POINT_COUNT_FOR_STRING_LENGTH = AccessController.doPrivileged(new PrivilegedAction<Object>() {
         public Object run() {
             try {
                 return Boolean.getBoolean("org.apache.xerces.impl.dv.xs.useCodePointCountForStringLength") ? Boolean.TRUE : Boolean.FALSE;
@@ -64,6 +64,13 @@ public abstract class TypeValidator {
     public void checkExtraRules(Object value, ValidationContext context) throws InvalidDatatypeValueException {
     }
 
+    // returns a validator which checks the character content of an element
+    // against the given type as it is received, or null if this DV needs the
+    // complete value
+    public StreamingValidator newStreamingValidator(XSSimpleTypeDecl type) {
+        return null;
+    }
+
     // the following methods might not be supported by every DV.
     // but XSSimpleTypeDecl should know which type supports which methods,
     // and it's an *internal* error if a method is called on a DV that
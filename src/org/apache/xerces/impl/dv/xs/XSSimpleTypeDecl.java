@@ -17,9 +17,18 @@
 
 package org.apache.xerces.impl.dv.xs;
 
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectInputValidation;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.math.BigInteger;
 import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Vector;
 
@@ -32,7 +41,9 @@ import org.apache.xerces.impl.dv.ValidationContext;
 import org.apache.xerces.impl.dv.XSFacets;
 import org.apache.xerces.impl.dv.XSSimpleType;
 import org.apache.xerces.impl.xpath.regex.RegularExpression;
+import org.apache.xerces.impl.xpath.regex.RegularExpressionCache;
 import org.apache.xerces.impl.xs.SchemaSymbols;
+import org.apache.xerces.impl.xs.XSGrammarFootprint;
 import org.apache.xerces.impl.xs.util.ObjectListImpl;
 import org.apache.xerces.impl.xs.util.ShortListImpl;
 import org.apache.xerces.impl.xs.util.StringListImpl;
@@ -61,7 +72,10 @@ import org.w3c.dom.TypeInfo;
  *
  * @version $Id$
  */
-public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
+public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 7123840145916725455L;
 
     protected static final short DV_STRING        = PRIMITIVE_STRING;
     protected static final short DV_BOOLEAN       = PRIMITIVE_BOOLEAN;
@@ -164,6 +178,44 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         NORMALIZE_NONE, //AnyAtomicDV() (Schema 1.1)
     };
 
+    // whether equal actual values always have equal hash codes, so that
+    // the enumeration facet can be indexed by actual value
+    static final boolean[] fDVHashableValues = {
+        true,  //AnySimpleDV(),
+        true,  //StringDV(),
+        true,  //BooleanDV(),
+        true,  //DecimalDV(),
+        true,  //FloatDV(),
+        true,  //DoubleDV(),
+        false, //DurationDV(),  // equality depends on the reference dateTimes
+        true,  //DateTimeDV(),
+        true,  //TimeDV(),
+        true,  //DateDV(),
+        true,  //YearMonthDV(),
+        true,  //YearDV(),
+        true,  //MonthDayDV(),
+        true,  //DayDV(),
+        true,  //MonthDV(),
+        true,  //HexBinaryDV(),
+        true,  //Base64BinaryDV(),
+        true,  //AnyURIDV(),
+        true,  //QNameDV(),
+        false, //PrecisionDecimalDV() (Schema 1.1)
+        true,  //QNameDV(),   // notation
+        true,  //IDDV(),
+        true,  //IDREFDV(),
+        true,  //EntityDV(),
+        true,  //IntegerDV(),
+        false, //ListDV(),  // depends on the item type
+        false, //UnionDV(),  // depends on the member types
+        false, //YearMonthDurationDV() (Schema 1.1)
+        false, //DayTimeDurationDV() (Schema 1.1)
+        false, //AnyAtomicDV() (Schema 1.1)
+    };
+
+    // enumerations with at least this many values are indexed
+    static final int ENUMERATION_INDEX_THRESHOLD = 8;
+
     static final short SPECIAL_PATTERN_NONE     = 0;
     static final short SPECIAL_PATTERN_NMTOKEN  = 1;
     static final short SPECIAL_PATTERN_NAME     = 2;
@@ -233,7 +285,18 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
     protected static TypeValidator[] getGDVs() {
         return (TypeValidator[])gDVs.clone();
     }
-    private TypeValidator[] fDVs = gDVs;
+
+    // returns the shared instance of a built-in validator class
+    static TypeValidator getBuiltInDV(Class<?> dvClass) {
+        for (int i = 0; i < gDVs.length; i++) {
+            if (gDVs[i].getClass() == dvClass) {
+                return gDVs[i];
+            }
+        }
+        return null;
+    }
+
+    private transient TypeValidator[] fDVs = gDVs;
     protected void setDVs(TypeValidator[] dvs) {
         fDVs = dvs;
     }
@@ -269,11 +332,17 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
     private Vector<String> fPatternStr;
     private ValidatedInfo[] fEnumeration;
     private int fEnumerationSize;
-    private ShortList fEnumerationTypeList;
-    private ObjectList fEnumerationItemTypeList;
-    private StringList fLexicalPattern;
-    private StringList fLexicalEnumeration;
-    private ObjectList fActualEnumeration;
+    // maps each actual value of the enumeration to the positions in
+    // fEnumeration holding an equal value; null if not indexed
+    private transient HashMap<Object, int[]> fEnumerationIndex;
+    // the length of the longest value of the enumeration, against which
+    // string content is checked as it is received
+    private int fMaxEnumerationLength;
+    private transient ShortList fEnumerationTypeList;
+    private transient ObjectList fEnumerationItemTypeList;
+    private transient StringList fLexicalPattern;
+    private transient StringList fLexicalEnumeration;
+    private transient ObjectList fActualEnumeration;
     private Object fMaxInclusive;
     private Object fMaxExclusive;
     private Object fMinExclusive;
@@ -294,10 +363,10 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
     public XSAnnotation minExclusiveAnnotation;
 
     // facets as objects
-    private XSObjectListImpl fFacets;
+    private transient XSObjectListImpl fFacets;
 
     // enumeration and pattern facets
-    private XSObjectListImpl fMultiValueFacets;
+    private transient XSObjectListImpl fMultiValueFacets;
 
     // simpleType annotations
     private XSObjectList fAnnotations = null;
@@ -387,6 +456,8 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         fPatternStr = fBase.fPatternStr;
         fEnumeration = fBase.fEnumeration;
         fEnumerationSize = fBase.fEnumerationSize;
+        fEnumerationIndex = fBase.fEnumerationIndex;
+        fMaxEnumerationLength = fBase.fMaxEnumerationLength;
         fWhiteSpace = fBase.fWhiteSpace;
         fMaxExclusive = fBase.fMaxExclusive;
         fMaxInclusive = fBase.fMaxInclusive;
@@ -507,6 +578,8 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         fPatternStr = fBase.fPatternStr;
         fEnumeration = fBase.fEnumeration;
         fEnumerationSize = fBase.fEnumerationSize;
+        fEnumerationIndex = fBase.fEnumerationIndex;
+        fMaxEnumerationLength = fBase.fMaxEnumerationLength;
         fWhiteSpace = fBase.fWhiteSpace;
         fMaxExclusive = fBase.fMaxExclusive;
         fMaxInclusive = fBase.fMaxInclusive;
@@ -739,6 +812,69 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         applyFacets(facets, presentFacet, fixedFacet, SPECIAL_PATTERN_NONE, context);
     }
 
+    /**
+     * Returns the values of the facets of this restriction, to be applied
+     * to identical restrictions of the same base type through
+     * {@link #applyFacets(SharedFacets)}.
+     */
+    public SharedFacets getSharedFacets(short presentFacet) {
+        return new SharedFacets(this, presentFacet);
+    }
+
+    /**
+     * If &lt;restriction&gt; is chosen, and the given facets were taken from
+     * a restriction of the same base type with the same facets and no
+     * facet annotations, to which the facets were applied without error.
+     * The facet values, compiled patterns and enumerations are shared
+     * instead of being built again.
+     */
+    public void applyFacets(SharedFacets facets) {
+
+        // if the object is immutable, should not apply facets...
+        if (fIsImmutable) return;
+
+        fFacetsDefined = facets.fFacetsDefined;
+        fFixedFacet = facets.fFixedFacet;
+
+        fWhiteSpace = facets.fWhiteSpace;
+        fLength = facets.fLength;
+        fMinLength = facets.fMinLength;
+        fMaxLength = facets.fMaxLength;
+        fTotalDigits = facets.fTotalDigits;
+        fFractionDigits = facets.fFractionDigits;
+        fPattern = facets.fPattern;
+        fPatternStr = facets.fPatternStr;
+        fEnumeration = facets.fEnumeration;
+        fEnumerationSize = facets.fEnumerationSize;
+        fEnumerationIndex = facets.fEnumerationIndex;
+        fMaxEnumerationLength = facets.fMaxEnumerationLength;
+        fMaxInclusive = facets.fMaxInclusive;
+        fMaxExclusive = facets.fMaxExclusive;
+        fMinExclusive = facets.fMinExclusive;
+        fMinInclusive = facets.fMinInclusive;
+        fPatternType = facets.fPatternType;
+
+        // the present facets have no annotations; the others keep
+        // the annotations inherited from the base type
+        final short presentFacet = facets.fPresentFacet;
+        if ((presentFacet & FACET_LENGTH) != 0) lengthAnnotation = null;
+        if ((presentFacet & FACET_MINLENGTH) != 0) minLengthAnnotation = null;
+        if ((presentFacet & FACET_MAXLENGTH) != 0) maxLengthAnnotation = null;
+        if ((presentFacet & FACET_WHITESPACE) != 0) whiteSpaceAnnotation = null;
+        if ((presentFacet & FACET_TOTALDIGITS) != 0) totalDigitsAnnotation = null;
+        if ((presentFacet & FACET_FRACTIONDIGITS) != 0) fractionDigitsAnnotation = null;
+        if ((presentFacet & FACET_ENUMERATION) != 0) enumerationAnnotations = facets.enumerationAnnotations;
+        if ((presentFacet & FACET_MAXINCLUSIVE) != 0) maxInclusiveAnnotation = null;
+        if ((presentFacet & FACET_MAXEXCLUSIVE) != 0) maxExclusiveAnnotation = null;
+        if ((presentFacet & FACET_MININCLUSIVE) != 0) minInclusiveAnnotation = null;
+        if ((presentFacet & FACET_MINEXCLUSIVE) != 0) minExclusiveAnnotation = null;
+
+        fOrdered = facets.fOrdered;
+        fNumeric = facets.fNumeric;
+        fBounded = facets.fBounded;
+        fFinite = facets.fFinite;
+    }
+
     /**
      * built-in derived types by restriction
      */
@@ -838,7 +974,7 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
                 patternAnnotations = facets.patternAnnotations;
                 RegularExpression regex = null;
                 try {
-                    regex = new RegularExpression(facets.pattern, "X", context.getLocale());
+                    regex = RegularExpressionCache.getRegularExpression(facets.pattern, "X", context.getLocale());
                 } catch (Exception e) {
                     reportError("InvalidRegex", new Object[]{facets.pattern, e.getLocalizedMessage()});
                 }
@@ -889,6 +1025,8 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
                         reportError("enumeration-valid-restriction", new Object[]{enumVals.elementAt(i), this.getBaseType().getName()});
                     }
                 }
+                fEnumerationIndex = buildEnumerationIndex();
+                fMaxEnumerationLength = computeMaxEnumerationLength();
                 fFacetsDefined |= FACET_ENUMERATION;
                 if ((fixedFacet & FACET_ENUMERATION) != 0)
                     fFixedFacet |= FACET_ENUMERATION;
@@ -1475,6 +1613,8 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
             fFacetsDefined |= FACET_ENUMERATION;
             fEnumeration = fBase.fEnumeration;
             fEnumerationSize = fBase.fEnumerationSize;
+            fEnumerationIndex = fBase.fEnumerationIndex;
+            fMaxEnumerationLength = fBase.fMaxEnumerationLength;
             enumerationAnnotations = fBase.enumerationAnnotations;
         }
         // inherit maxExclusive
@@ -1640,79 +1780,12 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
 
         // For QName and NOTATION types, we don't check length facets
         if (fValidationDV != DV_QNAME && fValidationDV != DV_NOTATION) {
-            int length = fDVs[fValidationDV].getDataLength(ob);
-
-            // maxLength
-            if ( (fFacetsDefined & FACET_MAXLENGTH) != 0 ) {
-                if ( length > fMaxLength ) {
-                    throw new InvalidDatatypeValueException("cvc-maxLength-valid",
-                            new Object[]{content, Integer.toString(length), Integer.toString(fMaxLength), fTypeName});
-                }
-            }
-
-            //minLength
-            if ( (fFacetsDefined & FACET_MINLENGTH) != 0 ) {
-                if ( length < fMinLength ) {
-                    throw new InvalidDatatypeValueException("cvc-minLength-valid",
-                            new Object[]{content, Integer.toString(length), Integer.toString(fMinLength), fTypeName});
-                }
-            }
-
-            //length
-            if ( (fFacetsDefined & FACET_LENGTH) != 0 ) {
-                if ( length != fLength ) {
-                    throw new InvalidDatatypeValueException("cvc-length-valid",
-                            new Object[]{content, Integer.toString(length), Integer.toString(fLength), fTypeName});
-                }
-            }
+            checkLengthFacets(fDVs[fValidationDV].getDataLength(ob), content);
         }
 
         //enumeration
         if ( ((fFacetsDefined & FACET_ENUMERATION) != 0 ) ) {
-            boolean present = false;
-            final int enumSize = fEnumerationSize;
-            final short primitiveType1 = convertToPrimitiveKind(type);
-            for (int i = 0; i < enumSize; i++) {
-                final short primitiveType2 = convertToPrimitiveKind(fEnumeration[i].actualValueType);
-                if ((primitiveType1 == primitiveType2 ||
-                        primitiveType1 == XSConstants.ANYSIMPLETYPE_DT && primitiveType2 == XSConstants.STRING_DT ||
-                        primitiveType1 == XSConstants.STRING_DT && primitiveType2 == XSConstants.ANYSIMPLETYPE_DT)
-                        && fEnumeration[i].actualValue.equals(ob)) {
-                    if (primitiveType1 == XSConstants.LIST_DT || primitiveType1 == XSConstants.LISTOFUNION_DT) {
-                        ShortList enumItemType = fEnumeration[i].itemValueTypes;
-                        final int typeList1Length = itemType != null ? itemType.getLength() : 0;
-                        final int typeList2Length = enumItemType != null ? enumItemType.getLength() : 0;
-                        if (typeList1Length == typeList2Length) {
-                            int j;
-                            for (j = 0; j < typeList1Length; ++j) {
-                                final short primitiveItem1 = convertToPrimitiveKind(itemType.item(j));
-                                final short primitiveItem2 = convertToPrimitiveKind(enumItemType.item(j));
-                                if (primitiveItem1 != primitiveItem2) {
-                                    if (primitiveItem1 == XSConstants.ANYSIMPLETYPE_DT && primitiveItem2 == XSConstants.STRING_DT ||
-                                            primitiveItem1 == XSConstants.STRING_DT && primitiveItem2 == XSConstants.ANYSIMPLETYPE_DT) {
-                                        continue;
-                                    }
-                                    break;
-                                }
-                            }
-                            if (j == typeList1Length) {
-                                present = true;
-                                break;
-                            }
-                        }
-                    }
-                    else {
-                        present = true;
-                        break;
-                    }
-                }
-            }
-            if(!present){
-                StringBuffer sb = new StringBuffer();
-                appendEnumString(sb);
-                throw new InvalidDatatypeValueException("cvc-enumeration-valid",
-                        new Object [] {content, sb.toString()});
-            }
+            checkEnumeration(ob, content, type, itemType);
         }
 
         //fractionDigits
@@ -1773,6 +1846,198 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
 
     }
 
+    /**
+     * check the length, minLength and maxLength facets
+     */
+    void checkLengthFacets(int length, String content) throws InvalidDatatypeValueException {
+
+        // maxLength
+        if ( (fFacetsDefined & FACET_MAXLENGTH) != 0 ) {
+            if ( length > fMaxLength ) {
+                throw new InvalidDatatypeValueException("cvc-maxLength-valid",
+                        new Object[]{content, Integer.toString(length), Integer.toString(fMaxLength), fTypeName});
+            }
+        }
+
+        //minLength
+        if ( (fFacetsDefined & FACET_MINLENGTH) != 0 ) {
+            if ( length < fMinLength ) {
+                throw new InvalidDatatypeValueException("cvc-minLength-valid",
+                        new Object[]{content, Integer.toString(length), Integer.toString(fMinLength), fTypeName});
+            }
+        }
+
+        //length
+        if ( (fFacetsDefined & FACET_LENGTH) != 0 ) {
+            if ( length != fLength ) {
+                throw new InvalidDatatypeValueException("cvc-length-valid",
+                        new Object[]{content, Integer.toString(length), Integer.toString(fLength), fTypeName});
+            }
+        }
+    }
+
+    /**
+     * check that a value is one of the values of the enumeration facet
+     */
+    void checkEnumeration(Object ob, String content, short type, ShortList itemType)
+        throws InvalidDatatypeValueException {
+        boolean present = false;
+        final short primitiveType1 = convertToPrimitiveKind(type);
+        if (fEnumerationIndex != null) {
+            // only the values equal to the actual value need to be compared
+            final int[] candidates = ob != null ? fEnumerationIndex.get(ob) : null;
+            if (candidates != null) {
+                for (int i = 0; i < candidates.length && !present; i++) {
+                    present = isEnumerationValue(fEnumeration[candidates[i]], ob, primitiveType1, itemType);
+                }
+            }
+        }
+        else {
+            final int enumSize = fEnumerationSize;
+            for (int i = 0; i < enumSize && !present; i++) {
+                present = isEnumerationValue(fEnumeration[i], ob, primitiveType1, itemType);
+            }
+        }
+        if(!present){
+            StringBuffer sb = new StringBuffer();
+            appendEnumString(sb);
+            throw new InvalidDatatypeValueException("cvc-enumeration-valid",
+                    new Object [] {content, sb.toString()});
+        }
+    }
+
+    // whether an actual value matches a value of the enumeration facet
+    private boolean isEnumerationValue(ValidatedInfo enumValue, Object ob,
+            short primitiveType1, ShortList itemType) {
+        final short primitiveType2 = convertToPrimitiveKind(enumValue.actualValueType);
+        if (!(primitiveType1 == primitiveType2 ||
+                primitiveType1 == XSConstants.ANYSIMPLETYPE_DT && primitiveType2 == XSConstants.STRING_DT ||
+                primitiveType1 == XSConstants.STRING_DT && primitiveType2 == XSConstants.ANYSIMPLETYPE_DT)
+                || !enumValue.actualValue.equals(ob)) {
+            return false;
+        }
+        if (primitiveType1 == XSConstants.LIST_DT || primitiveType1 == XSConstants.LISTOFUNION_DT) {
+            ShortList enumItemType = enumValue.itemValueTypes;
+            final int typeList1Length = itemType != null ? itemType.getLength() : 0;
+            final int typeList2Length = enumItemType != null ? enumItemType.getLength() : 0;
+            if (typeList1Length != typeList2Length) {
+                return false;
+            }
+            for (int j = 0; j < typeList1Length; ++j) {
+                final short primitiveItem1 = convertToPrimitiveKind(itemType.item(j));
+                final short primitiveItem2 = convertToPrimitiveKind(enumItemType.item(j));
+                if (primitiveItem1 != primitiveItem2) {
+                    if (primitiveItem1 == XSConstants.ANYSIMPLETYPE_DT && primitiveItem2 == XSConstants.STRING_DT ||
+                            primitiveItem1 == XSConstants.STRING_DT && primitiveItem2 == XSConstants.ANYSIMPLETYPE_DT) {
+                        continue;
+                    }
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the index of the enumeration values by actual value, or
+     * returns null if the enumeration is small or its values can't be
+     * hashed. The index is never modified once built, so it can be shared
+     * with derived types and across grammars.
+     */
+    private HashMap<Object, int[]> buildEnumerationIndex() {
+        if (fEnumerationSize < ENUMERATION_INDEX_THRESHOLD || !hasHashableValues()) {
+            return null;
+        }
+        HashMap<Object, int[]> index = new HashMap<Object, int[]>(fEnumerationSize * 4 / 3 + 1);
+        for (int i = 0; i < fEnumerationSize; i++) {
+            final Object value = fEnumeration[i].actualValue;
+            final int[] positions = index.get(value);
+            if (positions == null) {
+                index.put(value, new int[] {i});
+            }
+            else {
+                final int[] newPositions = new int[positions.length + 1];
+                System.arraycopy(positions, 0, newPositions, 0, positions.length);
+                newPositions[positions.length] = i;
+                index.put(value, newPositions);
+            }
+        }
+        return index;
+    }
+
+    // whether equal actual values of this type always have equal hash codes
+    private boolean hasHashableValues() {
+        if (fVariety == VARIETY_ATOMIC) {
+            return fDVHashableValues[fValidationDV];
+        }
+        else if (fVariety == VARIETY_LIST) {
+            return fItemType.hasHashableValues();
+        }
+        else if (fVariety == VARIETY_UNION) {
+            for (int i = 0; i < fMemberTypes.length; i++) {
+                if (!fMemberTypes[i].hasHashableValues()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * fill in the type information of a value validated without
+     * computing its actual value
+     */
+    void setValidatedInfo(ValidatedInfo validatedInfo) {
+        validatedInfo.actualValueType = fBuiltInKind;
+        validatedInfo.actualType = this;
+    }
+
+    /**
+     * the value of the whiteSpace facet; only meaningful for atomic types
+     */
+    short getWhiteSpaceFacet() {
+        return fWhiteSpace;
+    }
+
+    /**
+     * the length, in characters, of the longest value of the enumeration
+     * facet, or -1 if this type has no enumeration facet
+     */
+    int getMaxEnumerationLength() {
+        return (fFacetsDefined & FACET_ENUMERATION) != 0 ? fMaxEnumerationLength : -1;
+    }
+
+    // the length of the longest value of the enumeration
+    private int computeMaxEnumerationLength() {
+        int max = 0;
+        for (int i = 0; i < fEnumerationSize; i++) {
+            final String value = fEnumeration[i].stringValue();
+            if (value != null && value.length() > max) {
+                max = value.length();
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns a validator which checks element content against this type
+     * as it is received, or null if the complete value is needed, for
+     * instance to check pattern facets or the enumeration facet of
+     * non-string types.
+     */
+    public StreamingValidator getStreamingValidator() {
+        if (fVariety != VARIETY_ATOMIC || fPatternType != SPECIAL_PATTERN_NONE ||
+                (fFacetsDefined & FACET_PATTERN) != 0) {
+            return null;
+        }
+        // only string values are compared to the enumeration as characters
+        if ((fFacetsDefined & FACET_ENUMERATION) != 0 && fValidationDV != DV_STRING) {
+            return null;
+        }
+        return fDVs[fValidationDV].newStreamingValidator(this);
+    }
+
     private void checkExtraRules(ValidationContext context, ValidatedInfo validatedInfo) throws InvalidDatatypeValueException {
 
         Object ob = validatedInfo.actualValue;
@@ -2889,6 +3154,33 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
 
     private boolean fAnonymous = false;
 
+    //
+    // Serialization methods
+    //
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // the validators are not written, so only
+        // types using the shared ones can be restored
+        if (fDVs != gDVs) {
+            throw new NotSerializableException(getClass().getName());
+        }
+        out.defaultWriteObject();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        fDVs = gDVs;
+        if (fEnumeration != null) {
+            // the enumeration values may not be fully read yet,
+            // so the index is only built once the whole graph is read
+            in.registerValidation(new ObjectInputValidation() {
+                public void validateObject() {
+                    fEnumerationIndex = buildEnumerationIndex();
+                }
+            }, 0);
+        }
+    }
+
     /**
      * A wrapper of ValidationContext, to provide a way of switching to a
      * different Namespace declaration context.
@@ -2986,6 +3278,8 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         fPattern = null;
         fPatternStr = null;
         fEnumeration = null;
+        fEnumerationIndex = null;
+        fMaxEnumerationLength = 0;
         fLexicalPattern = null;
         fLexicalEnumeration = null;
         fActualEnumeration = null;
@@ -3014,7 +3308,86 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
 
         // REVISIT: reset for fundamental facets
     }
-    
+
+    /**
+     * Returns an estimate of the memory held by the pattern and enumeration
+     * facets of this type, in bytes. Facet objects already in the given map
+     * are not counted again, and the others are added to it.
+     */
+    public long getFacetFootprint(IdentityHashMap<Object, Object> counted) {
+        long size = 0;
+        if (fPattern != null && counted.put(fPattern, fPattern) == null) {
+            size += XSGrammarFootprint.objectSize(16) * 2 +
+                XSGrammarFootprint.arraySize(fPattern.size(), XSGrammarFootprint.REFERENCE) * 2;
+            for (int i = 0; i < fPatternStr.size(); i++) {
+                final String pattern = fPatternStr.elementAt(i);
+                // the compiled expression is counted as a few bytes per character
+                size += XSGrammarFootprint.stringSize(pattern) +
+                    XSGrammarFootprint.objectSize(48) + 32 * pattern.length();
+            }
+        }
+        if (fEnumeration != null && counted.put(fEnumeration, fEnumeration) == null) {
+            size += XSGrammarFootprint.arraySize(fEnumeration.length, XSGrammarFootprint.REFERENCE);
+            for (int i = 0; i < fEnumerationSize; i++) {
+                final ValidatedInfo info = fEnumeration[i];
+                size += XSGrammarFootprint.objectSize(28) + XSGrammarFootprint.stringSize(info.normalizedValue);
+                if (info.actualValue != info.normalizedValue) {
+                    size += XSGrammarFootprint.objectSize(16);
+                }
+            }
+        }
+        if (fEnumerationIndex != null && counted.put(fEnumerationIndex, fEnumerationIndex) == null) {
+            size += XSGrammarFootprint.objectSize(36) +
+                XSGrammarFootprint.arraySize(fEnumerationIndex.size() * 2, XSGrammarFootprint.REFERENCE) +
+                fEnumerationIndex.size() * (XSGrammarFootprint.objectSize(20) + XSGrammarFootprint.arraySize(1, 4));
+        }
+        return size;
+    }
+
+    /**
+     * Makes this type use the pattern facet objects of a type with the same
+     * patterns found in the given map, or adds this type to the map if there
+     * is none. Used when schema grammars are compacted.
+     */
+    public void sharePatterns(Map<Vector<String>, XSSimpleTypeDecl> patterns) {
+        if (fIsImmutable || fPatternStr == null) {
+            return;
+        }
+        final XSSimpleTypeDecl type = patterns.get(fPatternStr);
+        if (type == null) {
+            patterns.put(fPatternStr, this);
+        }
+        else if (type.fPattern != fPattern) {
+            fPattern = type.fPattern;
+            fPatternStr = type.fPatternStr;
+            fLexicalPattern = null;
+        }
+    }
+
+    /**
+     * Discards the annotations of this type and of its facets. Used when
+     * schema grammars are compacted.
+     */
+    public void discardAnnotations() {
+        if (fIsImmutable) return;
+        lengthAnnotation = null;
+        minLengthAnnotation = null;
+        maxLengthAnnotation = null;
+        whiteSpaceAnnotation = null;
+        totalDigitsAnnotation = null;
+        fractionDigitsAnnotation = null;
+        patternAnnotations = null;
+        enumerationAnnotations = null;
+        maxInclusiveAnnotation = null;
+        maxExclusiveAnnotation = null;
+        minInclusiveAnnotation = null;
+        minExclusiveAnnotation = null;
+        fAnnotations = null;
+        // the facet lists are rebuilt, without annotations, when needed
+        fFacets = null;
+        fMultiValueFacets = null;
+    }
+
     /**
      * @see org.apache.xerces.xs.XSObject#getNamespaceItem()
      */
@@ -3486,5 +3859,69 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         }
         sb.append(']');
     }
+    /**
+     * The values of the facets of a restriction, without the type itself,
+     * its annotations or its namespace item, so that keeping them does not
+     * keep the grammar of the type.
+     */
+    public static final class SharedFacets {
+
+        final short fPresentFacet;
+        final short fFacetsDefined;
+        final short fFixedFacet;
+        final short fWhiteSpace;
+        final int fLength;
+        final int fMinLength;
+        final int fMaxLength;
+        final int fTotalDigits;
+        final int fFractionDigits;
+        final Vector<RegularExpression> fPattern;
+        final Vector<String> fPatternStr;
+        final ValidatedInfo[] fEnumeration;
+        final int fEnumerationSize;
+        final HashMap<Object, int[]> fEnumerationIndex;
+        final int fMaxEnumerationLength;
+        // the annotations of the enumeration values, all null
+        final XSObjectList enumerationAnnotations;
+        final Object fMaxInclusive;
+        final Object fMaxExclusive;
+        final Object fMinExclusive;
+        final Object fMinInclusive;
+        final short fPatternType;
+        final short fOrdered;
+        final boolean fNumeric;
+        final boolean fBounded;
+        final boolean fFinite;
+
+        SharedFacets(XSSimpleTypeDecl type, short presentFacet) {
+            fPresentFacet = presentFacet;
+            fFacetsDefined = type.fFacetsDefined;
+            fFixedFacet = type.fFixedFacet;
+            fWhiteSpace = type.fWhiteSpace;
+            fLength = type.fLength;
+            fMinLength = type.fMinLength;
+            fMaxLength = type.fMaxLength;
+            fTotalDigits = type.fTotalDigits;
+            fFractionDigits = type.fFractionDigits;
+            fPattern = type.fPattern;
+            fPatternStr = type.fPatternStr;
+            fEnumeration = type.fEnumeration;
+            fEnumerationSize = type.fEnumerationSize;
+            fEnumerationIndex = type.fEnumerationIndex;
+            fMaxEnumerationLength = type.fMaxEnumerationLength;
+            enumerationAnnotations = (presentFacet & FACET_ENUMERATION) != 0 ?
+                    type.enumerationAnnotations : null;
+            fMaxInclusive = type.fMaxInclusive;
+            fMaxExclusive = type.fMaxExclusive;
+            fMinExclusive = type.fMinExclusive;
+            fMinInclusive = type.fMinInclusive;
+            fPatternType = type.fPatternType;
+            fOrdered = type.fOrdered;
+            fNumeric = type.fNumeric;
+            fBounded = type.fBounded;
+            fFinite = type.fFinite;
+        }
+    }
+
 } // class XSSimpleTypeDecl
 
@@ -36,6 +36,9 @@ import org.apache.xerces.impl.dv.ValidationContext;
 
 public class YearDV extends AbstractDateTimeDV {
 
+    /** Serialization version. */
+    private static final long serialVersionUID = -3596769150606323223L;
+
     /**
      * Convert a string to a compiled form
      *
@@ -35,6 +35,9 @@ import org.apache.xerces.impl.dv.ValidationContext;
  * @version $Id$
  */
 class YearMonthDurationDV extends DurationDV {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 5447239256058652374L;
     
     public Object getActualValue(String content, ValidationContext context)
         throws InvalidDatatypeValueException {
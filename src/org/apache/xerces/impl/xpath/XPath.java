@@ -20,6 +20,7 @@ package org.apache.xerces.impl.xpath;
 import java.util.ArrayList;
 import java.util.Vector;
 
+import org.apache.xerces.util.NamespaceSupport;
 import org.apache.xerces.util.SymbolTable;
 import org.apache.xerces.util.XMLChar;
 import org.apache.xerces.util.XMLSymbols;
@@ -96,6 +97,56 @@ public class XPath {
         return (LocationPath)fLocationPaths[0].clone();
     } // getLocationPath(LocationPath)
 
+    /** Returns the expression this XPath was built from. */
+    public String getExpression() {
+        return fExpression;
+    } // getExpression():String
+
+    /**
+     * Returns the prefixes used by the name tests of this XPath, each
+     * followed by the namespace it is bound to. Together with the
+     * expression, they are enough to build the same XPath again.
+     *
+     * @see #createNamespaceContext(String[],SymbolTable)
+     */
+    public String[] getNamespaceBindings() {
+        ArrayList<String> bindings = new ArrayList<String>();
+        for (int i = 0; i < fLocationPaths.length; i++) {
+            Step[] steps = fLocationPaths[i].steps;
+            for (int j = 0; j < steps.length; j++) {
+                QName name = steps[j].nodeTest.name;
+                if (name.prefix == null || name.prefix == XMLSymbols.EMPTY_STRING) {
+                    continue;
+                }
+                int k = 0;
+                while (k < bindings.size() && bindings.get(k) != name.prefix) {
+                    k += 2;
+                }
+                if (k == bindings.size()) {
+                    bindings.add(name.prefix);
+                    bindings.add(name.uri);
+                }
+            }
+        }
+        return bindings.toArray(new String[bindings.size()]);
+    } // getNamespaceBindings():String[]
+
+    /**
+     * Creates a namespace context in which the prefixes returned by
+     * {@link #getNamespaceBindings()} are bound again. The prefixes and
+     * namespaces are added to the given symbol table.
+     */
+    public static NamespaceContext createNamespaceContext(String[] bindings,
+                                                          SymbolTable symbolTable) {
+        NamespaceSupport context = new NamespaceSupport();
+        context.reset();
+        for (int i = 0; i + 1 < bindings.length; i += 2) {
+            context.declarePrefix(symbolTable.addSymbol(bindings[i]),
+                                  symbolTable.addSymbol(bindings[i + 1]));
+        }
+        return context;
+    } // createNamespaceContext(String[],SymbolTable):NamespaceContext
+
     //
     // Object methods
     //
@@ -856,7 +907,7 @@ public class XPath {
 
         private SymbolTable fSymbolTable;
 
-        // REVISIT: Code something better here. -Ac
+        /** Maps the token strings to their token numbers. */
         private java.util.Hashtable<String, Integer> fSymbolMapping = new java.util.Hashtable<String, Integer>();
 
         // REVISIT: Code something better here. -Ac
@@ -873,16 +924,6 @@ public class XPath {
 
         public Tokens(SymbolTable symbolTable) {
             fSymbolTable = symbolTable;
-            final String[] symbols = {
-                "ancestor",     "ancestor-or-self",     "attribute",
-                "child",        "descendant",           "descendant-or-self",
-                "following",    "following-sibling",    "namespace",
-                "parent",       "preceding",            "preceding-sibling",
-                "self",
-            };
-            for (int i = 0; i < symbols.length; i++) {
-                fSymbolMapping.put(fSymbolTable.addSymbol(symbols[i]), new Integer(i));
-            }
             fTokenNames.put(new Integer(EXPRTOKEN_OPEN_PAREN), "EXPRTOKEN_OPEN_PAREN");
             fTokenNames.put(new Integer(EXPRTOKEN_CLOSE_PAREN), "EXPRTOKEN_CLOSE_PAREN");
             fTokenNames.put(new Integer(EXPRTOKEN_OPEN_BRACKET), "EXPRTOKEN_OPEN_BRACKET");
@@ -948,9 +989,14 @@ public class XPath {
             return fTokenNames.get(new Integer(token));
         }
 
-        @SuppressWarnings("unused")
         public void addToken(String tokenStr) {
-          Integer      tokenInt = new Integer(fTokenNames.size());
+            Integer tokenInt = fSymbolMapping.get(tokenStr);
+            if (tokenInt == null) {
+                tokenInt = new Integer(fTokenNames.size());
+                fTokenNames.put(tokenInt, tokenStr);
+                fSymbolMapping.put(tokenStr, tokenInt);
+            }
+            addToken(tokenInt.intValue());
         }
 
         public void addToken(int token) {
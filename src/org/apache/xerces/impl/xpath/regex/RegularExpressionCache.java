@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xpath.regex;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A cache of compiled regular expressions, keyed by expression and
+ * options, shared by all the users in the virtual machine. It holds the
+ * most recently used expressions, up to a maximum number.
+ * <p>
+ * The expressions returned are shared, so they must only be used for
+ * matching, never modified with <code>setPattern</code>. Matching is
+ * thread-safe. Expressions that can't be parsed are not cached, so the
+ * parse error is reported in the locale of each caller.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public final class RegularExpressionCache {
+
+    /** Maximum number of expressions kept. */
+    private static final int MAX_SIZE = 1024;
+
+    private static final LinkedHashMap<String, RegularExpression> fCache =
+        new LinkedHashMap<String, RegularExpression>(64, 0.75f, true) {
+            private static final long serialVersionUID = 6395431127839237016L;
+            protected boolean removeEldestEntry(Map.Entry<String, RegularExpression> eldest) {
+                return size() > MAX_SIZE;
+            }
+        };
+
+    private static long fHitCount = 0;
+    private static long fMissCount = 0;
+
+    private RegularExpressionCache() {}
+
+    /**
+     * Returns the compiled form of a regular expression with the given
+     * options, from the cache if it was compiled before.
+     *
+     * @param regex   a regular expression
+     * @param options a String consisted of "i" "m" "s" "u" "w" "," "X"
+     * @param locale  the locale of the parse error messages
+     * @exception ParseException <VAR>regex</VAR> is not conforming to the syntax.
+     */
+    public static RegularExpression getRegularExpression(String regex, String options, Locale locale)
+    throws ParseException {
+        // the options never contain '/', so the key can't be ambiguous
+        final String key = options != null ? options + '/' + regex : "/" + regex;
+        synchronized (fCache) {
+            final RegularExpression expression = fCache.get(key);
+            if (expression != null) {
+                fHitCount++;
+                return expression;
+            }
+            fMissCount++;
+        }
+        // compiled outside of the lock; if another thread compiles the same
+        // expression meanwhile, one of the two copies is kept
+        final RegularExpression expression = new RegularExpression(regex, options, locale);
+        synchronized (fCache) {
+            fCache.put(key, expression);
+        }
+        return expression;
+    }
+
+    /** Returns the number of requests served from the cache. */
+    public static long getHitCount() {
+        synchronized (fCache) {
+            return fHitCount;
+        }
+    }
+
+    /** Returns the number of requests that compiled an expression. */
+    public static long getMissCount() {
+        synchronized (fCache) {
+            return fMissCount;
+        }
+    }
+
+    /** Returns the number of expressions in the cache. */
+    public static int getSize() {
+        synchronized (fCache) {
+            return fCache.size();
+        }
+    }
+
+    /** Removes all the expressions and resets the statistics. */
+    public static void clear() {
+        synchronized (fCache) {
+            fCache.clear();
+            fHitCount = 0;
+            fMissCount = 0;
+        }
+    }
+
+} // class RegularExpressionCache
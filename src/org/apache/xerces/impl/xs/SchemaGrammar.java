@@ -17,7 +17,11 @@
 
 package org.apache.xerces.impl.xs;
 
+import java.io.Serializable;
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Vector;
 
 import org.apache.xerces.impl.Constants;
@@ -52,7 +56,9 @@ import org.apache.xerces.xs.XSModelGroupDefinition;
 import org.apache.xerces.xs.XSNamedMap;
 import org.apache.xerces.xs.XSNamespaceItem;
 import org.apache.xerces.xs.XSNotationDeclaration;
+import org.apache.xerces.xs.XSObject;
 import org.apache.xerces.xs.XSObjectList;
+import org.apache.xerces.xs.XSTerm;
 import org.apache.xerces.xs.XSTypeDefinition;
 import org.apache.xerces.xs.XSWildcard;
 import org.apache.xerces.xs.datatypes.ObjectList;
@@ -75,7 +81,10 @@ import org.xml.sax.SAXException;
  * @version $Id$
  */
 
-public class SchemaGrammar implements XSGrammar, XSNamespaceItem {
+public class SchemaGrammar implements XSGrammar, XSNamespaceItem, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = -1215721751361559402L;
 
     // the target namespace of grammar
     String fTargetNamespace;
@@ -114,10 +123,10 @@ public class SchemaGrammar implements XSGrammar, XSNamespaceItem {
     int fNumAnnotations;
 
     // symbol table for constructing parsers (annotation support)
-    private SymbolTable fSymbolTable = null;
+    private transient SymbolTable fSymbolTable = null;
     // parsers for annotation support
-    private SoftReference<SAXParser> fSAXParser = null;
-    private SoftReference<DOMParser> fDOMParser = null;
+    private transient SoftReference<SAXParser> fSAXParser = null;
+    private transient SoftReference<DOMParser> fDOMParser = null;
     
     // is this grammar immutable?  (fully constructed and not changeable)
     private boolean fIsImmutable = false;
@@ -266,6 +275,9 @@ public class SchemaGrammar implements XSGrammar, XSNamespaceItem {
     // are immutable.
     public static class BuiltinSchemaGrammar extends SchemaGrammar {
 
+        /** Serialization version. */
+        private static final long serialVersionUID = -2900714669103275294L;
+
         private static final String EXTENDED_SCHEMA_FACTORY_CLASS = "org.apache.xerces.impl.dv.xs.ExtendedSchemaDVFactoryImpl";
 
         /**
@@ -466,6 +478,9 @@ public class SchemaGrammar implements XSGrammar, XSNamespaceItem {
         public synchronized void addDocument(Object document, String location) {
             // ignore
         }
+        public synchronized void compact(boolean discardMetadata) {
+            // ignore
+        }
 
         // annotation support
         synchronized DOMParser getDOMParser() {
@@ -484,6 +499,9 @@ public class SchemaGrammar implements XSGrammar, XSNamespaceItem {
      * @author Michael Glavassevich, IBM
      */
     public static final class Schema4Annotations extends SchemaGrammar {
+
+        /** Serialization version. */
+        private static final long serialVersionUID = -3166618959326981225L;
         
         /**
          * Singleton instance.
@@ -717,6 +735,9 @@ public class SchemaGrammar implements XSGrammar, XSNamespaceItem {
         public synchronized void addDocument(Object document, String location) {
             // ignore
         }
+        public synchronized void compact(boolean discardMetadata) {
+            // ignore
+        }
 
         // annotation support
         synchronized DOMParser getDOMParser() {
@@ -1173,6 +1194,10 @@ public class SchemaGrammar implements XSGrammar, XSNamespaceItem {
     // we need direct access to these two types
     public final static XSComplexTypeDecl fAnyType = new XSAnyType();
     private static class XSAnyType extends XSComplexTypeDecl {
+
+        /** Serialization version. */
+        private static final long serialVersionUID = -2697506547255388663L;
+
         public XSAnyType () {
             fName = SchemaSymbols.ATTVAL_ANYTYPE;
             super.fTargetNamespace = SchemaSymbols.URI_SCHEMAFORSCHEMA;
@@ -1256,6 +1281,10 @@ public class SchemaGrammar implements XSGrammar, XSNamespaceItem {
         }
     }
     private static class BuiltinAttrDecl extends XSAttributeDecl {
+
+        /** Serialization version. */
+        private static final long serialVersionUID = 1219178853528301119L;
+
         public BuiltinAttrDecl(String name, String tns, 
                 XSSimpleType type, short scope) {
             fName = name;
@@ -1351,8 +1380,8 @@ public class SchemaGrammar implements XSGrammar, XSNamespaceItem {
                                                  };
                                                  
     // store a certain kind of components from all namespaces
-    private XSNamedMap[] fComponents = null;
-    private ObjectList[] fComponentsExt = null;
+    private transient XSNamedMap[] fComponents = null;
+    private transient ObjectList[] fComponentsExt = null;
 
     // store the documents and their locations contributing to this namespace
     // REVISIT: use StringList and XSObjectList for there fields.
@@ -1456,32 +1485,7 @@ public class SchemaGrammar implements XSGrammar, XSNamespaceItem {
 
         // get the hashtable for this type of components
         if (fComponents[objectType] == null) {
-            SymbolHash table = null;
-            switch (objectType) {
-            case XSConstants.TYPE_DEFINITION:
-            case XSTypeDefinition.COMPLEX_TYPE:
-            case XSTypeDefinition.SIMPLE_TYPE:
-                table = fGlobalTypeDecls;
-                break;
-            case XSConstants.ATTRIBUTE_DECLARATION:
-                table = fGlobalAttrDecls;
-                break;
-            case XSConstants.ELEMENT_DECLARATION:
-                table = fGlobalElemDecls;
-                break;
-            case XSConstants.ATTRIBUTE_GROUP:
-                table = fGlobalAttrGrpDecls;
-                break;
-            case XSConstants.MODEL_GROUP_DEFINITION:
-                table = fGlobalGroupDecls;
-                break;
-            case XSConstants.NOTATION_DECLARATION:
-                table = fGlobalNotationDecls;
-                break;
-            case XSConstants.IDENTITY_CONSTRAINT:
-                table = this.fGlobalIDConstraintDecls;
-                break;
-            }
+            SymbolHash table = getComponentTable(objectType, false);
 
             // for complex/simple types, create a special implementation,
             // which take specific types out of the hash table
@@ -1508,32 +1512,7 @@ public class SchemaGrammar implements XSGrammar, XSNamespaceItem {
 
         // get the hashtable for this type of components
         if (fComponentsExt[objectType] == null) {
-            SymbolHash table = null;
-            switch (objectType) {
-            case XSConstants.TYPE_DEFINITION:
-            case XSTypeDefinition.COMPLEX_TYPE:
-            case XSTypeDefinition.SIMPLE_TYPE:
-                table = fGlobalTypeDeclsExt;
-                break;
-            case XSConstants.ATTRIBUTE_DECLARATION:
-                table = fGlobalAttrDeclsExt;
-                break;
-            case XSConstants.ELEMENT_DECLARATION:
-                table = fGlobalElemDeclsExt;
-                break;
-            case XSConstants.ATTRIBUTE_GROUP:
-                table = fGlobalAttrGrpDeclsExt;
-                break;
-            case XSConstants.MODEL_GROUP_DEFINITION:
-                table = fGlobalGroupDeclsExt;
-                break;
-            case XSConstants.NOTATION_DECLARATION:
-                table = fGlobalNotationDeclsExt;
-                break;
-            case XSConstants.IDENTITY_CONSTRAINT:
-                table = this.fGlobalIDConstraintDeclsExt;
-                break;
-            }
+            SymbolHash table = getComponentTable(objectType, true);
 
             Object[] entries = table.getEntries();
             fComponentsExt[objectType] = new ObjectListImpl(entries, entries.length);
@@ -1542,6 +1521,30 @@ public class SchemaGrammar implements XSGrammar, XSNamespaceItem {
         return fComponentsExt[objectType];
     }
 
+    // returns the table of the global components of the given type, by
+    // name or by location and name
+    private SymbolHash getComponentTable(short objectType, boolean ext) {
+        switch (objectType) {
+        case XSConstants.TYPE_DEFINITION:
+        case XSTypeDefinition.COMPLEX_TYPE:
+        case XSTypeDefinition.SIMPLE_TYPE:
+            return ext ? fGlobalTypeDeclsExt : fGlobalTypeDecls;
+        case XSConstants.ATTRIBUTE_DECLARATION:
+            return ext ? fGlobalAttrDeclsExt : fGlobalAttrDecls;
+        case XSConstants.ELEMENT_DECLARATION:
+            return ext ? fGlobalElemDeclsExt : fGlobalElemDecls;
+        case XSConstants.ATTRIBUTE_GROUP:
+            return ext ? fGlobalAttrGrpDeclsExt : fGlobalAttrGrpDecls;
+        case XSConstants.MODEL_GROUP_DEFINITION:
+            return ext ? fGlobalGroupDeclsExt : fGlobalGroupDecls;
+        case XSConstants.NOTATION_DECLARATION:
+            return ext ? fGlobalNotationDeclsExt : fGlobalNotationDecls;
+        case XSConstants.IDENTITY_CONSTRAINT:
+            return ext ? fGlobalIDConstraintDeclsExt : fGlobalIDConstraintDecls;
+        }
+        return null;
+    }
+
     public synchronized void resetComponents() {
         fComponents = null;
         fComponentsExt = null;
@@ -1680,6 +1683,426 @@ public class SchemaGrammar implements XSGrammar, XSNamespaceItem {
         fAnnotations[fNumAnnotations++] = annotation;
     }
     
+    /**
+     * Returns an estimate of the memory held by this grammar, broken down
+     * by category.
+     */
+    public synchronized XSGrammarFootprint getFootprint() {
+        final XSGrammarFootprint footprint = new XSGrammarFootprint();
+        final SymbolHash[] tables = {fGlobalAttrDecls, fGlobalAttrGrpDecls,
+                fGlobalElemDecls, fGlobalGroupDecls, fGlobalNotationDecls,
+                fGlobalIDConstraintDecls, fGlobalTypeDecls, fAllGlobalElemDecls};
+        for (int i = 0; i < tables.length; i++) {
+            footprint.add(XSGrammarFootprint.CATEGORY_SYMBOL_TABLES, getTableFootprint(tables[i]));
+        }
+        final SymbolHash[] extTables = {fGlobalAttrDeclsExt, fGlobalAttrGrpDeclsExt,
+                fGlobalElemDeclsExt, fGlobalGroupDeclsExt, fGlobalNotationDeclsExt,
+                fGlobalIDConstraintDeclsExt, fGlobalTypeDeclsExt};
+        for (int i = 0; i < extTables.length; i++) {
+            // the keys of these tables are built from the location and the name
+            footprint.add(XSGrammarFootprint.CATEGORY_LOCATIONS, getTableFootprint(extTables[i]));
+            final Object[] entries = extTables[i].getEntries();
+            for (int j = 0; j < entries.length; j += 2) {
+                footprint.add(XSGrammarFootprint.CATEGORY_LOCATIONS, XSGrammarFootprint.stringSize((String) entries[j]));
+            }
+        }
+        if (fLocations != null) {
+            footprint.add(XSGrammarFootprint.CATEGORY_LOCATIONS, 2 * getVectorFootprint(fLocations));
+            for (int i = 0; i < fLocations.size(); i++) {
+                footprint.add(XSGrammarFootprint.CATEGORY_LOCATIONS, XSGrammarFootprint.stringSize(fLocations.elementAt(i)));
+            }
+        }
+        if (fComponents != null) {
+            for (int i = 0; i < fComponents.length; i++) {
+                if (fComponents[i] != null) {
+                    // counted as if the list of components had been built
+                    footprint.add(XSGrammarFootprint.CATEGORY_COMPONENT_CACHES, XSGrammarFootprint.objectSize(20) +
+                            XSGrammarFootprint.arraySize(getComponentTable((short) i, false).getLength(),
+                                    XSGrammarFootprint.REFERENCE));
+                }
+            }
+        }
+        if (fComponentsExt != null) {
+            for (int i = 0; i < fComponentsExt.length; i++) {
+                if (fComponentsExt[i] != null) {
+                    footprint.add(XSGrammarFootprint.CATEGORY_COMPONENT_CACHES, XSGrammarFootprint.objectSize(8) +
+                            XSGrammarFootprint.arraySize(fComponentsExt[i].getLength(), XSGrammarFootprint.REFERENCE));
+                }
+            }
+        }
+        footprint.add(XSGrammarFootprint.CATEGORY_CONSTRAINT_CHECKING,
+                XSGrammarFootprint.arraySize(fComplexTypeDecls.length, XSGrammarFootprint.REFERENCE) +
+                XSGrammarFootprint.arraySize(fCTLocators.length, XSGrammarFootprint.REFERENCE) +
+                XSGrammarFootprint.arraySize(fRedefinedGroupDecls.length, XSGrammarFootprint.REFERENCE) +
+                XSGrammarFootprint.arraySize(fRGLocators.length, XSGrammarFootprint.REFERENCE) +
+                XSGrammarFootprint.arraySize(fSubGroups.length, XSGrammarFootprint.REFERENCE) +
+                (fCTCount + fRGCount / 2) * XSGrammarFootprint.objectSize(24));
+
+        final IdentityHashMap<Object, Object> counted = new IdentityHashMap<Object, Object>();
+        footprint.add(XSGrammarFootprint.CATEGORY_ANNOTATIONS,
+                getAnnotationsFootprint(getAnnotations(), counted));
+        final ArrayList<XSObject> components = getAllComponents();
+        for (int i = 0; i < components.size(); i++) {
+            final XSObject component = components.get(i);
+            footprint.addComponent();
+            footprint.add(XSGrammarFootprint.CATEGORY_ANNOTATIONS,
+                    getAnnotationsFootprint(getAnnotations(component), counted));
+            switch (component.getType()) {
+            case XSConstants.TYPE_DEFINITION:
+                if (component instanceof XSComplexTypeDecl) {
+                    final XSComplexTypeDecl type = (XSComplexTypeDecl) component;
+                    if (type.fCMValidator != null) {
+                        footprint.add(XSGrammarFootprint.CATEGORY_CONTENT_MODELS, type.fCMValidator.getFootprint());
+                    }
+                    if (type.fUPACMValidator != null && type.fUPACMValidator != type.fCMValidator) {
+                        footprint.add(XSGrammarFootprint.CATEGORY_CONTENT_MODELS, type.fUPACMValidator.getFootprint());
+                    }
+                    if (type.fAttrGrp != null) {
+                        footprint.add(XSGrammarFootprint.CATEGORY_COMPONENT_ARRAYS, XSGrammarFootprint.arraySize(
+                                type.fAttrGrp.fAttributeUses.length, XSGrammarFootprint.REFERENCE));
+                    }
+                }
+                else if (component instanceof XSSimpleTypeDecl) {
+                    footprint.add(XSGrammarFootprint.CATEGORY_FACETS,
+                            ((XSSimpleTypeDecl) component).getFacetFootprint(counted));
+                }
+                break;
+            case XSConstants.ELEMENT_DECLARATION:
+                footprint.add(XSGrammarFootprint.CATEGORY_COMPONENT_ARRAYS, XSGrammarFootprint.arraySize(
+                        ((XSElementDecl) component).fIDConstraints.length, XSGrammarFootprint.REFERENCE));
+                break;
+            case XSConstants.ATTRIBUTE_GROUP:
+                footprint.add(XSGrammarFootprint.CATEGORY_COMPONENT_ARRAYS, XSGrammarFootprint.arraySize(
+                        ((XSAttributeGroupDecl) component).fAttributeUses.length, XSGrammarFootprint.REFERENCE));
+                break;
+            case XSConstants.MODEL_GROUP:
+                final XSModelGroupImpl group = (XSModelGroupImpl) component;
+                if (group.fParticles != null) {
+                    footprint.add(XSGrammarFootprint.CATEGORY_COMPONENT_ARRAYS, XSGrammarFootprint.arraySize(
+                            group.fParticles.length, XSGrammarFootprint.REFERENCE));
+                }
+                break;
+            }
+        }
+        return footprint;
+    }
+
+    /**
+     * Reduces the memory held by this grammar, once no more components are
+     * expected to be added to it: the hash tables and arrays are trimmed to
+     * their sizes, the component lists cached for the XSModel API are
+     * dropped, and simple types with the same patterns share the compiled
+     * expressions.
+     * <p>
+     * If <code>discardMetadata</code> is <code>true</code>, the annotations
+     * of the schema and of its components are discarded, as well as the
+     * locations of the schema documents, so that the components can no
+     * longer be looked up by location and the documents already read are
+     * no longer known when the namespace grows. XMLSchemaLoader therefore
+     * keeps the metadata when namespace growth or tolerate duplicates is
+     * enabled.
+     *
+     * @param discardMetadata whether annotations and document locations
+     *                        are discarded
+     */
+    public synchronized void compact(boolean discardMetadata) {
+        final SymbolHash[] tables = {fGlobalAttrDecls, fGlobalAttrGrpDecls,
+                fGlobalElemDecls, fGlobalGroupDecls, fGlobalNotationDecls,
+                fGlobalIDConstraintDecls, fGlobalTypeDecls, fAllGlobalElemDecls};
+        for (int i = 0; i < tables.length; i++) {
+            // the type table of the schema for schemas starts as a clone
+            // of the built-in types, which is trimmed as well
+            tables[i].trimToSize();
+        }
+        if (discardMetadata) {
+            fGlobalAttrDeclsExt = new SymbolHash(1);
+            fGlobalAttrGrpDeclsExt = new SymbolHash(1);
+            fGlobalElemDeclsExt = new SymbolHash(1);
+            fGlobalGroupDeclsExt = new SymbolHash(1);
+            fGlobalNotationDeclsExt = new SymbolHash(1);
+            fGlobalIDConstraintDeclsExt = new SymbolHash(1);
+            fGlobalTypeDeclsExt = new SymbolHash(1);
+            fDocuments = null;
+            fLocations = null;
+            if (fGrammarDescription != null) {
+                fGrammarDescription.fLocationHints = null;
+                fGrammarDescription.fTriggeringComponent = null;
+                fGrammarDescription.fEnclosedElementName = null;
+                fGrammarDescription.fAttributes = null;
+            }
+            fAnnotations = null;
+            fNumAnnotations = 0;
+        }
+        else {
+            final SymbolHash[] extTables = {fGlobalAttrDeclsExt, fGlobalAttrGrpDeclsExt,
+                    fGlobalElemDeclsExt, fGlobalGroupDeclsExt, fGlobalNotationDeclsExt,
+                    fGlobalIDConstraintDeclsExt, fGlobalTypeDeclsExt};
+            for (int i = 0; i < extTables.length; i++) {
+                extTables[i].trimToSize();
+            }
+            if (fDocuments != null) {
+                fDocuments.trimToSize();
+                fLocations.trimToSize();
+            }
+            if (fAnnotations != null && fNumAnnotations < fAnnotations.length) {
+                XSAnnotationImpl[] annotations = new XSAnnotationImpl[fNumAnnotations];
+                System.arraycopy(fAnnotations, 0, annotations, 0, fNumAnnotations);
+                fAnnotations = annotations;
+            }
+        }
+        resetComponents();
+        if (fImported != null) {
+            fImported.trimToSize();
+        }
+        getUncheckedComplexTypeDecls();
+        getRedefinedGroupDecls();
+        getSubstitutionGroups();
+
+        final HashMap<Vector<String>, XSSimpleTypeDecl> patterns = new HashMap<Vector<String>, XSSimpleTypeDecl>();
+        final ArrayList<XSObject> components = getAllComponents();
+        for (int i = 0; i < components.size(); i++) {
+            final XSObject component = components.get(i);
+            switch (component.getType()) {
+            case XSConstants.TYPE_DEFINITION:
+                if (component instanceof XSComplexTypeDecl) {
+                    final XSComplexTypeDecl type = (XSComplexTypeDecl) component;
+                    if (type.fAttrGrp != null) {
+                        type.fAttrGrp.trimToSize();
+                    }
+                    if (discardMetadata) {
+                        type.fAnnotations = null;
+                    }
+                }
+                else if (component instanceof XSSimpleTypeDecl) {
+                    final XSSimpleTypeDecl type = (XSSimpleTypeDecl) component;
+                    type.sharePatterns(patterns);
+                    if (discardMetadata) {
+                        type.discardAnnotations();
+                    }
+                }
+                break;
+            case XSConstants.ELEMENT_DECLARATION:
+                final XSElementDecl element = (XSElementDecl) component;
+                element.trimToSize();
+                if (discardMetadata) {
+                    element.fAnnotations = null;
+                }
+                break;
+            case XSConstants.ATTRIBUTE_GROUP:
+                final XSAttributeGroupDecl attrGroup = (XSAttributeGroupDecl) component;
+                attrGroup.trimToSize();
+                if (discardMetadata) {
+                    attrGroup.fAnnotations = null;
+                }
+                break;
+            default:
+                if (discardMetadata) {
+                    discardAnnotations(component);
+                }
+            }
+        }
+    }
+
+    // returns the components of this grammar, global and local; components
+    // of other grammars, such as global components referred to and built-in
+    // types, are not included
+    private ArrayList<XSObject> getAllComponents() {
+        final ArrayList<XSObject> components = new ArrayList<XSObject>();
+        final IdentityHashMap<Object, Object> visited = new IdentityHashMap<Object, Object>();
+        final SymbolHash[] tables = {fGlobalAttrDecls, fGlobalAttrGrpDecls,
+                fGlobalElemDecls, fGlobalGroupDecls, fGlobalNotationDecls,
+                fGlobalIDConstraintDecls, fGlobalTypeDecls};
+        for (int i = 0; i < tables.length; i++) {
+            final Object[] values = new Object[tables[i].getLength()];
+            tables[i].getValues(values, 0);
+            for (int j = 0; j < values.length; j++) {
+                final XSObject component = (XSObject) values[j];
+                // the schema for schemas also holds the built-in types
+                if (component.getNamespaceItem() == this ||
+                        component.getType() == XSConstants.IDENTITY_CONSTRAINT) {
+                    addComponent(component, components, visited);
+                }
+            }
+        }
+        // add the local components of each component, in turn
+        for (int i = 0; i < components.size(); i++) {
+            final XSObject component = components.get(i);
+            switch (component.getType()) {
+            case XSConstants.TYPE_DEFINITION:
+                if (component instanceof XSComplexTypeDecl) {
+                    final XSComplexTypeDecl type = (XSComplexTypeDecl) component;
+                    if (type.fAttrGrp != null) {
+                        addAttributeGroup(type.fAttrGrp, components, visited);
+                    }
+                    addAnonymousType(type.fXSSimpleType, components, visited);
+                    addComponent(type.fParticle, components, visited);
+                }
+                else if (component instanceof XSSimpleTypeDecl) {
+                    final XSSimpleTypeDecl type = (XSSimpleTypeDecl) component;
+                    addAnonymousType(type.getBaseType(), components, visited);
+                    addAnonymousType(type.getItemType(), components, visited);
+                    final XSObjectList members = type.getMemberTypes();
+                    for (int j = 0; j < members.getLength(); j++) {
+                        addAnonymousType((XSTypeDefinition) members.item(j), components, visited);
+                    }
+                }
+                break;
+            case XSConstants.ELEMENT_DECLARATION:
+                final XSElementDecl element = (XSElementDecl) component;
+                addAnonymousType(element.fType, components, visited);
+                for (int j = 0; j < element.fIDCPos; j++) {
+                    addComponent(element.fIDConstraints[j], components, visited);
+                }
+                break;
+            case XSConstants.ATTRIBUTE_DECLARATION:
+                addAnonymousType(((XSAttributeDecl) component).fType, components, visited);
+                break;
+            case XSConstants.ATTRIBUTE_USE:
+                final XSAttributeDecl attribute = ((XSAttributeUseImpl) component).fAttrDecl;
+                if (attribute.getScope() != XSConstants.SCOPE_GLOBAL) {
+                    addComponent(attribute, components, visited);
+                }
+                break;
+            case XSConstants.ATTRIBUTE_GROUP:
+                addAttributeGroup((XSAttributeGroupDecl) component, components, visited);
+                break;
+            case XSConstants.MODEL_GROUP_DEFINITION:
+                addComponent(((XSGroupDecl) component).fModelGroup, components, visited);
+                break;
+            case XSConstants.MODEL_GROUP:
+                // model groups of group definitions of other grammars are
+                // reached through the particles referring to them as well
+                final XSModelGroupImpl group = (XSModelGroupImpl) component;
+                for (int j = 0; j < group.fParticleCount; j++) {
+                    addComponent(group.fParticles[j], components, visited);
+                }
+                break;
+            case XSConstants.PARTICLE:
+                final XSTerm term = ((XSParticleDecl) component).fValue;
+                if (!(term instanceof XSElementDecl) ||
+                        ((XSElementDecl) term).getScope() != XSConstants.SCOPE_GLOBAL) {
+                    addComponent(term, components, visited);
+                }
+                break;
+            }
+        }
+        return components;
+    }
+
+    private static void addComponent(XSObject component, ArrayList<XSObject> components,
+            IdentityHashMap<Object, Object> visited) {
+        if (component != null && visited.put(component, component) == null) {
+            components.add(component);
+        }
+    }
+
+    private static void addAnonymousType(XSTypeDefinition type, ArrayList<XSObject> components,
+            IdentityHashMap<Object, Object> visited) {
+        if (type != null && type.getAnonymous()) {
+            addComponent(type, components, visited);
+        }
+    }
+
+    private static void addAttributeGroup(XSAttributeGroupDecl group, ArrayList<XSObject> components,
+            IdentityHashMap<Object, Object> visited) {
+        for (int i = 0; i < group.fAttrUseNum; i++) {
+            addComponent(group.fAttributeUses[i], components, visited);
+        }
+        addComponent(group.fAttributeWC, components, visited);
+    }
+
+    // returns the annotations of a component, without the annotations of
+    // the facets of simple types
+    private static XSObjectList getAnnotations(XSObject component) {
+        switch (component.getType()) {
+        case XSConstants.TYPE_DEFINITION:
+            if (component instanceof XSComplexTypeDecl) {
+                return ((XSComplexTypeDecl) component).fAnnotations;
+            }
+            return (component instanceof XSSimpleTypeDecl) ?
+                    ((XSSimpleTypeDecl) component).getAnnotations() : null;
+        case XSConstants.ELEMENT_DECLARATION:
+            return ((XSElementDecl) component).fAnnotations;
+        case XSConstants.ATTRIBUTE_DECLARATION:
+            return ((XSAttributeDecl) component).fAnnotations;
+        case XSConstants.ATTRIBUTE_USE:
+            return ((XSAttributeUseImpl) component).fAnnotations;
+        case XSConstants.ATTRIBUTE_GROUP:
+            return ((XSAttributeGroupDecl) component).fAnnotations;
+        case XSConstants.MODEL_GROUP_DEFINITION:
+            return ((XSGroupDecl) component).fAnnotations;
+        case XSConstants.MODEL_GROUP:
+            return ((XSModelGroupImpl) component).fAnnotations;
+        case XSConstants.PARTICLE:
+            return ((XSParticleDecl) component).fAnnotations;
+        case XSConstants.WILDCARD:
+            return ((XSWildcardDecl) component).fAnnotations;
+        case XSConstants.NOTATION_DECLARATION:
+            return ((XSNotationDecl) component).fAnnotations;
+        case XSConstants.IDENTITY_CONSTRAINT:
+            return ((IdentityConstraint) component).getAnnotations();
+        }
+        return null;
+    }
+
+    private static void discardAnnotations(XSObject component) {
+        switch (component.getType()) {
+        case XSConstants.ATTRIBUTE_DECLARATION:
+            ((XSAttributeDecl) component).fAnnotations = null;
+            break;
+        case XSConstants.ATTRIBUTE_USE:
+            ((XSAttributeUseImpl) component).fAnnotations = null;
+            break;
+        case XSConstants.MODEL_GROUP_DEFINITION:
+            ((XSGroupDecl) component).fAnnotations = null;
+            break;
+        case XSConstants.MODEL_GROUP:
+            ((XSModelGroupImpl) component).fAnnotations = null;
+            break;
+        case XSConstants.PARTICLE:
+            ((XSParticleDecl) component).fAnnotations = null;
+            break;
+        case XSConstants.WILDCARD:
+            ((XSWildcardDecl) component).fAnnotations = null;
+            break;
+        case XSConstants.NOTATION_DECLARATION:
+            ((XSNotationDecl) component).fAnnotations = null;
+            break;
+        case XSConstants.IDENTITY_CONSTRAINT:
+            ((IdentityConstraint) component).discardAnnotations();
+            break;
+        }
+    }
+
+    private static long getAnnotationsFootprint(XSObjectList annotations,
+            IdentityHashMap<Object, Object> counted) {
+        if (annotations == null || annotations.getLength() == 0 ||
+                counted.put(annotations, annotations) != null) {
+            return 0;
+        }
+        long size = XSGrammarFootprint.objectSize(8) +
+            XSGrammarFootprint.arraySize(annotations.getLength(), XSGrammarFootprint.REFERENCE);
+        for (int i = 0; i < annotations.getLength(); i++) {
+            final XSAnnotation annotation = (XSAnnotation) annotations.item(i);
+            if (counted.put(annotation, annotation) == null) {
+                size += XSGrammarFootprint.objectSize(8) +
+                    XSGrammarFootprint.stringSize(annotation.getAnnotationString());
+            }
+        }
+        return size;
+    }
+
+    private static long getTableFootprint(SymbolHash table) {
+        return XSGrammarFootprint.objectSize(20) +
+            XSGrammarFootprint.arraySize(table.getTableSize(), XSGrammarFootprint.REFERENCE) +
+            table.getLength() * XSGrammarFootprint.objectSize(3 * XSGrammarFootprint.REFERENCE);
+    }
+
+    private static long getVectorFootprint(Vector<?> vector) {
+        return XSGrammarFootprint.objectSize(12) +
+            XSGrammarFootprint.arraySize(vector.capacity(), XSGrammarFootprint.REFERENCE);
+    }
+
     public void setImmutable(boolean isImmutable) {
         fIsImmutable = isImmutable;
     }
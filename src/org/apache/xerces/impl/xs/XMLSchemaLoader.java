@@ -146,6 +146,18 @@ XSLoader, DOMConfiguration {
     protected static final String TOLERATE_DUPLICATES = 
         Constants.XERCES_FEATURE_PREFIX + Constants.TOLERATE_DUPLICATES_FEATURE;
     
+    /** Feature identifier: parallel schema document parsing */
+    protected static final String PARALLEL_SCHEMA_PARSING = 
+        Constants.XERCES_FEATURE_PREFIX + Constants.PARALLEL_SCHEMA_PARSING_FEATURE;
+    
+    /** Feature identifier: compact grammars */
+    protected static final String COMPACT_GRAMMARS = 
+        Constants.XERCES_FEATURE_PREFIX + Constants.SCHEMA_COMPACT_GRAMMARS_FEATURE;
+    
+    /** Feature identifier: discard metadata */
+    protected static final String DISCARD_METADATA = 
+        Constants.XERCES_FEATURE_PREFIX + Constants.SCHEMA_DISCARD_METADATA_FEATURE;
+    
     /** Property identifier: Schema DV Factory */
     protected static final String SCHEMA_DV_FACTORY = 
         Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_DV_FACTORY_PROPERTY;
@@ -162,7 +174,10 @@ XSLoader, DOMConfiguration {
         VALIDATE_ANNOTATIONS,
         HONOUR_ALL_SCHEMALOCATIONS,
         NAMESPACE_GROWTH,
-        TOLERATE_DUPLICATES
+        TOLERATE_DUPLICATES,
+        PARALLEL_SCHEMA_PARSING,
+        COMPACT_GRAMMARS,
+        DISCARD_METADATA
     };
     
     // property identifiers
@@ -209,6 +224,10 @@ XSLoader, DOMConfiguration {
     protected static final String ENTITY_MANAGER =
         Constants.XERCES_PROPERTY_PREFIX + Constants.ENTITY_MANAGER_PROPERTY;   
     
+    /** Property identifier: load statistics. */
+    protected static final String LOAD_STATISTICS =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_LOAD_STATISTICS_PROPERTY;
+    
     // recognized properties
     private static final String [] RECOGNIZED_PROPERTIES = {
         ENTITY_MANAGER,
@@ -222,7 +241,8 @@ XSLoader, DOMConfiguration {
         JAXP_SCHEMA_SOURCE,
         SECURITY_MANAGER,
         LOCALE,
-        SCHEMA_DV_FACTORY
+        SCHEMA_DV_FACTORY,
+        LOAD_STATISTICS
     };
     
     // Data
@@ -239,6 +259,9 @@ XSLoader, DOMConfiguration {
     private Object fJAXPSource = null;
     // is Schema Full Checking enabled
     private boolean fIsCheckedFully = false;
+    // are grammars compacted before they are cached, and their metadata discarded
+    private boolean fCompactGrammars = false;
+    private boolean fDiscardMetadata = false;
     // boolean that tells whether we've tested the JAXP property.
     private boolean fJAXPProcessed = false;
     // if features/properties has not been changed, the value of this attribute is "false"
@@ -252,6 +275,7 @@ XSLoader, DOMConfiguration {
     private CMBuilder fCMBuilder;
     private XSDDescription fXSDDescription = new XSDDescription();
     private SchemaDVFactory fDefaultSchemaDVFactory;
+    private XSLoadStatistics fStatistics = null;
     
     private WeakHashMap<Object, SchemaGrammar> fJAXPCache;
     private Locale fLocale = Locale.getDefault();
@@ -547,16 +571,40 @@ XSLoader, DOMConfiguration {
         SchemaGrammar grammar = loadSchema(desc, source, locationPairs);
         
         if(grammar != null && fGrammarPool != null) {
+            if (fCompactGrammars) {
+                compactGrammars();
+            }
             fGrammarPool.cacheGrammars(XMLGrammarDescription.XML_SCHEMA, fGrammarBucket.getGrammars());
             // NOTE: we only need to verify full checking in case the schema was not provided via JAXP
             // since full checking already verified for all JAXP schemas
             if(fIsCheckedFully && fJAXPCache.get(grammar) != grammar) {
-                XSConstraints.fullSchemaChecking(fGrammarBucket, fSubGroupHandler, fCMBuilder, fErrorReporter);
+                fullSchemaChecking();
             }
         }
         return grammar;
     } // loadGrammar(XMLInputSource):  Grammar
     
+    // compacts the grammars built by this load; those that were already in
+    // the pool may be in use and are left alone
+    private void compactGrammars() {
+        final SchemaGrammar[] grammars = fGrammarBucket.getGrammars();
+        for (int i = 0; i < grammars.length; i++) {
+            if (fGrammarPool.retrieveGrammar(grammars[i].getGrammarDescription()) != grammars[i]) {
+                grammars[i].compact(fDiscardMetadata);
+            }
+        }
+    }
+    
+    private void fullSchemaChecking() {
+        if (fStatistics == null) {
+            XSConstraints.fullSchemaChecking(fGrammarBucket, fSubGroupHandler, fCMBuilder, fErrorReporter);
+            return;
+        }
+        final long start = System.nanoTime();
+        XSConstraints.fullSchemaChecking(fGrammarBucket, fSubGroupHandler, fCMBuilder, fErrorReporter);
+        fStatistics.addTime(XSLoadStatistics.PHASE_FULL_CHECKING, System.nanoTime() - start);
+    }
+    
     /**
      * This method is called either from XMLGrammarLoader.loadGrammar or from XMLSchemaValidator.
      * Note: in either case, the EntityManager (or EntityResolvers) are not going to be invoked
@@ -752,7 +800,7 @@ XSLoader, DOMConfiguration {
                         fJAXPSource instanceof InputSource) {
                     fJAXPCache.put(fJAXPSource, g);
                     if (fIsCheckedFully) {
-                        XSConstraints.fullSchemaChecking(fGrammarBucket, fSubGroupHandler, fCMBuilder, fErrorReporter);
+                        fullSchemaChecking();
                     }
                 }
                 fGrammarBucket.putGrammar(g);
@@ -806,7 +854,7 @@ XSLoader, DOMConfiguration {
             SchemaGrammar grammar = fSchemaHandler.parseSchema(xis,fXSDDescription, locationPairs);
             
             if (fIsCheckedFully) {
-                XSConstraints.fullSchemaChecking(fGrammarBucket, fSubGroupHandler, fCMBuilder, fErrorReporter);
+                fullSchemaChecking();
             }                                   
             if (grammar != null) {
                 targetNamespace = grammar.getTargetNamespace();
@@ -1001,6 +1049,15 @@ XSLoader, DOMConfiguration {
         }
         fSchemaHandler.setDVFactory(dvFactory);
 
+        // get the statistics object, if statistics are collected
+        try {
+            fStatistics = (XSLoadStatistics) componentManager.getProperty(LOAD_STATISTICS);
+        } catch (XMLConfigurationException e) {
+            fStatistics = null;
+        }
+        fCMBuilder.setStatistics(fStatistics);
+        fSchemaHandler.setStatistics(fStatistics);
+
         // get schema location properties
         try {
             fExternalSchemas = (String) componentManager.getProperty(SCHEMA_LOCATION);
@@ -1075,6 +1132,31 @@ XSLoader, DOMConfiguration {
         catch (XMLConfigurationException e){
             fIsCheckedFully = false;
         }
+        try {
+            fCompactGrammars = componentManager.getFeature(COMPACT_GRAMMARS);
+            fDiscardMetadata = fCompactGrammars && componentManager.getFeature(DISCARD_METADATA);
+        }
+        catch (XMLConfigurationException e) {
+            fCompactGrammars = false;
+            fDiscardMetadata = false;
+        }
+        // the documents and location-keyed tables are needed to grow a
+        // namespace and to tolerate duplicates, so they are kept when
+        // either is enabled
+        if (fDiscardMetadata) {
+            try {
+                fDiscardMetadata = !componentManager.getFeature(NAMESPACE_GROWTH);
+            }
+            catch (XMLConfigurationException e) {
+            }
+        }
+        if (fDiscardMetadata) {
+            try {
+                fDiscardMetadata = !componentManager.getFeature(TOLERATE_DUPLICATES);
+            }
+            catch (XMLConfigurationException e) {
+            }
+        }
         // get generate-synthetic-annotations feature
         try {
             fSchemaHandler.setGenerateSyntheticAnnotations(componentManager.getFeature(GENERATE_SYNTHETIC_ANNOTATIONS));
@@ -1210,7 +1292,10 @@ XSLoader, DOMConfiguration {
                 name.equals(GENERATE_SYNTHETIC_ANNOTATIONS) ||
                 name.equals(HONOUR_ALL_SCHEMALOCATIONS) ||
                 name.equals(NAMESPACE_GROWTH) ||
-                name.equals(TOLERATE_DUPLICATES)) {
+                name.equals(TOLERATE_DUPLICATES) ||
+                name.equals(PARALLEL_SCHEMA_PARSING) ||
+                name.equals(COMPACT_GRAMMARS) ||
+                name.equals(DISCARD_METADATA)) {
                 return true;
                 
             }
@@ -1289,6 +1374,9 @@ XSLoader, DOMConfiguration {
             v.add(HONOUR_ALL_SCHEMALOCATIONS);
             v.add(NAMESPACE_GROWTH);
             v.add(TOLERATE_DUPLICATES);
+            v.add(PARALLEL_SCHEMA_PARSING);
+            v.add(COMPACT_GRAMMARS);
+            v.add(DISCARD_METADATA);
             fRecognizedParameters = new DOMStringListImpl(v);      	
         }
         return fRecognizedParameters;
@@ -20,6 +20,7 @@ package org.apache.xerces.impl.xs;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
@@ -36,6 +37,7 @@ import org.apache.xerces.impl.dv.DatatypeException;
 import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
 import org.apache.xerces.impl.dv.ValidatedInfo;
 import org.apache.xerces.impl.dv.XSSimpleType;
+import org.apache.xerces.impl.dv.xs.StreamingValidator;
 import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
 import org.apache.xerces.impl.validation.ConfigurableValidationState;
 import org.apache.xerces.impl.validation.ValidationManager;
@@ -979,10 +981,19 @@ public class XMLSchemaValidator
         if (fNormalizeData && fWhiteSpace != -1 && fWhiteSpace != XSSimpleType.WS_PRESERVE) {
             // normalize data
             normalizeWhitespace(data, fWhiteSpace == XSSimpleType.WS_COLLAPSE);
-            fBuffer.append(fNormalizedStr.ch, fNormalizedStr.offset, fNormalizedStr.length);
+            if (fStreamingValidator != null)
+                fStreamingValidator.characters(fNormalizedStr.ch, fNormalizedStr.offset, fNormalizedStr.length);
+            else {
+                fBuffer.append(fNormalizedStr.ch, fNormalizedStr.offset, fNormalizedStr.length);
+                startStreaming();
+            }
         } else {
-            if (fAppendBuffer)
+            if (fStreamingValidator != null)
+                fStreamingValidator.characters(data);
+            else if (fAppendBuffer) {
                 fBuffer.append(data);
+                startStreaming();
+            }
         }
 
         // When it's a complex type with element-only content, we need to
@@ -1144,6 +1155,10 @@ public class XMLSchemaValidator
     static final int INITIAL_STACK_SIZE = 8;
     static final int INC_STACK_SIZE = 8;
 
+    // length of the content of an element above which it is validated
+    // as it is received rather than accumulated, when possible
+    static final int STREAMING_THRESHOLD = 8192;
+
     //
     // Data
     //
@@ -1257,6 +1272,19 @@ public class XMLSchemaValidator
     /** Whether need to append characters to fBuffer */
     private boolean fAppendBuffer = true;
 
+    /**
+     * Validates the content of the current element as it is received,
+     * in place of appending it to fBuffer; null if not used.
+     */
+    private StreamingValidator fStreamingValidator = null;
+
+    /**
+     * Whether nothing needs the value of the current element, so that its
+     * content may be validated as it is received once it is longer than
+     * STREAMING_THRESHOLD.
+     */
+    private boolean fStreamingAllowed = false;
+
     /** Did we see any character data? */
     private boolean fSawText = false;
 
@@ -1364,6 +1392,8 @@ public class XMLSchemaValidator
         fNNoneValidationDepth = -1;
         fElementDepth = -1;
         fSubElement = false;
+        fStreamingValidator = null;
+        fStreamingAllowed = false;
         fSchemaDynamicValidation = false;
 
         // datatype normalization
@@ -1750,8 +1780,12 @@ public class XMLSchemaValidator
             normalizeWhitespace(text, fWhiteSpace == XSSimpleType.WS_COLLAPSE);
             text = fNormalizedStr;
         }
-        if (fAppendBuffer)
+        if (fStreamingValidator != null)
+            fStreamingValidator.characters(text.ch, text.offset, text.length);
+        else if (fAppendBuffer) {
             fBuffer.append(text.ch, text.offset, text.length);
+            startStreaming();
+        }
 
         // When it's a complex type with element-only content, we need to
         // find out whether the content contains any non-whitespace character.
@@ -2033,6 +2067,8 @@ public class XMLSchemaValidator
 
         // and the buffer to hold the value of the element
         fBuffer.setLength(0);
+        fStreamingValidator = null;
+        fStreamingAllowed = false;
         fSawText = false;
         fSawCharacters = false;
 
@@ -2304,12 +2340,19 @@ public class XMLSchemaValidator
             addDefaultAttributes(element, attributes, attrGrp);
         }
 
-        // call all active identity constraints
+        // call all active identity constraints; those which can't match
+        // anything below an ancestor of this element aren't active
         int count = fMatcherStack.getMatcherCount();
-        for (int i = 0; i < count; i++) {
-            XPathMatcher matcher = fMatcherStack.getMatcherAt(i);
+        int activeCount = fMatcherStack.getActiveMatcherCount();
+        for (int i = 0; i < activeCount; i++) {
+            XPathMatcher matcher = fMatcherStack.getActiveMatcherAt(i);
             matcher.startElement( element, attributes);
         }
+        fMatcherStack.suspendDormantMatchers(fElementDepth);
+
+        // if nothing needs the value of the element, its content may be
+        // checked as it arrives rather than accumulated, once it is long
+        fStreamingAllowed = fAppendBuffer && !fAugPSVI && count == 0;
 
         if (fAugPSVI) {
             augs = getEmptyAugs(augs);
@@ -2391,8 +2434,9 @@ public class XMLSchemaValidator
             
             // call matchers and de-activate context
             int oldCount = fMatcherStack.getMatcherCount();
-            for (int i = oldCount - 1; i >= 0; i--) {
-                XPathMatcher matcher = fMatcherStack.getMatcherAt(i);
+            fMatcherStack.resumeMatchers(fElementDepth);
+            for (int i = fMatcherStack.getActiveMatcherCount() - 1; i >= 0; i--) {
+                XPathMatcher matcher = fMatcherStack.getActiveMatcherAt(i);
                 if (fCurrentElemDecl == null) {
                     matcher.endElement(element, fCurrentType, false, fValidatedInfo.actualValue, fValidatedInfo.actualValueType, fValidatedInfo.itemValueTypes);
                 }
@@ -2515,6 +2559,8 @@ public class XMLSchemaValidator
             // Same for append buffer. Simple types and elements with fixed
             // value constraint don't allow sub-elements. -SG
             fAppendBuffer = false;
+            fStreamingValidator = null;
+            fStreamingAllowed = false;
             // same here.
             fUnionType = false;
         }
@@ -3340,7 +3386,8 @@ public class XMLSchemaValidator
 
             // 5.2 If the declaration has no {value constraint} or the item has either element or character [children] or clause 3.2 has applied, then all of the following must be true:
             // 5.2.1 The element information item must be valid with respect to the actual type definition as defined by Element Locally Valid (Type) (3.3.4).
-            Object actualValue = elementLocallyValidType(element, fBuffer);
+            Object actualValue = elementLocallyValidType(element,
+                    fStreamingValidator != null ? (Object) fStreamingValidator : fBuffer);
             // 5.2.2 If there is a fixed {value constraint} and clause 3.2 has not applied, all of the following must be true:
             if (fCurrentElemDecl != null
                 && fCurrentElemDecl.getConstraintType() == XSConstants.VC_FIXED
@@ -3428,7 +3475,7 @@ public class XMLSchemaValidator
                     if (!fNormalizeData || fUnionType) {
                         fValidationState.setNormalizationRequired(true);
                     }
-                    retValue = dv.validate(textContent, fValidationState, fValidatedInfo);
+                    retValue = validateSimpleContent(dv, textContent);
                 } catch (InvalidDatatypeValueException e) {
                     reportSchemaError(e.getKey(), e.getArgs());
                     reportSchemaError(
@@ -3444,6 +3491,52 @@ public class XMLSchemaValidator
         return retValue;
     } // elementLocallyValidType
 
+    /**
+     * Once the content of the current element accumulated in fBuffer is
+     * longer than STREAMING_THRESHOLD, passes it to a validator which then
+     * checks the rest of the content as it is received, if the type allows
+     * it. Short values, the most common, are still simply accumulated.
+     */
+    private void startStreaming() {
+        if (fStreamingAllowed && fBuffer.length() > STREAMING_THRESHOLD) {
+            fStreamingAllowed = false;
+            fStreamingValidator = getStreamingValidator();
+            if (fStreamingValidator != null) {
+                fStreamingValidator.characters(fBuffer.toString());
+                fBuffer.setLength(0);
+            }
+        }
+    } // startStreaming
+
+    /**
+     * Returns a validator for the content of the current element if it
+     * can be validated as it is received; null if it has to be accumulated.
+     */
+    private StreamingValidator getStreamingValidator() {
+        if (fNil || (fCurrentElemDecl != null
+                && fCurrentElemDecl.getConstraintType() == XSConstants.VC_FIXED)) {
+            return null;
+        }
+        XSSimpleType dv = null;
+        if (fCurrentType.getTypeCategory() == XSTypeDefinition.SIMPLE_TYPE) {
+            dv = (XSSimpleType) fCurrentType;
+        }
+        else {
+            dv = ((XSComplexTypeDecl) fCurrentType).fXSSimpleType;
+        }
+        if (dv instanceof XSSimpleTypeDecl) {
+            return ((XSSimpleTypeDecl) dv).getStreamingValidator();
+        }
+        return null;
+    } // getStreamingValidator
+
+    Object validateSimpleContent(XSSimpleType dv, Object textContent) throws InvalidDatatypeValueException {
+        if (textContent instanceof StreamingValidator) {
+            return ((StreamingValidator) textContent).validate(fValidationState, fValidatedInfo);
+        }
+        return dv.validate(textContent, fValidationState, fValidatedInfo);
+    } // validateSimpleContent
+
     Object elementLocallyValidComplexType(QName element, Object textContent) {
         Object actualValue = null;
         XSComplexTypeDecl ctype = (XSComplexTypeDecl) fCurrentType;
@@ -3467,7 +3560,7 @@ public class XMLSchemaValidator
                     if (!fNormalizeData || fUnionType) {
                         fValidationState.setNormalizationRequired(true);
                     }
-                    actualValue = dv.validate(textContent, fValidationState, fValidatedInfo);
+                    actualValue = validateSimpleContent(dv, textContent);
                 } catch (InvalidDatatypeValueException e) {
                     reportSchemaError(e.getKey(), e.getArgs());
                     reportSchemaError("cvc-complex-type.2.2", new Object[] { element.rawname });
@@ -3624,6 +3717,28 @@ public class XMLSchemaValidator
         /** Offset stack for contexts. */
         protected IntStack fContextStack = new IntStack();
 
+        /**
+         * Indexes of the matchers which see the events of the current
+         * element, in increasing order.
+         */
+        protected int[] fActiveMatchers = new int[4];
+
+        /** Count of active matchers. */
+        protected int fActiveMatchersCount;
+
+        /**
+         * Indexes of the matchers which can't match anything in the
+         * subtree of the current element or of one of its ancestors,
+         * and which are resumed at the end of that element.
+         */
+        protected int[] fSuspendedMatchers = new int[4];
+
+        /** Depths of the elements at whose end the matchers are resumed. */
+        protected int[] fSuspendedDepths = new int[4];
+
+        /** Count of suspended matchers. */
+        protected int fSuspendedMatchersCount;
+
         //
         // Constructors
         //
@@ -3641,6 +3756,8 @@ public class XMLSchemaValidator
                 fMatchers[i] = null;
             }
             fMatchersCount = 0;
+            fActiveMatchersCount = 0;
+            fSuspendedMatchersCount = 0;
             fContextStack.clear();
         } // clear()
 
@@ -3657,9 +3774,69 @@ public class XMLSchemaValidator
         /** Adds a matcher. */
         public void addMatcher(XPathMatcher matcher) {
             ensureMatcherCapacity();
+            fActiveMatchers[fActiveMatchersCount++] = fMatchersCount;
             fMatchers[fMatchersCount++] = matcher;
         } // addMatcher(XPathMatcher)
 
+        /** Returns the count of active XPath matchers. */
+        public int getActiveMatcherCount() {
+            return fActiveMatchersCount;
+        } // getActiveMatcherCount():int
+
+        /** Returns the active XPath matcher at the specified index. */
+        public XPathMatcher getActiveMatcherAt(int index) {
+            return fMatchers[fActiveMatchers[index]];
+        } // getActiveMatcherAt(int):XPathMatcher
+
+        /**
+         * Called after the active matchers have seen the start of an
+         * element at the specified depth; suspends those which don't
+         * need to see the descendants of that element until its end.
+         */
+        public void suspendDormantMatchers(int depth) {
+            int count = 0;
+            for (int i = 0; i < fActiveMatchersCount; i++) {
+                final int index = fActiveMatchers[i];
+                if (fMatchers[index].isDormant()) {
+                    fSuspendedMatchers[fSuspendedMatchersCount] = index;
+                    fSuspendedDepths[fSuspendedMatchersCount++] = depth;
+                }
+                else {
+                    fActiveMatchers[count++] = index;
+                }
+            }
+            fActiveMatchersCount = count;
+        } // suspendDormantMatchers(int)
+
+        /**
+         * Called before the active matchers see the end of an element at
+         * the specified depth; resumes the matchers which were suspended
+         * at its start.
+         */
+        public void resumeMatchers(int depth) {
+            int first = fSuspendedMatchersCount;
+            while (first > 0 && fSuspendedDepths[first - 1] == depth) {
+                --first;
+            }
+            if (first == fSuspendedMatchersCount) {
+                return;
+            }
+            // both lists are in increasing order; merge them from the end
+            int i = fActiveMatchersCount - 1;
+            int j = fSuspendedMatchersCount - 1;
+            int k = fActiveMatchersCount + fSuspendedMatchersCount - first - 1;
+            fActiveMatchersCount = k + 1;
+            while (j >= first) {
+                if (i >= 0 && fActiveMatchers[i] > fSuspendedMatchers[j]) {
+                    fActiveMatchers[k--] = fActiveMatchers[i--];
+                }
+                else {
+                    fActiveMatchers[k--] = fSuspendedMatchers[j--];
+                }
+            }
+            fSuspendedMatchersCount = first;
+        } // resumeMatchers(int)
+
         /** Returns the XPath matcher at the specified index. */
         public XPathMatcher getMatcherAt(int index) {
             return fMatchers[index];
@@ -3673,6 +3850,11 @@ public class XMLSchemaValidator
         /** Pops a context off of the stack. */
         public void popContext() {
             fMatchersCount = fContextStack.pop();
+            // the matchers of the context are the last active ones
+            while (fActiveMatchersCount > 0 &&
+                    fActiveMatchers[fActiveMatchersCount - 1] >= fMatchersCount) {
+                --fActiveMatchersCount;
+            }
         } // popContext()
 
         //
@@ -3685,9 +3867,19 @@ public class XMLSchemaValidator
                 XPathMatcher[] array = new XPathMatcher[fMatchers.length * 2];
                 System.arraycopy(fMatchers, 0, array, 0, fMatchers.length);
                 fMatchers = array;
+                // as many matchers may be active or suspended
+                fActiveMatchers = resize(fActiveMatchers, array.length);
+                fSuspendedMatchers = resize(fSuspendedMatchers, array.length);
+                fSuspendedDepths = resize(fSuspendedDepths, array.length);
             }
         } // ensureMatcherCapacity()
 
+        private static int[] resize(int[] array, int length) {
+            int[] newArray = new int[length];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            return newArray;
+        } // resize(int[],int):int[]
+
     } // class XPathMatcherStack
 
     // value store implementations
@@ -3729,6 +3921,12 @@ public class XMLSchemaValidator
         private int fItemValueTypesLength = 0;
         private ShortList fItemValueType = null;
 
+        /** Hash index of the tuples in fValues which have no null value. */
+        private final HashSet<ValueTuple> fValueIndex = new HashSet<ValueTuple>();
+
+        /** Tuple used to look up values in the index. */
+        private final ValueTuple fProbe;
+
         /** buffer for error messages */
         final StringBuffer fTempBuffer = new StringBuffer();
 
@@ -3747,6 +3945,7 @@ public class XMLSchemaValidator
             for (int i = 0; i < fFieldCount; i++) {
                 fFields[i] = fIdentityConstraint.getFieldAt(i);
             }
+            fProbe = new ValueTuple(fFieldCount);
         } // <init>(IdentityConstraint)
 
         //
@@ -3770,12 +3969,20 @@ public class XMLSchemaValidator
             if (fItemValueTypes != null) {
                 fItemValueTypes.setSize(0);
             }
+            fValueIndex.clear();
         } // end clear():void
 
         // appends the contents of one ValueStore to those of us.
         public void append(ValueStoreBase newVal) {
-            for (int i = 0; i < newVal.fValues.size(); i++) {
+            final int start = fValues.size();
+            final int size = newVal.fValues.size();
+            for (int i = 0; i < size; i++) {
                 fValues.addElement(newVal.fValues.elementAt(i));
+                addValueType(newVal.getValueTypeAt(i));
+                addItemValueType(newVal.getItemValueTypeAt(i));
+            }
+            for (int i = 0; i < size; i += fFieldCount) {
+                indexValues(start + i);
             }
         } // append(ValueStoreBase)
 
@@ -3889,11 +4096,13 @@ public class XMLSchemaValidator
             if (fValuesCount == fFieldCount) {
                 checkDuplicateValues();
                 // store values
+                final int start = fValues.size();
                 for (i = 0; i < fFieldCount; i++) {
                     fValues.addElement(fLocalValues[i]);
                     addValueType(fLocalValueTypes[i]);
                     addItemValueType(fLocalItemValueTypes[i]);
                 }
+                indexValues(start);
             }
         } // addValue(String,Field)
 
@@ -3901,33 +4110,15 @@ public class XMLSchemaValidator
          * Returns true if this value store contains the locally scoped value stores
          */
         public boolean contains() {
-            // REVISIT: we can improve performance by using hash codes, instead of
-            // traversing global vector that could be quite large.
-            int next = 0;
-            final int size = fValues.size();
-            LOOP : for (int i = 0; i < size; i = next) {
-                next = i + fFieldCount;
-                for (int j = 0; j < fFieldCount; j++) {
-                    Object value1 = fLocalValues[j];
-                    Object value2 = fValues.elementAt(i);
-                    short valueType1 = fLocalValueTypes[j];
-                    short valueType2 = getValueTypeAt(i);
-                    if (value1 == null || value2 == null || valueType1 != valueType2 || !(value1.equals(value2))) {
-                        continue LOOP;
-                    }
-                    else if(valueType1 == XSConstants.LIST_DT || valueType1 == XSConstants.LISTOFUNION_DT) {
-                        ShortList list1 = fLocalItemValueTypes[j];
-                        ShortList list2 = getItemValueTypeAt(i);
-                        if(list1 == null || list2 == null || !list1.equals(list2))
-                            continue LOOP;
-                    }
-                    i++;
+            // a tuple with a missing value doesn't match any other
+            for (int j = 0; j < fFieldCount; j++) {
+                if (fLocalValues[j] == null) {
+                    return false;
                 }
-                // found it
-                return true;
+                fProbe.setValue(j, fLocalValues[j], fLocalValueTypes[j], fLocalItemValueTypes[j]);
             }
-            // didn't find it
-            return false;
+            fProbe.computeHash();
+            return fValueIndex.contains(fProbe);
         } // contains():boolean
 
         /**
@@ -3939,47 +4130,43 @@ public class XMLSchemaValidator
             
             final Vector<Object> values = vsb.fValues;         
             final int size1 = values.size();
-            if (fFieldCount <= 1) {
-                for (int i = 0; i < size1; ++i) {
-                    short val = vsb.getValueTypeAt(i);
-                    if (!valueTypeContains(val) || !fValues.contains(values.elementAt(i))) {
+            /** Iterate over each set of fields. **/
+            OUTER: for (int i = 0; i < size1; i += fFieldCount) {
+                boolean hasNull = false;
+                for (int k = 0; k < fFieldCount; ++k) {
+                    final Object value = values.elementAt(i+k);
+                    hasNull |= value == null;
+                    fProbe.setValue(k, value, vsb.getValueTypeAt(i+k), vsb.getItemValueTypeAt(i+k));
+                }
+                if (!hasNull) {
+                    fProbe.computeHash();
+                    if (!fValueIndex.contains(fProbe)) {
                         return i;
                     }
-                    else if(val == XSConstants.LIST_DT || val == XSConstants.LISTOFUNION_DT) {
-                        ShortList list1 = vsb.getItemValueTypeAt(i);
-                        if (!itemValueTypeContains(list1)) {
-                            return i;
-                        }
-                    }
+                    continue OUTER;
                 }
-            }
-            /** Handle n-tuples. **/
-            else {
+                /** Tuples with missing values aren't indexed; scan for them. **/
                 final int size2 = fValues.size();
-                /** Iterate over each set of fields. **/
-                OUTER: for (int i = 0; i < size1; i += fFieldCount) {
-                    /** Check whether this set is contained in the value store. **/
-                    INNER: for (int j = 0; j < size2; j += fFieldCount) {
-                        for (int k = 0; k < fFieldCount; ++k) {
-                            final Object value1 = values.elementAt(i+k);
-                            final Object value2 = fValues.elementAt(j+k);
-                            final short valueType1 = vsb.getValueTypeAt(i+k);
-                            final short valueType2 = getValueTypeAt(j+k);
-                            if (value1 != value2 && (valueType1 != valueType2 || value1 == null || !value1.equals(value2))) {
+                INNER: for (int j = 0; j < size2; j += fFieldCount) {
+                    for (int k = 0; k < fFieldCount; ++k) {
+                        final Object value1 = values.elementAt(i+k);
+                        final Object value2 = fValues.elementAt(j+k);
+                        final short valueType1 = vsb.getValueTypeAt(i+k);
+                        final short valueType2 = getValueTypeAt(j+k);
+                        if (value1 != value2 && (valueType1 != valueType2 || value1 == null || !value1.equals(value2))) {
+                            continue INNER;
+                        }
+                        else if(valueType1 == XSConstants.LIST_DT || valueType1 == XSConstants.LISTOFUNION_DT) {
+                            ShortList list1 = vsb.getItemValueTypeAt(i+k);
+                            ShortList list2 = getItemValueTypeAt(j+k);
+                            if (list1 == null || list2 == null || !list1.equals(list2)) {
                                 continue INNER;
                             }
-                            else if(valueType1 == XSConstants.LIST_DT || valueType1 == XSConstants.LISTOFUNION_DT) {
-                                ShortList list1 = vsb.getItemValueTypeAt(i+k);
-                                ShortList list2 = getItemValueTypeAt(j+k);
-                                if (list1 == null || list2 == null || !list1.equals(list2)) {
-                                    continue INNER;
-                                }
-                            }
                         }
-                        continue OUTER;
                     }
-                    return i;
+                    continue OUTER;
                 }
+                return i;
             }
             return -1;
             
@@ -4088,13 +4275,6 @@ public class XMLSchemaValidator
             return fValueType;
         }
         
-        private boolean valueTypeContains(short value) {
-            if (fUseValueTypeVector) {
-                return fValueTypes.contains(value);
-            }
-            return fValueType == value;
-        }
-        
         private void addItemValueType(ShortList itemValueType) {
             if (fUseItemValueTypeVector) {
                 fItemValueTypes.add(itemValueType);
@@ -4115,19 +4295,25 @@ public class XMLSchemaValidator
             }
         }
         
-        private ShortList getItemValueTypeAt(int index) {
-            if (fUseItemValueTypeVector) {
-                return fItemValueTypes.elementAt(index);
+        /** Adds the tuple starting at the specified index to the hash index. */
+        private void indexValues(int start) {
+            ValueTuple tuple = new ValueTuple(fFieldCount);
+            for (int k = 0; k < fFieldCount; k++) {
+                final Object value = fValues.elementAt(start + k);
+                if (value == null) {
+                    return;
+                }
+                tuple.setValue(k, value, getValueTypeAt(start + k), getItemValueTypeAt(start + k));
             }
-            return fItemValueType;
+            tuple.computeHash();
+            fValueIndex.add(tuple);
         }
         
-        private boolean itemValueTypeContains(ShortList value) {
+        private ShortList getItemValueTypeAt(int index) {
             if (fUseItemValueTypeVector) {
-                return fItemValueTypes.contains(value);
+                return fItemValueTypes.elementAt(index);
             }
-            return fItemValueType == value || 
-                (fItemValueType != null && fItemValueType.equals(value));
+            return fItemValueType;
         }
 
     } // class ValueStoreBase
@@ -4537,6 +4723,84 @@ public class XMLSchemaValidator
         }
     } // class LocalIDKey
 
+    /**
+     * The values of the fields of an identity constraint for one selected
+     * node, compared as ValueStoreBase.contains() compares them: all
+     * values must be non-null, have the same type, and be equal.
+     */
+    protected static final class ValueTuple {
+
+        final Object[] fValues;
+        final short[] fTypes;
+        final ShortList[] fItemTypes;
+        private int fHash;
+
+        public ValueTuple(int fieldCount) {
+            fValues = new Object[fieldCount];
+            fTypes = new short[fieldCount];
+            fItemTypes = new ShortList[fieldCount];
+        }
+
+        public void setValue(int index, Object value, short type, ShortList itemType) {
+            fValues[index] = value;
+            fTypes[index] = type;
+            fItemTypes[index] = itemType;
+        }
+
+        /** Computes the hash code; called once all the values are set. */
+        public void computeHash() {
+            int hash = 0;
+            for (int i = 0; i < fValues.length; i++) {
+                hash = hash * 31 + fTypes[i];
+                if (isHashable(fTypes[i], fItemTypes[i])) {
+                    hash += fValues[i].hashCode();
+                }
+            }
+            fHash = hash;
+        }
+
+        // precisionDecimal values which are equal may have different
+        // hash codes; they are only distinguished by equals()
+        private static boolean isHashable(short type, ShortList itemType) {
+            if (type == XSSimpleTypeDecl.PRECISIONDECIMAL_DT) {
+                return false;
+            }
+            if ((type == XSConstants.LIST_DT || type == XSConstants.LISTOFUNION_DT) && itemType != null) {
+                for (int i = 0; i < itemType.getLength(); i++) {
+                    if (itemType.item(i) == XSSimpleTypeDecl.PRECISIONDECIMAL_DT) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        public int hashCode() {
+            return fHash;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ValueTuple)) {
+                return false;
+            }
+            ValueTuple other = (ValueTuple) obj;
+            for (int i = 0; i < fValues.length; i++) {
+                final short type = fTypes[i];
+                if (type != other.fTypes[i] || !fValues[i].equals(other.fValues[i])) {
+                    return false;
+                }
+                if (type == XSConstants.LIST_DT || type == XSConstants.LISTOFUNION_DT) {
+                    ShortList list1 = fItemTypes[i];
+                    ShortList list2 = other.fItemTypes[i];
+                    if (list1 == null || list2 == null || !list1.equals(list2)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    } // class ValueTuple
+
     /**
      * A simple vector for <code>short</code>s.
      */
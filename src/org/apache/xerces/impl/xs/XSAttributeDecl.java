@@ -17,6 +17,11 @@
 
 package org.apache.xerces.impl.xs;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
 import org.apache.xerces.impl.dv.ValidatedInfo;
 import org.apache.xerces.impl.dv.XSSimpleType;
 import org.apache.xerces.impl.xs.util.XSObjectListImpl;
@@ -41,7 +46,10 @@ import org.apache.xerces.xs.XSValue;
  * @author Sandy Gao, IBM
  * @version $Id$
  */
-public class XSAttributeDecl implements XSAttributeDeclaration {
+public class XSAttributeDecl implements XSAttributeDeclaration, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 2815415324855324551L;
 
     // scopes
     public final static short     SCOPE_ABSENT        = 0;
@@ -54,13 +62,13 @@ public class XSAttributeDecl implements XSAttributeDeclaration {
     String fTargetNamespace = null;
     // the simple type of the attribute
     XSSimpleType fType = null;
-    public QName fUnresolvedTypeName = null;
+    public transient QName fUnresolvedTypeName = null;
     // value constraint type: default, fixed or !specified
     short fConstraintType = XSConstants.VC_NONE;
     // scope
     short fScope = XSConstants.SCOPE_ABSENT;
     // enclosing complex type, when the scope is local
-    XSComplexTypeDecl fEnclosingCT = null;
+    transient XSComplexTypeDecl fEnclosingCT = null;
     // optional annotations
     XSObjectList fAnnotations = null;    
     // value constraint value
@@ -214,4 +222,22 @@ public class XSAttributeDecl implements XSAttributeDeclaration {
         return fDefault;
     }
 
+    //
+    // Serialization methods
+    //
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        XSGrammarSerializer.writeReferences(out, new Object[] {fEnclosingCT});
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        XSGrammarSerializer.readReferences(in, new XSGrammarSerializer.ReferenceResolver() {
+            void resolve(Object[] references) {
+                fEnclosingCT = (XSComplexTypeDecl) references[0];
+            }
+        });
+    }
+
 } // class XSAttributeDecl
@@ -17,6 +17,8 @@
 
 package org.apache.xerces.impl.xs;
 
+import java.io.Serializable;
+
 import org.apache.xerces.impl.dv.ValidatedInfo;
 import org.apache.xerces.impl.xs.util.XSObjectListImpl;
 import org.apache.xerces.xs.XSAnnotation;
@@ -38,7 +40,10 @@ import org.apache.xerces.xs.XSWildcard;
  *
  * @version $Id$
  */
-public class XSAttributeGroupDecl implements XSAttributeGroupDefinition {
+public class XSAttributeGroupDecl implements XSAttributeGroupDefinition, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = -841036284456057636L;
 
     // name of the attribute group
     public String fName = null;
@@ -84,7 +89,7 @@ public class XSAttributeGroupDecl implements XSAttributeGroupDefinition {
         }
 
         if (fAttrUseNum == fAttributeUses.length) {
-            fAttributeUses = resize(fAttributeUses, fAttrUseNum*2);
+            fAttributeUses = resize(fAttributeUses, fAttrUseNum > 0 ? fAttrUseNum*2 : INITIAL_SIZE);
         }
         fAttributeUses[fAttrUseNum++] = attrUse;
 
@@ -309,6 +314,15 @@ public class XSAttributeGroupDecl implements XSAttributeGroupDefinition {
 
     }
 
+    /**
+     * trim the attribute use array to its size
+     */
+    void trimToSize() {
+        if (fAttrUseNum < fAttributeUses.length) {
+            fAttributeUses = resize(fAttributeUses, fAttrUseNum);
+        }
+    }
+
     static final XSAttributeUseImpl[] resize(XSAttributeUseImpl[] oldArray, int newSize) {
         XSAttributeUseImpl[] newArray = new XSAttributeUseImpl[newSize];
         System.arraycopy(oldArray, 0, newArray, 0, Math.min(oldArray.length, newSize));
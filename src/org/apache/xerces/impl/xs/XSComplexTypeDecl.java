@@ -17,6 +17,11 @@
 
 package org.apache.xerces.impl.xs;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
 import org.apache.xerces.impl.dv.XSSimpleType;
 import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
 import org.apache.xerces.impl.xs.models.CMBuilder;
@@ -43,7 +48,10 @@ import org.w3c.dom.TypeInfo;
  * @author Sandy Gao, IBM
  * @version $Id$
  */
-public class XSComplexTypeDecl implements XSComplexTypeDefinition, TypeInfo {
+public class XSComplexTypeDecl implements XSComplexTypeDefinition, TypeInfo, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 7660291488087056937L;
 
     // name of the complexType
     String fName = null;
@@ -52,7 +60,7 @@ public class XSComplexTypeDecl implements XSComplexTypeDefinition, TypeInfo {
     String fTargetNamespace = null;
 
     // base type of the complexType
-    XSTypeDefinition fBaseType = null;
+    transient XSTypeDefinition fBaseType = null;
 
     // derivation method of the complexType
     short fDerivedBy = XSConstants.DERIVATION_RESTRICTION;
@@ -729,4 +737,22 @@ public class XSComplexTypeDecl implements XSComplexTypeDefinition, TypeInfo {
         return isDOMDerivedFrom(typeNamespaceArg, typeNameArg, derivationMethod);
     }
 
+    //
+    // Serialization methods
+    //
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        XSGrammarSerializer.writeReferences(out, new Object[] {fBaseType});
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        XSGrammarSerializer.readReferences(in, new XSGrammarSerializer.ReferenceResolver() {
+            void resolve(Object[] references) {
+                fBaseType = (XSTypeDefinition) references[0];
+            }
+        });
+    }
+
 } // class XSComplexTypeDecl
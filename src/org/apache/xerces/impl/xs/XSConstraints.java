@@ -361,6 +361,29 @@ public class XSConstraints {
             SGHandler.addSubstitutionGroup(grammars[i].getSubstitutionGroups());
         }
 
+        // the results of grammars that have been checked before can only
+        // change if the substitution groups of the elements they refer to
+        // gained members. collect the heads of the groups that grammars
+        // which haven't been checked yet add members to.
+        SymbolHash changedHeads = null;
+        for (int i = grammars.length-1; i >= 0; i--) {
+            if (grammars[i].fFullChecked) {
+                continue;
+            }
+            XSElementDecl[] members = grammars[i].getSubstitutionGroups();
+            for (int j = members.length-1; j >= 0; j--) {
+                for (XSElementDecl head = members[j].fSubGroup; head != null; head = head.fSubGroup) {
+                    if (changedHeads == null) {
+                        changedHeads = new SymbolHash();
+                    }
+                    else if (changedHeads.get(head) != null) {
+                        break;
+                    }
+                    changedHeads.put(head, head);
+                }
+            }
+        }
+
         XSParticleDecl fakeDerived = new XSParticleDecl();
         XSParticleDecl fakeBase = new XSParticleDecl();
         fakeDerived.fType = XSParticleDecl.PARTICLE_MODELGROUP;
@@ -368,6 +391,9 @@ public class XSConstraints {
         // before worrying about complexTypes, let's get
         // groups redefined by restriction out of the way.
         for (int g = grammars.length-1; g >= 0; g--) {
+            if (grammars[g].fFullChecked && changedHeads == null) {
+                continue;
+            }
             XSGroupDecl [] redefinedGroups = grammars[g].getRedefinedGroupDecls();
             SimpleLocator [] rgLocators = grammars[g].getRGLocators();
             for(int i=0; i<redefinedGroups.length; ) {
@@ -375,6 +401,11 @@ public class XSConstraints {
                 XSModelGroupImpl derivedMG = derivedGrp.fModelGroup;
                 XSGroupDecl baseGrp = redefinedGroups[i++];
                 XSModelGroupImpl baseMG = baseGrp.fModelGroup;
+                if (grammars[g].fFullChecked &&
+                        !refersTo(derivedMG, changedHeads) &&
+                        !refersTo(baseMG, changedHeads)) {
+                    continue;
+                }
                 fakeDerived.fValue = derivedMG;
                 fakeBase.fValue = baseMG;
                 if(baseMG == null) {
@@ -424,10 +455,18 @@ public class XSConstraints {
             // get whether to skip EDC, and types need to be checked
             keepType = 0;
             fullChecked = grammars[i].fFullChecked;
+            if (fullChecked && changedHeads == null) {
+                continue;
+            }
             types = grammars[i].getUncheckedComplexTypeDecls();
             ctLocators = grammars[i].getUncheckedCTLocators();
             // for each type
             for (j = 0; j < types.length; j++) {
+                // if this grammar has been checked before, only the types
+                // whose substitution groups have changed need checking again
+                if (fullChecked && !refersTo(types[j], changedHeads)) {
+                    continue;
+                }
                 // if we've already full-checked this grammar, then
                 // skip the EDC constraint
                 if (!fullChecked) {
@@ -525,6 +564,42 @@ public class XSConstraints {
         }
     }
 
+    // whether the content model of the type, or that of the type it
+    // restricts, refers to one of the given elements
+    private static boolean refersTo(XSComplexTypeDecl type, SymbolHash elements) {
+        if (refersTo(type.fParticle, elements)) {
+            return true;
+        }
+        return type.fDerivedBy == XSConstants.DERIVATION_RESTRICTION &&
+                type.fBaseType instanceof XSComplexTypeDecl &&
+                refersTo(((XSComplexTypeDecl) type.fBaseType).fParticle, elements);
+    }
+
+    private static boolean refersTo(XSParticleDecl particle, SymbolHash elements) {
+        if (particle == null) {
+            return false;
+        }
+        if (particle.fType == XSParticleDecl.PARTICLE_ELEMENT) {
+            return elements.get(particle.fValue) != null;
+        }
+        if (particle.fType == XSParticleDecl.PARTICLE_MODELGROUP) {
+            return refersTo((XSModelGroupImpl) particle.fValue, elements);
+        }
+        return false;
+    }
+
+    private static boolean refersTo(XSModelGroupImpl group, SymbolHash elements) {
+        if (group == null) {
+            return false;
+        }
+        for (int i = 0; i < group.fParticleCount; i++) {
+            if (refersTo(group.fParticles[i], elements)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /*
        Check that a given particle is a valid restriction of a base particle.
      */
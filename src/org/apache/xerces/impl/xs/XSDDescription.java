@@ -17,6 +17,11 @@
 
 package org.apache.xerces.impl.xs;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
 import org.apache.xerces.util.XMLResourceIdentifierImpl;
 import org.apache.xerces.xni.QName;
 import org.apache.xerces.xni.XMLAttributes;
@@ -34,7 +39,11 @@ import org.apache.xerces.xni.grammars.XMLSchemaDescription;
  * @version $Id$
  */
 public class XSDDescription extends XMLResourceIdentifierImpl 
-                implements XMLSchemaDescription {
+                implements XMLSchemaDescription, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = -7208568377120921726L;
+
     // used to indicate what triggered the call
     /**
      * Indicate that this description was just initialized. 
@@ -94,9 +103,9 @@ public class XSDDescription extends XMLResourceIdentifierImpl
     // REVISIT: write description of these fields	
     protected short fContextType;
     protected String [] fLocationHints ;
-    protected QName fTriggeringComponent;
-    protected QName fEnclosedElementName;
-    protected XMLAttributes  fAttributes;
+    protected transient QName fTriggeringComponent;
+    protected transient QName fEnclosedElementName;
+    protected transient XMLAttributes  fAttributes;
         
     /**
      * the type of the grammar (e.g., DTD or XSD);
@@ -256,5 +265,28 @@ public class XSDDescription extends XMLResourceIdentifierImpl
         desc.fTriggeringComponent = this.fTriggeringComponent;
         return desc;
     }
+
+    /**
+     * Writes the fields of the resource identifier, which is not
+     * serializable. What triggered the loading of the grammar is not
+     * written.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(fPublicId);
+        out.writeObject(fLiteralSystemId);
+        out.writeObject(fBaseSystemId);
+        out.writeObject(fExpandedSystemId);
+        out.writeObject(fNamespace);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        fPublicId = (String) in.readObject();
+        fLiteralSystemId = (String) in.readObject();
+        fBaseSystemId = (String) in.readObject();
+        fExpandedSystemId = (String) in.readObject();
+        fNamespace = (String) in.readObject();
+    }
     
 } // XSDDescription
@@ -17,6 +17,11 @@
 
 package org.apache.xerces.impl.xs;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
 import org.apache.xerces.impl.dv.ValidatedInfo;
 import org.apache.xerces.impl.xs.identity.IdentityConstraint;
 import org.apache.xerces.impl.xs.util.XSNamedMapImpl;
@@ -43,7 +48,10 @@ import org.apache.xerces.xs.XSValue;
  * @author Sandy Gao, IBM
  * @version $Id$
  */
-public class XSElementDecl implements XSElementDeclaration {
+public class XSElementDecl implements XSElementDeclaration, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 6397067469713931789L;
 
     // scopes
     public final static short     SCOPE_ABSENT        = 0;
@@ -55,13 +63,13 @@ public class XSElementDecl implements XSElementDeclaration {
     // target namespace of the element
     public String fTargetNamespace = null;
     // type of the element
-    public XSTypeDefinition fType = null;
-    public QName fUnresolvedTypeName = null;
+    public transient XSTypeDefinition fType = null;
+    public transient QName fUnresolvedTypeName = null;
     // misc flag of the element: nillable/abstract/fixed
     short fMiscFlags = 0;
     public short fScope = XSConstants.SCOPE_ABSENT;
     // enclosing complex type, when the scope is local
-    XSComplexTypeDecl fEnclosingCT = null;
+    transient XSComplexTypeDecl fEnclosingCT = null;
     // block set (disallowed substitutions) of the element
     public short fBlock = XSConstants.DERIVATION_NONE;
     // final set (substitution group exclusions) of the element
@@ -71,11 +79,12 @@ public class XSElementDecl implements XSElementDeclaration {
     // value constraint value
     public ValidatedInfo fDefault = null;
     // the substitution group affiliation of the element
-    public XSElementDecl fSubGroup = null;
+    public transient XSElementDecl fSubGroup = null;
     // identity constraints
     static final int INITIAL_SIZE = 2;
     int fIDCPos = 0;
     IdentityConstraint[] fIDConstraints = new IdentityConstraint[INITIAL_SIZE];
+    private static final IdentityConstraint[] NO_ID_CONSTRAINTS = new IdentityConstraint[0];
     // The namespace schema information item corresponding to the target namespace 
     // of the element declaration, if it is globally declared; or null otherwise.
     private XSNamespaceItem fNamespaceItem = null;
@@ -107,11 +116,20 @@ public class XSElementDecl implements XSElementDeclaration {
 
     public void addIDConstraint(IdentityConstraint idc) {
         if (fIDCPos == fIDConstraints.length) {
-            fIDConstraints = resize(fIDConstraints, fIDCPos*2);
+            fIDConstraints = resize(fIDConstraints, fIDCPos > 0 ? fIDCPos*2 : INITIAL_SIZE);
         }
         fIDConstraints[fIDCPos++] = idc;
     }
 
+    /**
+     * trim the identity constraint array to its size
+     */
+    void trimToSize() {
+        if (fIDCPos < fIDConstraints.length) {
+            fIDConstraints = fIDCPos > 0 ? resize(fIDConstraints, fIDCPos) : NO_ID_CONSTRAINTS;
+        }
+    }
+
     public IdentityConstraint[] getIDConstraints() {
         if (fIDCPos == 0) {
             return null;
@@ -387,4 +405,24 @@ public class XSElementDecl implements XSElementDeclaration {
         return fDefault;
     }
 
+    //
+    // Serialization methods
+    //
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        XSGrammarSerializer.writeReferences(out, new Object[] {fType, fEnclosingCT, fSubGroup});
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        XSGrammarSerializer.readReferences(in, new XSGrammarSerializer.ReferenceResolver() {
+            void resolve(Object[] references) {
+                fType = (XSTypeDefinition) references[0];
+                fEnclosingCT = (XSComplexTypeDecl) references[1];
+                fSubGroup = (XSElementDecl) references[2];
+            }
+        });
+    }
+
 } // class XSElementDecl
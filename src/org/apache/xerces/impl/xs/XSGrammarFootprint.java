@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs;
+
+/**
+ * An estimate of the memory held by a schema grammar, broken down by
+ * category. It is returned by {@link SchemaGrammar#getFootprint()}.
+ * <p>
+ * The sizes are estimates for a 64-bit virtual machine with compressed
+ * references, in bytes. They cover the tables and arrays the grammar keeps
+ * in addition to its components, not the component objects themselves nor
+ * objects shared with other grammars, such as built-in types and interned
+ * names.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public final class XSGrammarFootprint {
+
+    //
+    // Constants
+    //
+
+    /** Hash tables of the global components, by name. */
+    public static final short CATEGORY_SYMBOL_TABLES = 0;
+
+    /**
+     * Document locations and the hash tables of the global components by
+     * location and name.
+     */
+    public static final short CATEGORY_LOCATIONS = 1;
+
+    /** Component lists cached for the XSModel API. */
+    public static final short CATEGORY_COMPONENT_CACHES = 2;
+
+    /** Annotations of the schema and of its components. */
+    public static final short CATEGORY_ANNOTATIONS = 3;
+
+    /** Content models built for complex types. */
+    public static final short CATEGORY_CONTENT_MODELS = 4;
+
+    /** Pattern and enumeration facets of simple types. */
+    public static final short CATEGORY_FACETS = 5;
+
+    /** Arrays of identity constraints, attribute uses and particles. */
+    public static final short CATEGORY_COMPONENT_ARRAYS = 6;
+
+    /** Components kept for schema constraint checking. */
+    public static final short CATEGORY_CONSTRAINT_CHECKING = 7;
+
+    private static final String[] CATEGORY_NAMES = {
+        "symbol tables", "locations", "component caches", "annotations",
+        "content models", "facets", "component arrays", "constraint checking"
+    };
+
+    /** Size of an object header. */
+    public static final int OBJECT_HEADER = 12;
+
+    /** Size of a reference. */
+    public static final int REFERENCE = 4;
+
+    //
+    // Data
+    //
+
+    private final long[] fSizes = new long[CATEGORY_NAMES.length];
+
+    private int fComponentCount = 0;
+
+    //
+    // Public methods
+    //
+
+    /** Returns the estimated size of the given category, in bytes. */
+    public long getSize(short category) {
+        return fSizes[category];
+    }
+
+    /** Returns the estimated size of all the categories, in bytes. */
+    public long getTotalSize() {
+        long total = 0;
+        for (int i = 0; i < fSizes.length; i++) {
+            total += fSizes[i];
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of components of the grammar, global and local,
+     * including particles and model groups.
+     */
+    public int getComponentCount() {
+        return fComponentCount;
+    }
+
+    /** Returns a readable report of the footprint. */
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("components: ").append(fComponentCount);
+        buffer.append(", total: ").append(getTotalSize()).append(" bytes\n");
+        for (short category = 0; category < CATEGORY_NAMES.length; category++) {
+            buffer.append(CATEGORY_NAMES[category]).append(": ");
+            buffer.append(fSizes[category]).append(" bytes\n");
+        }
+        return buffer.toString();
+    }
+
+    //
+    // Size estimates
+    //
+
+    /** Returns the size of an object with the given size of fields. */
+    public static long objectSize(int fieldSize) {
+        return align(OBJECT_HEADER + fieldSize);
+    }
+
+    /** Returns the size of an array of the given length. */
+    public static long arraySize(int length, int elementSize) {
+        return align(OBJECT_HEADER + 4 + (long) length * elementSize);
+    }
+
+    /** Returns the size of a string and of its character array. */
+    public static long stringSize(String string) {
+        return string != null ? objectSize(8) + arraySize(string.length(), 2) : 0;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    //
+    // Methods used by the schema grammar
+    //
+
+    /** Adds to the estimated size of the given category. */
+    void add(short category, long size) {
+        fSizes[category] += size;
+    }
+
+    /** Counts a component. */
+    void addComponent() {
+        fComponentCount++;
+    }
+
+} // class XSGrammarFootprint
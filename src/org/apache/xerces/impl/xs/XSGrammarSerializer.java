@@ -0,0 +1,545 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.Version;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xs.XSAttributeDeclaration;
+import org.apache.xerces.xs.XSConstants;
+import org.apache.xerces.xs.XSObject;
+import org.apache.xerces.xs.XSTypeDefinition;
+
+/**
+ * Writes fully traversed schema grammars in a binary form and reads them
+ * back, so that a grammar pool can be populated without parsing and
+ * traversing the schema documents again.
+ * <p>
+ * The data starts with a header made of a magic number, the format version,
+ * the version of Xerces which wrote the data, the length of the grammar data
+ * and its CRC-32 checksum. The grammar data
+ * is the deflated serialized form of the grammars, including all their
+ * components, facets and the content models which have been built so far.
+ * Components of the built-in grammars are written as references and
+ * resolved to the built-in components of the reading JVM. All strings are
+ * interned on reading, as the validator compares names by reference.
+ * The XPath expressions of identity constraints are written as text and
+ * parsed again on reading.
+ * <p>
+ * Serialization follows references depth first, which for long chains of
+ * element declarations and the types of their content would need a very
+ * deep stack. To keep the depth bounded, element and attribute
+ * declarations and complex types write their references to types and
+ * enclosing types through {@link #writeReferences(ObjectOutputStream, Object[])}.
+ * These are written as indices into a table of components which are written
+ * one after the other once the grammars themselves have been written, and
+ * are resolved once all of them have been read.
+ * <p>
+ * The grammar data is plain Java serialization, which is not compact since
+ * it carries the description of every class it contains. The format version
+ * of the header does not change when the classes of the components do, so
+ * the data is only read by the same version of Xerces which wrote it,
+ * typically to cache grammars between runs of the same application. Only
+ * Xerces classes and the few core Java classes used by the grammars are
+ * accepted on reading, and the grammar data is read as it is deserialized
+ * rather than buffered, the checksum being verified once it has all been
+ * read.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public final class XSGrammarSerializer {
+
+    /** Magic number ("XSGB") at the start of the data. */
+    private static final int MAGIC = 0x58534742;
+
+    /** Version of the format. */
+    private static final short FORMAT_VERSION = 2;
+
+    // the core Java classes found in the grammars
+    private static final String[] CORE_CLASSES = {
+        "java.lang.Object",
+        "java.lang.String",
+        "java.util.Vector"
+    };
+
+    // the grammars whose components are written as references
+    private static final SchemaGrammar[] BUILTIN_GRAMMARS = {
+        SchemaGrammar.SG_SchemaNS,
+        SchemaGrammar.getS4SGrammar(Constants.SCHEMA_VERSION_1_0_EXTENDED),
+        SchemaGrammar.SG_XSI,
+        SchemaGrammar.Schema4Annotations.INSTANCE
+    };
+
+    private XSGrammarSerializer() {}
+
+    /**
+     * Writes the schema grammars cached in the given grammar pool.
+     *
+     * @param pool the grammar pool
+     * @param out  the stream to write to; it is not closed
+     */
+    public static void writeGrammars(XMLGrammarPool pool, OutputStream out) throws IOException {
+        Grammar[] grammars = pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA);
+        SchemaGrammar[] schemaGrammars = new SchemaGrammar[grammars.length];
+        System.arraycopy(grammars, 0, schemaGrammars, 0, grammars.length);
+        writeGrammars(schemaGrammars, out);
+    }
+
+    /**
+     * Writes the given schema grammars. Grammars referenced by them are
+     * written as well, but are only returned on reading if they are in
+     * the array.
+     *
+     * @param grammars the grammars to write
+     * @param out      the stream to write to; it is not closed
+     */
+    public static void writeGrammars(SchemaGrammar[] grammars, OutputStream out) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DeflaterOutputStream deflater =
+            new DeflaterOutputStream(data, new Deflater(Deflater.BEST_SPEED));
+        GrammarOutputStream objectOut = new GrammarOutputStream(deflater);
+        objectOut.writeGrammars(grammars);
+        objectOut.close();
+
+        byte[] bytes = data.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeShort(FORMAT_VERSION);
+        dataOut.writeUTF(Version.getVersion());
+        dataOut.writeInt(bytes.length);
+        dataOut.writeLong(crc.getValue());
+        dataOut.write(bytes);
+        dataOut.flush();
+    }
+
+    /**
+     * Reads schema grammars written by {@link #writeGrammars(SchemaGrammar[], OutputStream)}.
+     *
+     * @param in the stream to read from; it is not closed
+     * @return the grammars
+     * @throws IOException if the data is not in the expected format or
+     *                     is corrupted
+     */
+    public static SchemaGrammar[] readGrammars(InputStream in) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        if (dataIn.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a schema grammar stream.");
+        }
+        short version = dataIn.readShort();
+        if (version != FORMAT_VERSION) {
+            throw new StreamCorruptedException("Unsupported schema grammar format version " + version + ".");
+        }
+        String xercesVersion = dataIn.readUTF();
+        if (!xercesVersion.equals(Version.getVersion())) {
+            throw new StreamCorruptedException("Schema grammar data written by " + xercesVersion +
+                    " cannot be read by " + Version.getVersion() + ".");
+        }
+        int length = dataIn.readInt();
+        long checksum = dataIn.readLong();
+        if (length < 0) {
+            throw new StreamCorruptedException("Invalid schema grammar data length.");
+        }
+
+        // the data is checked as it is read, and the grammars are only
+        // returned once all of it has been read and the checksum matches
+        CheckedInputStream checkedIn =
+            new CheckedInputStream(new BoundedInputStream(in, length), new CRC32());
+        GrammarInputStream objectIn = null;
+        try {
+            objectIn = new GrammarInputStream(new InflaterInputStream(checkedIn));
+            SchemaGrammar[] grammars = (SchemaGrammar[]) objectIn.readGrammars();
+            checkData(checkedIn, checksum);
+            return grammars;
+        }
+        catch (ClassNotFoundException e) {
+            checkData(checkedIn, checksum);
+            throw new StreamCorruptedException(e.getMessage());
+        }
+        catch (ClassCastException e) {
+            checkData(checkedIn, checksum);
+            throw new StreamCorruptedException(e.getMessage());
+        }
+        catch (IOException e) {
+            // corrupted data is reported as such, rather than as whatever
+            // deserialization made of it
+            checkData(checkedIn, checksum);
+            throw e;
+        }
+        finally {
+            if (objectIn != null) {
+                objectIn.close();
+            }
+        }
+    }
+
+    /**
+     * Reads schema grammars and caches them in the given grammar pool.
+     *
+     * @param in   the stream to read from; it is not closed
+     * @param pool the grammar pool
+     */
+    public static void readGrammars(InputStream in, XMLGrammarPool pool) throws IOException {
+        pool.cacheGrammars(XMLGrammarDescription.XML_SCHEMA, readGrammars(in));
+    }
+
+    // reads the rest of the grammar data and verifies its checksum
+    private static void checkData(CheckedInputStream in, long checksum) throws IOException {
+        final byte[] buffer = new byte[4096];
+        while (in.read(buffer, 0, buffer.length) != -1) {}
+        if (in.getChecksum().getValue() != checksum) {
+            throw new StreamCorruptedException("Schema grammar data checksum mismatch.");
+        }
+    }
+
+    //
+    // Package methods
+    //
+
+    /**
+     * Writes references from a component to other components. When writing
+     * grammars with this class, each referenced component is written later
+     * on, at the top level of the stream, and only its index is written
+     * here. Otherwise the components are written in place.
+     */
+    static void writeReferences(ObjectOutputStream out, Object[] references) throws IOException {
+        if (out instanceof GrammarOutputStream) {
+            final GrammarOutputStream grammarOut = (GrammarOutputStream) out;
+            out.writeInt(references.length);
+            for (int i = 0; i < references.length; i++) {
+                out.writeInt(grammarOut.getIndex(references[i]));
+            }
+        }
+        else {
+            out.writeObject(references);
+        }
+    }
+
+    /**
+     * Reads references written by {@link #writeReferences(ObjectOutputStream, Object[])}.
+     * When reading grammars with this class, the references are passed to
+     * the resolver after all components have been read.
+     */
+    static void readReferences(ObjectInputStream in, ReferenceResolver resolver)
+        throws IOException, ClassNotFoundException {
+        if (in instanceof GrammarInputStream) {
+            final int count = in.readInt();
+            if (count < 0) {
+                throw new StreamCorruptedException("Invalid schema component reference count.");
+            }
+            final int[] indices = new int[count];
+            for (int i = 0; i < count; i++) {
+                indices[i] = in.readInt();
+            }
+            ((GrammarInputStream) in).addResolver(resolver, indices);
+        }
+        else {
+            resolver.resolve((Object[]) in.readObject());
+        }
+    }
+
+    /**
+     * Receives the components referenced by a component once they
+     * have been read.
+     */
+    abstract static class ReferenceResolver {
+        abstract void resolve(Object[] references);
+    }
+
+    //
+    // Private classes
+    //
+
+    /**
+     * Reads no more than the given number of bytes from the underlying
+     * stream, which is not closed.
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+
+        // the number of bytes left to read
+        private int fRemaining;
+
+        BoundedInputStream(InputStream in, int length) {
+            super(in);
+            fRemaining = length;
+        }
+
+        public int read() throws IOException {
+            if (fRemaining == 0) {
+                return -1;
+            }
+            final int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Truncated schema grammar data.");
+            }
+            --fRemaining;
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (fRemaining == 0) {
+                return -1;
+            }
+            final int count = in.read(b, off, Math.min(len, fRemaining));
+            if (count == -1) {
+                throw new EOFException("Truncated schema grammar data.");
+            }
+            fRemaining -= count;
+            return count;
+        }
+
+        public long skip(long n) throws IOException {
+            // skipped bytes would escape the checksum
+            return 0;
+        }
+
+        public int available() throws IOException {
+            return Math.min(in.available(), fRemaining);
+        }
+
+        public boolean markSupported() {
+            return false;
+        }
+
+        public void close() {}
+    } // class BoundedInputStream
+
+    /** Reference to a component of one of the built-in grammars. */
+    private static final class BuiltinReference implements Serializable {
+
+        private static final long serialVersionUID = 6309781742376217546L;
+
+        // index into BUILTIN_GRAMMARS
+        private final int fGrammar;
+        // 0 for the grammar itself, otherwise the component type
+        private final short fKind;
+        private final String fName;
+
+        BuiltinReference(int grammar, short kind, String name) {
+            fGrammar = grammar;
+            fKind = kind;
+            fName = name;
+        }
+
+        Object resolve() throws ObjectStreamException {
+            Object builtin = null;
+            if (fGrammar >= 0 && fGrammar < BUILTIN_GRAMMARS.length) {
+                SchemaGrammar grammar = BUILTIN_GRAMMARS[fGrammar];
+                switch (fKind) {
+                case 0:
+                    builtin = grammar;
+                    break;
+                case XSConstants.TYPE_DEFINITION:
+                    builtin = grammar.getGlobalTypeDecl(fName);
+                    break;
+                case XSConstants.ATTRIBUTE_DECLARATION:
+                    builtin = grammar.getGlobalAttributeDecl(fName);
+                    break;
+                }
+            }
+            if (builtin == null) {
+                throw new StreamCorruptedException("Unknown built-in schema component " + fName + ".");
+            }
+            return builtin;
+        }
+    } // class BuiltinReference
+
+    /**
+     * Replaces built-in components with references and writes the
+     * components referenced through indices.
+     */
+    private static final class GrammarOutputStream extends ObjectOutputStream {
+
+        // the components referenced through indices, in index order
+        private final ArrayList<Object> fComponents = new ArrayList<Object>();
+        private final IdentityHashMap<Object, Integer> fIndices = new IdentityHashMap<Object, Integer>();
+
+        GrammarOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        void writeGrammars(SchemaGrammar[] grammars) throws IOException {
+            writeObject(grammars);
+            // writing a component may add more to the table
+            for (int i = 0; i < fComponents.size(); i++) {
+                writeObject(fComponents.get(i));
+            }
+            writeObject(null);
+        }
+
+        int getIndex(Object component) {
+            if (component == null) {
+                return -1;
+            }
+            Integer index = fIndices.get(component);
+            if (index == null) {
+                index = Integer.valueOf(fComponents.size());
+                fIndices.put(component, index);
+                fComponents.add(component);
+            }
+            return index.intValue();
+        }
+
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj instanceof SchemaGrammar) {
+                for (int i = 0; i < BUILTIN_GRAMMARS.length; i++) {
+                    if (obj == BUILTIN_GRAMMARS[i]) {
+                        return new BuiltinReference(i, (short) 0, null);
+                    }
+                }
+            }
+            else if (obj instanceof XSTypeDefinition) {
+                XSObject type = (XSObject) obj;
+                String name = type.getName();
+                if (name != null && type.getNamespace() == SchemaSymbols.URI_SCHEMAFORSCHEMA) {
+                    for (int i = 0; i < BUILTIN_GRAMMARS.length; i++) {
+                        if (obj == BUILTIN_GRAMMARS[i].getGlobalTypeDecl(name)) {
+                            return new BuiltinReference(i, XSConstants.TYPE_DEFINITION, name);
+                        }
+                    }
+                }
+            }
+            else if (obj instanceof XSAttributeDeclaration) {
+                XSObject attr = (XSObject) obj;
+                String name = attr.getName();
+                if (name != null && attr.getNamespace() == SchemaSymbols.URI_XSI &&
+                        obj == SchemaGrammar.SG_XSI.getGlobalAttributeDecl(name)) {
+                    return new BuiltinReference(2, XSConstants.ATTRIBUTE_DECLARATION, name);
+                }
+            }
+            return obj;
+        }
+    } // class GrammarOutputStream
+
+    /**
+     * Resolves references to built-in components and interns strings.
+     * Only Xerces classes and the core Java classes of {@link #CORE_CLASSES}
+     * can be read.
+     */
+    private static final class GrammarInputStream extends ObjectInputStream {
+
+        // the components referenced through indices
+        private final ArrayList<Object> fComponents = new ArrayList<Object>();
+        // the resolvers waiting for them, and the indices they need
+        private final ArrayList<ReferenceResolver> fResolvers = new ArrayList<ReferenceResolver>();
+        private final ArrayList<int[]> fResolverIndices = new ArrayList<int[]>();
+
+        GrammarInputStream(InputStream in) throws IOException {
+            super(in);
+            enableResolveObject(true);
+        }
+
+        Object readGrammars() throws IOException, ClassNotFoundException {
+            final Object grammars = readObject();
+            Object component;
+            while ((component = readObject()) != null) {
+                fComponents.add(component);
+            }
+            final int size = fComponents.size();
+            for (int i = 0; i < fResolvers.size(); i++) {
+                final int[] indices = fResolverIndices.get(i);
+                final Object[] references = new Object[indices.length];
+                for (int j = 0; j < indices.length; j++) {
+                    if (indices[j] >= size || indices[j] < -1) {
+                        throw new StreamCorruptedException("Invalid schema component reference.");
+                    }
+                    references[j] = (indices[j] != -1) ? fComponents.get(indices[j]) : null;
+                }
+                try {
+                    fResolvers.get(i).resolve(references);
+                }
+                catch (ClassCastException e) {
+                    throw new StreamCorruptedException(e.getMessage());
+                }
+            }
+            return grammars;
+        }
+
+        void addResolver(ReferenceResolver resolver, int[] indices) {
+            fResolvers.add(resolver);
+            fResolverIndices.add(indices);
+        }
+
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            int dims = 0;
+            while (name.charAt(dims) == '[') {
+                ++dims;
+            }
+            if (dims == 0 || name.charAt(dims) == 'L') {
+                if (dims > 0) {
+                    name = name.substring(dims + 1, name.length() - 1);
+                }
+                if (!name.startsWith("org.apache.xerces.") && !isCoreClass(name)) {
+                    throw new InvalidClassException(name, "Not a schema grammar class.");
+                }
+            }
+            return super.resolveClass(desc);
+        }
+
+        private static boolean isCoreClass(String name) {
+            for (int i = 0; i < CORE_CLASSES.length; i++) {
+                if (name.equals(CORE_CLASSES[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        protected Object resolveObject(Object obj) throws IOException {
+            if (obj instanceof String) {
+                return ((String) obj).intern();
+            }
+            if (obj instanceof BuiltinReference) {
+                return ((BuiltinReference) obj).resolve();
+            }
+            return obj;
+        }
+    } // class GrammarInputStream
+
+} // class XSGrammarSerializer
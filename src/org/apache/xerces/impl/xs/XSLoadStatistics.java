@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs;
+
+import java.util.ArrayList;
+
+/**
+ * Statistics about the loading of XML schemas: the time spent in each phase
+ * of the load, per schema document and in total, and the number of
+ * components, content models, particles and DFA states built.
+ * <p>
+ * An instance is passed to the schema loader (or to the JAXP schema
+ * factory) as the value of the
+ * <code>http://apache.org/xml/properties/validation/schema/load-statistics</code>
+ * property. The statistics of all the loads that follow are added to it
+ * until it is {@link #reset() reset}. Times are wall times, in nanoseconds.
+ * <p>
+ * Collecting statistics has some overhead; no statistics are collected
+ * when the property is not set.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public final class XSLoadStatistics {
+
+    //
+    // Constants
+    //
+
+    /** Resolution of schema locations through the entity resolver. */
+    public static final short PHASE_RESOLVE = 0;
+
+    /** Parsing of schema documents, including reading them. */
+    public static final short PHASE_PARSE = 1;
+
+    /** Checking of the attributes of schema elements. Part of the traversal. */
+    public static final short PHASE_ATTRIBUTE_CHECKING = 2;
+
+    /** Traversal of the schema documents into schema components. */
+    public static final short PHASE_TRAVERSAL = 3;
+
+    /** Full schema constraint checking. */
+    public static final short PHASE_FULL_CHECKING = 4;
+
+    /** Building of content models. Mostly part of full schema checking. */
+    public static final short PHASE_CONTENT_MODEL = 5;
+
+    private static final String[] PHASE_NAMES = {
+        "resolve", "parse", "attribute checking", "traversal",
+        "full checking", "content model"
+    };
+
+    //
+    // Data
+    //
+
+    // load-wide times, per phase
+    private final long[] fTimes = new long[PHASE_NAMES.length];
+
+    // the schema documents, in the order they were read
+    private final ArrayList<Document> fDocuments = new ArrayList<Document>();
+
+    private int fComponentCount = 0;
+    private int fContentModelCount = 0;
+    private int fParticleCount = 0;
+    private int fStateCount = 0;
+
+    //
+    // Public methods
+    //
+
+    /** Returns the time spent in the given phase, summed over all loads. */
+    public long getTime(short phase) {
+        return fTimes[phase];
+    }
+
+    /** Returns the number of schema documents read. */
+    public int getDocumentCount() {
+        return fDocuments.size();
+    }
+
+    /** Returns the statistics of the schema document at the given index. */
+    public Document getDocument(int index) {
+        return fDocuments.get(index);
+    }
+
+    /** Returns the number of top-level components traversed. */
+    public int getComponentCount() {
+        return fComponentCount;
+    }
+
+    /** Returns the number of content models built. */
+    public int getContentModelCount() {
+        return fContentModelCount;
+    }
+
+    /**
+     * Returns the number of element and wildcard particles in the content
+     * models built, after the expansion of occurrence ranges.
+     */
+    public int getParticleCount() {
+        return fParticleCount;
+    }
+
+    /** Returns the number of states of the DFA content models built. */
+    public int getDFAStateCount() {
+        return fStateCount;
+    }
+
+    /** Discards all the statistics collected so far. */
+    public void reset() {
+        for (int i = 0; i < fTimes.length; i++) {
+            fTimes[i] = 0;
+        }
+        fDocuments.clear();
+        fComponentCount = 0;
+        fContentModelCount = 0;
+        fParticleCount = 0;
+        fStateCount = 0;
+    }
+
+    /** Returns a readable report of the statistics. */
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("documents: ").append(fDocuments.size());
+        buffer.append(", components: ").append(fComponentCount);
+        buffer.append(", content models: ").append(fContentModelCount);
+        buffer.append(", particles: ").append(fParticleCount);
+        buffer.append(", DFA states: ").append(fStateCount).append('\n');
+        for (short phase = 0; phase < PHASE_NAMES.length; phase++) {
+            buffer.append(PHASE_NAMES[phase]).append(": ");
+            appendMillis(buffer, fTimes[phase]);
+            buffer.append('\n');
+        }
+        for (int i = 0; i < fDocuments.size(); i++) {
+            buffer.append(fDocuments.get(i)).append('\n');
+        }
+        return buffer.toString();
+    }
+
+    //
+    // Methods used by the schema loader
+    //
+
+    /** Adds to the load-wide time of the given phase. */
+    public void addTime(short phase, long time) {
+        fTimes[phase] += time;
+    }
+
+    /** Adds a schema document. */
+    public Document addDocument(String systemId) {
+        Document document = new Document(systemId);
+        fDocuments.add(document);
+        return document;
+    }
+
+    /** Adds a content model with the given number of particles and states. */
+    public void addContentModel(int particleCount, int stateCount) {
+        fContentModelCount++;
+        fParticleCount += particleCount;
+        fStateCount += stateCount;
+    }
+
+    private static void appendMillis(StringBuffer buffer, long time) {
+        buffer.append(time / 1000000).append('.');
+        final long fraction = (time / 1000) % 1000;
+        if (fraction < 100) {
+            buffer.append(fraction < 10 ? "00" : "0");
+        }
+        buffer.append(fraction).append(" ms");
+    }
+
+    /**
+     * Statistics about one schema document. The traversal time of a document
+     * includes the traversal of the components of other documents that its
+     * components refer to, when these have not been traversed yet.
+     */
+    public final class Document {
+
+        private final String fSystemId;
+        private final long[] fDocumentTimes = new long[PHASE_TRAVERSAL + 1];
+        private int fCharacterCount = -1;
+        private int fDocumentComponentCount = 0;
+
+        Document(String systemId) {
+            fSystemId = systemId;
+        }
+
+        /** Returns the expanded system identifier of the document, if any. */
+        public String getSystemId() {
+            return fSystemId;
+        }
+
+        /**
+         * Returns the time spent on this document in the given phase; only
+         * the parse, attribute checking and traversal phases are recorded
+         * per document.
+         */
+        public long getTime(short phase) {
+            return phase < fDocumentTimes.length ? fDocumentTimes[phase] : 0;
+        }
+
+        /**
+         * Returns the number of characters read from the document, or -1
+         * if it was not parsed by the schema loader.
+         */
+        public int getCharacterCount() {
+            return fCharacterCount;
+        }
+
+        /** Returns the number of top-level components of the document. */
+        public int getComponentCount() {
+            return fDocumentComponentCount;
+        }
+
+        /** Adds to the time spent on this document in the given phase. */
+        public void addTime(short phase, long time) {
+            fDocumentTimes[phase] += time;
+        }
+
+        public void setCharacterCount(int count) {
+            fCharacterCount = count;
+        }
+
+        /** Counts a top-level component of the document. */
+        public void addComponent() {
+            fDocumentComponentCount++;
+            fComponentCount++;
+        }
+
+        public String toString() {
+            StringBuffer buffer = new StringBuffer();
+            buffer.append(fSystemId).append(": ");
+            for (short phase = PHASE_PARSE; phase < fDocumentTimes.length; phase++) {
+                buffer.append(PHASE_NAMES[phase]).append(' ');
+                appendMillis(buffer, fDocumentTimes[phase]);
+                buffer.append(", ");
+            }
+            buffer.append("characters ").append(fCharacterCount);
+            buffer.append(", components ").append(fDocumentComponentCount);
+            return buffer.toString();
+        }
+    }
+
+} // class XSLoadStatistics
@@ -17,6 +17,8 @@
 
 package org.apache.xerces.impl.xs;
 
+import java.io.Serializable;
+
 import org.apache.xerces.impl.xs.util.XSObjectListImpl;
 import org.apache.xerces.xs.XSConstants;
 import org.apache.xerces.xs.XSNamespaceItem;
@@ -33,7 +35,10 @@ import org.apache.xerces.xs.XSTerm;
  *
  * @version $Id$
  */
-public class XSParticleDecl implements XSParticle {
+public class XSParticleDecl implements XSParticle, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 284492346463788366L;
 
     // types of particles
     public static final short PARTICLE_EMPTY        = 0;
@@ -17,6 +17,8 @@
 
 package org.apache.xerces.impl.xs;
 
+import java.io.Serializable;
+
 import org.apache.xerces.impl.xs.util.StringListImpl;
 import org.apache.xerces.impl.xs.util.XSObjectListImpl;
 import org.apache.xerces.xs.StringList;
@@ -37,7 +39,10 @@ import org.apache.xerces.xs.XSWildcard;
  *
  * @version $Id$
  */
-public class XSWildcardDecl implements XSWildcard {
+public class XSWildcardDecl implements XSWildcard, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = -4170517712953065598L;
 
     public static final String ABSENT = null;
 
@@ -17,6 +17,12 @@
 
 package org.apache.xerces.impl.xs.identity;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
 import org.apache.xerces.impl.xpath.XPathException;
 import org.apache.xerces.impl.xs.util.ShortListImpl;
 import org.apache.xerces.util.SymbolTable;
@@ -35,14 +41,17 @@ import org.apache.xerces.xs.XSTypeDefinition;
  * @author Andy Clark, IBM
  * @version $Id$
  */
-public class Field {
+public class Field implements Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 6566724038252775416L;
 
     //
     // Data
     //
 
     /** Field XPath. */
-    protected final Field.XPath fXPath;
+    protected transient Field.XPath fXPath;
 
 
     /** Identity constraint. */
@@ -89,6 +98,34 @@ public class Field {
         return fXPath.toString();
     } // toString():String
 
+    //
+    // Serialization methods
+    //
+
+    /**
+     * The XPath is written as its expression and the namespace bindings
+     * of its prefixes, and is parsed again on reading.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(fXPath.getExpression());
+        out.writeObject(fXPath.getNamespaceBindings());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        final String expression = (String) in.readObject();
+        final String[] bindings = (String[]) in.readObject();
+        final SymbolTable symbolTable = new SymbolTable();
+        try {
+            fXPath = new Field.XPath(expression, symbolTable,
+                    org.apache.xerces.impl.xpath.XPath.createNamespaceContext(bindings, symbolTable));
+        }
+        catch (XPathException e) {
+            throw new InvalidObjectException(e.getMessage());
+        }
+    }
+
     //
     // Classes
     //
@@ -17,6 +17,8 @@
 
 package org.apache.xerces.impl.xs.identity;
 
+import java.io.Serializable;
+
 import org.apache.xerces.impl.xs.XSAnnotationImpl;
 import org.apache.xerces.impl.xs.util.StringListImpl;
 import org.apache.xerces.impl.xs.util.XSObjectListImpl;
@@ -34,7 +36,10 @@ import org.apache.xerces.xs.XSObjectList;
  * @author Andy Clark, IBM
  * @version $Id$
  */
-public abstract class IdentityConstraint implements XSIDCDefinition {
+public abstract class IdentityConstraint implements XSIDCDefinition, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 224081551502375423L;
 
     //
     // Data
@@ -245,4 +250,12 @@ public abstract class IdentityConstraint implements XSIDCDefinition {
         fAnnotations[fNumAnnotations++] = annotation;
     }
 
+    /**
+     * Discards the annotations of this identity constraint.
+     */
+    public void discardAnnotations() {
+        fAnnotations = null;
+        fNumAnnotations = 0;
+    }
+
 } // class IdentityConstraint
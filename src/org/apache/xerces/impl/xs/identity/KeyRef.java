@@ -30,6 +30,9 @@ import org.apache.xerces.xs.XSIDCDefinition;
 public class KeyRef
     extends IdentityConstraint {
 
+    /** Serialization version. */
+    private static final long serialVersionUID = 1278584038134157567L;
+
     //
     // Data
     //
@@ -31,6 +31,9 @@ package org.apache.xerces.impl.xs.identity;
 public class UniqueOrKey 
     extends IdentityConstraint {
 
+    /** Serialization version. */
+    private static final long serialVersionUID = -4093906599777691922L;
+
     //
     // Constructors
     //
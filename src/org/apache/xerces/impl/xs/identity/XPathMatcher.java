@@ -147,6 +147,22 @@ public class XPathMatcher {
         return false;
     } // isMatched():int
 
+    /**
+     * Returns true if none of the location paths can match an element
+     * or attribute in the subtree of the current element. The start and
+     * end of the descendants of the current element then only move
+     * this matcher's depth counters back and forth, so they need not be
+     * reported to it.
+     */
+    public boolean isDormant() {
+        for (int i = 0; i < fLocationPaths.length; i++) {
+            if (fNoMatchDepth[i] == 0 && (fMatched[i] & MATCHED_DESCENDANT) != MATCHED) {
+                return false;
+            }
+        }
+        return true;
+    } // isDormant():boolean
+
     //
     // Protected methods
     //
@@ -22,6 +22,7 @@ import org.apache.xerces.impl.xs.SchemaSymbols;
 import org.apache.xerces.impl.xs.XSComplexTypeDecl;
 import org.apache.xerces.impl.xs.XSDeclarationPool;
 import org.apache.xerces.impl.xs.XSElementDecl;
+import org.apache.xerces.impl.xs.XSLoadStatistics;
 import org.apache.xerces.impl.xs.XSModelGroupImpl;
 import org.apache.xerces.impl.xs.XSParticleDecl;
 
@@ -49,6 +50,8 @@ public class CMBuilder {
     private int fParticleCount;
     //Factory to create Bin, Uni, Leaf nodes
     private final CMNodeFactory fNodeFactory;
+    // the statistics of the schema load, if collected
+    private XSLoadStatistics fStatistics = null;
 
     public CMBuilder(CMNodeFactory nodeFactory) {
         setfDeclPool(null);
@@ -59,6 +62,10 @@ public class CMBuilder {
         setfDeclPool(declPool);
     }
 
+    public void setStatistics(XSLoadStatistics statistics) {
+        fStatistics = statistics;
+    }
+
     /**
      * Get content model for the a given type
      *
@@ -82,15 +89,28 @@ public class CMBuilder {
         if (particle == null)
             return fEmptyCM;
 
+        final long start = (fStatistics != null) ? System.nanoTime() : 0;
+
         // if the content model contains "all" model group,
         // we create an "all" content model, otherwise a DFA content model
         XSCMValidator cmValidator = null;
         if (particle.fType == XSParticleDecl.PARTICLE_MODELGROUP &&
             ((XSModelGroupImpl)particle.fValue).fCompositor == XSModelGroupImpl.MODELGROUP_ALL) {
             cmValidator = createAllCM(particle);
+            if (fStatistics != null) {
+                fStatistics.addContentModel(((XSModelGroupImpl)particle.fValue).fParticleCount, 0);
+            }
         }
         else {
             cmValidator = createDFACM(particle, forUPA);
+            if (fStatistics != null) {
+                fStatistics.addContentModel(fLeafCount, (cmValidator != null) ?
+                        ((XSDFACM)cmValidator).getfTransTableSize() : 0);
+            }
+        }
+
+        if (fStatistics != null) {
+            fStatistics.addTime(XSLoadStatistics.PHASE_CONTENT_MODEL, System.nanoTime() - start);
         }
 
         //now we are throught building content model and have passed sucessfully of the nodecount check
@@ -17,12 +17,13 @@
 
 package org.apache.xerces.impl.xs.models;
 
+import java.io.Serializable;
 import java.util.Vector;
 
 import org.apache.xerces.impl.xs.SubstitutionGroupHandler;
 import org.apache.xerces.impl.xs.XMLSchemaException;
-import org.apache.xerces.impl.xs.XSConstraints;
 import org.apache.xerces.impl.xs.XSElementDecl;
+import org.apache.xerces.impl.xs.XSGrammarFootprint;
 import org.apache.xerces.xni.QName;
 
 /**
@@ -33,7 +34,10 @@ import org.apache.xerces.xni.QName;
  * @author Pavani Mukthipudi, Sun Microsystems Inc.
  * @version $Id$
  */
-public class XSAllCM implements XSCMValidator {
+public class XSAllCM implements XSCMValidator, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = -3729984582381095142L;
 
     //
     // Constants
@@ -180,14 +184,13 @@ public class XSAllCM implements XSCMValidator {
      */
     public boolean checkUniqueParticleAttribution(SubstitutionGroupHandler subGroupHandler) throws XMLSchemaException {
         // check whether there is conflict between any two leaves
-        for (int i = 0; i < fNumElements; i++) {
-            for (int j = i+1; j < fNumElements; j++) {
-                if (XSConstraints.overlapUPA(fAllElements[i], fAllElements[j], subGroupHandler)) {
-                    // REVISIT: do we want to report all errors? or just one?
-                    throw new XMLSchemaException("cos-nonambig", new Object[]{fAllElements[i].toString(),
-                                                                              fAllElements[j].toString()});
-                }
-            }
+        final long[] pairs = XSCMOverlapIndex.getOverlappingPairs(fAllElements, fNumElements, subGroupHandler);
+        if (pairs.length > 0) {
+            final int i = (int) (pairs[0] >>> 32);
+            final int j = (int) pairs[0];
+            // REVISIT: do we want to report all errors? or just one?
+            throw new XMLSchemaException("cos-nonambig", new Object[]{fAllElements[i].toString(),
+                                                                      fAllElements[j].toString()});
         }
 
         return false;
@@ -224,5 +227,10 @@ public class XSAllCM implements XSCMValidator {
     public boolean isCompactedForUPA() {
         return false;
     }
+
+    public long getFootprint() {
+        return XSGrammarFootprint.arraySize(fAllElements.length, XSGrammarFootprint.REFERENCE) +
+            XSGrammarFootprint.arraySize(fIsOptionalElement.length, 1);
+    }
 } // class XSAllCM
 
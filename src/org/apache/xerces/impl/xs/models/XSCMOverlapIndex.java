@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs.models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.xerces.impl.xs.SubstitutionGroupHandler;
+import org.apache.xerces.impl.xs.XSConstraints;
+import org.apache.xerces.impl.xs.XSElementDecl;
+import org.apache.xerces.impl.xs.XSWildcardDecl;
+
+/**
+ * Finds the pairs of leaves of a content model that overlap in the sense
+ * of the Unique Particle Attribution constraint, without comparing every
+ * leaf with every other one.
+ * <p>
+ * Element leaves are indexed by local name, and by the namespaces of the
+ * element and of the members of its substitution group. Two elements can
+ * only overlap if one of them, or a member of its substitution group, has
+ * the name of the other; an element and a list wildcard can only overlap
+ * if one of these namespaces is in the list. The candidate pairs found
+ * this way are then checked with {@link XSConstraints#overlapUPA}, so the
+ * result is the same as that of the pairwise comparison.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class XSCMOverlapIndex {
+
+    private static final long[] NO_PAIRS = new long[0];
+
+    private XSCMOverlapIndex() {}
+
+    /**
+     * Returns the pairs of overlapping leaves, each encoded as
+     * <code>((long) i &lt;&lt; 32) | j</code> with <code>i &lt; j</code>,
+     * sorted so that the pairs come in the order of the pairwise comparison.
+     *
+     * @param leaves          the leaves, instances of either XSElementDecl
+     *                        or XSWildcardDecl
+     * @param count           the number of leaves
+     * @param subGroupHandler the substitution group handler
+     */
+    static long[] getOverlappingPairs(Object[] leaves, int count,
+            SubstitutionGroupHandler subGroupHandler) {
+        if (count < 2) {
+            return NO_PAIRS;
+        }
+
+        // index the elements; the wildcards are kept aside
+        final XSElementDecl[][] subGroups = new XSElementDecl[count][];
+        final HashMap<String, int[]> byName = new HashMap<String, int[]>();
+        final HashMap<String, int[]> byNamespace = new HashMap<String, int[]>();
+        final int[] wildcards = new int[count];
+        int wildcardCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (leaves[i] instanceof XSElementDecl) {
+                final XSElementDecl element = (XSElementDecl) leaves[i];
+                subGroups[i] = subGroupHandler.getSubstitutionGroup(element);
+                add(byName, element.fName, i);
+                add(byNamespace, element.fTargetNamespace, i);
+                for (int m = 0; m < subGroups[i].length; m++) {
+                    add(byNamespace, subGroups[i][m].fTargetNamespace, i);
+                }
+            }
+            else {
+                wildcards[wildcardCount++] = i;
+            }
+        }
+
+        // collect the candidate pairs
+        long[] pairs = new long[16];
+        int pairCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (subGroups[i] == null) {
+                continue;
+            }
+            final XSElementDecl element = (XSElementDecl) leaves[i];
+            for (int m = -1; m < subGroups[i].length; m++) {
+                final XSElementDecl name = m < 0 ? element : subGroups[i][m];
+                final int[] bucket = byName.get(name.fName);
+                if (bucket == null) {
+                    continue;
+                }
+                for (int b = 1; b <= bucket[0]; b++) {
+                    final int j = bucket[b];
+                    if (j != i && ((XSElementDecl) leaves[j]).fTargetNamespace == name.fTargetNamespace) {
+                        if (pairCount == pairs.length) {
+                            pairs = grow(pairs);
+                        }
+                        pairs[pairCount++] = pair(i, j);
+                    }
+                }
+            }
+        }
+        for (int w = 0; w < wildcardCount; w++) {
+            final int i = wildcards[w];
+            final XSWildcardDecl wildcard = (XSWildcardDecl) leaves[i];
+            if (wildcard.fType == XSWildcardDecl.NSCONSTRAINT_LIST) {
+                for (int n = 0; n < wildcard.fNamespaceList.length; n++) {
+                    final int[] bucket = byNamespace.get(wildcard.fNamespaceList[n]);
+                    if (bucket == null) {
+                        continue;
+                    }
+                    for (int b = 1; b <= bucket[0]; b++) {
+                        if (pairCount == pairs.length) {
+                            pairs = grow(pairs);
+                        }
+                        pairs[pairCount++] = pair(i, bucket[b]);
+                    }
+                }
+            }
+            else {
+                // ##any and ##other allow nearly every namespace
+                for (int j = 0; j < count; j++) {
+                    if (subGroups[j] != null) {
+                        if (pairCount == pairs.length) {
+                            pairs = grow(pairs);
+                        }
+                        pairs[pairCount++] = pair(i, j);
+                    }
+                }
+            }
+            for (int v = w + 1; v < wildcardCount; v++) {
+                if (pairCount == pairs.length) {
+                    pairs = grow(pairs);
+                }
+                pairs[pairCount++] = pair(i, wildcards[v]);
+            }
+        }
+        if (pairCount == 0) {
+            return NO_PAIRS;
+        }
+
+        // sort, drop duplicates and keep the pairs that really overlap; the
+        // kept pairs are written at or before the current one, so the pair
+        // before it is still in place for the duplicate test
+        Arrays.sort(pairs, 0, pairCount);
+        int overlapCount = 0;
+        for (int p = 0; p < pairCount; p++) {
+            if (p > 0 && pairs[p] == pairs[p - 1]) {
+                continue;
+            }
+            if (XSConstraints.overlapUPA(leaves[(int) (pairs[p] >>> 32)],
+                    leaves[(int) pairs[p]], subGroupHandler)) {
+                pairs[overlapCount++] = pairs[p];
+            }
+        }
+        final long[] result = new long[overlapCount];
+        System.arraycopy(pairs, 0, result, 0, overlapCount);
+        return result;
+    }
+
+    private static long pair(int i, int j) {
+        return i < j ? ((long) i << 32) | j : ((long) j << 32) | i;
+    }
+
+    private static long[] grow(long[] pairs) {
+        final long[] newPairs = new long[pairs.length * 2];
+        System.arraycopy(pairs, 0, newPairs, 0, pairs.length);
+        return newPairs;
+    }
+
+    // adds the leaf to the bucket of the key, once; the first entry of a
+    // bucket is its size
+    private static void add(HashMap<String, int[]> index, String key, int leaf) {
+        int[] bucket = index.get(key);
+        if (bucket == null) {
+            bucket = new int[4];
+            index.put(key, bucket);
+        }
+        else if (bucket[bucket[0]] == leaf) {
+            return;
+        }
+        else if (bucket[0] + 1 == bucket.length) {
+            final int[] newBucket = new int[bucket.length * 2];
+            System.arraycopy(bucket, 0, newBucket, 0, bucket.length);
+            bucket = newBucket;
+            index.put(key, bucket);
+        }
+        bucket[++bucket[0]] = leaf;
+    }
+
+} // class XSCMOverlapIndex
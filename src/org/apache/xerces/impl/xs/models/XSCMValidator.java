@@ -124,4 +124,13 @@ public interface XSCMValidator {
      * @return a boolean that says whether this content has been compacted for UPA
      */
     public boolean isCompactedForUPA();
+
+    /**
+     * Returns an estimate of the memory held by the tables of this content
+     * model, in bytes.
+     * 
+     * @return the estimated size of this content model
+     * @see org.apache.xerces.impl.xs.XSGrammarFootprint
+     */
+    public long getFootprint();
 } // XSCMValidator
@@ -17,6 +17,7 @@
 
 package org.apache.xerces.impl.xs.models;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Vector;
 
@@ -25,8 +26,8 @@ import org.apache.xerces.impl.dtd.models.CMStateSet;
 import org.apache.xerces.impl.xs.SchemaSymbols;
 import org.apache.xerces.impl.xs.SubstitutionGroupHandler;
 import org.apache.xerces.impl.xs.XMLSchemaException;
-import org.apache.xerces.impl.xs.XSConstraints;
 import org.apache.xerces.impl.xs.XSElementDecl;
+import org.apache.xerces.impl.xs.XSGrammarFootprint;
 import org.apache.xerces.impl.xs.XSModelGroupImpl;
 import org.apache.xerces.impl.xs.XSParticleDecl;
 import org.apache.xerces.impl.xs.XSWildcardDecl;
@@ -44,7 +45,10 @@ import org.apache.xerces.xni.QName;
  * @version $Id$
  */
 public class XSDFACM
-    implements XSCMValidator {
+    implements XSCMValidator, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = -4741536458298114914L;
 
     //
     // Constants
@@ -141,7 +145,11 @@ public class XSDFACM
      * which use counters to check minOccurs/maxOccurs.
      */
     private Occurence [] fCountingStates = null;
-    static final class Occurence {
+    static final class Occurence implements Serializable {
+
+        /** Serialization version. */
+        private static final long serialVersionUID = 8809433207847585004L;
+
         final int minOccurs;
         final int maxOccurs;
         final int elemIndex;
@@ -792,6 +800,26 @@ public class XSDFACM
             }
         }
         
+        fTransTableSize = curState;
+
+        // the tables were grown ahead of the states found; trim them
+        if (curState < curArraySize) {
+            final boolean[] finalFlags = new boolean[curState];
+            final int[][] transTable = new int[curState][];
+            System.arraycopy(fFinalStateFlags, 0, finalFlags, 0, curState);
+            System.arraycopy(fTransTable, 0, transTable, 0, curState);
+            fFinalStateFlags = finalFlags;
+            fTransTable = transTable;
+        }
+        if (fElemMapSize < fElemMap.length) {
+            final Object[] elemMap = new Object[fElemMapSize];
+            final int[] elemMapType = new int[fElemMapSize];
+            System.arraycopy(fElemMap, 0, elemMap, 0, fElemMapSize);
+            System.arraycopy(fElemMapType, 0, elemMapType, 0, fElemMapSize);
+            fElemMap = elemMap;
+            fElemMapType = elemMapType;
+        }
+
         //
         // Fill in the occurence information for each looping state 
         // if we're using counters.
@@ -1034,53 +1062,29 @@ public class XSDFACM
      */
     public boolean checkUniqueParticleAttribution(SubstitutionGroupHandler subGroupHandler) throws XMLSchemaException {
         // Unique Particle Attribution
-        // store the conflict results between any two elements in fElemMap
-        // 0: not compared; -1: no conflict; 1: conflict
-        // initialize the conflict table (all 0 initially)
-        byte conflictTable[][] = new byte[fElemMapSize][fElemMapSize];
-
-        // for each state, check whether it has overlap transitions
-        for (int i = 0; i < fTransTable.length && fTransTable[i] != null; i++) {
-            for (int j = 0; j < fElemMapSize; j++) {
-                for (int k = j+1; k < fElemMapSize; k++) {
-                    if (fTransTable[i][j] != -1 &&
-                        fTransTable[i][k] != -1) {
-                        if (conflictTable[j][k] == 0) {
-                            if (XSConstraints.overlapUPA
-                                    (fElemMap[j], fElemMap[k],
-                                            subGroupHandler)) {
-                                if (fCountingStates != null) {
-                                    Occurence o = fCountingStates[i];
-                                    // If "i" is a counting state and exactly one of the transitions
-                                    // loops back to "i" then the two particles do not overlap if
-                                    // minOccurs == maxOccurs.
-                                    if (o != null && 
-                                        fTransTable[i][j] == i ^ fTransTable[i][k] == i && 
-                                        o.minOccurs == o.maxOccurs) {
-                                        conflictTable[j][k] = (byte) -1;
-                                        continue;
-                                    }
-                                }
-                                conflictTable[j][k] = (byte) 1;
-                            }
-                            else {
-                                conflictTable[j][k] = (byte) -1;
-                            }
+        // for each pair of overlapping particles, in order, check the first
+        // state that has transitions on both of them
+        final long[] pairs = XSCMOverlapIndex.getOverlappingPairs(fElemMap, fElemMapSize, subGroupHandler);
+        for (int p = 0; p < pairs.length; p++) {
+            final int j = (int) (pairs[p] >>> 32);
+            final int k = (int) pairs[p];
+            for (int i = 0; i < fTransTable.length && fTransTable[i] != null; i++) {
+                if (fTransTable[i][j] != -1 &&
+                    fTransTable[i][k] != -1) {
+                    if (fCountingStates != null) {
+                        Occurence o = fCountingStates[i];
+                        // If "i" is a counting state and exactly one of the transitions
+                        // loops back to "i" then the two particles do not overlap if
+                        // minOccurs == maxOccurs.
+                        if (o != null && 
+                            fTransTable[i][j] == i ^ fTransTable[i][k] == i && 
+                            o.minOccurs == o.maxOccurs) {
+                            break;
                         }
                     }
-                }
-            }
-        }
-
-        // report all errors
-        for (int i = 0; i < fElemMapSize; i++) {
-            for (int j = 0; j < fElemMapSize; j++) {
-                if (conflictTable[i][j] == 1) {
-                    //errors.newError("cos-nonambig", new Object[]{fElemMap[i].toString(),
-                    //                                             fElemMap[j].toString()});
                     // REVISIT: do we want to report all errors? or just one?
-                    throw new XMLSchemaException("cos-nonambig", new Object[]{fElemMap[i].toString(),
-                                                                              fElemMap[j].toString()});
+                    throw new XMLSchemaException("cos-nonambig", new Object[]{fElemMap[j].toString(),
+                                                                              fElemMap[k].toString()});
                 }
             }
         }
@@ -1171,6 +1175,20 @@ public class XSDFACM
         return fIsCompactedForUPA;
     }
 
+    public long getFootprint() {
+        long size = XSGrammarFootprint.arraySize(fElemMap.length, XSGrammarFootprint.REFERENCE) +
+            XSGrammarFootprint.arraySize(fElemMapType.length, 4) +
+            XSGrammarFootprint.arraySize(fFinalStateFlags.length, 1) +
+            XSGrammarFootprint.arraySize(fTransTable.length, XSGrammarFootprint.REFERENCE);
+        for (int i = 0; i < fTransTable.length && fTransTable[i] != null; i++) {
+            size += XSGrammarFootprint.arraySize(fTransTable[i].length, 4);
+        }
+        if (fCountingStates != null) {
+            size += XSGrammarFootprint.arraySize(fCountingStates.length, XSGrammarFootprint.REFERENCE);
+        }
+        return size;
+    }
+
     public int getfTransTableSize() {
         return fTransTableSize;
     }
@@ -17,6 +17,7 @@
 
 package org.apache.xerces.impl.xs.models;
 
+import java.io.Serializable;
 import java.util.Vector;
 
 import org.apache.xerces.impl.xs.SubstitutionGroupHandler;
@@ -35,7 +36,10 @@ import org.apache.xerces.xni.QName;
  * @author Lisa Martin, IBM
  * @version $Id$
  */
-public class XSEmptyCM implements XSCMValidator {
+public class XSEmptyCM implements XSCMValidator, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = -7524930650499342987L;
 
     //
     // Constants
@@ -142,4 +146,8 @@ public class XSEmptyCM implements XSCMValidator {
     public boolean isCompactedForUPA() {
         return false;
     }
+
+    public long getFootprint() {
+        return 0;
+    }
 } // class XSEmptyCM
@@ -32,49 +32,15 @@ import org.w3c.dom.Node;
  */
 public class ElementImpl extends DefaultElement {
     
+    // the document this element belongs to and its index there
     SchemaDOM schemaDOM;
-    Attr[] attrs;
-    int row;
-    int col;
-    int parentRow;
-    
-    int line;
-    int column;
-    int charOffset;
-    String fAnnotation;
-    String fSyntheticAnnotation;
-    
-    public ElementImpl(int line, int column, int offset) {
-        row = -1;
-        col = -1;
-        parentRow = -1;
-        nodeType = Node.ELEMENT_NODE;
-        
-        this.line = line;
-        this.column = column;
-        charOffset = offset;
-    }
-    
-    public ElementImpl(int line, int column) {
-        this(line, column, -1);
-    }
+    int node;
     
-    
-    public ElementImpl(String prefix, String localpart, String rawname,
-            String uri, int line, int column, int offset) {
+    ElementImpl(SchemaDOM schemaDOM, int node, String prefix,
+            String localpart, String rawname, String uri) {
         super(prefix, localpart, rawname, uri, Node.ELEMENT_NODE);
-        row = -1;
-        col = -1;
-        parentRow = -1;
-        
-        this.line = line;
-        this.column = column;
-        charOffset = offset;
-    }
-    
-    public ElementImpl(String prefix, String localpart, String rawname,
-            String uri, int line, int column) {
-        this(prefix, localpart, rawname, uri, line, column, -1);
+        this.schemaDOM = schemaDOM;
+        this.node = node;
     }
     
     
@@ -88,68 +54,47 @@ public class ElementImpl extends DefaultElement {
     
     
     public Node getParentNode() {
-        return schemaDOM.relations[row][0];
+        return schemaDOM.getNode(schemaDOM.getNodeData(node, SchemaDOM.NODE_PARENT));
     }
     
     
     public boolean hasChildNodes() {
-        if (parentRow == -1) {
-            return false;
-        }
-        else {
-            return true;
-        }
+        return schemaDOM.getNodeData(node, SchemaDOM.NODE_FIRST_CHILD) != -1;
     }
     
     
     public Node getFirstChild() {
-        if (parentRow == -1) {
-            return null;
-        }
-        return schemaDOM.relations[parentRow][1];
+        return schemaDOM.getNode(schemaDOM.getNodeData(node, SchemaDOM.NODE_FIRST_CHILD));
     }
     
     
     public Node getLastChild() {
-        if (parentRow == -1) {
-            return null;
-        }
-        int i=1;
-        for (; i<schemaDOM.relations[parentRow].length; i++) {
-            if (schemaDOM.relations[parentRow][i] == null) {
-                return schemaDOM.relations[parentRow][i-1];
-            }
-        }
-        if (i ==1) {
-            i++;
-        }
-        return schemaDOM.relations[parentRow][i-1];
+        return schemaDOM.getNode(schemaDOM.getNodeData(node, SchemaDOM.NODE_LAST_CHILD));
     }
     
     
     public Node getPreviousSibling() {
-        if (col == 1) {
-            return null;
-        }
-        return schemaDOM.relations[row][col-1];
+        return schemaDOM.getNode(schemaDOM.getNodeData(node, SchemaDOM.NODE_PREVIOUS_SIBLING));
     }
     
     
     public Node getNextSibling() {
-        if (col == schemaDOM.relations[row].length-1) {
-            return null;
-        }
-        return schemaDOM.relations[row][col+1];
+        return schemaDOM.getNode(schemaDOM.getNodeData(node, SchemaDOM.NODE_NEXT_SIBLING));
     }
     
     
     public NamedNodeMap getAttributes() {
+        final int start = schemaDOM.getAttributeStart(node);
+        final Attr[] attrs = new Attr[schemaDOM.getAttributeEnd(node) - start];
+        for (int i = 0; i < attrs.length; i++) {
+            attrs[i] = schemaDOM.getAttributeNode(start + i, this);
+        }
         return new NamedNodeMapImpl(attrs);
     }
     
     
     public boolean hasAttributes() {
-        return (attrs.length == 0 ? false : true);
+        return schemaDOM.getAttributeEnd(node) != schemaDOM.getAttributeStart(node);
     }
     
     
@@ -164,30 +109,22 @@ public class ElementImpl extends DefaultElement {
     
     
     public String getAttribute(String name) {
-        
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getName().equals(name)) {
-                return attrs[i].getValue();
-            }
-        }
-        return "";
+        final int attr = findAttribute(name);
+        return attr != -1 ? schemaDOM.getAttributeValue(attr) : "";
     }
     
     
     public Attr getAttributeNode(String name) {
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getName().equals(name)) {
-                return attrs[i];
-            }
-        }
-        return null;
+        final int attr = findAttribute(name);
+        return attr != -1 ? schemaDOM.getAttributeNode(attr, this) : null;
     }
     
     
     public String getAttributeNS(String namespaceURI, String localName) {
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getLocalName().equals(localName) && nsEquals(attrs[i].getNamespaceURI(), namespaceURI)) {
-                return attrs[i].getValue();
+        final int end = schemaDOM.getAttributeEnd(node);
+        for (int i = schemaDOM.getAttributeStart(node); i < end; i++) {
+            if (schemaDOM.getAttributeLocalName(i).equals(localName) && nsEquals(schemaDOM.getAttributeNamespaceURI(i), namespaceURI)) {
+                return schemaDOM.getAttributeValue(i);
             }
         }
         return "";
@@ -195,65 +132,71 @@ public class ElementImpl extends DefaultElement {
     
     
     public Attr getAttributeNodeNS(String namespaceURI, String localName) {
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getName().equals(localName) && nsEquals(attrs[i].getNamespaceURI(), namespaceURI)) {
-                return attrs[i];
-            }
-        }
-        return null;
+        final int attr = findAttributeNS(namespaceURI, localName);
+        return attr != -1 ? schemaDOM.getAttributeNode(attr, this) : null;
     }
     
     
     public boolean hasAttribute(String name) {
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getName().equals(name)) {
-                return true;
-            }
-        }
-        return false;
+        return findAttribute(name) != -1;
     }
     
     
     public boolean hasAttributeNS(String namespaceURI, String localName) {
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getName().equals(localName) && nsEquals(attrs[i].getNamespaceURI(), namespaceURI)) {
-                return true;
-            }
-        }
-        return false;
+        return findAttributeNS(namespaceURI, localName) != -1;
     }
     
     
     public void setAttribute(String name, String value) {
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getName().equals(name)) {
-                attrs[i].setValue(value);
-                return;
-            }
+        final int attr = findAttribute(name);
+        if (attr != -1) {
+            schemaDOM.setAttributeValue(attr, value);
         }
     }
     
     /** Returns the line number. */
     public int getLineNumber() {
-        return line;
+        return schemaDOM.getNodeData(node, SchemaDOM.NODE_LINE);
     }
     
     /** Returns the column number. */
     public int getColumnNumber() {
-        return column;
+        return schemaDOM.getNodeData(node, SchemaDOM.NODE_COLUMN);
     }
     
     /** Returns the character offset. */
     public int getCharacterOffset() {
-        return charOffset;
+        return schemaDOM.getNodeData(node, SchemaDOM.NODE_OFFSET);
     }
     
     public String getAnnotation() {
-        return fAnnotation;
+        return schemaDOM.getAnnotation(node);
     }
     
     public String getSyntheticAnnotation() {
-        return fSyntheticAnnotation;
+        return schemaDOM.getSyntheticAnnotation(node);
+    }
+    
+    // returns the index of the attribute with the given qualified name, or -1
+    private int findAttribute(String name) {
+        final int end = schemaDOM.getAttributeEnd(node);
+        for (int i = schemaDOM.getAttributeStart(node); i < end; i++) {
+            if (schemaDOM.getAttributeName(i).equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    // note that, as before, the qualified name is compared to localName
+    private int findAttributeNS(String namespaceURI, String localName) {
+        final int end = schemaDOM.getAttributeEnd(node);
+        for (int i = schemaDOM.getAttributeStart(node); i < end; i++) {
+            if (schemaDOM.getAttributeName(i).equals(localName) && nsEquals(schemaDOM.getAttributeNamespaceURI(i), namespaceURI)) {
+                return i;
+            }
+        }
+        return -1;
     }
     
     /**
@@ -18,6 +18,7 @@
 package org.apache.xerces.impl.xs.opti;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 
 import org.apache.xerces.util.XMLSymbols;
@@ -41,15 +42,63 @@ import org.w3c.dom.Node;
  */
 public class SchemaDOM extends DefaultDocument {
     
-    static final int relationsRowResizeFactor = 15;
-    static final int relationsColResizeFactor = 10;
-    
-    NodeImpl[][] relations;
-    // parent must be an element in this scheme
-    ElementImpl parent;
-    int currLoc;
-    int nextFreeLoc;
-    boolean hidden;
+    //
+    // Constants
+    //
+    
+    // the elements of the document are stored in fNodeData, NODE_SIZE
+    // ints per element. index 0 is a pseudo element standing for the
+    // document, which is the parent of the document element.
+    static final int NODE_PARENT = 0;
+    static final int NODE_FIRST_CHILD = 1;
+    static final int NODE_LAST_CHILD = 2;
+    static final int NODE_PREVIOUS_SIBLING = 3;
+    static final int NODE_NEXT_SIBLING = 4;
+    static final int NODE_NAME = 5;
+    static final int NODE_ATTRIBUTES = 6;
+    static final int NODE_LINE = 7;
+    static final int NODE_COLUMN = 8;
+    static final int NODE_OFFSET = 9;
+    static final int NODE_SIZE = 10;
+    
+    static final int INITIAL_NODE_COUNT = 32;
+    static final int INITIAL_NAME_COUNT = 16;
+    
+    //
+    // Data
+    //
+    
+    // element structure, positions and names
+    int[] fNodeData;
+    int fNodeCount;
+    
+    // the nodes handed out so far, created on demand
+    ElementImpl[] fNodes;
+    
+    // annotations, allocated once the first one is seen
+    String[] fAnnotations;
+    String[] fSyntheticAnnotations;
+    
+    // qualified names of elements and attributes; the names of
+    // a schema document are few and repeated, so they are shared
+    String[] fNamePrefix;
+    String[] fNameLocalpart;
+    String[] fNameRawname;
+    String[] fNameURI;
+    int[] fNameNext;
+    int[] fNameBuckets;
+    int fNameCount;
+    
+    // attributes of the elements, in document order
+    int[] fAttrName;
+    String[] fAttrValue;
+    int fAttrCount;
+    
+    // the number of characters of the document, -1 if unknown
+    int fCharacterCount;
+    
+    // the element new nodes are appended to
+    int parent;
     boolean inCDATA;
     
     // for annotation support:
@@ -60,91 +109,254 @@ public class SchemaDOM extends DefaultDocument {
     }
     
     
-    public ElementImpl startElement(QName element, XMLAttributes attributes,
+    /** Adds an element and makes it the parent of the following nodes. */
+    public int startElement(QName element, XMLAttributes attributes,
             int line, int column, int offset) {
-        ElementImpl node = new ElementImpl(line, column, offset);
-        processElement(element, attributes, node);
+        int node = processElement(element, attributes, line, column, offset);
         // now the current node added, becomes the parent
         parent = node;
         return node;
     }
     
-    public ElementImpl emptyElement(QName element, XMLAttributes attributes,
+    /** Adds an element without children. */
+    public int emptyElement(QName element, XMLAttributes attributes,
             int line, int column, int offset) {
-        ElementImpl node = new ElementImpl(line, column, offset);
-        processElement(element, attributes, node);
-        return node;
+        return processElement(element, attributes, line, column, offset);
     }
     
-    public ElementImpl startElement(QName element, XMLAttributes attributes,
+    public int startElement(QName element, XMLAttributes attributes,
             int line, int column) {
         return startElement(element, attributes, line, column, -1);
     }
     
-    public ElementImpl emptyElement(QName element, XMLAttributes attributes,
+    public int emptyElement(QName element, XMLAttributes attributes,
             int line, int column) {
         return emptyElement(element, attributes, line, column, -1);
     }
     
-    private void processElement(QName element, XMLAttributes attributes, ElementImpl node) {
+    private int processElement(QName element, XMLAttributes attributes,
+            int line, int column, int offset) {
         
-        // populate node
-        node.prefix = element.prefix;
-        node.localpart = element.localpart;
-        node.rawname = element.rawname;
-        node.uri = element.uri;
-        node.schemaDOM = this;
+        final int node = createNode(addName(element.prefix, element.localpart,
+                element.rawname, element.uri), line, column, offset);
         
         // set the attributes
-        Attr[] attrs = new Attr[attributes.getLength()];
-        for (int i=0; i<attributes.getLength(); i++) {
-            attrs[i] = new AttrImpl(node, 
-                    attributes.getPrefix(i), 
-                    attributes.getLocalName(i), 
-                    attributes.getQName(i), 
-                    attributes.getURI(i), 
-                    attributes.getValue(i));
+        final int length = attributes.getLength();
+        if (fAttrCount + length > fAttrName.length) {
+            int newLength = Math.max(fAttrName.length * 2, fAttrCount + length);
+            int[] newName = new int[newLength];
+            String[] newValue = new String[newLength];
+            System.arraycopy(fAttrName, 0, newName, 0, fAttrCount);
+            System.arraycopy(fAttrValue, 0, newValue, 0, fAttrCount);
+            fAttrName = newName;
+            fAttrValue = newValue;
         }
-        node.attrs = attrs;
-        
-        // check if array needs to be resized
-        if (nextFreeLoc == relations.length) {
-            resizeRelations();
+        for (int i = 0; i < length; i++) {
+            fAttrName[fAttrCount] = addName(attributes.getPrefix(i),
+                    attributes.getLocalName(i),
+                    attributes.getQName(i),
+                    attributes.getURI(i));
+            fAttrValue[fAttrCount++] = attributes.getValue(i);
         }
         
-        // store the current parent
-        //if (relations[currLoc][0] == null || relations[currLoc][0] != parent) {
-        if (relations[currLoc][0] != parent) {
-            relations[nextFreeLoc][0] = parent;
-            currLoc = nextFreeLoc++;
+        // add the current node as last child of parent
+        final int[] data = fNodeData;
+        final int base = node * NODE_SIZE;
+        final int parentBase = parent * NODE_SIZE;
+        final int last = data[parentBase + NODE_LAST_CHILD];
+        data[base + NODE_PARENT] = parent;
+        data[base + NODE_PREVIOUS_SIBLING] = last;
+        if (last == -1) {
+            data[parentBase + NODE_FIRST_CHILD] = node;
         }
-        
-        // add the current node as child of parent
-        boolean foundPlace = false;
-        int i = 1;
-        for (i = 1; i<relations[currLoc].length; i++) {
-            if (relations[currLoc][i] == null) {
-                foundPlace = true;
-                break;
-            }
+        else {
+            data[last * NODE_SIZE + NODE_NEXT_SIBLING] = node;
         }
-        
-        if (!foundPlace) {
-            resizeRelations(currLoc);
+        data[parentBase + NODE_LAST_CHILD] = node;
+        return node;
+    }
+    
+    private int createNode(int name, int line, int column, int offset) {
+        if ((fNodeCount + 1) * NODE_SIZE > fNodeData.length) {
+            int[] newData = new int[fNodeData.length * 2];
+            System.arraycopy(fNodeData, 0, newData, 0, fNodeCount * NODE_SIZE);
+            fNodeData = newData;
         }
-        relations[currLoc][i] = node;
-        
-        parent.parentRow = currLoc;
-        node.row = currLoc;
-        node.col = i;
+        final int node = fNodeCount++;
+        final int base = node * NODE_SIZE;
+        fNodeData[base + NODE_PARENT] = -1;
+        fNodeData[base + NODE_FIRST_CHILD] = -1;
+        fNodeData[base + NODE_LAST_CHILD] = -1;
+        fNodeData[base + NODE_PREVIOUS_SIBLING] = -1;
+        fNodeData[base + NODE_NEXT_SIBLING] = -1;
+        fNodeData[base + NODE_NAME] = name;
+        fNodeData[base + NODE_ATTRIBUTES] = fAttrCount;
+        fNodeData[base + NODE_LINE] = line;
+        fNodeData[base + NODE_COLUMN] = column;
+        fNodeData[base + NODE_OFFSET] = offset;
+        return node;
     }
     
+    // returns the index of the given name, adding it if necessary;
+    // the strings of a name are symbols, so they're compared by reference
+    private int addName(String prefix, String localpart, String rawname, String uri) {
+        final int bucket = (rawname.hashCode() & 0x7FFFFFFF) % fNameBuckets.length;
+        for (int i = fNameBuckets[bucket]; i != -1; i = fNameNext[i]) {
+            if (fNameRawname[i] == rawname && fNameURI[i] == uri &&
+                    fNameLocalpart[i] == localpart && fNamePrefix[i] == prefix) {
+                return i;
+            }
+        }
+        if (fNameCount == fNameRawname.length) {
+            final int newLength = fNameCount * 2;
+            String[] newPrefix = new String[newLength];
+            String[] newLocalpart = new String[newLength];
+            String[] newRawname = new String[newLength];
+            String[] newURI = new String[newLength];
+            int[] newNext = new int[newLength];
+            System.arraycopy(fNamePrefix, 0, newPrefix, 0, fNameCount);
+            System.arraycopy(fNameLocalpart, 0, newLocalpart, 0, fNameCount);
+            System.arraycopy(fNameRawname, 0, newRawname, 0, fNameCount);
+            System.arraycopy(fNameURI, 0, newURI, 0, fNameCount);
+            System.arraycopy(fNameNext, 0, newNext, 0, fNameCount);
+            fNamePrefix = newPrefix;
+            fNameLocalpart = newLocalpart;
+            fNameRawname = newRawname;
+            fNameURI = newURI;
+            fNameNext = newNext;
+        }
+        final int name = fNameCount++;
+        fNamePrefix[name] = prefix;
+        fNameLocalpart[name] = localpart;
+        fNameRawname[name] = rawname;
+        fNameURI[name] = uri;
+        fNameNext[name] = fNameBuckets[bucket];
+        fNameBuckets[bucket] = name;
+        return name;
+    }
     
     public void endElement()  {
         // the parent of current parent node becomes the parent
         // for the next node.
-        currLoc = parent.row;
-        parent = (ElementImpl)relations[currLoc][0];
+        parent = fNodeData[parent * NODE_SIZE + NODE_PARENT];
+    }
+    
+    /**
+     * Releases the space reserved for nodes which were not created.
+     * Called once the whole document has been added.
+     */
+    void endDocument(int characterCount) {
+        fCharacterCount = characterCount;
+        if (fNodeCount * NODE_SIZE < fNodeData.length) {
+            int[] newData = new int[fNodeCount * NODE_SIZE];
+            System.arraycopy(fNodeData, 0, newData, 0, newData.length);
+            fNodeData = newData;
+        }
+        if (fAttrCount < fAttrName.length) {
+            int[] newName = new int[fAttrCount];
+            String[] newValue = new String[fAttrCount];
+            System.arraycopy(fAttrName, 0, newName, 0, fAttrCount);
+            System.arraycopy(fAttrValue, 0, newValue, 0, fAttrCount);
+            fAttrName = newName;
+            fAttrValue = newValue;
+        }
+        // the name lookup is only needed while nodes are added
+        fNameNext = null;
+        fNameBuckets = null;
+    }
+    
+    /**
+     * Returns the number of characters read from the document,
+     * or -1 if it is not known.
+     */
+    public int getCharacterCount() {
+        return fCharacterCount;
+    }
+    
+    //
+    // node access, used by ElementImpl
+    //
+    
+    /** Returns the node with the given index, creating it if necessary. */
+    ElementImpl getNode(int node) {
+        if (node == -1) {
+            return null;
+        }
+        if (fNodes == null || fNodes.length <= node) {
+            ElementImpl[] newNodes = new ElementImpl[fNodeCount];
+            if (fNodes != null) {
+                System.arraycopy(fNodes, 0, newNodes, 0, fNodes.length);
+            }
+            fNodes = newNodes;
+        }
+        ElementImpl element = fNodes[node];
+        if (element == null) {
+            final int name = fNodeData[node * NODE_SIZE + NODE_NAME];
+            element = new ElementImpl(this, node, fNamePrefix[name],
+                    fNameLocalpart[name], fNameRawname[name], fNameURI[name]);
+            fNodes[node] = element;
+        }
+        return element;
+    }
+    
+    int getNodeData(int node, int field) {
+        return fNodeData[node * NODE_SIZE + field];
+    }
+    
+    // the attributes of a node are the range [getAttributeStart(node), getAttributeEnd(node))
+    int getAttributeStart(int node) {
+        return fNodeData[node * NODE_SIZE + NODE_ATTRIBUTES];
+    }
+    
+    int getAttributeEnd(int node) {
+        return (node + 1 < fNodeCount) ? fNodeData[(node + 1) * NODE_SIZE + NODE_ATTRIBUTES] : fAttrCount;
+    }
+    
+    String getAttributeName(int attr) {
+        return fNameRawname[fAttrName[attr]];
+    }
+    
+    String getAttributeLocalName(int attr) {
+        return fNameLocalpart[fAttrName[attr]];
+    }
+    
+    String getAttributeNamespaceURI(int attr) {
+        return fNameURI[fAttrName[attr]];
+    }
+    
+    String getAttributeValue(int attr) {
+        return fAttrValue[attr];
+    }
+    
+    void setAttributeValue(int attr, String value) {
+        fAttrValue[attr] = value;
+    }
+    
+    /** Creates an Attr node for the given attribute. */
+    Attr getAttributeNode(int attr, ElementImpl element) {
+        final int name = fAttrName[attr];
+        return new AttrImpl(element, fNamePrefix[name], fNameLocalpart[name],
+                fNameRawname[name], fNameURI[name], fAttrValue[attr]);
+    }
+    
+    String getAnnotation(int node) {
+        return (fAnnotations != null && node < fAnnotations.length) ? fAnnotations[node] : null;
+    }
+    
+    String getSyntheticAnnotation(int node) {
+        return (fSyntheticAnnotations != null && node < fSyntheticAnnotations.length) ? fSyntheticAnnotations[node] : null;
+    }
+    
+    private String[] setAnnotation(String[] annotations, int node, String annotation) {
+        if (annotations == null || annotations.length <= node) {
+            String[] newAnnotations = new String[Math.max(fNodeData.length / NODE_SIZE, node + 1)];
+            if (annotations != null) {
+                System.arraycopy(annotations, 0, newAnnotations, 0, annotations.length);
+            }
+            annotations = newAnnotations;
+        }
+        annotations[node] = annotation;
+        return annotations;
     }
     
     // note that this will only be called within appinfo/documentation
@@ -206,9 +418,9 @@ public class SchemaDOM extends DefaultDocument {
         fAnnotationBuffer.append(text);
     }
     
-    void endAnnotation(QName elemName, ElementImpl annotation) {
+    void endAnnotation(QName elemName, int annotation) {
         fAnnotationBuffer.append("\n</").append(elemName.rawname).append(">");
-        annotation.fAnnotation = fAnnotationBuffer.toString();
+        fAnnotations = setAnnotation(fAnnotations, annotation, fAnnotationBuffer.toString());
         // apparently, there is no sensible way of resetting these things
         fAnnotationBuffer = null;
     }
@@ -232,7 +444,7 @@ public class SchemaDOM extends DefaultDocument {
             // child and before endElement on annotation.
             // hence, we must make this the child of the current
             // parent's only child.
-            parent.fSyntheticAnnotation = fAnnotationBuffer.toString();
+            fSyntheticAnnotations = setAnnotation(fSyntheticAnnotations, parent, fAnnotationBuffer.toString());
             
             // apparently, there is no sensible way of resetting
             // these things
@@ -251,55 +463,31 @@ public class SchemaDOM extends DefaultDocument {
         inCDATA = false;
     }
     
-    private void resizeRelations() {
-        NodeImpl[][] temp = new NodeImpl[relations.length+relationsRowResizeFactor][];
-        System.arraycopy(relations, 0, temp, 0, relations.length);
-        for (int i = relations.length ; i < temp.length ; i++) {
-            temp[i] = new NodeImpl[relationsColResizeFactor];
-        }
-        relations = temp;
-    }
-    
-    private void resizeRelations(int i) {
-        NodeImpl[] temp = new NodeImpl[relations[i].length+relationsColResizeFactor];
-        System.arraycopy(relations[i], 0, temp, 0, relations[i].length);
-        relations[i] = temp;
-    }
-    
-    
     public void reset() {
-        
-        // help out the garbage collector
-        if(relations != null) 
-            for(int i=0; i<relations.length; i++) 
-                for(int j=0; j<relations[i].length; j++) 
-                    relations[i][j] = null;
-        relations = new NodeImpl[relationsRowResizeFactor][];
-        parent = new ElementImpl(0, 0, 0);
-        parent.rawname = "DOCUMENT_NODE";
-        currLoc = 0;
-        nextFreeLoc = 1;
+        fNodeData = new int[INITIAL_NODE_COUNT * NODE_SIZE];
+        fNodeCount = 0;
+        fNodes = null;
+        fAnnotations = null;
+        fSyntheticAnnotations = null;
+        fNamePrefix = new String[INITIAL_NAME_COUNT];
+        fNameLocalpart = new String[INITIAL_NAME_COUNT];
+        fNameRawname = new String[INITIAL_NAME_COUNT];
+        fNameURI = new String[INITIAL_NAME_COUNT];
+        fNameNext = new int[INITIAL_NAME_COUNT];
+        fNameBuckets = new int[INITIAL_NAME_COUNT * 2 - 1];
+        Arrays.fill(fNameBuckets, -1);
+        fNameCount = 0;
+        fAttrName = new int[INITIAL_NODE_COUNT];
+        fAttrValue = new String[INITIAL_NODE_COUNT];
+        fAttrCount = 0;
+        fCharacterCount = -1;
         inCDATA = false;
-        for (int i=0; i<relationsRowResizeFactor; i++) {
-            relations[i] = new NodeImpl[relationsColResizeFactor];
-        }
-        relations[currLoc][0] = parent;
+        // the pseudo element standing for the document
+        parent = createNode(addName(null, null, "DOCUMENT_NODE", null), 0, 0, 0);
     }
     
     
     public void printDOM() {
-        /*
-         for (int i=0; i<relations.length; i++) {
-         if (relations[i][0] != null) {
-         for (int j=0; j<relations[i].length; j++) {
-         if (relations[i][j] != null) {
-         System.out.print(relations[i][j].nodeType+"-"+relations[i][j].parentRow+"  ");
-         }
-         }
-         System.out.println("");
-         }
-         }
-         */
         //traverse(getDocumentElement(), 0);
     }
     
@@ -341,7 +529,7 @@ public class SchemaDOM extends DefaultDocument {
     // org.w3c.dom methods
     public Element getDocumentElement() {
         // this returns a parent node, known to be an ElementImpl
-        return (ElementImpl)relations[0][1];
+        return (fNodeCount > 1) ? getNode(fNodeData[NODE_FIRST_CHILD]) : null;
     }
     
     public DOMImplementation getImplementation() {
@@ -83,7 +83,7 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
     }
     
     // Reference to the current annotation element.
-    private ElementImpl fCurrentAnnotationElement;
+    private int fCurrentAnnotationElement;
     // where an annotation element itself begins
     // -1 means not in an annotation's scope
     private int fAnnotationDepth = -1;
@@ -113,7 +113,7 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
         fHasNonSchemaAttributes.clear();
         fSawAnnotation.clear();
         schemaDOM = new SchemaDOM();
-        fCurrentAnnotationElement = null;
+        fCurrentAnnotationElement = -1;
         fAnnotationDepth = -1;
         fInnerAnnotationDepth = -1;
         fDepth = -1;
@@ -129,6 +129,7 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
      * @throws XNIException Thrown by handler to signal an error.
      */
     public void endDocument(Augmentations augs) throws XNIException {
+        schemaDOM.endDocument(fLocator.getCharacterOffset());
         // To debug the DOM created uncomment the line below
         // schemaDOM.printDOM();
     } // endDocument()
@@ -328,7 +329,7 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
             schemaDOM.startAnnotationElement(element, attributes);
         }
         
-        ElementImpl newElem = schemaDOM.emptyElement(element, attributes, 
+        int newElem = schemaDOM.emptyElement(element, attributes, 
                 fLocator.getLineNumber(),
                 fLocator.getColumnNumber(),
                 fLocator.getCharacterOffset());
@@ -535,10 +536,11 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
     }
     
     /**
-     * ResetNodePool on SchemaParsingConfig
+     * ResetNodePool on SchemaParsingConfig, and release the last document
      */
     public void resetNodePool() {
     	((SchemaParsingConfig)config).resetNodePool();
+    	schemaDOM = null;
     }
     
     /**
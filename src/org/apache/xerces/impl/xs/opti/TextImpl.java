@@ -32,14 +32,13 @@ public class TextImpl extends DefaultText {
     // Data
     String fData = null;
     SchemaDOM fSchemaDOM = null;
-    int fRow;
-    int fCol;
+    // the index of the parent element
+    int fParent;
 
-    public TextImpl(StringBuffer str, SchemaDOM sDOM, int row, int col) {
+    public TextImpl(StringBuffer str, SchemaDOM sDOM, int parent) {
         fData = str.toString();
         fSchemaDOM = sDOM;
-        fRow = row;
-        fCol = col;
+        fParent = parent;
         rawname = prefix = localpart = uri = null;
         nodeType = Node.TEXT_NODE;
     }
@@ -53,22 +52,7 @@ public class TextImpl extends DefaultText {
     }
     
     public Node getParentNode() {
-        return fSchemaDOM.relations[fRow][0];
-    }
-
-    public Node getPreviousSibling() {
-        if (fCol == 1) {
-            return null;
-        }
-        return fSchemaDOM.relations[fRow][fCol-1];
-    }
-
-
-    public Node getNextSibling() {
-        if (fCol == fSchemaDOM.relations[fRow].length-1) {
-            return null;
-        }
-        return fSchemaDOM.relations[fRow][fCol+1];
+        return fSchemaDOM.getNode(fParent);
     }
 
     // CharacterData methods
@@ -30,6 +30,7 @@ import org.apache.xerces.impl.xs.SchemaNamespaceSupport;
 import org.apache.xerces.impl.xs.SchemaSymbols;
 import org.apache.xerces.impl.xs.XSAttributeDecl;
 import org.apache.xerces.impl.xs.XSGrammarBucket;
+import org.apache.xerces.impl.xs.XSLoadStatistics;
 import org.apache.xerces.impl.xs.XSWildcardDecl;
 import org.apache.xerces.impl.xs.util.XInt;
 import org.apache.xerces.impl.xs.util.XIntPool;
@@ -971,9 +972,28 @@ public class XSAttributeChecker {
      * @param enumAsQName  whether to tread enumeration value as QName
      * @return             an array containing attribute values
      */
-    @SuppressWarnings("unchecked")
     public Object[] checkAttributes(Element element, boolean isGlobal,
                                     XSDocumentInfo schemaDoc, boolean enumAsQName) {
+        final XSLoadStatistics statistics = fSchemaHandler.fStatistics;
+        if (statistics == null) {
+            return checkAttributes0(element, isGlobal, schemaDoc, enumAsQName);
+        }
+        final long start = System.nanoTime();
+        try {
+            return checkAttributes0(element, isGlobal, schemaDoc, enumAsQName);
+        }
+        finally {
+            final long time = System.nanoTime() - start;
+            statistics.addTime(XSLoadStatistics.PHASE_ATTRIBUTE_CHECKING, time);
+            if (schemaDoc != null && schemaDoc.fStatistics != null) {
+                schemaDoc.fStatistics.addTime(XSLoadStatistics.PHASE_ATTRIBUTE_CHECKING, time);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object[] checkAttributes0(Element element, boolean isGlobal,
+                                      XSDocumentInfo schemaDoc, boolean enumAsQName) {
         if (element == null)
             return null;
 
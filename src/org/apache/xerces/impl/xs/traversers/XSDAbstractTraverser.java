@@ -20,11 +20,13 @@ package org.apache.xerces.impl.xs.traversers;
 import java.util.Locale;
 import java.util.Vector;
 
+import org.apache.xerces.impl.dv.InvalidDatatypeFacetException;
 import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
 import org.apache.xerces.impl.dv.XSFacets;
 import org.apache.xerces.impl.dv.XSSimpleType;
 import org.apache.xerces.impl.dv.util.Base64;
 import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
+import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl.SharedFacets;
 import org.apache.xerces.impl.validation.ValidationState;
 import org.apache.xerces.impl.xs.SchemaGrammar;
 import org.apache.xerces.impl.xs.SchemaSymbols;
@@ -596,6 +598,28 @@ abstract class XSDAbstractTraverser {
         return new FacetInfo(xsFacets, content, facetsPresent, facetsFixed);
     }
     
+    // apply the facets to a new restriction of the base type; if an identical
+    // restriction was built before, its facets are shared rather than built again
+    void applyFacets(XSSimpleType type, XSSimpleType baseValidator, XSFacets facets,
+            short presentFacets, short fixedFacets, XSDocumentInfo schemaDoc)
+    throws InvalidDatatypeFacetException {
+        final XSDFacetCache cache = fSchemaHandler.fFacetCache;
+        final XSDFacetCache.Key key = cache.getKey(type, baseValidator, facets,
+                presentFacets, fixedFacets, containsQName(baseValidator));
+        if (key != null) {
+            final SharedFacets sharedFacets = cache.get(key);
+            if (sharedFacets != null) {
+                ((XSSimpleTypeDecl) type).applyFacets(sharedFacets);
+                return;
+            }
+        }
+        fValidationState.setNamespaceSupport(schemaDoc.fNamespaceSupport);
+        type.applyFacets(facets, presentFacets, fixedFacets, fValidationState);
+        if (key != null) {
+            cache.put(key, ((XSSimpleTypeDecl) type).getSharedFacets(presentFacets));
+        }
+    }
+    
     /*
      * Get name of an XSD type definition as a string value (which will typically be the value of "name" attribute of a
      * type definition, or an internal name determined by the validator for anonymous types).
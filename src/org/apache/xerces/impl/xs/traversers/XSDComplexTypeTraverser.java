@@ -580,8 +580,7 @@ class  XSDComplexTypeTraverser extends XSDAbstractParticleTraverser {
             String name = genAnonTypeName(simpleContentElement);
             fXSSimpleType = fSchemaHandler.fDVFactory.createTypeRestriction(name,schemaDoc.fTargetNamespace,(short)0,baseValidator,null);
             try{
-                fValidationState.setNamespaceSupport(schemaDoc.fNamespaceSupport);
-                fXSSimpleType.applyFacets(facetData, presentFacets, fixedFacets, fValidationState);
+                applyFacets(fXSSimpleType, baseValidator, facetData, presentFacets, fixedFacets, schemaDoc);
             }catch(InvalidDatatypeFacetException ex){
                 reportSchemaError(ex.getKey(), ex.getArgs(), simpleContent);
                 // Recreate the type, ignoring the facets
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs.traversers;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Vector;
+
+import org.apache.xerces.impl.dv.XSFacets;
+import org.apache.xerces.impl.dv.XSSimpleType;
+import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
+import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl.SharedFacets;
+import org.apache.xerces.impl.xs.SchemaSymbols;
+import org.apache.xerces.xs.XSObjectList;
+
+/**
+ * Remembers the facets of the restrictions of simple types to which they
+ * were applied, by base type and facet values, so that the facets of an
+ * identical restriction, such as the same anonymous type repeated for many
+ * elements, are shared rather than built again. The compiled patterns,
+ * enumeration values and bounds are then held once.
+ * <p>
+ * Only the facet values are kept, not the restrictions themselves, which
+ * refer to their grammar. The facets of restrictions of built-in types are
+ * kept from one schema load to the next; the others are discarded when the
+ * schema handler is reset, as their base types belong to a grammar.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class XSDFacetCache {
+
+    /** Maximum number of restrictions kept. */
+    private static final int MAX_SIZE = 4096;
+
+    private final HashMap<Key, SharedFacets> fFacets = new HashMap<Key, SharedFacets>();
+
+    /**
+     * Returns the key of a restriction of the given base type with the
+     * given facets, or null if its facets can't be shared: there are no
+     * facets, some facets have annotations, or the enumeration values are
+     * QNames, which depend on the namespace context.
+     */
+    Key getKey(XSSimpleType type, XSSimpleType base, XSFacets facets,
+            short presentFacets, short fixedFacets, boolean hasQName) {
+        if (presentFacets == 0 || !(type instanceof XSSimpleTypeDecl) ||
+                !(base instanceof XSSimpleTypeDecl) || hasAnnotations(facets) ||
+                (hasQName && (presentFacets & XSSimpleType.FACET_ENUMERATION) != 0)) {
+            return null;
+        }
+        return new Key(base, facets, presentFacets, fixedFacets);
+    }
+
+    /** Returns the facets of the restriction with the given key, if any. */
+    SharedFacets get(Key key) {
+        return fFacets.get(key);
+    }
+
+    /** Adds the facets of a restriction to which they were applied without error. */
+    void put(Key key, SharedFacets facets) {
+        if (fFacets.size() < MAX_SIZE) {
+            fFacets.put(key, facets);
+        }
+    }
+
+    /** Discards the facets of restrictions of types that are not built-in. */
+    void reset() {
+        for (Iterator<Key> keys = fFacets.keySet().iterator(); keys.hasNext();) {
+            if (keys.next().fBase.getNamespace() != SchemaSymbols.URI_SCHEMAFORSCHEMA) {
+                keys.remove();
+            }
+        }
+    }
+
+    private static boolean hasAnnotations(XSFacets facets) {
+        if (facets.lengthAnnotation != null || facets.minLengthAnnotation != null ||
+                facets.maxLengthAnnotation != null || facets.whiteSpaceAnnotation != null ||
+                facets.totalDigitsAnnotation != null || facets.fractionDigitsAnnotation != null ||
+                facets.patternAnnotations != null || facets.maxInclusiveAnnotation != null ||
+                facets.maxExclusiveAnnotation != null || facets.minInclusiveAnnotation != null ||
+                facets.minExclusiveAnnotation != null) {
+            return true;
+        }
+        final XSObjectList enumAnnotations = facets.enumAnnotations;
+        if (enumAnnotations != null) {
+            for (int i = 0; i < enumAnnotations.getLength(); i++) {
+                if (enumAnnotations.item(i) != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The base type and the values of the facets of a restriction. Only
+     * the values of the present facets are kept, as the facet data is
+     * reused from one restriction to the next.
+     */
+    static final class Key {
+
+        final XSSimpleType fBase;
+        final short fPresentFacets;
+        final short fFixedFacets;
+        final int fLength;
+        final int fMinLength;
+        final int fMaxLength;
+        final short fWhiteSpace;
+        final int fTotalDigits;
+        final int fFractionDigits;
+        final String fPattern;
+        final Vector<?> fEnumeration;
+        final String fMaxInclusive;
+        final String fMaxExclusive;
+        final String fMinInclusive;
+        final String fMinExclusive;
+        final int fHashCode;
+
+        Key(XSSimpleType base, XSFacets facets, short presentFacets, short fixedFacets) {
+            fBase = base;
+            fPresentFacets = presentFacets;
+            fFixedFacets = fixedFacets;
+            fLength = isPresent(XSSimpleType.FACET_LENGTH) ? facets.length : -1;
+            fMinLength = isPresent(XSSimpleType.FACET_MINLENGTH) ? facets.minLength : -1;
+            fMaxLength = isPresent(XSSimpleType.FACET_MAXLENGTH) ? facets.maxLength : -1;
+            fWhiteSpace = isPresent(XSSimpleType.FACET_WHITESPACE) ? facets.whiteSpace : -1;
+            fTotalDigits = isPresent(XSSimpleType.FACET_TOTALDIGITS) ? facets.totalDigits : -1;
+            fFractionDigits = isPresent(XSSimpleType.FACET_FRACTIONDIGITS) ? facets.fractionDigits : -1;
+            fPattern = isPresent(XSSimpleType.FACET_PATTERN) ? facets.pattern : null;
+            fEnumeration = isPresent(XSSimpleType.FACET_ENUMERATION) ? facets.enumeration : null;
+            fMaxInclusive = isPresent(XSSimpleType.FACET_MAXINCLUSIVE) ? facets.maxInclusive : null;
+            fMaxExclusive = isPresent(XSSimpleType.FACET_MAXEXCLUSIVE) ? facets.maxExclusive : null;
+            fMinInclusive = isPresent(XSSimpleType.FACET_MININCLUSIVE) ? facets.minInclusive : null;
+            fMinExclusive = isPresent(XSSimpleType.FACET_MINEXCLUSIVE) ? facets.minExclusive : null;
+
+            int hash = System.identityHashCode(base);
+            hash = hash * 31 + presentFacets;
+            hash = hash * 31 + fixedFacets;
+            hash = hash * 31 + fLength;
+            hash = hash * 31 + fMinLength;
+            hash = hash * 31 + fMaxLength;
+            hash = hash * 31 + fWhiteSpace;
+            hash = hash * 31 + fTotalDigits;
+            hash = hash * 31 + fFractionDigits;
+            hash = hash * 31 + hashCode(fPattern);
+            hash = hash * 31 + hashCode(fEnumeration);
+            hash = hash * 31 + hashCode(fMaxInclusive);
+            hash = hash * 31 + hashCode(fMaxExclusive);
+            hash = hash * 31 + hashCode(fMinInclusive);
+            hash = hash * 31 + hashCode(fMinExclusive);
+            fHashCode = hash;
+        }
+
+        private boolean isPresent(short facet) {
+            return (fPresentFacets & facet) != 0;
+        }
+
+        public int hashCode() {
+            return fHashCode;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return fHashCode == key.fHashCode && fBase == key.fBase &&
+                fPresentFacets == key.fPresentFacets && fFixedFacets == key.fFixedFacets &&
+                fLength == key.fLength && fMinLength == key.fMinLength &&
+                fMaxLength == key.fMaxLength && fWhiteSpace == key.fWhiteSpace &&
+                fTotalDigits == key.fTotalDigits && fFractionDigits == key.fFractionDigits &&
+                equals(fPattern, key.fPattern) && equals(fEnumeration, key.fEnumeration) &&
+                equals(fMaxInclusive, key.fMaxInclusive) && equals(fMaxExclusive, key.fMaxExclusive) &&
+                equals(fMinInclusive, key.fMinInclusive) && equals(fMinExclusive, key.fMinExclusive);
+        }
+
+        private static int hashCode(Object o) {
+            return o != null ? o.hashCode() : 0;
+        }
+
+        private static boolean equals(Object o1, Object o2) {
+            return o1 == null ? o2 == null : o1.equals(o2);
+        }
+    }
+
+} // class XSDFacetCache
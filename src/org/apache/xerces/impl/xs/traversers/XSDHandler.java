@@ -25,6 +25,12 @@ import java.util.Hashtable;
 import java.util.Locale;
 import java.util.Stack;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLStreamException;
@@ -48,12 +54,14 @@ import org.apache.xerces.impl.xs.XSDeclarationPool;
 import org.apache.xerces.impl.xs.XSElementDecl;
 import org.apache.xerces.impl.xs.XSGrammarBucket;
 import org.apache.xerces.impl.xs.XSGroupDecl;
+import org.apache.xerces.impl.xs.XSLoadStatistics;
 import org.apache.xerces.impl.xs.XSMessageFormatter;
 import org.apache.xerces.impl.xs.XSModelGroupImpl;
 import org.apache.xerces.impl.xs.XSNotationDecl;
 import org.apache.xerces.impl.xs.XSParticleDecl;
 import org.apache.xerces.impl.xs.identity.IdentityConstraint;
 import org.apache.xerces.impl.xs.opti.ElementImpl;
+import org.apache.xerces.impl.xs.opti.SchemaDOM;
 import org.apache.xerces.impl.xs.opti.SchemaDOMParser;
 import org.apache.xerces.impl.xs.opti.SchemaParsingConfig;
 import org.apache.xerces.impl.xs.util.SimpleLocator;
@@ -73,6 +81,7 @@ import org.apache.xerces.util.XMLChar;
 import org.apache.xerces.util.URI.MalformedURIException;
 import org.apache.xerces.util.XMLSymbols;
 import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLResourceIdentifier;
 import org.apache.xerces.xni.XNIException;
 import org.apache.xerces.xni.grammars.Grammar;
 import org.apache.xerces.xni.grammars.XMLGrammarDescription;
@@ -100,6 +109,7 @@ import org.apache.xerces.xs.XSSimpleTypeDefinition;
 import org.apache.xerces.xs.XSTerm;
 import org.apache.xerces.xs.XSTypeDefinition;
 import org.apache.xerces.xs.datatypes.ObjectList;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -171,6 +181,10 @@ public class XSDHandler {
     protected static final String TOLERATE_DUPLICATES = 
       Constants.XERCES_FEATURE_PREFIX + Constants.TOLERATE_DUPLICATES_FEATURE;
     
+    /** Feature identifier: parallel schema document parsing */
+    protected static final String PARALLEL_SCHEMA_PARSING = 
+      Constants.XERCES_FEATURE_PREFIX + Constants.PARALLEL_SCHEMA_PARSING_FEATURE;
+    
     /** Feature identifier: namespace prefixes. */
     private static final String NAMESPACE_PREFIXES =
         Constants.SAX_FEATURE_PREFIX + Constants.NAMESPACE_PREFIXES_FEATURE;
@@ -314,6 +328,17 @@ public class XSDHandler {
     private String emptyString2Null(String ns) {
         return ns == XMLSymbols.EMPTY_STRING ? null : ns;
     }
+    // returns the statistics of the schema document with the given root,
+    // adding them if this is the first time the document is seen
+    private XSLoadStatistics.Document getDocumentStatistics(Element schemaRoot) {
+        XSLoadStatistics.Document statistics = fDoc2Statistics.get(schemaRoot);
+        if (statistics == null) {
+            statistics = fStatistics.addDocument(doc2SystemId(schemaRoot));
+            fDoc2Statistics.put(schemaRoot, statistics);
+        }
+        return statistics;
+    }
+    
     // use Schema Element to lookup the SystemId.
     private String doc2SystemId(Element ele) {
         String documentURI = null;
@@ -337,6 +362,16 @@ public class XSDHandler {
     // this is useful to resolve a uri relative to the referring document
     private Hashtable<Element, String> fDoc2SystemId = new Hashtable<Element, String>();
     
+    // when parallel parsing is enabled, the schema documents referenced by
+    // a document are parsed on worker threads while the referring document
+    // is being processed. this hashtable maps the expanded system id of such
+    // a document to the pending parse; the set records every system id that
+    // was parsed or scheduled, so that no document is requested twice.
+    private Hashtable<String, PrefetchTask> fPrefetchedDocuments = new Hashtable<String, PrefetchTask>();
+    private Hashtable<String, String> fPrefetchRequested = new Hashtable<String, String>();
+    private ExecutorService fPrefetchExecutor = null;
+    private final XSDDescription fPrefetchDescription = new XSDDescription();
+    
     // the primary XSDocumentInfo we were called to parse
     private XSDocumentInfo fRoot = null;
     
@@ -407,6 +442,8 @@ public class XSDHandler {
     XSDWildcardTraverser fWildCardTraverser;
     
     SchemaDVFactory fDVFactory;
+    // the facets of simple type restrictions, shared between identical ones
+    final XSDFacetCache fFacetCache = new XSDFacetCache();
     SchemaDOMParser fSchemaParser;
     SchemaContentHandler fXSContentHandler;
     StAXSchemaParser fStAXSchemaParser;
@@ -454,6 +491,14 @@ public class XSDHandler {
     SymbolHash fGlobalIDConstraintDecls = new SymbolHash(3);
     SymbolHash fGlobalTypeDecls = new SymbolHash(25);
 
+    // whether referenced schema documents are parsed on worker threads
+    private boolean fParallelParsing = false;
+    
+    // statistics of the schema load, if collected
+    XSLoadStatistics fStatistics = null;
+    // the statistics of the schema documents read, by root element
+    private Hashtable<Element, XSLoadStatistics.Document> fDoc2Statistics = new Hashtable<Element, XSLoadStatistics.Document>();
+    
     // Constructors
     public XSDHandler(){
         fHiddenNodes = new Hashtable<Node, String>();       
@@ -486,6 +531,18 @@ public class XSDHandler {
      */
     public SchemaGrammar parseSchema(XMLInputSource is, XSDDescription desc,
             Hashtable<?, ?> locationPairs)
+    throws IOException {
+        try {
+            return parseSchema0(is, desc, locationPairs);
+        }
+        finally {
+            discardPrefetchedDocuments();
+            releaseSchemaDocuments();
+        }
+    } // parseSchema(XMLInputSource, XSDDescription, Hashtable): SchemaGrammar
+    
+    private SchemaGrammar parseSchema0(XMLInputSource is, XSDDescription desc,
+            Hashtable<?, ?> locationPairs)
     throws IOException {
         fLocationPairs = locationPairs;
         fSchemaParser.resetNodePool();   
@@ -624,6 +681,8 @@ public class XSDHandler {
             return null;
         }
         
+        final long traversalStart = (fStatistics != null) ? System.nanoTime() : 0;
+        
         // second phase:  fill global registries.
         buildGlobalNameRegistries();
         
@@ -637,6 +696,10 @@ public class XSDHandler {
         // fifth phase:  handle Keyrefs
         resolveKeyRefs();
         
+        if (fStatistics != null) {
+            fStatistics.addTime(XSLoadStatistics.PHASE_TRAVERSAL, System.nanoTime() - traversalStart);
+        }
+        
         // sixth phase:  validate attribute of non-schema namespaces
         // REVISIT: skip this for now. we really don't want to do it.
         //fAttributeChecker.checkNonSchemaAttributes(fGrammarBucket);
@@ -674,7 +737,7 @@ public class XSDHandler {
 
         // and return.
         return fGrammarBucket.getGrammar(fRoot.fTargetNamespace);
-    } // end parseSchema
+    } // end parseSchema0
     
     private void validateAnnotations(ArrayList<Object> annotationInfo) {
         if (fAnnotationValidator == null) {
@@ -788,6 +851,9 @@ public class XSDHandler {
 					  schemaRoot);
             return null;
         }
+        if (fStatistics != null) {
+            currSchemaInfo.fStatistics = getDocumentStatistics(schemaRoot);
+        }
         // targetNamespace="" is not valid, issue a warning, and ignore it
         if (currSchemaInfo.fTargetNamespace != null &&
                 currSchemaInfo.fTargetNamespace.length() == 0) {
@@ -893,6 +959,11 @@ public class XSDHandler {
         Vector<XSDocumentInfo> dependencies = new Vector<XSDocumentInfo>();
         Element rootNode = schemaRoot;
         
+        // start parsing the referenced documents while this one is processed
+        if (fParallelParsing) {
+            prefetchSchemaDocuments(schemaRoot);
+        }
+        
         Element newSchemaRoot = null;
         for (Element child = DOMUtil.getFirstChildElement(rootNode);
         child != null;
@@ -1381,6 +1452,7 @@ public class XSDHandler {
                 // must have processed this already!
                 continue;
             }
+            final long start = (currSchemaDoc.fStatistics != null) ? System.nanoTime() : 0;
             Element currRoot = currDoc;
             boolean sawAnnotation = false;
             // traverse this schema's global decls
@@ -1390,6 +1462,11 @@ public class XSDHandler {
             globalComp = DOMUtil.getNextVisibleSiblingElement(globalComp, fHiddenNodes)) {
                 DOMUtil.setHidden(globalComp, fHiddenNodes); 
                 String componentType = DOMUtil.getLocalName(globalComp);
+                if (currSchemaDoc.fStatistics != null &&
+                        !componentType.equals(SchemaSymbols.ELT_REDEFINE) &&
+                        !componentType.equals(SchemaSymbols.ELT_ANNOTATION)) {
+                    currSchemaDoc.fStatistics.addComponent();
+                }
                 // includes and imports will not show up here!
                 if (DOMUtil.getLocalName(globalComp).equals(SchemaSymbols.ELT_REDEFINE)) {
                     // use the namespace decls for the redefine, instead of for the parent <schema>
@@ -1399,6 +1476,9 @@ public class XSDHandler {
                     redefinedComp = DOMUtil.getNextVisibleSiblingElement(redefinedComp, fHiddenNodes)) {
                         String redefinedComponentType = DOMUtil.getLocalName(redefinedComp);
                         DOMUtil.setHidden(redefinedComp, fHiddenNodes);
+                        if (currSchemaDoc.fStatistics != null) {
+                            currSchemaDoc.fStatistics.addComponent();
+                        }
                         if (redefinedComponentType.equals(SchemaSymbols.ELT_ATTRIBUTEGROUP)) {
                             fAttributeGroupTraverser.traverseGlobal(redefinedComp, currSchemaDoc, currSG);
                         }
@@ -1471,6 +1551,9 @@ public class XSDHandler {
             // now we're done with this one!
             currSchemaDoc.returnSchemaAttrs();
             DOMUtil.setHidden(currDoc, fHiddenNodes);
+            if (currSchemaDoc.fStatistics != null) {
+                currSchemaDoc.fStatistics.addTime(XSLoadStatistics.PHASE_TRAVERSAL, System.nanoTime() - start);
+            }
 
             // now add the schemas this guy depends on
             Vector<?> currSchemaDepends = (Vector<?>)fDependencyMap.get(currSchemaDoc);
@@ -2051,7 +2134,7 @@ public class XSDHandler {
         XMLInputSource schemaSource = null;
         try {
             Hashtable<?, ?> pairs = usePairs ? fLocationPairs : EMPTY_TABLE;
-            schemaSource = XMLSchemaLoader.resolveDocument(desc, pairs, fEntityResolver);
+            schemaSource = resolveDocument(desc, pairs);
         }
         catch (IOException ex) {
             if (mustResolve) {
@@ -2098,13 +2181,27 @@ public class XSDHandler {
         return getSchemaDocument(desc.getTargetNamespace(), schemaSource, mustResolve, desc.getContextType(), referElement);
     }
 
+    private XMLInputSource resolveDocument(XSDDescription desc, Hashtable<?, ?> locationPairs)
+        throws IOException {
+        if (fStatistics == null) {
+            return XMLSchemaLoader.resolveDocument(desc, locationPairs, fEntityResolver);
+        }
+        final long start = System.nanoTime();
+        try {
+            return XMLSchemaLoader.resolveDocument(desc, locationPairs, fEntityResolver);
+        }
+        finally {
+            fStatistics.addTime(XSLoadStatistics.PHASE_RESOLVE, System.nanoTime() - start);
+        }
+    }
+
     private XMLInputSource resolveSchemaSource(XSDDescription desc, boolean mustResolve,
             Element referElement, boolean usePairs) {
 
         XMLInputSource schemaSource = null;
         try {
             Hashtable<?, ?> pairs = usePairs ? fLocationPairs : EMPTY_TABLE;
-            schemaSource = XMLSchemaLoader.resolveDocument(desc, pairs, fEntityResolver);
+            schemaSource = resolveDocument(desc, pairs);
         }
         catch (IOException ex) {
             if (mustResolve) {
@@ -2165,9 +2262,23 @@ public class XSDHandler {
                     }
                 }
                 
-                fSchemaParser.parse(schemaSource);
-                Document schemaDocument = fSchemaParser.getDocument();
+                final long start = (fStatistics != null) ? System.nanoTime() : 0;
+                Document schemaDocument = null;
+                if (schemaId != null && fPrefetchExecutor != null) {
+                    schemaDocument = getPrefetchedDocument(schemaId, schemaSource);
+                }
+                if (schemaDocument == null) {
+                    fSchemaParser.parse(schemaSource);
+                    schemaDocument = fSchemaParser.getDocument();
+                }
                 schemaElement = schemaDocument != null ? DOMUtil.getRoot(schemaDocument) : null;
+                if (fStatistics != null && schemaElement != null) {
+                    final long time = System.nanoTime() - start;
+                    XSLoadStatistics.Document statistics = getDocumentStatistics(schemaElement);
+                    statistics.addTime(XSLoadStatistics.PHASE_PARSE, time);
+                    statistics.setCharacterCount(((SchemaDOM) schemaDocument).getCharacterCount());
+                    fStatistics.addTime(XSLoadStatistics.PHASE_PARSE, time);
+                }
                 return getSchemaDocument0(key, schemaId, schemaElement);
             }
             else {
@@ -2454,6 +2565,9 @@ public class XSDHandler {
         }
         if (schemaId != null) {
             fDoc2SystemId.put(schemaElement, schemaId);
+            if (fParallelParsing) {
+                fPrefetchRequested.put(schemaId, schemaId);
+            }
         }
         fLastSchemaWasDuplicate = false;
         return schemaElement;
@@ -2488,6 +2602,121 @@ public class XSDHandler {
         return null;
     } // getSchemaDocument1(boolean, boolean, XMLInputSource, Element): Element
     
+    /**
+     * Schedules the schema documents referenced by the &lt;import&gt;,
+     * &lt;include&gt; and &lt;redefine&gt; children of the given schema
+     * element to be parsed on worker threads. Only the parse is done ahead:
+     * the documents are handed back to getSchemaDocument() in the order the
+     * serial algorithm asks for them, so the grammars built are the same.
+     */
+    private void prefetchSchemaDocuments(Element schemaRoot) {
+        String baseSystemId = doc2SystemId(schemaRoot);
+        for (Element child = DOMUtil.getFirstChildElement(schemaRoot);
+        child != null;
+        child = DOMUtil.getNextSiblingElement(child)) {
+            String localName = DOMUtil.getLocalName(child);
+            String schemaNamespace = null;
+            Hashtable<?, ?> pairs = EMPTY_TABLE;
+            if (localName.equals(SchemaSymbols.ELT_IMPORT)) {
+                Attr namespaceAttr = DOMUtil.getAttr(child, SchemaSymbols.ATT_NAMESPACE);
+                if (namespaceAttr != null) {
+                    schemaNamespace = fSymbolTable.addSymbol(XMLChar.trim(namespaceAttr.getValue()));
+                }
+                // the namespace is already known; the document would
+                // most likely not be read
+                if (fGrammarBucket.getGrammar(schemaNamespace) != null) {
+                    continue;
+                }
+                pairs = fLocationPairs;
+            }
+            else if (!localName.equals(SchemaSymbols.ELT_INCLUDE) &&
+                    !localName.equals(SchemaSymbols.ELT_REDEFINE)) {
+                continue;
+            }
+            Attr locationAttr = DOMUtil.getAttr(child, SchemaSymbols.ATT_SCHEMALOCATION);
+            String schemaHint = locationAttr != null ? XMLChar.trim(locationAttr.getValue()) : null;
+            
+            fPrefetchDescription.reset();
+            fPrefetchDescription.setContextType(localName.equals(SchemaSymbols.ELT_IMPORT) ?
+                    XSDDescription.CONTEXT_IMPORT : XSDDescription.CONTEXT_INCLUDE);
+            fPrefetchDescription.setBaseSystemId(baseSystemId);
+            fPrefetchDescription.setLiteralSystemId(schemaHint);
+            fPrefetchDescription.setLocationHints(new String[]{schemaHint});
+            fPrefetchDescription.setTargetNamespace(schemaNamespace);
+            try {
+                XMLInputSource schemaSource = resolveDocument(fPrefetchDescription, pairs);
+                if (schemaSource == null || schemaSource.getSystemId() == null ||
+                        schemaSource.getByteStream() != null ||
+                        schemaSource.getCharacterStream() != null) {
+                    continue;
+                }
+                String schemaId = XMLEntityManager.expandSystemId(schemaSource.getSystemId(), schemaSource.getBaseSystemId(), false);
+                if (schemaId == null || fPrefetchRequested.containsKey(schemaId)) {
+                    continue;
+                }
+                if (fPrefetchExecutor == null) {
+                    fPrefetchExecutor = Executors.newFixedThreadPool(
+                            Runtime.getRuntime().availableProcessors(), PrefetchThreadFactory.INSTANCE);
+                }
+                PrefetchTask task = new PrefetchTask(
+                        new XMLInputSource(schemaSource.getPublicId(), schemaSource.getSystemId(), schemaSource.getBaseSystemId()),
+                        fSchemaParser);
+                task.fResult = fPrefetchExecutor.submit(task);
+                fPrefetchRequested.put(schemaId, schemaId);
+                fPrefetchedDocuments.put(schemaId, task);
+            }
+            catch (IOException e) {
+                // left to the serial parse, which reports the problem
+            }
+        }
+    } // prefetchSchemaDocuments(Element)
+    
+    /**
+     * Returns the document with the given expanded system id parsed ahead
+     * of time, or null if it has to be parsed by the calling thread. This is
+     * the case when the document wasn't scheduled, when no worker has
+     * started parsing it yet, when the input source doesn't read from the
+     * system id, or when the parse reported any warning or error; the
+     * serial parse then reports them as usual.
+     */
+    private Document getPrefetchedDocument(String schemaId, XMLInputSource schemaSource) {
+        PrefetchTask task = fPrefetchedDocuments.remove(schemaId);
+        if (task == null) {
+            return null;
+        }
+        // rather than waiting behind the documents queued before it, the
+        // document is parsed by this thread if no worker has picked it up
+        if (task.claim() ||
+                schemaSource.getByteStream() != null ||
+                schemaSource.getCharacterStream() != null ||
+                schemaSource.getEncoding() != null) {
+            return null;
+        }
+        try {
+            return task.fResult.get();
+        }
+        catch (ExecutionException e) {
+            return null;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    } // getPrefetchedDocument(String, XMLInputSource): Document
+    
+    /**
+     * Cancels the parses of documents which weren't needed and stops the
+     * worker threads.
+     */
+    private void discardPrefetchedDocuments() {
+        if (fPrefetchExecutor != null) {
+            fPrefetchExecutor.shutdownNow();
+            fPrefetchExecutor = null;
+        }
+        fPrefetchedDocuments.clear();
+        fPrefetchRequested.clear();
+    } // discardPrefetchedDocuments()
+    
     /**
      * getSchemaDocument method uses XMLInputSource to parse a schema document.
      * @param schemaNamespace
@@ -3414,12 +3643,58 @@ public class XSDHandler {
         fTraversed.clear();
         fDoc2SystemId.clear();
         fHiddenNodes.clear();
+        fDoc2Statistics.clear();
         fLastSchemaWasDuplicate = false;
     }
 
     // before traversing a schema's parse tree, need to reset all traversers and
     // clear all registries
     void prepareForTraverse() {
+        clearRegistries();
+        
+        // create traversers if necessary
+        if (fAttributeChecker == null) {
+            createTraversers();
+        }
+        
+        // reset traversers
+        Locale locale = fErrorReporter.getLocale();
+        fAttributeChecker.reset(fSymbolTable);
+        fAttributeGroupTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
+        fAttributeTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
+        fComplexTypeTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
+        fElementTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
+        fGroupTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
+        fKeyrefTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
+        fNotationTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
+        fSimpleTypeTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
+        fUniqueOrKeyTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
+        fWildCardTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
+        fFacetCache.reset();
+        
+        fRedefinedRestrictedAttributeGroupRegistry.clear();
+        fRedefinedRestrictedGroupRegistry.clear();
+        
+        fGlobalAttrDecls.clear();
+        fGlobalAttrGrpDecls.clear();
+        fGlobalElemDecls.clear();
+        fGlobalGroupDecls.clear();
+        fGlobalNotationDecls.clear();
+        fGlobalIDConstraintDecls.clear();
+        fGlobalTypeDecls.clear();
+    }
+    
+    // once a grammar has been built, the parse trees of its schema documents
+    // are no longer needed; drop every reference to them so that they can be
+    // collected before the next schema is loaded
+    private void releaseSchemaDocuments() {
+        prepareForParse();
+        clearRegistries();
+        fSchemaParser.resetNodePool();
+    }
+    
+    // clears the registries and stacks, all of which refer to schema documents
+    private void clearRegistries() {
         fUnparsedAttributeRegistry.clear();
         fUnparsedAttributeGroupRegistry.clear();
         fUnparsedElementRegistry.clear();
@@ -3466,36 +3741,6 @@ public class XSDHandler {
             fKeyrefsMapXSDocumentInfo[i] = null;
         }
         fKeyrefStackPos = 0;
-        
-        // create traversers if necessary
-        if (fAttributeChecker == null) {
-            createTraversers();
-        }
-        
-        // reset traversers
-        Locale locale = fErrorReporter.getLocale();
-        fAttributeChecker.reset(fSymbolTable);
-        fAttributeGroupTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
-        fAttributeTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
-        fComplexTypeTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
-        fElementTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
-        fGroupTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
-        fKeyrefTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
-        fNotationTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
-        fSimpleTypeTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
-        fUniqueOrKeyTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
-        fWildCardTraverser.reset(fSymbolTable, fValidateAnnotations, locale);
-        
-        fRedefinedRestrictedAttributeGroupRegistry.clear();
-        fRedefinedRestrictedGroupRegistry.clear();
-        
-        fGlobalAttrDecls.clear();
-        fGlobalAttrGrpDecls.clear();
-        fGlobalElemDecls.clear();
-        fGlobalGroupDecls.clear();
-        fGlobalNotationDecls.clear();
-        fGlobalIDConstraintDecls.clear();
-        fGlobalTypeDecls.clear();
     }
     public void setDeclPool (XSDeclarationPool declPool){
         fDeclPool = declPool;
@@ -3503,6 +3748,9 @@ public class XSDHandler {
     public void setDVFactory(SchemaDVFactory dvFactory){
         fDVFactory = dvFactory;
     }
+    public void setStatistics(XSLoadStatistics statistics){
+        fStatistics = statistics;
+    }
     
     public void reset(XMLComponentManager componentManager) {
         
@@ -3563,6 +3811,15 @@ public class XSDHandler {
             fTolerateDuplicates = false;
         }
 
+        // documents are only parsed ahead when their location can be resolved
+        // without calling back into an application supplied entity resolver
+        try {
+            fParallelParsing = componentManager.getFeature(PARALLEL_SCHEMA_PARSING) &&
+                (er == null || er.getClass() == XMLEntityManager.class);
+        } catch (XMLConfigurationException e) {
+            fParallelParsing = false;
+        }
+
         try {
             fSchemaParser.setFeature(
                     CONTINUE_AFTER_FATAL_ERROR,
@@ -4314,6 +4571,101 @@ public class XSDHandler {
         }
     }
     
+    /**
+     * Parses a schema document on a worker thread, with its own parser
+     * configured like the one of the handler. The parse is abandoned at
+     * the first warning or error. A task is run at most once: either a
+     * worker or the handler claims it.
+     */
+    private static final class PrefetchTask implements Callable<Document> {
+        
+        private static final String[] FEATURES = {
+            ALLOW_JAVA_ENCODINGS,
+            STANDARD_URI_CONFORMANT_FEATURE,
+            DISALLOW_DOCTYPE,
+            GENERATE_SYNTHETIC_ANNOTATIONS
+        };
+        
+        private final XMLInputSource fInputSource;
+        private final boolean[] fFeatures = new boolean[FEATURES.length];
+        private final Object fSecurityManager;
+        private boolean fClaimed = false;
+        Future<Document> fResult;
+        
+        PrefetchTask(XMLInputSource inputSource, SchemaDOMParser parser) {
+            fInputSource = inputSource;
+            for (int i = 0; i < FEATURES.length; i++) {
+                fFeatures[i] = parser.getFeature(FEATURES[i]);
+            }
+            fSecurityManager = parser.getProperty(SECURITY_MANAGER);
+        }
+        
+        synchronized boolean claim() {
+            if (fClaimed) {
+                return false;
+            }
+            fClaimed = true;
+            return true;
+        }
+        
+        public Document call() throws IOException {
+            if (!claim()) {
+                return null;
+            }
+            SchemaDOMParser parser = new SchemaDOMParser(new SchemaParsingConfig());
+            for (int i = 0; i < FEATURES.length; i++) {
+                parser.setFeature(FEATURES[i], fFeatures[i]);
+            }
+            if (fSecurityManager != null) {
+                parser.setProperty(SECURITY_MANAGER, fSecurityManager);
+            }
+            parser.setProperty(ERROR_HANDLER, PrefetchGuard.INSTANCE);
+            parser.setEntityResolver(PrefetchGuard.INSTANCE);
+            parser.parse(fInputSource);
+            return parser.getDocument();
+        }
+    }
+    
+    /**
+     * Aborts a worker parse on any warning or error, and when an external
+     * entity is referenced, as it may have to be resolved by the entity
+     * resolver of the handler.
+     */
+    private static final class PrefetchGuard implements XMLErrorHandler, XMLEntityResolver {
+        
+        static final PrefetchGuard INSTANCE = new PrefetchGuard();
+        
+        public XMLInputSource resolveEntity(XMLResourceIdentifier resourceIdentifier) throws XNIException {
+            throw new XNIException("");
+        }
+        
+        public void warning(String domain, String key, XMLParseException exception) throws XNIException {
+            throw exception;
+        }
+        
+        public void error(String domain, String key, XMLParseException exception) throws XNIException {
+            throw exception;
+        }
+        
+        public void fatalError(String domain, String key, XMLParseException exception) throws XNIException {
+            throw exception;
+        }
+    }
+    
+    /**
+     * Creates the daemon worker threads which parse schema documents.
+     */
+    private static final class PrefetchThreadFactory implements ThreadFactory {
+        
+        static final PrefetchThreadFactory INSTANCE = new PrefetchThreadFactory();
+        
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "XSDHandler-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+    
     private static final class SAX2XNIUtil extends ErrorHandlerWrapper {
         public static XMLParseException createXMLParseException0(SAXParseException exception) {
             return createXMLParseException(exception);
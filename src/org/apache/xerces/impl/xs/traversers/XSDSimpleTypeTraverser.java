@@ -396,8 +396,7 @@ class XSDSimpleTypeTraverser extends XSDAbstractTraverser {
             content = fi.nodeAfterFacets;
             
             try {
-                fValidationState.setNamespaceSupport(schemaDoc.fNamespaceSupport);
-                newDecl.applyFacets(fi.facetdata, fi.fPresentFacets, fi.fFixedFacets, fValidationState);
+                applyFacets(newDecl, baseValidator, fi.facetdata, fi.fPresentFacets, fi.fFixedFacets, schemaDoc);
             } catch (InvalidDatatypeFacetException ex) {
                 reportSchemaError(ex.getKey(), ex.getArgs(), child);
                 // Recreate the type, ignoring the facets
@@ -24,6 +24,7 @@ import org.apache.xerces.impl.validation.ValidationState;
 import org.apache.xerces.impl.xs.SchemaNamespaceSupport;
 import org.apache.xerces.impl.xs.SchemaSymbols;
 import org.apache.xerces.impl.xs.XMLSchemaException;
+import org.apache.xerces.impl.xs.XSLoadStatistics;
 import org.apache.xerces.impl.xs.util.XInt;
 import org.apache.xerces.util.SymbolTable;
 import org.w3c.dom.Document;
@@ -84,6 +85,9 @@ class XSDocumentInfo {
     // list of annotations contained in the schema document. This is null
     // once removeAnnotations has been called.
     protected XSAnnotationInfo fAnnotations = null;
+    
+    // load statistics of the schema document, if collected
+    XSLoadStatistics.Document fStatistics = null;
 
     // note that the caller must ensure to call returnSchemaAttrs()
     // to avoid memory leaks!
@@ -17,6 +17,7 @@
 
 package org.apache.xerces.impl.xs.util;
 
+import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.util.AbstractList;
 
@@ -29,7 +30,10 @@ import org.apache.xerces.xs.datatypes.ObjectList;
  * 
  * @version $Id$
  */
-public final class ObjectListImpl extends AbstractList<Object> implements ObjectList {
+public final class ObjectListImpl extends AbstractList<Object> implements ObjectList, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 9018983761718300928L;
 
     /**
      * An immutable empty list.
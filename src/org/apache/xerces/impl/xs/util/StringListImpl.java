@@ -17,6 +17,7 @@
 
 package org.apache.xerces.impl.xs.util;
 
+import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.util.AbstractList;
 import java.util.Vector;
@@ -32,7 +33,10 @@ import org.apache.xerces.xs.StringList;
  *
  * @version $Id$
  */
-public final class StringListImpl extends AbstractList<Object> implements StringList {
+public final class StringListImpl extends AbstractList<Object> implements StringList, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = -5213414560793385265L;
 
     /**
      * An immutable empty list.
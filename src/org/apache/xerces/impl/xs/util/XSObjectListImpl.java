@@ -17,6 +17,7 @@
 
 package org.apache.xerces.impl.xs.util;
 
+import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.util.AbstractList;
 import java.util.Iterator;
@@ -35,7 +36,11 @@ import org.apache.xerces.xs.XSObjectList;
  *
  * @version $Id$
  */
-public class XSObjectListImpl extends AbstractList<Object> implements XSObjectList {
+public class XSObjectListImpl extends AbstractList<Object> implements XSObjectList, Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 3561298615001952482L;
+
     
     /**
      * An immutable empty list.
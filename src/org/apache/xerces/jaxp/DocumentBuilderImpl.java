@@ -355,6 +355,16 @@ public class DocumentBuilderImpl extends DocumentBuilder
         }
     }
 
+    /**
+     * NON-JAXP: Hands back a document parsed by this builder, so that its
+     * tables are reused by the next documents when the deferred table
+     * pooling feature is set. The document must no longer be used: its
+     * nodes that still need the tables raise an INVALID_STATE_ERR.
+     */
+    public void releaseDocument(Document doc) {
+        domParser.releaseDocument(doc);
+    }
+
     // package private
     DOMParser getDOMParser() {
         return domParser;
@@ -17,14 +17,17 @@
 
 package org.apache.xerces.parsers;
 
+import java.io.File;
 import java.util.Locale;
 import java.util.Stack;
+import java.util.concurrent.Executor;
 
 import org.apache.xerces.dom.AttrImpl;
 import org.apache.xerces.dom.CoreDocumentImpl;
 import org.apache.xerces.dom.DOMErrorImpl;
 import org.apache.xerces.dom.DOMMessageFormatter;
 import org.apache.xerces.dom.DeferredDocumentImpl;
+import org.apache.xerces.dom.DeferredTablePool;
 import org.apache.xerces.dom.DocumentImpl;
 import org.apache.xerces.dom.DocumentTypeImpl;
 import org.apache.xerces.dom.ElementDefinitionImpl;
@@ -37,6 +40,7 @@ import org.apache.xerces.dom.NotationImpl;
 import org.apache.xerces.dom.PSVIAttrNSImpl;
 import org.apache.xerces.dom.PSVIDocumentImpl;
 import org.apache.xerces.dom.PSVIElementNSImpl;
+import org.apache.xerces.dom.SharedTextImpl;
 import org.apache.xerces.dom.TextImpl;
 import org.apache.xerces.impl.Constants;
 import org.apache.xerces.impl.dv.XSSimpleType;
@@ -115,6 +119,25 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
     protected static final String DEFER_NODE_EXPANSION =
     Constants.XERCES_FEATURE_PREFIX + Constants.DEFER_NODE_EXPANSION_FEATURE;
 
+    /** Feature id: off-heap deferred storage. */
+    protected static final String OFF_HEAP_DEFERRED_STORAGE =
+    Constants.XERCES_FEATURE_PREFIX + Constants.OFF_HEAP_DEFERRED_STORAGE_FEATURE;
+
+    /** Feature id: parallel DOM construction. */
+    protected static final String PARALLEL_DOM_CONSTRUCTION =
+    Constants.XERCES_FEATURE_PREFIX + Constants.PARALLEL_DOM_CONSTRUCTION_FEATURE;
+
+    /** Feature id: compact attributes. */
+    protected static final String COMPACT_ATTRIBUTES =
+    Constants.XERCES_FEATURE_PREFIX + Constants.COMPACT_ATTRIBUTES_FEATURE;
+
+    /** Feature id: shared text. */
+    protected static final String SHARED_TEXT =
+    Constants.XERCES_FEATURE_PREFIX + Constants.SHARED_TEXT_FEATURE;
+
+    /** Feature id: deferred table pooling. */
+    protected static final String DEFERRED_TABLE_POOLING =
+    Constants.XERCES_FEATURE_PREFIX + Constants.DEFERRED_TABLE_POOLING_FEATURE;
 
     /** Recognized features. */
     private static final String[] RECOGNIZED_FEATURES = {
@@ -123,7 +146,12 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
         INCLUDE_COMMENTS_FEATURE,
         CREATE_CDATA_NODES_FEATURE,
         INCLUDE_IGNORABLE_WHITESPACE,
-        DEFER_NODE_EXPANSION
+        DEFER_NODE_EXPANSION,
+        OFF_HEAP_DEFERRED_STORAGE,
+        PARALLEL_DOM_CONSTRUCTION,
+        COMPACT_ATTRIBUTES,
+        SHARED_TEXT,
+        DEFERRED_TABLE_POOLING
     };
 
     // property ids
@@ -135,6 +163,18 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
     protected static final String  CURRENT_ELEMENT_NODE=
     Constants.XERCES_PROPERTY_PREFIX + Constants.CURRENT_ELEMENT_NODE_PROPERTY;
 
+    /** Property id: deferred storage directory. */
+    protected static final String DEFERRED_STORAGE_DIRECTORY =
+    Constants.XERCES_PROPERTY_PREFIX + Constants.DEFERRED_STORAGE_DIRECTORY_PROPERTY;
+
+    /** Property id: DOM construction executor. */
+    protected static final String DOM_CONSTRUCTION_EXECUTOR =
+    Constants.XERCES_PROPERTY_PREFIX + Constants.DOM_CONSTRUCTION_EXECUTOR_PROPERTY;
+
+    /** Property id: DOM construction parallelism. */
+    protected static final String DOM_CONSTRUCTION_PARALLELISM =
+    Constants.XERCES_PROPERTY_PREFIX + Constants.DOM_CONSTRUCTION_PARALLELISM_PROPERTY;
+
     // protected static final String GRAMMAR_POOL =
     // Constants.XERCES_PROPERTY_PREFIX + Constants.XMLGRAMMAR_POOL_PROPERTY;
 
@@ -142,6 +182,9 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
     private static final String[] RECOGNIZED_PROPERTIES = {
         DOCUMENT_CLASS_NAME,
         CURRENT_ELEMENT_NODE,
+        DEFERRED_STORAGE_DIRECTORY,
+        DOM_CONSTRUCTION_EXECUTOR,
+        DOM_CONSTRUCTION_PARALLELISM,
     };
 
     // other
@@ -238,6 +281,9 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
     protected int                  fCurrentNodeIndex;
     protected int                  fCurrentCDATASectionIndex;
 
+    /** Pool of the tables of the deferred documents, if pooling. */
+    private DeferredTablePool fDeferredTablePool;
+
     // state
 
     /** True if inside DTD external subset. */
@@ -277,6 +323,20 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
     /** Document locator. */
     private XMLLocator fLocator;
 
+    // parallel construction
+
+    /** True if the children of the document element are built on other threads. */
+    private boolean fParallelConstruction;
+
+    /** Builder of the children of the document element, if any. */
+    private ParallelDOMBuilder fParallelBuilder;
+
+    /** True if the events are recorded by the parallel builder. */
+    private boolean fRecording;
+
+    /** Executor created by this parser for the parallel builder. */
+    private Executor fDefaultExecutor;
+
     // handlers
 
     protected LSParserFilter fDOMFilter = null;
@@ -298,6 +358,11 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
         fConfiguration.setFeature (CREATE_ENTITY_REF_NODES, true);
         fConfiguration.setFeature (INCLUDE_IGNORABLE_WHITESPACE, true);
         fConfiguration.setFeature (DEFER_NODE_EXPANSION, true);
+        fConfiguration.setFeature (OFF_HEAP_DEFERRED_STORAGE, false);
+        fConfiguration.setFeature (PARALLEL_DOM_CONSTRUCTION, false);
+        fConfiguration.setFeature (COMPACT_ATTRIBUTES, false);
+        fConfiguration.setFeature (SHARED_TEXT, false);
+        fConfiguration.setFeature (DEFERRED_TABLE_POOLING, false);
         fConfiguration.setFeature (INCLUDE_COMMENTS_FEATURE, true);
         fConfiguration.setFeature (CREATE_CDATA_NODES_FEATURE, true);
 
@@ -389,8 +454,24 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
         fCurrentCDATASection = null;
         fCurrentEntityDecl = null;
         fRoot = null;
+        fParallelBuilder = null;
     } // dropDocumentReferences()
 
+    /**
+     * Hands back a deferred document built by this parser while the
+     * deferred table pooling feature was set, so that the next documents
+     * reuse its tables. Neither the document nor any of its nodes may be
+     * used afterwards: those that still need the tables raise an
+     * INVALID_STATE_ERR. Other documents are left alone.
+     *
+     * @param document The document no longer used.
+     */
+    public void releaseDocument (Document document) {
+        if (document instanceof DeferredDocumentImpl) {
+            ((DeferredDocumentImpl) document).releaseTables ();
+        }
+    } // releaseDocument(Document)
+
     //
     // XMLDocumentParser methods
     //
@@ -420,6 +501,8 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
 
         fCreateCDATANodes = fConfiguration.getFeature (CREATE_CDATA_NODES_FEATURE);
 
+        fParallelConstruction = fConfiguration.getFeature (PARALLEL_DOM_CONSTRUCTION);
+
         // get property
         setDocumentClassName ((String)
         fConfiguration.getProperty (DOCUMENT_CLASS_NAME));
@@ -432,6 +515,12 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
         fDocumentTypeIndex = -1;
         fDeferredDocumentImpl = null;
         fCurrentNode = null;
+        if (fParallelBuilder != null) {
+            // the last parse failed
+            fParallelBuilder.cancel ();
+            fParallelBuilder = null;
+        }
+        fRecording = false;
 
         // reset string buffer
         fStringBuffer.setLength (0);
@@ -500,6 +589,12 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
             if (fFilterReject) {
                 return;
             }
+            if (fRecording) {
+                // carry on without the parallel builder until the end of
+                // the current child of the document element
+                fCurrentNode = fParallelBuilder.interrupt ();
+                fRecording = false;
+            }
             setCharacterData (true);
             EntityReference er = fDocument.createEntityReference (name);
             if (fDocumentImpl != null) {
@@ -612,6 +707,10 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
         if (!fIncludeComments || fFilterReject) {
             return;
         }
+        if (fRecording) {
+            fParallelBuilder.comment (text);
+            return;
+        }
         if (!fDeferNodeExpansion) {
             Comment comment = fDocument.createComment (text.toString ());
 
@@ -689,6 +788,10 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
         if (DEBUG_EVENTS) {
             System.out.println ("==>processingInstruction ("+target+")");
         }
+        if (fRecording) {
+            fParallelBuilder.processingInstruction (target, data);
+            return;
+        }
         if (!fDeferNodeExpansion) {
             if (fFilterReject) {
                 return;
@@ -827,10 +930,33 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
                         new Object [] {fDocumentClassName}));
                 }
             }
+            // the attributes of PSVI documents are nodes holding the PSVI
+            if (fDocumentImpl != null && !fStorePSVI &&
+                fConfiguration.getFeature (COMPACT_ATTRIBUTES)) {
+                fDocumentImpl.setCompactAttributes (true);
+            }
+            if (fDocumentImpl != null &&
+                fConfiguration.getFeature (SHARED_TEXT)) {
+                fDocumentImpl.setSharedText (true);
+            }
             fCurrentNode = fDocument;
         }
         else {
             fDeferredDocumentImpl = new DeferredDocumentImpl (fNamespaceAware);
+            if (fConfiguration.getFeature (DEFERRED_TABLE_POOLING)) {
+                if (fDeferredTablePool == null) {
+                    fDeferredTablePool = new DeferredTablePool ();
+                }
+                fDeferredDocumentImpl.setTablePool (fDeferredTablePool);
+            }
+            if (fConfiguration.getFeature (OFF_HEAP_DEFERRED_STORAGE)) {
+                Object directory = fConfiguration.getProperty (DEFERRED_STORAGE_DIRECTORY);
+                fDeferredDocumentImpl.setOffHeapStorage (true,
+                directory == null || directory instanceof File ? (File) directory
+                : new File (directory.toString ()));
+            }
+            fDeferredDocumentImpl.setCompactAttributes (
+            fConfiguration.getFeature (COMPACT_ATTRIBUTES));
             fDocument = fDeferredDocumentImpl;
             fDocumentIndex = fDeferredDocumentImpl.createDeferredDocument ();
             // REVISIT: strict error checking is not implemented in deferred dom.
@@ -927,6 +1053,10 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
         if (DEBUG_EVENTS) {
             System.out.println ("==>startElement ("+element.rawname+")");
         }
+        if (fRecording) {
+            fParallelBuilder.startElement (element, attributes, augs);
+            return;
+        }
         if (!fDeferNodeExpansion) {
             if (fFilterReject) {
                 ++fRejectedElementDepth;
@@ -935,39 +1065,18 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
             Element el = createElementNode (element);
             int attrCount = attributes.getLength ();
             boolean seenSchemaDefault = false;
+            // simple attributes may be kept on the element, without nodes
+            boolean compact = fDocumentImpl != null &&
+                fDocumentImpl.getCompactAttributes () && el instanceof ElementImpl;
             for (int i = 0; i < attrCount; i++) {
                 attributes.getName (i, fAttrQName);
-                Attr attr = createAttrNode (fAttrQName);
-
                 String attrValue = attributes.getValue (i);
-
+                boolean specified = attributes.isSpecified(i);
                 AttributePSVI attrPSVI =(AttributePSVI) attributes.getAugmentations (i).getItem (Constants.ATTRIBUTE_PSVI);
-                if (fStorePSVI && attrPSVI != null){
-                    ((PSVIAttrNSImpl) attr).setPSVI (attrPSVI);
-                }
 
-                attr.setValue (attrValue);
-                boolean specified = attributes.isSpecified(i);
-                // Take special care of schema defaulted attributes. Calling the 
-                // non-namespace aware setAttributeNode() method could overwrite
-                // another attribute with the same local name.
-                if (!specified && (seenSchemaDefault || (fAttrQName.uri != null && 
-                    fAttrQName.uri != NamespaceContext.XMLNS_URI && fAttrQName.prefix == null))) {
-                    el.setAttributeNodeNS(attr);
-                    seenSchemaDefault = true;
-                }
-                else {
-                    el.setAttributeNode(attr);
-                }
-                // NOTE: The specified value MUST be set after you set
-                //       the node value because that turns the "specified"
-                //       flag to "true" which may overwrite a "false"
-                //       value from the attribute list. -Ac
+                Object type = null;
+                boolean id = false;
                 if (fDocumentImpl != null) {
-                    AttrImpl attrImpl = (AttrImpl) attr;
-                    Object type = null;
-                    boolean id = false;
-
                     // REVISIT: currently it is possible that someone turns off
                     // namespaces and turns on xml schema validation
                     // To avoid classcast exception in AttrImpl check for namespaces
@@ -978,14 +1087,9 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
                         type = attrPSVI.getMemberTypeDefinition ();
                         if (type == null) {
                             type = attrPSVI.getTypeDefinition ();
-                            if (type != null) {
-                                id = ((XSSimpleType) type).isIDType ();
-                                attrImpl.setType (type);
-                            }
                         }
-                        else {
+                        if (type != null) {
                             id = ((XSSimpleType) type).isIDType ();
-                            attrImpl.setType (type);
                         }
                     }
                     else {
@@ -998,8 +1102,40 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
                             type = attributes.getType (i);
                             id = "ID".equals (type);
                         }
-                        attrImpl.setType (type);
                     }
+                    if (compact && specified && !id &&
+                        ((ElementImpl) el).setCompactAttribute (fAttrQName.rawname,
+                        fNamespaceAware ? fAttrQName.localpart : null,
+                        fNamespaceAware ? fAttrQName.uri : null, attrValue, type)) {
+                        continue;
+                    }
+                }
+
+                Attr attr = createAttrNode (fAttrQName);
+
+                if (fStorePSVI && attrPSVI != null){
+                    ((PSVIAttrNSImpl) attr).setPSVI (attrPSVI);
+                }
+
+                attr.setValue (attrValue);
+                // Take special care of schema defaulted attributes. Calling the 
+                // non-namespace aware setAttributeNode() method could overwrite
+                // another attribute with the same local name.
+                if (!specified && (seenSchemaDefault || (fAttrQName.uri != null && 
+                    fAttrQName.uri != NamespaceContext.XMLNS_URI && fAttrQName.prefix == null))) {
+                    el.setAttributeNodeNS(attr);
+                    seenSchemaDefault = true;
+                }
+                else {
+                    el.setAttributeNode(attr);
+                }
+                // NOTE: The specified value MUST be set after you set
+                //       the node value because that turns the "specified"
+                //       flag to "true" which may overwrite a "false"
+                //       value from the attribute list. -Ac
+                if (fDocumentImpl != null) {
+                    AttrImpl attrImpl = (AttrImpl) attr;
+                    attrImpl.setType (type);
 
                     if (id) {
                         ((ElementImpl) el).setIdAttributeNode (attr, true);
@@ -1063,6 +1199,23 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
             }
             fCurrentNode.appendChild (el);
             fCurrentNode = el;
+            if (fParallelConstruction && fCurrentNode.getParentNode () == fDocument &&
+                fDocumentImpl != null && !fStorePSVI && fDOMFilter == null &&
+                ParallelDOMBuilder.canCreateDocuments (fDocumentImpl)) {
+                // build the children of the document element on other threads
+                Executor executor = (Executor) fConfiguration.getProperty (DOM_CONSTRUCTION_EXECUTOR);
+                if (executor == null) {
+                    if (fDefaultExecutor == null) {
+                        fDefaultExecutor = ParallelDOMBuilder.createExecutor ();
+                    }
+                    executor = fDefaultExecutor;
+                }
+                Integer parallelism = (Integer) fConfiguration.getProperty (DOM_CONSTRUCTION_PARALLELISM);
+                fParallelBuilder = new ParallelDOMBuilder (fDocumentImpl, el, executor,
+                parallelism != null ? parallelism.intValue ()
+                : ParallelDOMBuilder.getParallelism (executor), fNamespaceAware);
+                fRecording = true;
+            }
         }
         else {
             int el = fDeferredDocumentImpl.createDeferredElement (fNamespaceAware ?
@@ -1155,6 +1308,10 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
             System.out.println ("==>characters(): "+text.toString ());
         }
 
+        if (fRecording) {
+            fParallelBuilder.characters (text, fInCDATASection && fCreateCDATANodes);
+            return;
+        }
         if (!fDeferNodeExpansion) {
 
             if (fFilterReject) {
@@ -1182,6 +1339,11 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
                 if (child != null && child.getNodeType () == Node.TEXT_NODE) {
                     // collect all the data into the string buffer.
                     if (fFirstChunk) {
+                        // shared text grows in place while it is the last stored
+                        if (child instanceof SharedTextImpl &&
+                            ((SharedTextImpl) child).appendData (text.ch, text.offset, text.length)) {
+                            return;
+                        }
                         if (fDocumentImpl != null) {
                             fStringBuffer.append (((TextImpl)child).removeData ());
                         } else {
@@ -1196,7 +1358,9 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
                 }
                 else {
                     fFirstChunk = true;
-                    Text textNode = fDocument.createTextNode (text.toString());
+                    Text textNode = fDocumentImpl != null && fDocumentImpl.getSharedText () ?
+                        fDocumentImpl.createTextNode (text.ch, text.offset, text.length) :
+                        fDocument.createTextNode (text.toString());
                     fCurrentNode.appendChild (textNode);
                 }
 
@@ -1253,6 +1417,10 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
         if (!fIncludeIgnorableWhitespace || fFilterReject) {
             return;
         }
+        if (fRecording) {
+            fParallelBuilder.ignorableWhitespace (text);
+            return;
+        }
         if (!fDeferNodeExpansion) {
             Node child = fCurrentNode.getLastChild ();
             if (child != null && child.getNodeType () == Node.TEXT_NODE) {
@@ -1290,6 +1458,14 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
         if (DEBUG_EVENTS) {
             System.out.println ("==>endElement ("+element.rawname+")");
         }
+        if (fRecording) {
+            if (fParallelBuilder.endElement (augs)) {
+                return;
+            }
+            // end of the document element
+            fParallelBuilder.finish ();
+            fRecording = false;
+        }
         if (!fDeferNodeExpansion) {
 
             // REVISIT: Should this happen after we call the filter?
@@ -1368,6 +1544,10 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
             else {
                 setCharacterData (false);
                 fCurrentNode = fCurrentNode.getParentNode ();
+                if (fParallelBuilder != null && fCurrentNode == fDocument.getDocumentElement ()) {
+                    // back at the level of the children of the document element
+                    fRecording = true;
+                }
             }
 
         }
@@ -1402,6 +1582,12 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
     public void startCDATA (Augmentations augs) throws XNIException {
 
         fInCDATASection = true;
+        if (fRecording) {
+            if (fCreateCDATANodes) {
+                fParallelBuilder.startCDATA ();
+            }
+            return;
+        }
         if (!fDeferNodeExpansion) {
             if (fFilterReject) {
                 return;
@@ -1421,6 +1607,12 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
     public void endCDATA (Augmentations augs) throws XNIException {
 
         fInCDATASection = false;
+        if (fRecording) {
+            if (fCreateCDATANodes) {
+                fParallelBuilder.endCDATA ();
+            }
+            return;
+        }
         if (!fDeferNodeExpansion) {
 
             if (fFilterReject) {
@@ -1485,6 +1677,7 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
                 fDocumentImpl.setStrictErrorChecking (true);
             }
             fCurrentNode = null;
+            fParallelBuilder = null;
         }
         else {
             // set the actual encoding
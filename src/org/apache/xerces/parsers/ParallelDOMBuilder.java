@@ -0,0 +1,655 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.parsers;
+
+import java.lang.reflect.Modifier;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xerces.dom.AttrImpl;
+import org.apache.xerces.dom.CoreDocumentImpl;
+import org.apache.xerces.dom.ElementImpl;
+import org.apache.xerces.dom.ElementNSImpl;
+import org.apache.xerces.dom.TextImpl;
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.dv.XSSimpleType;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xs.AttributePSVI;
+import org.apache.xerces.xs.ElementPSVI;
+import org.apache.xerces.xs.XSTypeDefinition;
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+/**
+ * Builds the children of the document element on other threads for
+ * AbstractDOMParser. The events under the document element are recorded
+ * in batches of whole subtrees; each batch is turned into nodes by a task
+ * of an executor, in a private document of the same class as the document
+ * being built, and the nodes are then moved into the document and appended
+ * to the document element in document order, on the parser thread.
+ * <p>
+ * The nodes are created as AbstractDOMParser creates them when it does
+ * not defer node expansion, with the factory methods of the document.
+ * The recording can be interrupted at any point, in which case the nodes
+ * recorded so far are built at once and the parser carries on from the
+ * innermost open element.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class ParallelDOMBuilder {
+
+    //
+    // Constants
+    //
+
+    // event codes
+
+    private static final byte START_ELEMENT = 0;
+    private static final byte END_ELEMENT = 1;
+    private static final byte TEXT = 2;
+    private static final byte IGNORABLE_WHITESPACE = 3;
+    private static final byte START_CDATA = 4;
+    private static final byte CDATA = 5;
+    private static final byte END_CDATA = 6;
+    private static final byte COMMENT = 7;
+    private static final byte PROCESSING_INSTRUCTION = 8;
+
+    // attribute flags
+
+    private static final int SPECIFIED = 0x01;
+    private static final int ID = 0x02;
+    private static final int SET_NS = 0x04;
+
+    /** Number of events after which a batch is handed off. */
+    private static final int BATCH_SIZE = 8192;
+
+    //
+    // Data
+    //
+
+    /** The document being built. */
+    private final CoreDocumentImpl fDocument;
+
+    /** The document element. */
+    private final Node fParent;
+
+    /** The executor of the tasks. */
+    private final Executor fExecutor;
+
+    /** Maximum number of batches handed off and not yet appended. */
+    private final int fMaxPending;
+
+    /** True if the nodes are namespace aware. */
+    private final boolean fNamespaceAware;
+
+    /** Batches handed off, in document order. */
+    private final LinkedList<FutureTask<Batch>> fPending = new LinkedList<FutureTask<Batch>>();
+
+    /** Batch being recorded. */
+    private Batch fBatch;
+
+    /** Number of elements open in the batch being recorded. */
+    private int fDepth;
+
+    /** Innermost element left open by the last batch appended. */
+    private Element fOpenElement;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Creates a builder of the children of the given document element.
+     *
+     * @param document    the document being built
+     * @param parent      the document element
+     * @param executor    the executor of the tasks
+     * @param parallelism the number of tasks the executor runs at once;
+     *                    twice as many batches are kept in flight
+     * @param namespaceAware true if the nodes are namespace aware
+     */
+    ParallelDOMBuilder(CoreDocumentImpl document, Node parent, Executor executor,
+            int parallelism, boolean namespaceAware) {
+        fDocument = document;
+        fParent = parent;
+        fExecutor = executor;
+        fMaxPending = Math.max(parallelism, 1) * 2;
+        fNamespaceAware = namespaceAware;
+        fBatch = new Batch(document, namespaceAware);
+    }
+
+    /**
+     * Creates an executor with one thread per processor, whose threads
+     * stop when they have been idle for a second.
+     */
+    static ThreadPoolExecutor createExecutor() {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Xerces DOM builder");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns the number of tasks the given executor runs at once, as far
+     * as it can be told: the core pool size of a thread pool, or 1. This
+     * is used when the parallelism is not given by the application.
+     */
+    static int getParallelism(Executor executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            return Math.max(((ThreadPoolExecutor) executor).getCorePoolSize(), 1);
+        }
+        return 1;
+    }
+
+    /**
+     * Returns true if documents of the class of the given document can be
+     * created to build nodes on other threads, which requires a public
+     * no-arg constructor.
+     */
+    static boolean canCreateDocuments(CoreDocumentImpl document) {
+        final Class<?> documentClass = document.getClass();
+        if (!Modifier.isPublic(documentClass.getModifiers())) {
+            return false;
+        }
+        try {
+            return Modifier.isPublic(
+                documentClass.getDeclaredConstructor().getModifiers());
+        }
+        catch (NoSuchMethodException e) {
+            return false;
+        }
+        catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    //
+    // Recording methods
+    //
+
+    /** Records the start of an element. */
+    void startElement(QName element, XMLAttributes attributes, Augmentations augs) {
+        final Batch batch = fBatch;
+        final int attrCount = attributes.getLength();
+        batch.add(START_ELEMENT, new QName(element), attrCount);
+        XSTypeDefinition elementType = null;
+        if (augs != null && fNamespaceAware) {
+            ElementPSVI elementPSVI = (ElementPSVI) augs.getItem(Constants.ELEMENT_PSVI);
+            if (elementPSVI != null) {
+                elementType = elementPSVI.getMemberTypeDefinition();
+                if (elementType == null) {
+                    elementType = elementPSVI.getTypeDefinition();
+                }
+            }
+        }
+        batch.addArg(elementType);
+
+        // the types are found as in AbstractDOMParser.startElement
+        boolean seenSchemaDefault = false;
+        for (int i = 0; i < attrCount; i++) {
+            QName attrQName = new QName();
+            attributes.getName(i, attrQName);
+            Object type = null;
+            boolean id = false;
+            AttributePSVI attrPSVI = (AttributePSVI) attributes.getAugmentations(i).getItem(Constants.ATTRIBUTE_PSVI);
+            if (attrPSVI != null && fNamespaceAware) {
+                // XML Schema
+                type = attrPSVI.getMemberTypeDefinition();
+                if (type == null) {
+                    type = attrPSVI.getTypeDefinition();
+                }
+                if (type != null) {
+                    id = ((XSSimpleType) type).isIDType();
+                }
+            }
+            else {
+                // DTD
+                boolean isDeclared = Boolean.TRUE.equals(attributes.getAugmentations(i).getItem(Constants.ATTRIBUTE_DECLARED));
+                if (isDeclared) {
+                    type = attributes.getType(i);
+                    id = "ID".equals(type);
+                }
+            }
+            boolean specified = attributes.isSpecified(i);
+            int flags = specified ? SPECIFIED : 0;
+            if (id) {
+                flags |= ID;
+            }
+            if (!specified && (seenSchemaDefault || (attrQName.uri != null &&
+                attrQName.uri != NamespaceContext.XMLNS_URI && attrQName.prefix == null))) {
+                flags |= SET_NS;
+                seenSchemaDefault = true;
+            }
+            batch.addArg(attrQName);
+            batch.addArg(attributes.getValue(i));
+            batch.addArg(type);
+            batch.addInt(flags);
+        }
+        fDepth++;
+    }
+
+    /**
+     * Records the end of an element.
+     *
+     * @return false if the element is the document element, whose end is
+     *         not recorded
+     */
+    boolean endElement(Augmentations augs) {
+        if (fDepth == 0) {
+            return false;
+        }
+        XSTypeDefinition type = null;
+        ElementPSVI elementPSVI = augs != null && fNamespaceAware
+            ? (ElementPSVI) augs.getItem(Constants.ELEMENT_PSVI) : null;
+        if (elementPSVI != null) {
+            // the member type of a union is only known at the end
+            type = elementPSVI.getMemberTypeDefinition();
+            if (type == null) {
+                type = elementPSVI.getTypeDefinition();
+            }
+        }
+        fBatch.add(END_ELEMENT, type, elementPSVI != null ? 1 : 0);
+        if (--fDepth == 0 && fBatch.fSize >= BATCH_SIZE) {
+            handOff();
+        }
+        return true;
+    }
+
+    /** Records character data. */
+    void characters(XMLString text, boolean cdata) {
+        if (cdata) {
+            fBatch.add(CDATA, text.toString(), 0);
+        }
+        else if (text.length > 0) {
+            fBatch.add(TEXT, text.toString(), 0);
+        }
+    }
+
+    /** Records ignorable whitespace. */
+    void ignorableWhitespace(XMLString text) {
+        fBatch.add(IGNORABLE_WHITESPACE, text.toString(), 0);
+    }
+
+    /** Records the start of a CDATA section. */
+    void startCDATA() {
+        fBatch.add(START_CDATA, null, 0);
+    }
+
+    /** Records the end of a CDATA section. */
+    void endCDATA() {
+        fBatch.add(END_CDATA, null, 0);
+    }
+
+    /** Records a comment. */
+    void comment(XMLString text) {
+        fBatch.add(COMMENT, text.toString(), 0);
+    }
+
+    /** Records a processing instruction. */
+    void processingInstruction(String target, XMLString data) {
+        fBatch.add(PROCESSING_INSTRUCTION, target, 0);
+        fBatch.addArg(data.toString());
+    }
+
+    //
+    // Building methods
+    //
+
+    /**
+     * Builds what was recorded and appends all the nodes to the document
+     * element, at its end.
+     */
+    void finish() {
+        appendPending(0);
+        fBatch.build(false);
+        append(fBatch);
+        fBatch = new Batch(fDocument, fNamespaceAware);
+    }
+
+    /**
+     * Builds what was recorded so far and appends all the nodes to the
+     * document element, when the recording must stop in the middle of a
+     * subtree. The recording can start again once the parser is back at
+     * the level of the children of the document element.
+     *
+     * @return the innermost open element, or the document element
+     */
+    Node interrupt() {
+        finish();
+        final Node current = fOpenElement;
+        fOpenElement = null;
+        fDepth = 0;
+        return current != null ? current : fParent;
+    }
+
+    /** Cancels the batches handed off, when the parse fails. */
+    void cancel() {
+        while (!fPending.isEmpty()) {
+            fPending.removeFirst().cancel(false);
+        }
+    }
+
+    /** Hands off the batch being recorded, which ends with a subtree. */
+    private void handOff() {
+        final Batch batch = fBatch;
+        fBatch = new Batch(fDocument, fNamespaceAware);
+        FutureTask<Batch> task = new FutureTask<Batch>(new Callable<Batch>() {
+            public Batch call() {
+                batch.build(true);
+                return batch;
+            }
+        });
+        fPending.addLast(task);
+        try {
+            fExecutor.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            task.run();
+        }
+        // append what is ready, and keep the memory held by the batches
+        // bounded by waiting for the oldest ones
+        while (!fPending.isEmpty() && fPending.getFirst().isDone()) {
+            append(fPending.removeFirst());
+        }
+        appendPending(fMaxPending);
+    }
+
+    /** Appends the nodes of the batches handed off but the last ones. */
+    private void appendPending(int keep) {
+        while (fPending.size() > keep) {
+            append(fPending.removeFirst());
+        }
+    }
+
+    /** Appends the nodes of a batch handed off, waiting for them. */
+    private void append(FutureTask<Batch> task) {
+        try {
+            append(task.get());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XNIException(e);
+        }
+        catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new XNIException((Exception) cause);
+        }
+    }
+
+    /** Appends the nodes of a built batch. */
+    private void append(Batch batch) {
+        if (batch.fDocument != fDocument) {
+            fDocument.takeOwnership(batch.fDocument, new Node[] {batch.fNodes});
+        }
+        fParent.appendChild(batch.fNodes);
+        fOpenElement = batch.fOpenElement;
+    }
+
+    //
+    // Classes
+    //
+
+    /**
+     * A recorded sequence of events, which ends at the level of the
+     * children of the document element unless the recording was
+     * interrupted.
+     */
+    static final class Batch {
+
+        /** The document being built. */
+        private final CoreDocumentImpl fTarget;
+
+        /** True if the nodes are namespace aware. */
+        private final boolean fNamespaceAware;
+
+        /** Event codes. */
+        private byte[] fEvents = new byte[64];
+
+        /** Objects of the events, in order. */
+        private Object[] fArgs = new Object[64];
+
+        /** Numbers of the events, in order. */
+        private int[] fInts = new int[64];
+
+        /** Number of events. */
+        int fSize;
+
+        private int fArgCount;
+        private int fIntCount;
+
+        /** Document of the nodes, once built. */
+        CoreDocumentImpl fDocument;
+
+        /** Fragment holding the nodes, once built. */
+        Node fNodes;
+
+        /** Innermost element left open, once built. */
+        Element fOpenElement;
+
+        Batch(CoreDocumentImpl target, boolean namespaceAware) {
+            fTarget = target;
+            fNamespaceAware = namespaceAware;
+        }
+
+        void add(byte event, Object arg, int value) {
+            if (fSize == fEvents.length) {
+                byte[] newEvents = new byte[fSize << 1];
+                System.arraycopy(fEvents, 0, newEvents, 0, fSize);
+                fEvents = newEvents;
+            }
+            fEvents[fSize++] = event;
+            addArg(arg);
+            addInt(value);
+        }
+
+        void addArg(Object arg) {
+            if (fArgCount == fArgs.length) {
+                Object[] newArgs = new Object[fArgCount << 1];
+                System.arraycopy(fArgs, 0, newArgs, 0, fArgCount);
+                fArgs = newArgs;
+            }
+            fArgs[fArgCount++] = arg;
+        }
+
+        void addInt(int value) {
+            if (fIntCount == fInts.length) {
+                int[] newInts = new int[fIntCount << 1];
+                System.arraycopy(fInts, 0, newInts, 0, fIntCount);
+                fInts = newInts;
+            }
+            fInts[fIntCount++] = value;
+        }
+
+        /**
+         * Builds the nodes of the recorded events in order, in a document
+         * fragment.
+         *
+         * @param detached true to build the nodes in a private document,
+         *                 in order to build them on another thread
+         */
+        void build(boolean detached) {
+            CoreDocumentImpl document = fTarget;
+            if (detached) {
+                try {
+                    document = fTarget.getClass().getDeclaredConstructor().newInstance();
+                }
+                catch (Exception e) {
+                    throw new XNIException(e);
+                }
+                document.setStrictErrorChecking(false);
+                document.setCompactAttributes(fTarget.getCompactAttributes());
+            }
+            final boolean compact = document.getCompactAttributes();
+            final Node fragment = document.createDocumentFragment();
+            final StringBuffer text = new StringBuffer();
+            boolean ignorable = false;
+            boolean inText = false;
+            CDATASection cdata = null;
+            Node current = fragment;
+            int arg = 0;
+            int value = 0;
+            for (int i = 0; i < fSize; i++) {
+                final byte event = fEvents[i];
+                if (inText && event != TEXT && event != IGNORABLE_WHITESPACE) {
+                    // adjacent character data is one text node
+                    Text textNode = document.createTextNode(text.toString());
+                    if (ignorable) {
+                        ((TextImpl) textNode).setIgnorableWhitespace(true);
+                    }
+                    current.appendChild(textNode);
+                    text.setLength(0);
+                    inText = false;
+                }
+                final Object data = fArgs[arg++];
+                final int count = fInts[value++];
+                switch (event) {
+                    case START_ELEMENT: {
+                        final QName element = (QName) data;
+                        final Element el = fNamespaceAware
+                            ? document.createElementNS(element.uri, element.rawname, element.localpart)
+                            : document.createElement(element.rawname);
+                        final Object elementType = fArgs[arg++];
+                        for (int j = 0; j < count; j++) {
+                            final QName attrQName = (QName) fArgs[arg++];
+                            final String attrValue = (String) fArgs[arg++];
+                            final Object type = fArgs[arg++];
+                            final int flags = fInts[value++];
+                            if (compact && (flags & (SPECIFIED | ID)) == SPECIFIED &&
+                                ((ElementImpl) el).setCompactAttribute(attrQName.rawname,
+                                fNamespaceAware ? attrQName.localpart : null,
+                                fNamespaceAware ? attrQName.uri : null, attrValue, type)) {
+                                continue;
+                            }
+                            final Attr attr = fNamespaceAware
+                                ? document.createAttributeNS(attrQName.uri, attrQName.rawname, attrQName.localpart)
+                                : document.createAttribute(attrQName.rawname);
+                            attr.setValue(attrValue);
+                            if ((flags & SET_NS) != 0) {
+                                el.setAttributeNodeNS(attr);
+                            }
+                            else {
+                                el.setAttributeNode(attr);
+                            }
+                            AttrImpl attrImpl = (AttrImpl) attr;
+                            attrImpl.setType(type);
+                            if ((flags & ID) != 0) {
+                                ((ElementImpl) el).setIdAttributeNode(attr, true);
+                            }
+                            attrImpl.setSpecified((flags & SPECIFIED) != 0);
+                        }
+                        if (elementType != null) {
+                            ((ElementNSImpl) el).setType((XSTypeDefinition) elementType);
+                        }
+                        current.appendChild(el);
+                        current = el;
+                        break;
+                    }
+                    case END_ELEMENT: {
+                        if (count != 0 && fNamespaceAware) {
+                            ((ElementNSImpl) current).setType((XSTypeDefinition) data);
+                        }
+                        current = current.getParentNode();
+                        break;
+                    }
+                    case TEXT:
+                    case IGNORABLE_WHITESPACE: {
+                        if (!inText) {
+                            ignorable = event == IGNORABLE_WHITESPACE;
+                            inText = true;
+                        }
+                        text.append((String) data);
+                        break;
+                    }
+                    case START_CDATA: {
+                        break;
+                    }
+                    case CDATA: {
+                        if (cdata == null) {
+                            cdata = document.createCDATASection((String) data);
+                            current.appendChild(cdata);
+                        }
+                        else {
+                            cdata.appendData((String) data);
+                        }
+                        break;
+                    }
+                    case END_CDATA: {
+                        cdata = null;
+                        break;
+                    }
+                    case COMMENT: {
+                        current.appendChild(document.createComment((String) data));
+                        break;
+                    }
+                    case PROCESSING_INSTRUCTION: {
+                        current.appendChild(document.createProcessingInstruction(
+                                (String) data, (String) fArgs[arg++]));
+                        break;
+                    }
+                }
+            }
+            if (inText) {
+                Text textNode = document.createTextNode(text.toString());
+                if (ignorable) {
+                    ((TextImpl) textNode).setIgnorableWhitespace(true);
+                }
+                current.appendChild(textNode);
+            }
+            fDocument = document;
+            fNodes = fragment;
+            fOpenElement = current != fragment ? (Element) current : null;
+            // release the events
+            fEvents = null;
+            fArgs = null;
+            fInts = null;
+        }
+    }
+
+} // class ParallelDOMBuilder
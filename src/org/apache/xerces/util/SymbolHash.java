@@ -17,6 +17,13 @@
 
 package org.apache.xerces.util;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectInputValidation;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
 /**
  * This class is an unsynchronized hash table primary used for String
  * to Object mapping.
@@ -26,7 +33,10 @@ package org.apache.xerces.util;
  * @author Elena Litani
  * @version $Id$
  */
-public class SymbolHash {
+public class SymbolHash implements Serializable, ObjectInputValidation {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = -2117081823921018618L;
 
     //
     // Constants
@@ -49,7 +59,7 @@ public class SymbolHash {
     protected int fTableSize;
 
     /** Buckets. */
-    protected Entry[] fBuckets; 
+    protected transient Entry[] fBuckets; 
 
     /** Number of elements. */
     protected int fNum = 0;
@@ -60,6 +70,9 @@ public class SymbolHash {
      */
     protected int[] fHashMultipliers;
 
+    /** Keys and values read by readObject, until the table is rebuilt. */
+    private transient Object[] fSerializedEntries;
+
     //
     // Constructors
     //
@@ -149,6 +162,27 @@ public class SymbolHash {
         return fNum;
     }
     
+    /**
+     * Get the number of buckets of this table.
+     *
+     * @return the number of buckets of this table.
+     */
+    public int getTableSize() {
+        return fTableSize;
+    }
+
+    /**
+     * Reduces the number of buckets to the number of key/value pairs, once
+     * no more pairs are expected to be added. The order in which the values
+     * are returned may change. The table grows again if pairs are added.
+     */
+    public void trimToSize() {
+        final int size = fNum > 0 ? fNum : 1;
+        if (size < fTableSize) {
+            rehashCommon(size);
+        }
+    }
+
     /**
      * Add all values to the given array. The array must have enough entry.
      * 
@@ -285,6 +319,48 @@ public class SymbolHash {
         }
     }
     
+    //
+    // Serialization methods
+    //
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        Object[] entries = getEntries();
+        for (int i = 0; i < entries.length; i++) {
+            out.writeObject(entries[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (fTableSize <= 0 || fNum < 0) {
+            throw new InvalidObjectException("Invalid SymbolHash size.");
+        }
+        fSerializedEntries = new Object[fNum << 1];
+        for (int i = 0; i < fSerializedEntries.length; i++) {
+            fSerializedEntries[i] = in.readObject();
+        }
+        // the keys may not be fully read yet, so they
+        // are only hashed once the whole graph is read
+        in.registerValidation(this, 0);
+    }
+
+    /** Rebuilds the table once all keys have been read. */
+    public void validateObject() throws InvalidObjectException {
+        final Object[] entries = fSerializedEntries;
+        fSerializedEntries = null;
+        fBuckets = new Entry[fTableSize];
+        // the entries are inserted in reverse order so
+        // that each bucket gets the same order as before
+        for (int i = entries.length - 2; i >= 0; i -= 2) {
+            if (entries[i] == null) {
+                throw new InvalidObjectException("Null SymbolHash key.");
+            }
+            int bucket = hash(entries[i]) % fTableSize;
+            fBuckets[bucket] = new Entry(entries[i], entries[i + 1], fBuckets[bucket]);
+        }
+    }
+
     //
     // Classes
     //
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.features;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests of the optional features of the DOM implementation, each
+ * comparing the DOM built with the feature to the DOM built without it.
+ * 
+ * @version $Id$
+ */
+public class AllTests {
+    
+    public static void main(String[] args) {
+        TestRunner.run(AllTests.suite());
+    }
+    
+    public static Test suite() {
+        TestSuite suite = new TestSuite("Optional DOM Feature Tests");
+        suite.addTestSuite(DocumentOrderIndexTest.class);
+        suite.addTestSuite(ReadOnlyViewTest.class);
+        suite.addTestSuite(ParallelConstructionTest.class);
+        suite.addTestSuite(CopyTreeTest.class);
+        suite.addTestSuite(CompactAttributesTest.class);
+        suite.addTestSuite(TablePoolingTest.class);
+        suite.addTestSuite(ElementIndexTest.class);
+        suite.addTestSuite(OffHeapStorageTest.class);
+        suite.addTestSuite(SharedTextTest.class);
+        suite.addTestSuite(SubtreeChangesTest.class);
+        return suite;
+    }
+}
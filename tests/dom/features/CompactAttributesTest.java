@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.features;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.parsers.DOMParser;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests that the attributes of a DOM built with compact attributes are
+ * read and changed as those of the same DOM built with attribute nodes.
+ * 
+ * @version $Id$
+ */
+public class CompactAttributesTest extends TestCase {
+    
+    private static final String DEFER_NODE_EXPANSION =
+        "http://apache.org/xml/features/dom/defer-node-expansion";
+    
+    private static final String COMPACT_ATTRIBUTES =
+        "http://apache.org/xml/features/dom/compact-attributes";
+    
+    private static final String XML =
+        "<!DOCTYPE root [" +
+        "<!ELEMENT root ANY><!ELEMENT item ANY><!ELEMENT sub ANY>" +
+        "<!ATTLIST item id ID #IMPLIED kind (x|y) 'x'>" +
+        "<!ENTITY e '<sub a=\"1\" b=\"2\">entity text</sub>'>]>" +
+        "<root xmlns:p='urn:p' xmlns:q='urn:q'>" +
+        "<sub a='1' b='2' c='3'>plain</sub>" +
+        "<sub p:a='1' q:a='2' a='3' xml:lang='en'>namespaced</sub>" +
+        "<item id='i1' a='1'>with an identifier</item>" +
+        "<item kind='y' a='1'>with a specified default</item>" +
+        "<item a='1'>with a default</item>" +
+        "<sub>&e;</sub>" +
+        "</root>";
+    
+    /** Names of the attributes read on every element. */
+    private static final String[] NAMES = {
+        "a", "b", "c", "d", "id", "kind", "p:a", "q:a", "xml:lang", "xmlns:p"
+    };
+    
+    /** Namespaces and local names of the attributes read on every element. */
+    private static final String[][] NS_NAMES = {
+        {null, "a"}, {null, "b"}, {null, "kind"}, {"urn:p", "a"}, {"urn:q", "a"},
+        {"urn:p", "b"}, {"http://www.w3.org/XML/1998/namespace", "lang"},
+        {"http://www.w3.org/2000/xmlns/", "p"}
+    };
+    
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(CompactAttributesTest.class);
+    }
+    
+    public void testGetAttribute() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            Document expected = parse(i, false);
+            Document actual = parse(i, true);
+            assertEquals(read(expected), read(actual));
+            assertEquals(dump(expected), dump(actual));
+        }
+    }
+    
+    public void testSetAttribute() throws Exception {
+        assertSame(new Change() {
+            void apply(Element element) {
+                element.setAttribute("a", "changed");
+                element.setAttribute("d", "new");
+                element.setAttribute("c", element.getAttribute("a"));
+            }
+        });
+        assertSame(new Change() {
+            void apply(Element element) {
+                element.setAttribute("kind", "y");
+                element.setAttribute("id", "i2");
+            }
+        });
+    }
+    
+    public void testSetAttributeNS() throws Exception {
+        assertSame(new Change() {
+            void apply(Element element) {
+                element.setAttributeNS("urn:p", "p:a", "changed");
+                element.setAttributeNS("urn:p", "q:b", "new");
+                element.setAttributeNS(null, "a", "changed");
+            }
+        });
+        assertSame(new Change() {
+            void apply(Element element) {
+                // a new prefix for an existing attribute
+                element.setAttributeNS("urn:q", "p:a", "renamed");
+                element.setAttributeNS("http://www.w3.org/XML/1998/namespace",
+                        "xml:lang", "fr");
+            }
+        });
+    }
+    
+    public void testRemoveAttribute() throws Exception {
+        assertSame(new Change() {
+            void apply(Element element) {
+                element.removeAttribute("b");
+                element.removeAttribute("kind");
+                element.removeAttribute("d");
+                element.removeAttribute("id");
+            }
+        });
+        assertSame(new Change() {
+            void apply(Element element) {
+                element.removeAttributeNS("urn:p", "a");
+                element.removeAttributeNS(null, "a");
+                element.removeAttributeNS(null, "kind");
+                element.removeAttribute("xml:lang");
+            }
+        });
+    }
+    
+    public void testCloneNode() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            Document expected = parse(i, false);
+            Document actual = parse(i, true);
+            Node expectedClone = expected.getDocumentElement().cloneNode(true);
+            Node actualClone = actual.getDocumentElement().cloneNode(true);
+            assertEquals(dump(expectedClone), dump(actualClone));
+            
+            // the clone and the original are changed separately
+            Change change = new Change() {
+                void apply(Element element) {
+                    element.setAttribute("a", "changed");
+                    element.removeAttribute("b");
+                }
+            };
+            change.applyAll(expectedClone);
+            change.applyAll(actualClone);
+            assertEquals(dump(expectedClone), dump(actualClone));
+            assertEquals(dump(expected), dump(actual));
+            assertEquals(dump(parse(i, false)), dump(actual));
+        }
+    }
+    
+    public void testSerialization() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            Document expected = parse(i, false);
+            Document actual = parse(i, true);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(actual);
+            out.close();
+            ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bytes.toByteArray()));
+            Document copy = (Document) in.readObject();
+            assertEquals(dump(expected), dump(copy));
+            assertEquals(read(expected), read(copy));
+            assertEquals(write(expected), write(actual));
+        }
+    }
+    
+    public void testReadOnly() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            Document expected = parse(i, false);
+            Document actual = parse(i, true);
+            Element expectedSub = readOnlyElement(expected);
+            Element actualSub = readOnlyElement(actual);
+            assertEquals(read(expectedSub), read(actualSub));
+            assertEquals(modify(expectedSub), modify(actualSub));
+            assertEquals(dump(expected), dump(actual));
+        }
+    }
+    
+    /** A change made to every element of a document. */
+    private static abstract class Change {
+        
+        abstract void apply(Element element);
+        
+        void applyAll(Node node) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                apply((Element) node);
+            }
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() != Node.ENTITY_REFERENCE_NODE) {
+                    applyAll(child);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Checks that the change leaves the documents built with and without
+     * compact attributes the same.
+     */
+    private static void assertSame(Change change) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            Document expected = parse(i, false);
+            Document actual = parse(i, true);
+            change.applyAll(expected);
+            change.applyAll(actual);
+            assertEquals(read(expected), read(actual));
+            assertEquals(dump(expected), dump(actual));
+            assertEquals(write(expected), write(actual));
+        }
+    }
+    
+    private static Document parse(int deferred, boolean compact) throws Exception {
+        DOMParser parser = new DOMParser();
+        parser.setFeature(DEFER_NODE_EXPANSION, deferred != 0);
+        parser.setFeature(COMPACT_ATTRIBUTES, compact);
+        parser.parse(new InputSource(new StringReader(XML)));
+        return parser.getDocument();
+    }
+    
+    private static Element readOnlyElement(Document document) {
+        NodeList subs = document.getElementsByTagName("sub");
+        Element sub = (Element) subs.item(subs.getLength() - 1);
+        assertEquals(Node.ENTITY_REFERENCE_NODE, sub.getParentNode().getNodeType());
+        return sub;
+    }
+    
+    /** Tries to change the attributes of the element. */
+    private static String modify(Element element) {
+        StringBuffer buffer = new StringBuffer();
+        try {
+            element.setAttribute("a", "changed");
+        }
+        catch (DOMException e) {
+            buffer.append(e.code).append(' ');
+        }
+        try {
+            element.setAttributeNS(null, "b", "changed");
+        }
+        catch (DOMException e) {
+            buffer.append(e.code).append(' ');
+        }
+        try {
+            element.removeAttribute("a");
+        }
+        catch (DOMException e) {
+            buffer.append(e.code).append(' ');
+        }
+        return buffer.toString();
+    }
+    
+    /** Reads the attributes of every element with the Element methods. */
+    private static String read(Node node) {
+        StringBuffer buffer = new StringBuffer();
+        read(node, buffer);
+        return buffer.toString();
+    }
+    
+    private static void read(Node node, StringBuffer buffer) {
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            Element element = (Element) node;
+            buffer.append(element.getNodeName()).append(' ')
+                .append(element.hasAttributes()).append(':');
+            for (int i = 0; i < NAMES.length; i++) {
+                buffer.append(' ').append(element.hasAttribute(NAMES[i]))
+                    .append('=').append(element.getAttribute(NAMES[i]));
+            }
+            for (int i = 0; i < NS_NAMES.length; i++) {
+                buffer.append(' ')
+                    .append(element.hasAttributeNS(NS_NAMES[i][0], NS_NAMES[i][1]))
+                    .append('=')
+                    .append(element.getAttributeNS(NS_NAMES[i][0], NS_NAMES[i][1]));
+            }
+            buffer.append('\n');
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            read(child, buffer);
+        }
+    }
+    
+    private static String write(Document document) {
+        DOMImplementationLS ls = (DOMImplementationLS) document.getImplementation();
+        return ls.createLSSerializer().writeToString(document);
+    }
+    
+    private static String dump(Node node) {
+        StringBuffer buffer = new StringBuffer();
+        dump(node, buffer);
+        return buffer.toString();
+    }
+    
+    private static void dump(Node node, StringBuffer buffer) {
+        buffer.append(node.getNodeType()).append(' ').append(node.getNodeName());
+        buffer.append(" {").append(node.getNamespaceURI()).append('}');
+        if (node.getNodeValue() != null) {
+            buffer.append(" \"").append(node.getNodeValue()).append('"');
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Attr attr = (Attr) attributes.item(i);
+                buffer.append(' ').append(attr.getName()).append("{")
+                    .append(attr.getNamespaceURI()).append("}=").append(attr.getValue())
+                    .append(attr.getSpecified() ? "" : " default")
+                    .append(attr.isId() ? " id" : "")
+                    .append(attr.getOwnerElement() == node ? "" : " unowned");
+            }
+        }
+        buffer.append('\n');
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            dump(child, buffer);
+        }
+    }
+}
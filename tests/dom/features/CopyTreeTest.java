@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.features;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.dom.DocumentImpl;
+import org.apache.xerces.parsers.DOMParser;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.UserDataHandler;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests that the deep copies made by cloneNode and importNode when no
+ * node has user data are the same as those made when some node has user
+ * data, which are built with appendChild, and that they are seen the same
+ * by user data handlers and mutation event listeners.
+ * 
+ * @version $Id$
+ */
+public class CopyTreeTest extends TestCase {
+    
+    private static final String DEFER_NODE_EXPANSION =
+        "http://apache.org/xml/features/dom/defer-node-expansion";
+    
+    private static final String COMPACT_ATTRIBUTES =
+        "http://apache.org/xml/features/dom/compact-attributes";
+    
+    private static final String SHARED_TEXT =
+        "http://apache.org/xml/features/dom/shared-text";
+    
+    private static final String XML =
+        "<!DOCTYPE root [" +
+        "<!ELEMENT root ANY><!ELEMENT item ANY><!ELEMENT sub ANY>" +
+        "<!ATTLIST item id ID #IMPLIED kind (x|y) 'x'>" +
+        "<!ATTLIST sub a CDATA #IMPLIED b CDATA #IMPLIED>" +
+        "<!ENTITY e '<sub a=\"1\">entity text</sub>'>]>" +
+        "<root xmlns:p='urn:p'>" +
+        "<item id='i1'>text<sub a='1' b='2' p:c='3'>a<sub>b</sub>c</sub></item>" +
+        "<item kind='y'><![CDATA[cdata <1>]]><!--comment--><?pi data?></item>" +
+        "<p:item xmlns='urn:d'><sub p:a='1' a='2'>&amp;more&#x20;text</sub>" +
+        "<inner xmlns=''/></p:item>" +
+        "<item id='i2'>&e;</item>" +
+        "</root>";
+    
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(CopyTreeTest.class);
+    }
+    
+    public void testCloneNode() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            Element source = parse(i).getDocumentElement();
+            String copied = dump(source.cloneNode(true));
+            source.getOwnerDocument().setUserData("key", "value", null);
+            assertEquals("parser " + i, dump(source.cloneNode(true)), copied);
+        }
+    }
+    
+    public void testImportNode() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            Element source = parse(i).getDocumentElement();
+            String copied = dump(new DocumentImpl().importNode(source, true));
+            source.getOwnerDocument().setUserData("key", "value", null);
+            assertEquals("parser " + i, 
+                    dump(new DocumentImpl().importNode(source, true)), copied);
+        }
+    }
+    
+    public void testUserDataHandlers() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            Document document = parse(i);
+            Element source = document.getDocumentElement();
+            String cloned = dump(source.cloneNode(true));
+            String imported = dump(new DocumentImpl().importNode(source, true));
+            
+            RecordingHandler handler = new RecordingHandler();
+            List<Node> nodes = new ArrayList<Node>();
+            collect(source, nodes);
+            for (int j = 0; j < nodes.size(); j++) {
+                nodes.get(j).setUserData("key", new Integer(j), handler);
+            }
+            
+            Node clone = source.cloneNode(true);
+            assertEquals("parser " + i, cloned, dump(clone));
+            assertEquals("parser " + i, nodes.size(), handler.fCalls.size());
+            assertCalls(handler, UserDataHandler.NODE_CLONED, nodes, clone);
+            
+            handler.fCalls.clear();
+            Node copy = new DocumentImpl().importNode(source, true);
+            assertEquals("parser " + i, imported, dump(copy));
+            assertEquals("parser " + i, nodes.size(), handler.fCalls.size());
+            assertCalls(handler, UserDataHandler.NODE_IMPORTED, nodes, copy);
+        }
+    }
+    
+    public void testMutationEvents() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            Document document = parse(i);
+            Element source = document.getDocumentElement();
+            RecordingListener listener = new RecordingListener();
+            listener.listen(document);
+            
+            Node clone = source.cloneNode(true);
+            List<String> cloneEvents = new ArrayList<String>(listener.fEvents);
+            Document target = new DocumentImpl();
+            target.appendChild(target.createElement("target"));
+            RecordingListener targetListener = new RecordingListener();
+            targetListener.listen(target);
+            Node copy = target.importNode(source, true);
+            List<String> importEvents = new ArrayList<String>(targetListener.fEvents);
+            
+            document.setUserData("key", "value", null);
+            listener.fEvents.clear();
+            targetListener.fEvents.clear();
+            assertEquals("parser " + i, dump(source.cloneNode(true)), dump(clone));
+            assertEquals("parser " + i, listener.fEvents, cloneEvents);
+            assertEquals("parser " + i, 
+                    dump(target.importNode(source, true)), dump(copy));
+            assertEquals("parser " + i, targetListener.fEvents, importEvents);
+            
+            // the copy reports its changes once it is in the document
+            targetListener.fEvents.clear();
+            target.getDocumentElement().appendChild(copy);
+            ((Element) copy.getFirstChild()).setAttribute("id", "new");
+            copy.getFirstChild().getFirstChild().setNodeValue("new text");
+            List<String> expected = new ArrayList<String>();
+            expected.add("DOMNodeInserted root");
+            expected.add("DOMSubtreeModified target");
+            expected.add("DOMAttrModified item");
+            expected.add("DOMSubtreeModified item");
+            expected.add("DOMCharacterDataModified #text");
+            expected.add("DOMSubtreeModified #text");
+            assertEquals("parser " + i, expected, targetListener.fEvents);
+        }
+    }
+    
+    /**
+     * Parses the document with a parser whose features are given by the
+     * bits of the given number.
+     */
+    private static Document parse(int features) throws Exception {
+        DOMParser parser = new DOMParser();
+        parser.setFeature(DEFER_NODE_EXPANSION, (features & 1) != 0);
+        parser.setFeature(COMPACT_ATTRIBUTES, (features & 2) != 0);
+        parser.setFeature(SHARED_TEXT, (features & 4) != 0);
+        parser.parse(new InputSource(new StringReader(XML)));
+        return parser.getDocument();
+    }
+    
+    /**
+     * Collects the node and its specified attributes and descendants,
+     * except the children of entity references, which are not copied.
+     */
+    private static void collect(Node node, List<Node> nodes) {
+        nodes.add(node);
+        if (node.getNodeType() == Node.ENTITY_REFERENCE_NODE) {
+            return;
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Attr attr = (Attr) attributes.item(i);
+                if (attr.getSpecified()) {
+                    nodes.add(attr);
+                }
+            }
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            collect(child, nodes);
+        }
+    }
+    
+    /**
+     * Checks that the handler was called for the given nodes in turn, each
+     * with the node of the copy at the same place.
+     */
+    private static void assertCalls(RecordingHandler handler, short operation,
+            List<Node> nodes, Node copy) {
+        List<Node> copies = new ArrayList<Node>();
+        collect(copy, copies);
+        List<Object[]> calls = new ArrayList<Object[]>(handler.fCalls);
+        for (int j = 0; j < nodes.size(); j++) {
+            Node node = nodes.get(j);
+            Object[] call = null;
+            for (int k = 0; k < calls.size(); k++) {
+                if (calls.get(k)[1] == node) {
+                    call = calls.remove(k);
+                    break;
+                }
+            }
+            assertNotNull(node.getNodeName(), call);
+            assertEquals(new Short(operation), call[0]);
+            assertSame(node.getNodeName(), copies.get(j), call[2]);
+        }
+    }
+    
+    private static String dump(Node node) {
+        StringBuffer buffer = new StringBuffer();
+        dump(node, buffer);
+        return buffer.toString();
+    }
+    
+    private static void dump(Node node, StringBuffer buffer) {
+        buffer.append(node.getNodeType()).append(' ').append(node.getNodeName());
+        buffer.append(" {").append(node.getNamespaceURI()).append('}');
+        if (node.getNodeValue() != null) {
+            buffer.append(" \"").append(node.getNodeValue()).append('"');
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Attr attr = (Attr) attributes.item(i);
+                buffer.append(' ').append(attr.getName()).append("{")
+                    .append(attr.getNamespaceURI()).append("}=").append(attr.getValue())
+                    .append(attr.getSpecified() ? "" : " default")
+                    .append(attr.isId() ? " id" : "");
+            }
+        }
+        buffer.append('\n');
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            dump(child, buffer);
+        }
+    }
+    
+    /** Records the operation, source and destination of its calls. */
+    private static final class RecordingHandler implements UserDataHandler {
+        
+        final List<Object[]> fCalls = new ArrayList<Object[]>();
+        
+        public void handle(short operation, String key, Object data, Node src, Node dst) {
+            fCalls.add(new Object[] {new Short(operation), src, dst});
+        }
+    }
+    
+    /** Records the type and target of the mutation events it receives. */
+    private static final class RecordingListener implements EventListener {
+        
+        final List<String> fEvents = new ArrayList<String>();
+        
+        void listen(Document document) {
+            EventTarget target = (EventTarget) document;
+            target.addEventListener("DOMNodeInserted", this, false);
+            target.addEventListener("DOMAttrModified", this, false);
+            target.addEventListener("DOMCharacterDataModified", this, false);
+            target.addEventListener("DOMSubtreeModified", this, false);
+        }
+        
+        public void handleEvent(Event event) {
+            fEvents.add(event.getType() + ' ' + ((Node) event.getTarget()).getNodeName());
+        }
+    }
+}
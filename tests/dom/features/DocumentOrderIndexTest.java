@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.features;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.dom.CoreDocumentImpl;
+import org.apache.xerces.parsers.DOMParser;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests that compareDocumentPosition gives the same results when the
+ * order of the nodes of a document is indexed as when it is not.
+ * 
+ * @version $Id$
+ */
+public class DocumentOrderIndexTest extends TestCase {
+    
+    private static final String DOCUMENT =
+        "<!DOCTYPE root [<!ENTITY e '<x>entity</x>'>]>" +
+        "<root a='1' b='2'><!-- c --><p id='p1'>text<b>bold</b>tail</p>" +
+        "<p id='p2'>&e;<i/><i>in</i></p><?pi data?><q><r><s/></r></q></root>";
+    
+    public void testDocumentTypeWithoutOwner() throws Exception {
+        CoreDocumentImpl doc = parse(false);
+        doc.setDocumentOrderIndexing(true);
+        DocumentType doctype = doc.getImplementation().createDocumentType("root", null, null);
+        Node root = doc.getDocumentElement();
+        short position = doctype.compareDocumentPosition(root);
+        assertTrue((position & Node.DOCUMENT_POSITION_DISCONNECTED) != 0);
+        position = root.compareDocumentPosition(doctype);
+        assertTrue((position & Node.DOCUMENT_POSITION_DISCONNECTED) != 0);
+        assertEquals(0, doctype.compareDocumentPosition(doctype));
+    }
+    
+    public void testMutations() throws Exception {
+        testMutations(false);
+        testMutations(true);
+    }
+    
+    private void testMutations(boolean deferred) throws Exception {
+        for (int seed = 0; seed < 10; seed++) {
+            CoreDocumentImpl indexed = parse(deferred);
+            CoreDocumentImpl plain = parse(deferred);
+            indexed.setDocumentOrderIndexing(true);
+            Random random = new Random(seed);
+            List detachedIndexed = new ArrayList();
+            List detachedPlain = new ArrayList();
+            for (int step = 0; step < 100; step++) {
+                List indexedNodes = new ArrayList();
+                List plainNodes = new ArrayList();
+                collect(indexed, indexedNodes);
+                collect(plain, plainNodes);
+                indexedNodes.addAll(detachedIndexed);
+                plainNodes.addAll(detachedPlain);
+                assertEquals(plainNodes.size(), indexedNodes.size());
+                for (int k = 0; k < 50; k++) {
+                    int i = random.nextInt(indexedNodes.size());
+                    int j = random.nextInt(indexedNodes.size());
+                    assertEquals("seed " + seed + ", step " + step,
+                            position((Node) plainNodes.get(i), (Node) plainNodes.get(j)),
+                            position((Node) indexedNodes.get(i), (Node) indexedNodes.get(j)));
+                }
+                int i = random.nextInt(indexedNodes.size());
+                int j = random.nextInt(indexedNodes.size());
+                int op = random.nextInt(4);
+                if (indexedNodes.size() > 1000 && op == 0) {
+                    op = 1;
+                }
+                mutate(op, indexed, (Node) indexedNodes.get(i), (Node) indexedNodes.get(j), detachedIndexed);
+                mutate(op, plain, (Node) plainNodes.get(i), (Node) plainNodes.get(j), detachedPlain);
+            }
+        }
+    }
+    
+    private static void mutate(int op, Document doc, Node node, Node target, List detached) {
+        try {
+            switch (op) {
+                case 0:
+                    target.insertBefore(node.cloneNode(true), target.getFirstChild());
+                    break;
+                case 1:
+                    if (node.getParentNode() != null) {
+                        node.getParentNode().removeChild(node);
+                        detached.add(node);
+                    }
+                    break;
+                case 2:
+                    target.insertBefore(node, target.getLastChild());
+                    break;
+                case 3:
+                    if (node instanceof Text && ((Text) node).getLength() > 1) {
+                        ((Text) node).splitText(1);
+                    }
+                    else {
+                        node.normalize();
+                    }
+                    break;
+            }
+        }
+        catch (DOMException e) {
+            // the same mutation fails on both documents
+        }
+    }
+    
+    private static short position(Node node, Node other) {
+        short position;
+        try {
+            position = node.compareDocumentPosition(other);
+        }
+        catch (DOMException e) {
+            return -1;
+        }
+        // the order of disconnected nodes is implementation specific
+        if ((position & Node.DOCUMENT_POSITION_DISCONNECTED) != 0) {
+            position &= ~(Node.DOCUMENT_POSITION_PRECEDING | Node.DOCUMENT_POSITION_FOLLOWING);
+        }
+        return position;
+    }
+    
+    private static void collect(Node node, List nodes) {
+        nodes.add(node);
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                nodes.add(attributes.item(i));
+            }
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            collect(child, nodes);
+        }
+    }
+    
+    private static CoreDocumentImpl parse(boolean deferred) throws Exception {
+        DOMParser parser = new DOMParser();
+        parser.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", deferred);
+        parser.setFeature("http://apache.org/xml/features/dom/create-entity-ref-nodes", true);
+        parser.parse(new InputSource(new StringReader(DOCUMENT)));
+        return (CoreDocumentImpl) parser.getDocument();
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.features;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.dom.CoreDocumentImpl;
+import org.apache.xerces.parsers.DOMParser;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests that getElementsByTagName and getElementsByTagNameNS give the
+ * same results when the elements of a document are indexed by name as
+ * when they are not, while the document is modified.
+ * 
+ * @version $Id$
+ */
+public class ElementIndexTest extends TestCase {
+    
+    private static final String DOCUMENT =
+        "<!DOCTYPE root [<!ENTITY e '<x>entity<p/></x>'>]>" +
+        "<root xmlns:a='urn:a' xmlns:b='urn:b'><!-- c -->" +
+        "<p id='p1'>text<a:p>one</a:p><b:p><q/></b:p>tail</p>" +
+        "<p id='p2'>&e;<x/><a:x>in</a:x></p><?pi data?>" +
+        "<q><p><a:p><b:q/></a:p></p><x xmlns='urn:a'><p/></x></q></root>";
+    
+    /** Names queried with getElementsByTagName. */
+    private static final String[] NAMES = {
+        "p", "q", "x", "a:p", "b:p", "y", "*"
+    };
+    
+    /** Namespaces and local names queried with getElementsByTagNameNS. */
+    private static final String[][] NS_NAMES = {
+        {null, "p"}, {"", "x"}, {"urn:a", "p"}, {"urn:b", "p"}, {"urn:a", "x"},
+        {"urn:b", "y"}, {"*", "p"}, {"urn:a", "*"}, {"*", "*"}
+    };
+    
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ElementIndexTest.class);
+    }
+    
+    public void testQueries() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            CoreDocumentImpl indexed = parse(i != 0);
+            CoreDocumentImpl plain = parse(i != 0);
+            indexed.setElementIndexing(true);
+            List<Node> indexedNodes = new ArrayList<Node>();
+            List<Node> plainNodes = new ArrayList<Node>();
+            collect(indexed, indexedNodes);
+            collect(plain, plainNodes);
+            for (int j = 0; j < indexedNodes.size(); j++) {
+                assertEquals(query(plainNodes.get(j), plainNodes),
+                        query(indexedNodes.get(j), indexedNodes));
+            }
+        }
+    }
+    
+    public void testMutations() throws Exception {
+        testMutations(false);
+        testMutations(true);
+    }
+    
+    private void testMutations(boolean deferred) throws Exception {
+        for (int seed = 0; seed < 10; seed++) {
+            CoreDocumentImpl indexed = parse(deferred);
+            CoreDocumentImpl plain = parse(deferred);
+            indexed.setElementIndexing(true);
+            
+            // live lists made before the changes must follow them, like
+            // the lists made anew after each change
+            List<NodeList> indexedLists = new ArrayList<NodeList>();
+            List<NodeList> plainLists = new ArrayList<NodeList>();
+            lists(indexed, indexedLists);
+            lists(plain, plainLists);
+            lists(indexed.getDocumentElement(), indexedLists);
+            lists(plain.getDocumentElement(), plainLists);
+            Element plainRoot = plain.getDocumentElement();
+            
+            Random random = new Random(seed);
+            List<Node> detachedIndexed = new ArrayList<Node>();
+            List<Node> detachedPlain = new ArrayList<Node>();
+            for (int step = 0; step < 100; step++) {
+                List<Node> indexedNodes = new ArrayList<Node>();
+                List<Node> plainNodes = new ArrayList<Node>();
+                collect(indexed, indexedNodes);
+                collect(plain, plainNodes);
+                for (int k = 0; k < detachedIndexed.size(); k++) {
+                    collect(detachedIndexed.get(k), indexedNodes);
+                    collect(detachedPlain.get(k), plainNodes);
+                }
+                assertEquals(plainNodes.size(), indexedNodes.size());
+                
+                String message = "seed " + seed + ", step " + step;
+                List<NodeList> newLists = new ArrayList<NodeList>();
+                lists(plain, newLists);
+                lists(plainRoot, newLists);
+                for (int k = 0; k < plainLists.size(); k++) {
+                    String expected = items(newLists.get(k), plainNodes);
+                    assertEquals(message, expected,
+                            items(plainLists.get(k), plainNodes));
+                    assertEquals(message, expected,
+                            items(indexedLists.get(k), indexedNodes));
+                }
+                for (int k = 0; k < 3; k++) {
+                    int i = random.nextInt(indexedNodes.size());
+                    assertEquals(message, query(plainNodes.get(i), plainNodes),
+                            query(indexedNodes.get(i), indexedNodes));
+                }
+                
+                int i = random.nextInt(indexedNodes.size());
+                int j = random.nextInt(indexedNodes.size());
+                int op = random.nextInt(7);
+                if (indexedNodes.size() > 1000 && op == 0) {
+                    op = 1;
+                }
+                mutate(op, step, indexed, indexedNodes.get(i), indexedNodes.get(j),
+                        detachedIndexed);
+                mutate(op, step, plain, plainNodes.get(i), plainNodes.get(j),
+                        detachedPlain);
+            }
+        }
+    }
+    
+    private static void mutate(int op, int step, Document doc, Node node, Node target,
+            List<Node> detached) {
+        try {
+            switch (op) {
+                case 0:
+                    target.insertBefore(node.cloneNode(true), target.getFirstChild());
+                    break;
+                case 1:
+                    if (node.getParentNode() != null) {
+                        node.getParentNode().removeChild(node);
+                        detached.add(node);
+                    }
+                    break;
+                case 2:
+                    target.insertBefore(node, target.getLastChild());
+                    detached.remove(node);
+                    break;
+                case 3: {
+                    String[] names = {"p", "a:p", "b:q", "y"};
+                    String name = names[step % names.length];
+                    String uri = name.startsWith("a:") ? "urn:a"
+                            : name.startsWith("b:") ? "urn:b" : null;
+                    if (node.getNodeType() == Node.ELEMENT_NODE) {
+                        Node renamed = doc.renameNode(node, uri, name);
+                        int k = detached.indexOf(node);
+                        if (k != -1) {
+                            detached.set(k, renamed);
+                        }
+                    }
+                    break;
+                }
+                case 4:
+                    if (node.getNamespaceURI() != null &&
+                        node.getNodeType() == Node.ELEMENT_NODE) {
+                        node.setPrefix(step % 2 == 0 ? "c" : null);
+                    }
+                    break;
+                case 5: {
+                    DocumentFragment fragment = doc.createDocumentFragment();
+                    fragment.appendChild(doc.createElementNS("urn:b", "b:y"));
+                    Element p = doc.createElement("p");
+                    p.appendChild(doc.createElementNS("urn:a", "a:p"));
+                    fragment.appendChild(p);
+                    target.appendChild(fragment);
+                    break;
+                }
+                case 6:
+                    // changes no element
+                    node.setTextContent(node.getTextContent());
+                    break;
+            }
+        }
+        catch (DOMException e) {
+            // the same mutation fails on both documents
+        }
+    }
+    
+    /** Makes the lists of all the queries on the given node. */
+    private static void lists(Node node, List<NodeList> lists) {
+        for (int i = 0; i < NAMES.length; i++) {
+            lists.add(node instanceof Document
+                    ? ((Document) node).getElementsByTagName(NAMES[i])
+                    : ((Element) node).getElementsByTagName(NAMES[i]));
+        }
+        for (int i = 0; i < NS_NAMES.length; i++) {
+            lists.add(node instanceof Document
+                    ? ((Document) node).getElementsByTagNameNS(NS_NAMES[i][0], NS_NAMES[i][1])
+                    : ((Element) node).getElementsByTagNameNS(NS_NAMES[i][0], NS_NAMES[i][1]));
+        }
+    }
+    
+    /**
+     * Returns the results of all the queries on the given node, if it is
+     * a document or an element, as positions in the given nodes.
+     */
+    private static String query(Node node, List<Node> nodes) {
+        if (!(node instanceof Document) && !(node instanceof Element)) {
+            return "";
+        }
+        List<NodeList> lists = new ArrayList<NodeList>();
+        lists(node, lists);
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < lists.size(); i++) {
+            buffer.append(items(lists.get(i), nodes)).append('\n');
+        }
+        return buffer.toString();
+    }
+    
+    /** Returns the items of the list as positions in the given nodes. */
+    private static String items(NodeList list, List<Node> nodes) {
+        StringBuffer buffer = new StringBuffer();
+        int length = list.getLength();
+        buffer.append(length).append(':');
+        // read backwards too, which the index serves as well
+        for (int i = length; i >= 0; i--) {
+            Node item = list.item(i);
+            buffer.append(' ').append(item == null ? -1 : indexOf(nodes, item));
+        }
+        return buffer.toString();
+    }
+    
+    private static int indexOf(List<Node> nodes, Node node) {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i) == node) {
+                return i;
+            }
+        }
+        return -2;
+    }
+    
+    private static void collect(Node node, List<Node> nodes) {
+        nodes.add(node);
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            collect(child, nodes);
+        }
+    }
+    
+    private static CoreDocumentImpl parse(boolean deferred) throws Exception {
+        DOMParser parser = new DOMParser();
+        parser.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", deferred);
+        parser.setFeature("http://apache.org/xml/features/dom/create-entity-ref-nodes", true);
+        parser.parse(new InputSource(new StringReader(DOCUMENT)));
+        return (CoreDocumentImpl) parser.getDocument();
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dom.features;
+
+import java.io.File;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.parsers.DOMParser;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests that the deferred documents whose character data and tables are
+ * kept off the heap are the same as those built on the heap, whether the
+ * text store grows its first slab, spans several slabs or maps them from
+ * temporary files.
+ * 
+ * @version $Id$
+ */
+public class OffHeapStorageTest extends TestCase {
+    
+    private static final String OFF_HEAP_DEFERRED_STORAGE =
+        "http://apache.org/xml/features/dom/off-heap-deferred-storage";
+    
+    private static final String DEFERRED_STORAGE_DIRECTORY =
+        "http://apache.org/xml/properties/dom/deferred-storage-directory";
+    
+    private static final String DEFERRED_TABLE_POOLING =
+        "http://apache.org/xml/features/dom/deferred-table-pooling";
+    
+    /** Initial size of the first slab of the store. */
+    private static final int INITIAL_SLAB_SIZE = 1 << 12;
+    
+    /** Size of a slab of the store. */
+    private static final int SLAB_SIZE = 1 << 22;
+    
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(OffHeapStorageTest.class);
+    }
+    
+    public void testSmallDocument() throws Exception {
+        // much less than the first slab
+        String xml = "<root a='v\u00e9'>text \u4e2d<!--c--><?pi d?><e b=''/></root>";
+        assertOffHeap(xml, null);
+    }
+    
+    public void testFirstSlabGrowth() throws Exception {
+        // each text makes the first slab grow, once or several times,
+        // after the characters already in it
+        int[] lengths = { 10, INITIAL_SLAB_SIZE - 20, 1, 11, INITIAL_SLAB_SIZE,
+                          3 * INITIAL_SLAB_SIZE + 7, 100000 };
+        assertOffHeap(createDocument(lengths), null);
+        
+        // a first text larger than the initial slab
+        assertOffHeap(createDocument(new int[] { INITIAL_SLAB_SIZE + 1, 5 }), null);
+    }
+    
+    public void testSeveralSlabs() throws Exception {
+        // texts across the end of the first slab, once fully grown, and a
+        // text longer than a slab
+        int[] lengths = { SLAB_SIZE - 1000, 2000, 7, SLAB_SIZE + 3000, 10 };
+        assertOffHeap(createDocument(lengths), null);
+    }
+    
+    public void testMappedFiles() throws Exception {
+        File directory = File.createTempFile("xerces", ".test");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        try {
+            int[] lengths = { 10, INITIAL_SLAB_SIZE, 7, SLAB_SIZE, 10 };
+            assertOffHeap(createDocument(lengths), directory);
+            
+            // the files are deleted once mapped
+            assertEquals(0, directory.list().length);
+        }
+        finally {
+            File[] files = directory.listFiles();
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+            directory.delete();
+        }
+    }
+    
+    public void testTables() throws Exception {
+        // several chunks of nodes, partly created before the document is
+        // cloned, with the pool the tables on the heap would be taken from
+        StringBuffer buffer = new StringBuffer("<root>");
+        for (int i = 0; i < 5000; i++) {
+            buffer.append("<item n='").append(i).append("'>t").append(i)
+                .append("<sub/></item>");
+        }
+        buffer.append("</root>");
+        String xml = buffer.toString();
+        String expected = dump(parse(createParser(false, null), xml));
+        
+        DOMParser parser = createParser(true, null);
+        parser.setFeature(DEFERRED_TABLE_POOLING, true);
+        for (int i = 0; i < 3; i++) {
+            Document document = parse(parser, xml);
+            Element root = document.getDocumentElement();
+            Element last = (Element) root.getLastChild();
+            assertEquals("4999", last.getAttribute("n"));
+            Document clone = (Document) document.cloneNode(true);
+            assertEquals(expected, dump(document));
+            assertEquals(expected, dump(clone));
+            parser.releaseDocument(document);
+        }
+    }
+    
+    /**
+     * Asserts that the given document is the same built off the heap,
+     * with the given directory, as on the heap.
+     */
+    private static void assertOffHeap(String xml, File directory) throws Exception {
+        String expected = dump(parse(createParser(false, null), xml));
+        assertEquals(expected, dump(parse(createParser(true, directory), xml)));
+    }
+    
+    private static DOMParser createParser(boolean offHeap, File directory) throws Exception {
+        DOMParser parser = new DOMParser();
+        parser.setFeature(OFF_HEAP_DEFERRED_STORAGE, offHeap);
+        if (directory != null) {
+            parser.setProperty(DEFERRED_STORAGE_DIRECTORY, directory);
+        }
+        return parser;
+    }
+    
+    private static Document parse(DOMParser parser, String xml) throws Exception {
+        parser.parse(new InputSource(new StringReader(xml)));
+        return parser.getDocument();
+    }
+    
+    /**
+     * Creates a document with texts and attributes of the given lengths,
+     * of characters of one and two bytes, each different from the others.
+     */
+    private static String createDocument(int[] lengths) {
+        StringBuffer buffer = new StringBuffer("<root>");
+        for (int i = 0; i < lengths.length; i++) {
+            buffer.append("<item a='").append(createText(i, lengths[i] % 97 + 1))
+                .append("'>").append(createText(i, lengths[i])).append("</item>");
+        }
+        buffer.append("</root>");
+        return buffer.toString();
+    }
+    
+    private static String createText(int key, int length) {
+        StringBuffer buffer = new StringBuffer(length);
+        for (int i = 0; i < length; i++) {
+            int c = (i + key) % 53;
+            buffer.append(c < 26 ? (char) ('a' + c) : c < 50 ? (char) ('\u0430' + c - 26) : ' ');
+        }
+        return buffer.toString();
+    }
+    
+    private static String dump(Document document) {
+        StringBuffer buffer = new StringBuffer();
+        dump(document.getDocumentElement(), buffer);
+        return buffer.toString();
+    }
+    
+    private static void dump(Node node, StringBuffer buffer) {
+        buffer.append(node.getNodeType()).append(' ').append(node.getNodeName());
+        if (node.getNodeValue() != null) {
+            buffer.append(" \"").append(node.getNodeValue()).append('"');
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Attr attr = (Attr) attributes.item(i);
+                buffer.append(' ').append(attr.getName()).append('=').append(attr.getValue());
+            }
+        }
+        buffer.append('\n');
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            dump(child, buffer);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.features;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.dom.DocumentImpl;
+import org.apache.xerces.parsers.DOMParser;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Tests that the DOM built with the children of the document element
+ * built on other threads is the same as the DOM built on the parser
+ * thread.
+ * 
+ * @version $Id$
+ */
+public class ParallelConstructionTest extends TestCase {
+    
+    private static final String DEFER_NODE_EXPANSION =
+        "http://apache.org/xml/features/dom/defer-node-expansion";
+    
+    private static final String PARALLEL_CONSTRUCTION =
+        "http://apache.org/xml/features/dom/parallel-construction";
+    
+    private static final String CONSTRUCTION_EXECUTOR =
+        "http://apache.org/xml/properties/dom/construction-executor";
+    
+    private static final String DOCUMENT_CLASS_NAME =
+        "http://apache.org/xml/properties/dom/document-class-name";
+    
+    private static final String CONSTRUCTION_PARALLELISM =
+        "http://apache.org/xml/properties/dom/construction-parallelism";
+    
+    private static final String DTD =
+        "<!DOCTYPE root [" +
+        "<!ELEMENT root ANY><!ELEMENT item ANY><!ELEMENT sub ANY>" +
+        "<!ATTLIST item id ID #REQUIRED kind (x|y) 'x' ref IDREF #IMPLIED>" +
+        "<!ENTITY e '<sub>entity text</sub>'>]>";
+    
+    /** Number of items, enough for many batches of events. */
+    private static final int ITEMS = 20000;
+    
+    private ExecutorService fExecutor;
+    
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ParallelConstructionTest.class);
+    }
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        fExecutor = Executors.newFixedThreadPool(3);
+    }
+    
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        fExecutor.shutdownNow();
+        fExecutor = null;
+    }
+    
+    public void testDocumentOrder() throws Exception {
+        String xml = createDocument(-1);
+        assertEquals(dump(parse(createParser(null), xml)),
+                dump(parse(createParser(fExecutor), xml)));
+    }
+    
+    public void testNamespaces() throws Exception {
+        String xml = "<p:root xmlns:p='urn:p' xmlns='urn:d' a='1' p:b='2'>" +
+            createContent(-1) + "</p:root>";
+        assertEquals(dump(parse(createParser(null), xml)),
+                dump(parse(createParser(fExecutor), xml)));
+    }
+    
+    public void testDefaultExecutor() throws Exception {
+        String xml = createDocument(-1);
+        DOMParser parser = new DOMParser();
+        parser.setFeature(DEFER_NODE_EXPANSION, false);
+        parser.setFeature(PARALLEL_CONSTRUCTION, true);
+        assertEquals(dump(parse(createParser(null), xml)), dump(parse(parser, xml)));
+    }
+    
+    public void testIdentifiers() throws Exception {
+        Document document = parse(createParser(fExecutor), createDocument(-1));
+        for (int i = 0; i < ITEMS; i += 997) {
+            Element item = document.getElementById("i" + i);
+            assertNotNull(item);
+            assertSame(document, item.getOwnerDocument());
+            assertSame(document.getDocumentElement(), item.getParentNode());
+            assertTrue(item.getAttributeNode("id").isId());
+            assertEquals("item", item.getNodeName());
+        }
+        // elements built on different threads end up in document order
+        Element first = document.getElementById("i100");
+        Element last = document.getElementById("i" + (ITEMS - 100));
+        assertEquals(Node.DOCUMENT_POSITION_FOLLOWING,
+                first.compareDocumentPosition(last) & Node.DOCUMENT_POSITION_FOLLOWING);
+    }
+    
+    public void testEntityReference() throws Exception {
+        // the entity is referenced after many batches have been handed off
+        String xml = createDocument(ITEMS / 2);
+        Document sequential = parse(createParser(null), xml);
+        Document parallel = parse(createParser(fExecutor), xml);
+        assertEquals(dump(sequential), dump(parallel));
+        Element item = parallel.getElementById("i" + (ITEMS / 2));
+        assertEquals(Node.ENTITY_REFERENCE_NODE, item.getLastChild().getNodeType());
+        assertNotNull(parallel.getElementById("i" + (ITEMS - 1)));
+    }
+    
+    public void testDocumentClass() throws Exception {
+        String xml = createDocument(-1);
+        DOMParser parser = createParser(fExecutor);
+        parser.setProperty(DOCUMENT_CLASS_NAME, CountingDocument.class.getName());
+        int created = CountingDocument.fCreated;
+        Document document = parse(parser, xml);
+        assertEquals(CountingDocument.class, document.getClass());
+        // the nodes were built in documents of the same class
+        assertTrue(CountingDocument.fCreated > created + 1);
+        assertEquals(dump(parse(createParser(null), xml)), dump(document));
+    }
+    
+    public void testRejectingExecutor() throws Exception {
+        Executor executor = new Executor() {
+            public void execute(Runnable command) {
+                throw new java.util.concurrent.RejectedExecutionException();
+            }
+        };
+        String xml = createDocument(-1);
+        assertEquals(dump(parse(createParser(null), xml)),
+                dump(parse(createParser(executor), xml)));
+    }
+    
+    public void testFailure() throws Exception {
+        HoldingExecutor executor = new HoldingExecutor();
+        DOMParser parser = createParser(executor);
+        parser.setErrorHandler(new DefaultHandler());
+        // keep every batch in flight, so that none is waited for
+        parser.setProperty(CONSTRUCTION_PARALLELISM, new Integer(1000));
+        String xml = createDocument(-1);
+        int end = xml.lastIndexOf("</item>");
+        String malformed = xml.substring(0, end) + "</wrong>" + xml.substring(end + 7);
+        try {
+            parse(parser, malformed);
+            fail("The malformed document was parsed.");
+        }
+        catch (SAXException e) {
+            // expected
+        }
+        assertTrue(executor.fTasks.size() > 1);
+        
+        // the batches of the failed parse are cancelled and the parser
+        // can be used again
+        executor.fRun = true;
+        Document document = parse(parser, xml);
+        for (int i = 0; i < executor.fTasks.size(); i++) {
+            assertTrue(((Future<?>) executor.fTasks.get(i)).isCancelled());
+        }
+        assertEquals(dump(parse(createParser(null), xml)), dump(document));
+    }
+    
+    private DOMParser createParser(Executor executor) throws Exception {
+        DOMParser parser = new DOMParser();
+        parser.setFeature(DEFER_NODE_EXPANSION, false);
+        if (executor != null) {
+            parser.setFeature(PARALLEL_CONSTRUCTION, true);
+            parser.setProperty(CONSTRUCTION_EXECUTOR, executor);
+            parser.setProperty(CONSTRUCTION_PARALLELISM, new Integer(3));
+        }
+        return parser;
+    }
+    
+    private static Document parse(DOMParser parser, String xml) throws Exception {
+        parser.parse(new InputSource(new StringReader(xml)));
+        return parser.getDocument();
+    }
+    
+    /**
+     * Creates a document with many items of mixed content, where the item
+     * with the given number, if any, references an entity.
+     */
+    private static String createDocument(int entityItem) {
+        return DTD + "<root>" + createContent(entityItem) + "</root>";
+    }
+    
+    private static String createContent(int entityItem) {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < ITEMS; i++) {
+            buffer.append("<item id='i").append(i).append('\'');
+            if (i % 3 == 0) {
+                buffer.append(" kind='y' ref='i0'");
+            }
+            buffer.append(">text ").append(i);
+            switch (i % 5) {
+                case 0: buffer.append("<sub>a<sub>b</sub>c</sub>"); break;
+                case 1: buffer.append("<![CDATA[cdata <").append(i).append(">]]>"); break;
+                case 2: buffer.append("<!--comment ").append(i).append("-->"); break;
+                case 3: buffer.append("<?pi ").append(i).append("?>"); break;
+                default: buffer.append("&amp;more&#x20;text"); break;
+            }
+            if (i == entityItem) {
+                buffer.append("&e;");
+            }
+            buffer.append("</item>\n");
+        }
+        return buffer.toString();
+    }
+    
+    private static String dump(Document document) {
+        StringBuffer buffer = new StringBuffer();
+        dump(document.getDocumentElement(), buffer);
+        return buffer.toString();
+    }
+    
+    private static void dump(Node node, StringBuffer buffer) {
+        buffer.append(node.getNodeType()).append(' ').append(node.getNodeName());
+        buffer.append(" {").append(node.getNamespaceURI()).append('}');
+        if (node.getNodeValue() != null) {
+            buffer.append(" \"").append(node.getNodeValue()).append('"');
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Attr attr = (Attr) attributes.item(i);
+                buffer.append(' ').append(attr.getName()).append("{")
+                    .append(attr.getNamespaceURI()).append("}=").append(attr.getValue())
+                    .append(attr.getSpecified() ? "" : " default")
+                    .append(attr.isId() ? " id" : "")
+                    .append(' ').append(attr.getSchemaTypeInfo().getTypeName());
+            }
+        }
+        buffer.append('\n');
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            dump(child, buffer);
+        }
+    }
+    
+    /** A document class counting its instances. */
+    public static class CountingDocument extends DocumentImpl {
+        
+        private static final long serialVersionUID = 1L;
+        
+        static int fCreated;
+        
+        public CountingDocument() {
+            synchronized (CountingDocument.class) {
+                fCreated++;
+            }
+        }
+    }
+    
+    /** Holds the tasks until it is told to run them. */
+    private static final class HoldingExecutor implements Executor {
+        
+        final List<Runnable> fTasks = new ArrayList<Runnable>();
+        boolean fRun;
+        
+        public void execute(Runnable command) {
+            if (fRun) {
+                command.run();
+            }
+            else {
+                fTasks.add(command);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.features;
+
+import java.io.StringReader;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.dom.DeferredDocumentImpl;
+import org.apache.xerces.jaxp.DocumentBuilderFactoryImpl;
+import org.apache.xerces.parsers.DOMParser;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.TypeInfo;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests that the read-only view of a deferred document shows the same
+ * nodes, attributes and type information as the regular nodes of the
+ * document.
+ * 
+ * @version $Id$
+ */
+public class ReadOnlyViewTest extends TestCase {
+    
+    private static final String DTD_DOCUMENT =
+        "<!DOCTYPE root [" +
+        "<!ELEMENT root ANY><!ELEMENT item ANY>" +
+        "<!ATTLIST root z CDATA #IMPLIED a CDATA #IMPLIED m NMTOKENS #IMPLIED>" +
+        "<!ATTLIST item id ID #REQUIRED ref IDREF #IMPLIED kind (x|y) 'x'>" +
+        "<!ENTITY e 'entity <item id=\"e1\">text</item>'>]>" +
+        "<root z='last' m='n1 n2' a='first' xmlns:p='urn:p' p:q='qualified'>" +
+        "<item id='i1' ref='i2'>one</item><item id='i2' kind='y'>&e;</item>" +
+        "<!-- comment --><?pi data?><![CDATA[cdata]]></root>";
+    
+    private static final String SCHEMA =
+        "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:t'" +
+        " xmlns:t='urn:t' elementFormDefault='qualified'>" +
+        "<xs:element name='root'><xs:complexType><xs:sequence>" +
+        "<xs:element name='item' type='t:itemType' maxOccurs='unbounded'/>" +
+        "<xs:element name='size'><xs:simpleType><xs:restriction base='xs:int'>" +
+        "<xs:maxInclusive value='10'/></xs:restriction></xs:simpleType></xs:element>" +
+        "</xs:sequence><xs:attribute name='version' type='xs:decimal'/>" +
+        "<xs:attribute name='b' default='dflt'><xs:simpleType><xs:restriction base='xs:string'>" +
+        "<xs:maxLength value='8'/></xs:restriction></xs:simpleType></xs:attribute>" +
+        "</xs:complexType></xs:element>" +
+        "<xs:complexType name='itemType'><xs:simpleContent><xs:extension base='xs:string'>" +
+        "<xs:attribute name='id' type='xs:ID'/><xs:attribute name='code' type='xs:NMTOKEN'/>" +
+        "</xs:extension></xs:simpleContent></xs:complexType></xs:schema>";
+    
+    private static final String SCHEMA_DOCUMENT =
+        "<root xmlns='urn:t' version='1.5'><item id='a1' code='c'>one</item>" +
+        "<item code='d' id='a2'>two</item><size>3</size></root>";
+    
+    public void testDTD() throws Exception {
+        DOMParser parser = new DOMParser();
+        parser.setFeature("http://apache.org/xml/features/dom/create-entity-ref-nodes", true);
+        parser.parse(new InputSource(new StringReader(DTD_DOCUMENT)));
+        compareView((DeferredDocumentImpl) parser.getDocument());
+        
+        parser.setFeature("http://xml.org/sax/features/namespaces", false);
+        parser.parse(new InputSource(new StringReader(DTD_DOCUMENT)));
+        compareView((DeferredDocumentImpl) parser.getDocument());
+    }
+    
+    public void testSchema() throws Exception {
+        DocumentBuilderFactory factory = new DocumentBuilderFactoryImpl();
+        factory.setNamespaceAware(true);
+        factory.setValidating(true);
+        factory.setAttribute("http://java.sun.com/xml/jaxp/properties/schemaLanguage",
+                "http://www.w3.org/2001/XMLSchema");
+        InputSource schema = new InputSource(new StringReader(SCHEMA));
+        schema.setSystemId("view.xsd");
+        factory.setAttribute("http://java.sun.com/xml/jaxp/properties/schemaSource", schema);
+        factory.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", true);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document document = builder.parse(new InputSource(new StringReader(SCHEMA_DOCUMENT)));
+        assertTrue(document instanceof DeferredDocumentImpl);
+        compareView((DeferredDocumentImpl) document);
+        
+        // the types are reported by the view as by the regular nodes
+        Element root = document.getDocumentElement();
+        assertEquals("#AnonType_root", root.getSchemaTypeInfo().getTypeName());
+        Element item = (Element) root.getFirstChild();
+        assertEquals("itemType", item.getSchemaTypeInfo().getTypeName());
+        assertEquals("ID", item.getAttributeNode("id").getSchemaTypeInfo().getTypeName());
+    }
+    
+    private static void compareView(DeferredDocumentImpl document) {
+        // the view must be taken before the nodes are created
+        Document view = document.getReadOnlyView();
+        compare(document, view);
+    }
+    
+    private static void compare(Node node, Node view) {
+        String path = node.getNodeName();
+        assertEquals(path, node.getNodeType(), view.getNodeType());
+        assertEquals(path, node.getNodeName(), view.getNodeName());
+        assertEquals(path, node.getNamespaceURI(), view.getNamespaceURI());
+        assertEquals(path, node.getLocalName(), view.getLocalName());
+        assertEquals(path, node.getNodeValue(), view.getNodeValue());
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            compareTypes(path, ((Element) node).getSchemaTypeInfo(),
+                    ((Element) view).getSchemaTypeInfo());
+            NamedNodeMap attributes = node.getAttributes();
+            NamedNodeMap viewAttributes = view.getAttributes();
+            assertEquals(path, attributes.getLength(), viewAttributes.getLength());
+            for (int i = 0; i < attributes.getLength(); i++) {
+                // the attributes are listed in the same order
+                Attr attr = (Attr) attributes.item(i);
+                Attr viewAttr = (Attr) viewAttributes.item(i);
+                String attrPath = path + "/@" + attr.getName();
+                assertEquals(attrPath, attr.getName(), viewAttr.getName());
+                assertEquals(attrPath, attr.getNamespaceURI(), viewAttr.getNamespaceURI());
+                assertEquals(attrPath, attr.getValue(), viewAttr.getValue());
+                assertEquals(attrPath, attr.getSpecified(), viewAttr.getSpecified());
+                assertEquals(attrPath, attr.isId(), viewAttr.isId());
+                compareTypes(attrPath, attr.getSchemaTypeInfo(), viewAttr.getSchemaTypeInfo());
+            }
+        }
+        Node child = node.getFirstChild();
+        Node viewChild = view.getFirstChild();
+        while (child != null && viewChild != null) {
+            compare(child, viewChild);
+            child = child.getNextSibling();
+            viewChild = viewChild.getNextSibling();
+        }
+        assertNull(path, child);
+        assertNull(path, viewChild);
+    }
+    
+    private static void compareTypes(String path, TypeInfo type, TypeInfo viewType) {
+        assertEquals(path, type.getTypeName(), viewType.getTypeName());
+        assertEquals(path, type.getTypeNamespace(), viewType.getTypeNamespace());
+        String[][] ancestors = {
+            { "http://www.w3.org/2001/XMLSchema", "string" },
+            { "http://www.w3.org/2001/XMLSchema", "anyType" },
+            { "http://www.w3.org/2001/XMLSchema", "decimal" },
+        };
+        for (int i = 0; i < ancestors.length; i++) {
+            assertEquals(path, 
+                    type.isDerivedFrom(ancestors[i][0], ancestors[i][1], TypeInfo.DERIVATION_RESTRICTION),
+                    viewType.isDerivedFrom(ancestors[i][0], ancestors[i][1], TypeInfo.DERIVATION_RESTRICTION));
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dom.features;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.dom.SharedTextImpl;
+import org.apache.xerces.parsers.DOMParser;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.Text;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests that the documents whose text nodes share a store of their data
+ * are the same as those whose text nodes have their own strings, when
+ * they are parsed, when the data is read, and when the text nodes are
+ * normalized.
+ * 
+ * @version $Id$
+ */
+public class SharedTextTest extends TestCase {
+    
+    private static final String DEFER_NODE_EXPANSION =
+        "http://apache.org/xml/features/dom/defer-node-expansion";
+    
+    private static final String SHARED_TEXT =
+        "http://apache.org/xml/features/dom/shared-text";
+    
+    /** Largest number of bytes of a slice of the store. */
+    private static final int MAX_SLICE = 1 << 12;
+    
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(SharedTextTest.class);
+    }
+    
+    public void testData() throws Exception {
+        // one and two bytes per character, in one character event each
+        String xml = "<root><a>latin \u00e9\u00ff</a><b>wide \u4e2d\u0430</b><c>\ufffd</c></root>";
+        Document shared = parse(xml, true);
+        assertEquals(dump(parse(xml, false)), dump(shared));
+        NodeList texts = shared.getElementsByTagName("*");
+        for (int i = 1; i < texts.getLength(); i++) {
+            assertTrue(isStored((Text) texts.item(i).getFirstChild()));
+        }
+        assertFalse(parse(xml, false).getDocumentElement()
+                .getFirstChild().getFirstChild() instanceof SharedTextImpl);
+    }
+    
+    public void testChunkedText() throws Exception {
+        // the references make several character events for each text,
+        // which grow the last slice in place unless a wide character
+        // follows narrow ones
+        String xml = "<root>" +
+            "<a>abc&amp;def&#xe9;ghi</a>" +
+            "<b>\u4e2d&amp;xyz&#x4e2d;</b>" +
+            "<c>abc&#x4e2d;def</c>" +
+            "<d>&lt;&gt;</d>" +
+            "<e>after</e></root>";
+        Document shared = parse(xml, true);
+        assertEquals(dump(parse(xml, false)), dump(shared));
+        assertEquals("abc&def\u00e9ghi", text(shared, "a"));
+        assertEquals("\u4e2d&xyz\u4e2d", text(shared, "b"));
+        assertEquals("abc\u4e2ddef", text(shared, "c"));
+        assertEquals("<>", text(shared, "d"));
+        assertEquals("after", text(shared, "e"));
+        NodeList texts = shared.getElementsByTagName("*");
+        for (int i = 1; i < texts.getLength(); i++) {
+            assertTrue(isStored((Text) texts.item(i).getFirstChild()));
+        }
+    }
+    
+    public void testManySlices() throws Exception {
+        // enough slices to fill several chunks of the store, so that some
+        // slices cannot grow across the end of their chunk
+        StringBuffer buffer = new StringBuffer("<root>");
+        for (int i = 0; i < 6000; i++) {
+            buffer.append("<item>").append(createText(i, i % 37, i % 5 == 0));
+            for (int j = 0; j < i % 4; j++) {
+                buffer.append(j == 2 && i % 7 == 0 ? "&#x4e2d;" : "&amp;")
+                    .append(createText(i + j, i % 11, false));
+            }
+            buffer.append("</item>");
+        }
+        buffer.append("</root>");
+        String xml = buffer.toString();
+        assertEquals(dump(parse(xml, false)), dump(parse(xml, true)));
+    }
+    
+    public void testLargeText() throws Exception {
+        // texts of either side of the largest slice, in one piece or grown
+        // past it, which keep their own strings
+        int[] lengths = { MAX_SLICE, MAX_SLICE + 1, MAX_SLICE / 2, MAX_SLICE / 2 + 1 };
+        StringBuffer buffer = new StringBuffer("<root>");
+        for (int i = 0; i < lengths.length; i++) {
+            buffer.append("<item>").append(createText(i, lengths[i], i >= 2)).append("</item>");
+        }
+        buffer.append("<item>").append(createText(0, MAX_SLICE - 10, false))
+            .append("&amp;").append(createText(1, 20, false)).append("</item>");
+        buffer.append("<item>short</item></root>");
+        String xml = buffer.toString();
+        Document shared = parse(xml, true);
+        assertEquals(dump(parse(xml, false)), dump(shared));
+        NodeList items = shared.getElementsByTagName("item");
+        assertTrue(isStored((Text) items.item(0).getFirstChild()));
+        assertFalse(isStored((Text) items.item(1).getFirstChild()));
+        assertTrue(isStored((Text) items.item(2).getFirstChild()));
+        assertFalse(isStored((Text) items.item(3).getFirstChild()));
+        assertFalse(isStored((Text) items.item(4).getFirstChild()));
+        assertEquals(MAX_SLICE + 11, ((Text) items.item(4).getFirstChild()).getLength());
+        assertTrue(isStored((Text) items.item(5).getFirstChild()));
+        assertEquals("short", items.item(5).getFirstChild().getNodeValue());
+    }
+    
+    public void testNormalize() throws Exception {
+        // adjacent text nodes are left by removing the elements between
+        // them, and merged by normalize
+        StringBuffer buffer = new StringBuffer("<root>");
+        for (int i = 0; i < 50; i++) {
+            buffer.append("<item>");
+            for (int j = 0; j <= i % 5; j++) {
+                buffer.append(createText(i + j, (i * 7 + j * 13) % 60 + 1, (i + j) % 3 == 0))
+                    .append("<x/>");
+            }
+            buffer.append(i % 9 == 0 ? createText(i, MAX_SLICE - 20, false) : "end")
+                .append("</item>");
+        }
+        buffer.append("</root>");
+        String xml = buffer.toString();
+        
+        Document plain = parse(xml, false);
+        Document shared = parse(xml, true);
+        removeAll(plain, "x");
+        removeAll(shared, "x");
+        assertEquals(dump(plain), dump(shared));
+        
+        plain.normalize();
+        shared.normalize();
+        assertEquals(dump(plain), dump(shared));
+        NodeList items = shared.getElementsByTagName("item");
+        for (int i = 0; i < items.getLength(); i++) {
+            assertEquals(1, items.item(i).getChildNodes().getLength());
+            Text merged = (Text) items.item(i).getFirstChild();
+            String data = merged.getData();
+            int size = data.length();
+            for (int j = 0; j < data.length(); j++) {
+                if (data.charAt(j) > 0xFF) {
+                    size = data.length() * 2;
+                }
+            }
+            assertEquals(size <= MAX_SLICE, isStored(merged));
+        }
+        
+        // the merged data can be changed and moved to another document
+        Text text = (Text) items.item(1).getFirstChild();
+        String data = text.getData();
+        text.appendData("\u4e2d");
+        assertEquals(data + "\u4e2d", text.getData());
+        Document other = parse("<other/>", false);
+        Node imported = other.importNode(items.item(2), true);
+        assertEquals(items.item(2).getFirstChild().getNodeValue(),
+                imported.getFirstChild().getNodeValue());
+    }
+    
+    public void testNormalizeDocument() throws Exception {
+        String xml = "<root>abc<x/>\u4e2d<x/>&amp;def<x/></root>";
+        Document plain = parse(xml, false);
+        Document shared = parse(xml, true);
+        removeAll(plain, "x");
+        removeAll(shared, "x");
+        plain.normalizeDocument();
+        shared.normalizeDocument();
+        assertEquals(dump(plain), dump(shared));
+        assertEquals("abc\u4e2d&def", shared.getDocumentElement().getFirstChild().getNodeValue());
+    }
+    
+    private static Document parse(String xml, boolean shared) throws Exception {
+        DOMParser parser = new DOMParser();
+        parser.setFeature(DEFER_NODE_EXPANSION, false);
+        parser.setFeature(SHARED_TEXT, shared);
+        parser.parse(new InputSource(new StringReader(xml)));
+        return parser.getDocument();
+    }
+    
+    /** Returns the data of the first element of the given name. */
+    private static String text(Document document, String name) {
+        Node element = document.getElementsByTagName(name).item(0);
+        assertEquals(1, element.getChildNodes().getLength());
+        return ((Text) element.getFirstChild()).getData();
+    }
+    
+    /**
+     * Returns true if the data of the given text node is in the store, in
+     * which case a new string is returned each time it is read.
+     */
+    private static boolean isStored(Text text) {
+        return text instanceof SharedTextImpl && text.getData() != text.getData();
+    }
+    
+    private static void removeAll(Document document, String name) {
+        NodeList elements = document.getElementsByTagName(name);
+        while (elements.getLength() > 0) {
+            Node element = elements.item(0);
+            element.getParentNode().removeChild(element);
+        }
+    }
+    
+    /**
+     * Creates a text of the given length, of characters of one or two
+     * bytes, varied by its key.
+     */
+    private static String createText(int key, int length, boolean wide) {
+        StringBuffer buffer = new StringBuffer(length);
+        for (int i = 0; i < length; i++) {
+            int c = (i + key) % 26;
+            buffer.append(wide && i % 3 == 1 ? (char) ('\u0430' + c) : (char) ('a' + c));
+        }
+        return buffer.toString();
+    }
+    
+    private static String dump(Document document) {
+        StringBuffer buffer = new StringBuffer();
+        dump(document.getDocumentElement(), buffer);
+        return buffer.toString();
+    }
+    
+    private static void dump(Node node, StringBuffer buffer) {
+        buffer.append(node.getNodeType()).append(' ').append(node.getNodeName());
+        if (node instanceof Text) {
+            Text text = (Text) node;
+            buffer.append(' ').append(text.getLength()).append(" \"").append(text.getData())
+                .append("\" \"").append(text.getNodeValue()).append('"');
+        }
+        buffer.append('\n');
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            dump(child, buffer);
+        }
+    }
+}
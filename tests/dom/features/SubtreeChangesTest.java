@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dom.features;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.dom.DeepNodeListImpl;
+import org.apache.xerces.dom.DocumentImpl;
+import org.apache.xerces.dom.NodeImpl;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Tests that the deep node lists rooted at an element are kept across the
+ * changes made outside of the subtree of the element, and are refreshed
+ * by the changes made in it, including once it was moved to another
+ * document.
+ * 
+ * @version $Id$
+ */
+public class SubtreeChangesTest extends TestCase {
+    
+    /** Depth of the subtrees. */
+    private static final int DEPTH = 20;
+    
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(SubtreeChangesTest.class);
+    }
+    
+    public void testChangesOutside() throws Exception {
+        Document document = new DocumentImpl();
+        Element root = document.createElement("root");
+        document.appendChild(root);
+        Element a = createSubtree(document, root, "a");
+        Element b = createSubtree(document, root, "b");
+        Element deepB = getDeepest(b);
+        
+        CachedList list = new CachedList(a, "item");
+        assertEquals(DEPTH, list.getLength());
+        ArrayList<Node> nodes = list.getNodes();
+        
+        // in the sibling subtree, at any depth
+        b.appendChild(document.createElement("item"));
+        deepB.appendChild(document.createElement("item"));
+        assertSame(nodes, list.getCachedNodes());
+        deepB.setAttribute("n", "1");
+        b.removeChild(b.getLastChild());
+        assertSame(nodes, list.getCachedNodes());
+        deepB.getParentNode().insertBefore(document.createElement("item"), deepB);
+        deepB.appendChild(document.createTextNode("text"));
+        assertSame(nodes, list.getCachedNodes());
+        
+        // above the subtree
+        root.appendChild(document.createElement("item"));
+        root.setAttribute("n", "2");
+        assertSame(nodes, list.getCachedNodes());
+        assertEquals(DEPTH, list.getLength());
+        
+        // a list of the sibling subtree sees its changes
+        assertEquals(DEPTH + 2, new CachedList(b, "item").getLength());
+    }
+    
+    public void testChangesBelow() throws Exception {
+        Document document = new DocumentImpl();
+        Element root = document.createElement("root");
+        document.appendChild(root);
+        Element a = createSubtree(document, root, "a");
+        createSubtree(document, root, "b");
+        Element deepA = getDeepest(a);
+        
+        CachedList list = new CachedList(a, "item");
+        assertEquals(DEPTH, list.getLength());
+        ArrayList<Node> nodes = list.getNodes();
+        
+        deepA.appendChild(document.createElement("item"));
+        nodes = assertRefreshed(list, nodes, a);
+        assertEquals(DEPTH + 1, list.getLength());
+        
+        // several changes in a row, then each change alone
+        deepA.appendChild(document.createElement("item"));
+        deepA.removeChild(deepA.getFirstChild());
+        a.appendChild(document.createElement("item"));
+        nodes = assertRefreshed(list, nodes, a);
+        deepA.setAttribute("n", "1");
+        nodes = assertRefreshed(list, nodes, a);
+        a.removeChild(a.getLastChild());
+        nodes = assertRefreshed(list, nodes, a);
+        deepA.removeAttribute("n");
+        nodes = assertRefreshed(list, nodes, a);
+        ((Element) deepA.getParentNode()).setAttribute("n", "2");
+        nodes = assertRefreshed(list, nodes, a);
+        deepA.getParentNode().getAttributes().getNamedItem("n").setNodeValue("3");
+        nodes = assertRefreshed(list, nodes, a);
+        
+        // a change below followed by one outside
+        deepA.appendChild(document.createElement("item"));
+        root.appendChild(document.createElement("item"));
+        nodes = assertRefreshed(list, nodes, a);
+        assertEquals(DEPTH + 2, list.getLength());
+    }
+    
+    public void testAdoption() throws Exception {
+        // the stamps of both documents are moved on by reads, so that
+        // those of the subtree before and after the move may be equal
+        for (int reads = 0; reads < 4; reads++) {
+            for (int otherReads = 0; otherReads < 4; otherReads++) {
+                Document document = new DocumentImpl();
+                Element root = document.createElement("root");
+                document.appendChild(root);
+                Element a = createSubtree(document, root, "a");
+                CachedList list = new CachedList(a, "item");
+                for (int i = 0; i < reads; i++) {
+                    list.getLength();
+                    a.appendChild(document.createElement("x"));
+                }
+                assertEquals(DEPTH, list.getLength());
+                
+                Document other = new DocumentImpl();
+                Element otherRoot = other.createElement("other");
+                other.appendChild(otherRoot);
+                CachedList otherList = new CachedList(otherRoot, "item");
+                for (int i = 0; i < otherReads; i++) {
+                    otherList.getLength();
+                    otherRoot.appendChild(other.createElement("y"));
+                }
+                otherList.getLength();
+                
+                // moved and changed before the list is read again
+                other.adoptNode(a);
+                otherRoot.appendChild(a);
+                Element deepA = getDeepest(a);
+                deepA.appendChild(other.createElement("item"));
+                assertEquals(DEPTH + 1, list.getLength());
+                assertEquals(DEPTH + 1, otherList.getLength());
+                ArrayList<Node> nodes = list.getNodes();
+                
+                deepA.appendChild(other.createElement("item"));
+                nodes = assertRefreshed(list, nodes, a);
+                otherRoot.appendChild(other.createElement("item"));
+                assertSame(nodes, list.getCachedNodes());
+                
+                // and moved back
+                document.adoptNode(a);
+                deepA.removeChild(deepA.getLastChild());
+                root.appendChild(a);
+                nodes = assertRefreshed(list, nodes, a);
+                assertEquals(DEPTH + 1, list.getLength());
+                
+                // changed in the other document between two reads in this one
+                other.adoptNode(a);
+                deepA.appendChild(other.createElement("item"));
+                document.adoptNode(a);
+                root.appendChild(a);
+                nodes = assertRefreshed(list, nodes, a);
+                assertEquals(DEPTH + 2, list.getLength());
+            }
+        }
+    }
+    
+    public void testAdoptionBack() throws Exception {
+        // changed in another document between two reads in this one, the
+        // first read being the first of the document
+        Document document = new DocumentImpl();
+        Element root = document.createElement("root");
+        document.appendChild(root);
+        Element a = createSubtree(document, root, "a");
+        CachedList list = new CachedList(a, "item");
+        ArrayList<Node> nodes = list.getNodes();
+        
+        Document other = new DocumentImpl();
+        other.adoptNode(a);
+        getDeepest(a).appendChild(other.createElement("item"));
+        document.adoptNode(a);
+        root.appendChild(a);
+        assertRefreshed(list, nodes, a);
+        assertEquals(DEPTH + 1, list.getLength());
+    }
+    
+    /**
+     * Appends to the given element an element of the given name holding
+     * a chain of items.
+     */
+    private static Element createSubtree(Document document, Element parent, String name) {
+        Element element = document.createElement(name);
+        parent.appendChild(element);
+        Element current = element;
+        for (int i = 0; i < DEPTH; i++) {
+            Element item = document.createElement("item");
+            current.appendChild(document.createElement("sibling"));
+            current.appendChild(item);
+            current = item;
+        }
+        return element;
+    }
+    
+    private static Element getDeepest(Element element) {
+        while (element.getLastChild() != null) {
+            element = (Element) element.getLastChild();
+        }
+        return element;
+    }
+    
+    /**
+     * Asserts that the list was refreshed since it held the given nodes,
+     * and that it holds the items now in the given element. Returns the
+     * nodes it holds.
+     */
+    private static ArrayList<Node> assertRefreshed(CachedList list,
+            ArrayList<Node> nodes, Element element) {
+        ArrayList<Node> refreshed = list.getCachedNodes();
+        assertNotSame(nodes, refreshed);
+        NodeList items = new CachedList(element, "item");
+        assertEquals(items.getLength(), list.getLength());
+        for (int i = 0; i < items.getLength(); i++) {
+            assertSame(items.item(i), list.item(i));
+        }
+        return list.getNodes();
+    }
+    
+    /**
+     * A deep node list whose cache of nodes can be seen. As a subclass,
+     * it is not served by the element index.
+     */
+    private static final class CachedList extends DeepNodeListImpl {
+        
+        CachedList(Element root, String tagName) {
+            super((NodeImpl) root, tagName);
+        }
+        
+        /** Returns the nodes cached after the list is read. */
+        ArrayList<Node> getCachedNodes() {
+            item(0);
+            return nodes;
+        }
+        
+        /** Returns the nodes cached after the whole list is read. */
+        ArrayList<Node> getNodes() {
+            getLength();
+            return nodes;
+        }
+    }
+}
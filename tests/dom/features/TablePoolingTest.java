@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.features;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.parsers.DOMParser;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests that the deferred documents built by a parser reusing the tables
+ * of the documents released before are the same as those built without
+ * the pool, while several of them are in use at once.
+ * 
+ * @version $Id$
+ */
+public class TablePoolingTest extends TestCase {
+    
+    private static final String DEFERRED_TABLE_POOLING =
+        "http://apache.org/xml/features/dom/deferred-table-pooling";
+    
+    private static final String DTD =
+        "<!DOCTYPE root [" +
+        "<!ELEMENT root ANY><!ELEMENT item ANY><!ELEMENT sub ANY>" +
+        "<!ATTLIST item id ID #REQUIRED kind (x|y) 'x'>]>";
+    
+    /** Number of documents kept in use at once. */
+    private static final int ALIVE = 4;
+    
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(TablePoolingTest.class);
+    }
+    
+    public void testReuse() throws Exception {
+        DOMParser pooled = createParser(true);
+        DOMParser plain = createParser(false);
+        List<Document> documents = new ArrayList<Document>();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 24; i++) {
+            // small documents and documents of several chunks, different
+            // enough that data left from another document would show
+            String xml = createDocument(i, (i % 3) * 1500 + 5);
+            documents.add(parse(pooled, xml));
+            expected.add(dump(parse(plain, xml)));
+            
+            // expand part of the oldest documents while the new ones are built
+            for (int j = 0; j < documents.size(); j++) {
+                Element root = documents.get(j).getDocumentElement();
+                Element item = documents.get(j).getElementById("i" + (i - j));
+                if (item != null) {
+                    assertEquals(root, item.getParentNode());
+                }
+            }
+            
+            if (documents.size() == ALIVE) {
+                // release one that is not the oldest, to mix the chunks
+                int k = i % ALIVE;
+                assertEquals(expected.get(k), dump(documents.get(k)));
+                pooled.releaseDocument(documents.remove(k));
+                expected.remove(k);
+            }
+        }
+        for (int j = 0; j < documents.size(); j++) {
+            assertEquals(expected.get(j), dump(documents.get(j)));
+        }
+    }
+    
+    public void testReleasedDocument() throws Exception {
+        DOMParser parser = createParser(true);
+        String xml = createDocument(0, 3000);
+        String expected = dump(parse(createParser(false), xml));
+        
+        Document document = parse(parser, xml);
+        Node clone = document.cloneNode(true);
+        Element root = document.getDocumentElement();
+        Element first = (Element) root.getFirstChild();
+        first.getAttribute("id");
+        parser.releaseDocument(document);
+        
+        // the next document takes the released tables
+        Document next = parse(parser, createDocument(1, 3000));
+        assertEquals(expected, dump((Document) clone));
+        
+        // what was already created can still be read
+        assertEquals("i0", first.getAttribute("id"));
+        assertEquals("item", first.getNodeName());
+        
+        // what was not raises an error rather than reading the next document
+        try {
+            ((Element) root.getLastChild()).getAttribute("id");
+            fail("released document used");
+        }
+        catch (DOMException e) {
+            assertEquals(DOMException.INVALID_STATE_ERR, e.code);
+        }
+        try {
+            first.getFirstChild();
+            fail("released document used");
+        }
+        catch (DOMException e) {
+            assertEquals(DOMException.INVALID_STATE_ERR, e.code);
+        }
+        assertEquals(dump(parse(createParser(false), createDocument(1, 3000))),
+                dump(next));
+    }
+    
+    private static DOMParser createParser(boolean pooling) throws Exception {
+        DOMParser parser = new DOMParser();
+        parser.setFeature(DEFERRED_TABLE_POOLING, pooling);
+        return parser;
+    }
+    
+    private static Document parse(DOMParser parser, String xml) throws Exception {
+        parser.parse(new InputSource(new StringReader(xml)));
+        return parser.getDocument();
+    }
+    
+    /** Creates a document with the given number of items, varied by its key. */
+    private static String createDocument(int key, int items) {
+        StringBuffer buffer = new StringBuffer(DTD);
+        buffer.append("<root n='").append(key).append("'>");
+        for (int i = 0; i < items; i++) {
+            buffer.append("<item id='i").append(i).append('\'');
+            if ((i + key) % 3 == 0) {
+                buffer.append(" kind='y'");
+            }
+            buffer.append(">text ").append(key).append('.').append(i);
+            switch ((i + key) % 4) {
+                case 0: buffer.append("<sub a='").append(key).append("'>a<sub/></sub>"); break;
+                case 1: buffer.append("<![CDATA[cdata]]>"); break;
+                case 2: buffer.append("<!--comment ").append(key).append("-->"); break;
+                default: buffer.append("<?pi ").append(i).append("?>"); break;
+            }
+            buffer.append("</item>");
+        }
+        buffer.append("</root>");
+        return buffer.toString();
+    }
+    
+    private static String dump(Document document) {
+        StringBuffer buffer = new StringBuffer();
+        dump(document.getDocumentElement(), buffer);
+        for (int i = 0; ; i++) {
+            Element item = document.getElementById("i" + i);
+            if (item == null) {
+                break;
+            }
+            buffer.append(item.getAttribute("id")).append(' ');
+        }
+        return buffer.toString();
+    }
+    
+    private static void dump(Node node, StringBuffer buffer) {
+        buffer.append(node.getNodeType()).append(' ').append(node.getNodeName());
+        if (node.getNodeValue() != null) {
+            buffer.append(" \"").append(node.getNodeValue()).append('"');
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Attr attr = (Attr) attributes.item(i);
+                buffer.append(' ').append(attr.getName()).append('=').append(attr.getValue())
+                    .append(attr.getSpecified() ? "" : " default")
+                    .append(attr.isId() ? " id" : "");
+            }
+        }
+        buffer.append('\n');
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            dump(child, buffer);
+        }
+    }
+}
@@ -48,6 +48,14 @@ public class AllTests {
         suite.addTestSuite(UseGrammarPoolOnly_False_Test.class);
         suite.addTestSuite(FixedAttrTest.class);
         suite.addTestSuite(FeaturePropagationTest.class);
+        suite.addTestSuite(GrammarSerializationTest.class);
+        suite.addTestSuite(ParallelSchemaParsingTest.class);
+        suite.addTestSuite(CompactGrammarsTest.class);
+        suite.addTestSuite(IdentityConstraintValuesTest.class);
+        suite.addTestSuite(IdentityConstraintPathsTest.class);
+        suite.addTestSuite(SubstitutionGroupRecheckTest.class);
+        suite.addTestSuite(UniqueParticleAttributionTest.class);
+        suite.addTestSuite(StreamingValidationTest.class);
         return suite;
     }
 }
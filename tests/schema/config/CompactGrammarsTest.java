@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.config;
+
+import java.io.FileNotFoundException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.XSGrammarFootprint;
+import org.apache.xerces.impl.xs.util.XSGrammarPool;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Tests that compacting the grammars of a pool reduces their footprint
+ * without changing validation, and that the metadata is kept when the
+ * namespace may grow or duplicates are tolerated.
+ *
+ * @version $Id$
+ */
+public class CompactGrammarsTest extends TestCase {
+
+    private static final String COMPACT_GRAMMARS = Constants.XERCES_FEATURE_PREFIX
+        + Constants.SCHEMA_COMPACT_GRAMMARS_FEATURE;
+
+    private static final String DISCARD_METADATA = Constants.XERCES_FEATURE_PREFIX
+        + Constants.SCHEMA_DISCARD_METADATA_FEATURE;
+
+    private static final String NAMESPACE_GROWTH = Constants.XERCES_FEATURE_PREFIX
+        + Constants.NAMESPACE_GROWTH_FEATURE;
+
+    private static final String TOLERATE_DUPLICATES = Constants.XERCES_FEATURE_PREFIX
+        + Constants.TOLERATE_DUPLICATES_FEATURE;
+
+    private static final String GRAMMAR_POOL = Constants.XERCES_PROPERTY_PREFIX
+        + Constants.XMLGRAMMAR_POOL_PROPERTY;
+
+    private static final String VALIDATION = Constants.SAX_FEATURE_PREFIX
+        + Constants.VALIDATION_FEATURE;
+
+    private static final String SCHEMA_VALIDATION = Constants.XERCES_FEATURE_PREFIX
+        + Constants.SCHEMA_VALIDATION_FEATURE;
+
+    private static final String USE_GRAMMAR_POOL_ONLY = Constants.XERCES_FEATURE_PREFIX
+        + Constants.USE_GRAMMAR_POOL_ONLY_FEATURE;
+
+    private static final String NAMESPACE = "urn:compact";
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(CompactGrammarsTest.class);
+    }
+
+    public CompactGrammarsTest(String name) {
+        super(name);
+    }
+
+    public void testFootprint() throws Exception {
+        List<String> errors = new ArrayList<String>();
+        XMLSchemaLoader loader = createLoader(false, false, errors);
+        XSGrammarPool pool = load(loader, "compact.xsd");
+        XSGrammarFootprint full = getGrammar(pool).getFootprint();
+        assertEquals(1, getGrammar(pool).getAnnotations().getLength());
+        List<String> expected = validate(pool);
+        // the lower case code, reported twice, and the undeclared element
+        assertEquals(expected.toString(), 3, expected.size());
+
+        loader = createLoader(true, false, errors);
+        pool = load(loader, "compact.xsd");
+        XSGrammarFootprint compact = getGrammar(pool).getFootprint();
+        assertTrue(compact.getTotalSize() <= full.getTotalSize());
+        assertEquals(full.getComponentCount(), compact.getComponentCount());
+        assertEquals(1, getGrammar(pool).getAnnotations().getLength());
+        assertEquals(expected, validate(pool));
+
+        loader = createLoader(true, true, errors);
+        pool = load(loader, "compact.xsd");
+        XSGrammarFootprint discarded = getGrammar(pool).getFootprint();
+        assertTrue(discarded.getTotalSize() < compact.getTotalSize());
+        assertTrue(discarded.getSize(XSGrammarFootprint.CATEGORY_LOCATIONS)
+                < compact.getSize(XSGrammarFootprint.CATEGORY_LOCATIONS));
+        assertEquals(full.getComponentCount(), discarded.getComponentCount());
+        assertEquals(0, getGrammar(pool).getAnnotations().getLength());
+        assertEquals(expected, validate(pool));
+        assertEquals(errors.toString(), 0, errors.size());
+    }
+
+    public void testNamespaceGrowth() throws Exception {
+        List<String> errors = new ArrayList<String>();
+        XMLSchemaLoader loader = createLoader(false, false, errors);
+        loader.setFeature(NAMESPACE_GROWTH, true);
+        XSGrammarPool pool = load(loader, "compact.xsd");
+        load(loader, pool, "compactGrowth.xsd");
+        List<String> expected = validate(pool);
+        // only the lower case code
+        assertEquals(expected.toString(), 2, expected.size());
+
+        loader = createLoader(true, true, errors);
+        loader.setFeature(NAMESPACE_GROWTH, true);
+        pool = load(loader, "compact.xsd");
+        // the included document is known and not read again
+        load(loader, pool, "compactGrowth.xsd");
+        assertEquals(errors.toString(), 0, errors.size());
+        assertEquals(1, getGrammar(pool).getAnnotations().getLength());
+        assertEquals(expected, validate(pool));
+    }
+
+    public void testTolerateDuplicates() throws Exception {
+        List<String> errors = new ArrayList<String>();
+        XMLSchemaLoader loader = createLoader(true, true, errors);
+        loader.setFeature(TOLERATE_DUPLICATES, true);
+        XSGrammarPool pool = load(loader, "compact.xsd");
+        assertEquals(errors.toString(), 0, errors.size());
+        assertEquals(1, getGrammar(pool).getAnnotations().getLength());
+        assertTrue(getGrammar(pool).getFootprint()
+                .getSize(XSGrammarFootprint.CATEGORY_LOCATIONS) > 0);
+    }
+
+    private URL getResource(String file) throws FileNotFoundException {
+        String path = getClass().getPackage().getName().replace('.', '/') + "/" + file;
+        URL url = ClassLoader.getSystemResource(path);
+        if (url == null) {
+            throw new FileNotFoundException("Couldn't find file for test: " + path);
+        }
+        return url;
+    }
+
+    private XMLSchemaLoader createLoader(boolean compact, boolean discardMetadata,
+            final List<String> errors) {
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setFeature(COMPACT_GRAMMARS, compact);
+        loader.setFeature(DISCARD_METADATA, discardMetadata);
+        loader.setErrorHandler(new XMLErrorHandler() {
+            public void warning(String domain, String key, XMLParseException e) {
+                record(key, e);
+            }
+            public void error(String domain, String key, XMLParseException e) {
+                record(key, e);
+            }
+            public void fatalError(String domain, String key, XMLParseException e) {
+                record(key, e);
+            }
+            private void record(String key, XMLParseException e) throws XNIException {
+                errors.add(key + " " + e.getExpandedSystemId() + " " + e.getMessage());
+            }
+        });
+        return loader;
+    }
+
+    /**
+     * Loads the schema into a new pool.
+     */
+    private XSGrammarPool load(XMLSchemaLoader loader, String file) throws Exception {
+        XSGrammarPool pool = new XSGrammarPool();
+        load(loader, pool, file);
+        return pool;
+    }
+
+    private void load(XMLSchemaLoader loader, XSGrammarPool pool, String file) throws Exception {
+        loader.setProperty(GRAMMAR_POOL, pool);
+        loader.loadGrammar(new XMLInputSource(null, getResource(file).toExternalForm(), null));
+    }
+
+    private static SchemaGrammar getGrammar(XSGrammarPool pool) {
+        Grammar[] grammars = pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA);
+        for (int i = 0; i < grammars.length; i++) {
+            SchemaGrammar grammar = (SchemaGrammar) grammars[i];
+            if (NAMESPACE.equals(grammar.getTargetNamespace())) {
+                return grammar;
+            }
+        }
+        fail("no grammar for " + NAMESPACE);
+        return null;
+    }
+
+    private List<String> validate(XMLGrammarPool pool) throws Exception {
+        final List<String> errors = new ArrayList<String>();
+        SAXParser parser = new SAXParser();
+        parser.setProperty(GRAMMAR_POOL, pool);
+        parser.setFeature(VALIDATION, true);
+        parser.setFeature(SCHEMA_VALIDATION, true);
+        parser.setFeature(USE_GRAMMAR_POOL_ONLY, true);
+        parser.setErrorHandler(new ErrorHandler() {
+            public void warning(SAXParseException e) {
+                record(e);
+            }
+            public void error(SAXParseException e) {
+                record(e);
+            }
+            public void fatalError(SAXParseException e) {
+                record(e);
+            }
+            private void record(SAXParseException e) {
+                errors.add(e.getLineNumber() + ":" + e.getColumnNumber() + " " + e.getMessage());
+            }
+        });
+        parser.parse(getResource("compact.xml").toExternalForm());
+        return errors;
+    }
+}
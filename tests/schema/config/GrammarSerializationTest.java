@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.Version;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.XSGrammarSerializer;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.grammars.XSGrammar;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xs.StringList;
+import org.apache.xerces.xs.XSConstants;
+import org.apache.xerces.xs.XSIDCDefinition;
+import org.apache.xerces.xs.XSModel;
+import org.apache.xerces.xs.XSNamedMap;
+import org.apache.xerces.xs.XSObject;
+import org.apache.xerces.xs.XSSimpleTypeDefinition;
+import org.apache.xerces.xs.XSTypeDefinition;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Tests that schema grammars saved and loaded by
+ * <code>XSGrammarSerializer</code> hold the same components and validate
+ * documents as the grammars they were saved from.
+ *
+ * @version $Id$
+ */
+public class GrammarSerializationTest extends TestCase {
+
+    private static final String NAMESPACE = "urn:serialization";
+
+    private static final String GRAMMAR_POOL = Constants.XERCES_PROPERTY_PREFIX
+        + Constants.XMLGRAMMAR_POOL_PROPERTY;
+
+    private static final String VALIDATION = Constants.SAX_FEATURE_PREFIX
+        + Constants.VALIDATION_FEATURE;
+
+    private static final String SCHEMA_VALIDATION = Constants.XERCES_FEATURE_PREFIX
+        + Constants.SCHEMA_VALIDATION_FEATURE;
+
+    private static final String USE_GRAMMAR_POOL_ONLY = Constants.XERCES_FEATURE_PREFIX
+        + Constants.USE_GRAMMAR_POOL_ONLY_FEATURE;
+
+    private static final short[] COMPONENT_TYPES = {
+        XSConstants.ELEMENT_DECLARATION,
+        XSConstants.ATTRIBUTE_DECLARATION,
+        XSConstants.TYPE_DEFINITION,
+        XSConstants.IDENTITY_CONSTRAINT
+    };
+
+    /** Offset of the Xerces version in the header. */
+    private static final int VERSION_OFFSET = 6;
+
+    private XMLGrammarPool fPool;
+    private byte[] fData;
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(GrammarSerializationTest.class);
+    }
+
+    public GrammarSerializationTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        fPool = new XMLGrammarPoolImpl();
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(GRAMMAR_POOL, fPool);
+        loader.loadGrammar(new XMLInputSource(null,
+                getResource("serialization.xsd").toExternalForm(), null));
+        fData = save(fPool);
+    }
+
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        fPool = null;
+        fData = null;
+    }
+
+    public void testComponents() throws Exception {
+        XSModel expected = getModel(fPool);
+        XSModel actual = getModel(load(fData));
+        for (int i = 0; i < COMPONENT_TYPES.length; i++) {
+            XSNamedMap expectedMap = expected.getComponentsByNamespace(COMPONENT_TYPES[i], NAMESPACE);
+            XSNamedMap actualMap = actual.getComponentsByNamespace(COMPONENT_TYPES[i], NAMESPACE);
+            assertTrue(expectedMap.getLength() > 0);
+            assertEquals(expectedMap.getLength(), actualMap.getLength());
+            for (int j = 0; j < expectedMap.getLength(); j++) {
+                XSObject component = expectedMap.item(j);
+                assertEquals(describe(component),
+                        describe(actualMap.itemByName(NAMESPACE, component.getName())));
+            }
+        }
+    }
+
+    public void testValidation() throws Exception {
+        List<String> expected = validate(fPool);
+        List<String> actual = validate(load(fData));
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, actual);
+    }
+
+    public void testSaveLoaded() throws Exception {
+        XMLGrammarPool pool = load(save(load(fData)));
+        assertEquals(validate(fPool), validate(pool));
+    }
+
+    public void testCorruptedData() throws Exception {
+        byte[] data = (byte[]) fData.clone();
+        data[data.length - 1] ^= 1;
+        try {
+            load(data);
+            fail("Corrupted grammar data was read.");
+        }
+        catch (StreamCorruptedException e) {
+            // expected
+        }
+    }
+
+    public void testVersionMismatch() throws Exception {
+        byte[] data = (byte[]) fData.clone();
+        // the first character of the version, after its length
+        data[VERSION_OFFSET + 2] ^= 1;
+        try {
+            load(data);
+            fail("Grammar data of another version was read.");
+        }
+        catch (StreamCorruptedException e) {
+            // expected
+        }
+    }
+
+    public void testTruncatedData() throws Exception {
+        byte[] data = new byte[fData.length - 16];
+        System.arraycopy(fData, 0, data, 0, data.length);
+        try {
+            load(data);
+            fail("Truncated grammar data was read.");
+        }
+        catch (EOFException e) {
+            // expected
+        }
+    }
+
+    public void testDataLength() throws Exception {
+        byte[] data = (byte[]) fData.clone();
+        // the length follows the version; the data is read as it comes
+        // rather than in a buffer of the length claimed
+        int offset = VERSION_OFFSET + 2 + Version.getVersion().length();
+        data[offset] = 0x7F;
+        data[offset + 1] = (byte) 0xFF;
+        data[offset + 2] = (byte) 0xFF;
+        data[offset + 3] = (byte) 0xFF;
+        try {
+            load(data);
+            fail("Grammar data with an invalid length was read.");
+        }
+        catch (EOFException e) {
+            // expected
+        }
+    }
+
+    public void testForeignClass() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream objectOut = new ObjectOutputStream(new DeflaterOutputStream(bytes));
+        objectOut.writeObject(new ArrayList<String>());
+        objectOut.close();
+        byte[] grammarData = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(grammarData, 0, grammarData.length);
+
+        // the header of the data written by this version
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(fData, 0, VERSION_OFFSET + 2 + Version.getVersion().length());
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(grammarData.length);
+        dataOut.writeLong(crc.getValue());
+        dataOut.write(grammarData);
+        dataOut.close();
+        try {
+            load(out.toByteArray());
+            fail("A class which is not used by grammars was read.");
+        }
+        catch (InvalidClassException e) {
+            assertEquals(ArrayList.class.getName(), e.classname);
+        }
+    }
+
+    private URL getResource(String file) throws FileNotFoundException {
+        String path = getClass().getPackage().getName().replace('.', '/') + "/" + file;
+        URL url = ClassLoader.getSystemResource(path);
+        if (url == null) {
+            throw new FileNotFoundException("Couldn't find file for test: " + path);
+        }
+        return url;
+    }
+
+    private static byte[] save(XMLGrammarPool pool) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XSGrammarSerializer.writeGrammars(pool, out);
+        return out.toByteArray();
+    }
+
+    private static XMLGrammarPool load(byte[] data) throws Exception {
+        XMLGrammarPool pool = new XMLGrammarPoolImpl();
+        XSGrammarSerializer.readGrammars(new ByteArrayInputStream(data), pool);
+        return pool;
+    }
+
+    private static XSModel getModel(XMLGrammarPool pool) {
+        XSGrammar grammar = (XSGrammar) pool.retrieveInitialGrammarSet(
+                XMLGrammarDescription.XML_SCHEMA)[0];
+        return grammar.toXSModel();
+    }
+
+    private static String describe(XSObject component) {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append(component.getName());
+        if (component instanceof XSTypeDefinition) {
+            XSTypeDefinition type = (XSTypeDefinition) component;
+            buffer.append(" base=").append(type.getBaseType().getName());
+            if (type instanceof XSSimpleTypeDefinition) {
+                XSSimpleTypeDefinition simpleType = (XSSimpleTypeDefinition) type;
+                buffer.append(" facets=").append(simpleType.getDefinedFacets());
+                append(buffer, " enumeration=", simpleType.getLexicalEnumeration());
+                append(buffer, " pattern=", simpleType.getLexicalPattern());
+            }
+        }
+        else if (component instanceof XSIDCDefinition) {
+            XSIDCDefinition idc = (XSIDCDefinition) component;
+            buffer.append(" selector=").append(idc.getSelectorStr());
+            append(buffer, " fields=", idc.getFieldStrs());
+        }
+        return buffer.toString();
+    }
+
+    private static void append(StringBuffer buffer, String label, StringList list) {
+        buffer.append(label);
+        for (int i = 0; i < list.getLength(); i++) {
+            buffer.append('[').append(list.item(i)).append(']');
+        }
+    }
+
+    private List<String> validate(XMLGrammarPool pool) throws Exception {
+        final List<String> errors = new ArrayList<String>();
+        SAXParser parser = new SAXParser();
+        parser.setProperty(GRAMMAR_POOL, pool);
+        parser.setFeature(VALIDATION, true);
+        parser.setFeature(SCHEMA_VALIDATION, true);
+        parser.setFeature(USE_GRAMMAR_POOL_ONLY, true);
+        parser.setErrorHandler(new ErrorHandler() {
+            public void warning(SAXParseException e) {
+                record(e);
+            }
+            public void error(SAXParseException e) {
+                record(e);
+            }
+            public void fatalError(SAXParseException e) {
+                record(e);
+            }
+            private void record(SAXParseException e) {
+                errors.add(e.getLineNumber() + ":" + e.getColumnNumber() + " " + e.getMessage());
+            }
+        });
+        parser.parse(getResource("serialization.xml").toExternalForm());
+        return errors;
+    }
+}
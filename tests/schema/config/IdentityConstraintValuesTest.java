@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.config;
+
+import java.io.FileNotFoundException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.util.XSGrammarPool;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Tests that the values of identity constraints are compared on their
+ * values and their types: equal values with different lexical forms,
+ * tuples with missing values, and the key tables of several scopes merged
+ * into the table of an ancestor.
+ *
+ * @version $Id$
+ */
+public class IdentityConstraintValuesTest extends TestCase {
+
+    public static final String DUPLICATE_UNIQUE = "cvc-identity-constraint.4.1";
+
+    public static final String INVALID_KEYREF = "cvc-identity-constraint.4.3";
+
+    private static final String GRAMMAR_POOL = Constants.XERCES_PROPERTY_PREFIX
+        + Constants.XMLGRAMMAR_POOL_PROPERTY;
+
+    private static final String VALIDATION = Constants.SAX_FEATURE_PREFIX
+        + Constants.VALIDATION_FEATURE;
+
+    private static final String SCHEMA_VALIDATION = Constants.XERCES_FEATURE_PREFIX
+        + Constants.SCHEMA_VALIDATION_FEATURE;
+
+    private static final String USE_GRAMMAR_POOL_ONLY = Constants.XERCES_FEATURE_PREFIX
+        + Constants.USE_GRAMMAR_POOL_ONLY_FEATURE;
+
+    private XSGrammarPool fPool;
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(IdentityConstraintValuesTest.class);
+    }
+
+    public IdentityConstraintValuesTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        fPool = new XSGrammarPool();
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(GRAMMAR_POOL, fPool);
+        loader.loadGrammar(new XMLInputSource(null,
+                getResource("idcValues.xsd").toExternalForm(), null));
+    }
+
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        fPool = null;
+    }
+
+    public void testEqualValues() throws Exception {
+        List<String> errors = validate("idcValues.xml");
+        // decimal, dateTime, three pairs of durations, and one of the
+        // tuples; durations which are not equal whatever their fields,
+        // values of different types, and the tuples with a missing value
+        // are not duplicates
+        assertEquals(errors.toString(), 6, count(errors, DUPLICATE_UNIQUE));
+        // the values are reported in their canonical form
+        assertTrue(contains(errors, "[1.0]"));
+        assertTrue(contains(errors, "[2000-01-01T12:00:00Z]"));
+        assertTrue(contains(errors, "[P0Y0M0DT24H0M0S]"));
+        assertTrue(contains(errors, "[P0Y12M0DT0H0M0S]"));
+        assertTrue(contains(errors, "[P0Y0M0DT0H0M90.5S]"));
+        assertTrue(contains(errors, "[1.0,2000-01-01Z]"));
+        assertEquals(errors.toString(), 6, errors.size());
+    }
+
+    public void testMergedScopes() throws Exception {
+        List<String> errors = validate("idcScopes.xml");
+        // only the string which is equal to an anyURI key: single-field
+        // keyrefs match the type as well as the value of a key
+        assertEquals(errors.toString(), 1, count(errors, INVALID_KEYREF));
+        assertTrue(errors.toString(), contains(errors, "'c'"));
+        assertEquals(errors.toString(), 1, errors.size());
+    }
+
+    private URL getResource(String file) throws FileNotFoundException {
+        String path = getClass().getPackage().getName().replace('.', '/') + "/" + file;
+        URL url = ClassLoader.getSystemResource(path);
+        if (url == null) {
+            throw new FileNotFoundException("Couldn't find file for test: " + path);
+        }
+        return url;
+    }
+
+    private List<String> validate(String file) throws Exception {
+        final List<String> errors = new ArrayList<String>();
+        SAXParser parser = new SAXParser();
+        parser.setProperty(GRAMMAR_POOL, fPool);
+        parser.setFeature(VALIDATION, true);
+        parser.setFeature(SCHEMA_VALIDATION, true);
+        parser.setFeature(USE_GRAMMAR_POOL_ONLY, true);
+        parser.setErrorHandler(new ErrorHandler() {
+            public void warning(SAXParseException e) {
+                errors.add(e.getMessage());
+            }
+            public void error(SAXParseException e) {
+                errors.add(e.getMessage());
+            }
+            public void fatalError(SAXParseException e) {
+                errors.add(e.getMessage());
+            }
+        });
+        parser.parse(getResource(file).toExternalForm());
+        return errors;
+    }
+
+    private static int count(List<String> errors, String key) {
+        int count = 0;
+        for (int i = 0; i < errors.size(); i++) {
+            if (errors.get(i).startsWith(key)) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private static boolean contains(List<String> errors, String text) {
+        for (int i = 0; i < errors.size(); i++) {
+            if (errors.get(i).indexOf(text) != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
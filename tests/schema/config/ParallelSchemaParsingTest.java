@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.config;
+
+import java.io.FileNotFoundException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.util.XSGrammarPool;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.apache.xerces.xs.StringList;
+import org.apache.xerces.xs.XSAttributeUse;
+import org.apache.xerces.xs.XSComplexTypeDefinition;
+import org.apache.xerces.xs.XSConstants;
+import org.apache.xerces.xs.XSElementDeclaration;
+import org.apache.xerces.xs.XSModel;
+import org.apache.xerces.xs.XSModelGroup;
+import org.apache.xerces.xs.XSNamedMap;
+import org.apache.xerces.xs.XSObject;
+import org.apache.xerces.xs.XSObjectList;
+import org.apache.xerces.xs.XSParticle;
+import org.apache.xerces.xs.XSSimpleTypeDefinition;
+import org.apache.xerces.xs.XSTerm;
+import org.apache.xerces.xs.XSTypeDefinition;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Tests that a schema importing, including and redefining other schema
+ * documents gives the same grammars, the same errors and the same
+ * validation of documents when the documents are parsed on worker
+ * threads as when they are parsed one after the other.
+ *
+ * @version $Id$
+ */
+public class ParallelSchemaParsingTest extends TestCase {
+
+    private static final String PARALLEL_SCHEMA_PARSING = Constants.XERCES_FEATURE_PREFIX
+        + Constants.PARALLEL_SCHEMA_PARSING_FEATURE;
+
+    private static final String GRAMMAR_POOL = Constants.XERCES_PROPERTY_PREFIX
+        + Constants.XMLGRAMMAR_POOL_PROPERTY;
+
+    private static final String VALIDATION = Constants.SAX_FEATURE_PREFIX
+        + Constants.VALIDATION_FEATURE;
+
+    private static final String SCHEMA_VALIDATION = Constants.XERCES_FEATURE_PREFIX
+        + Constants.SCHEMA_VALIDATION_FEATURE;
+
+    private static final String USE_GRAMMAR_POOL_ONLY = Constants.XERCES_FEATURE_PREFIX
+        + Constants.USE_GRAMMAR_POOL_ONLY_FEATURE;
+
+    private static final short[] COMPONENT_TYPES = {
+        XSConstants.ELEMENT_DECLARATION,
+        XSConstants.ATTRIBUTE_DECLARATION,
+        XSConstants.TYPE_DEFINITION
+    };
+
+    /** Number of times the schema is loaded with worker threads. */
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ParallelSchemaParsingTest.class);
+    }
+
+    public ParallelSchemaParsingTest(String name) {
+        super(name);
+    }
+
+    public void testGrammars() throws Exception {
+        String expected = describe(load(false, new ArrayList<String>()).toXSModel());
+        assertTrue(expected.indexOf("urn:parallel-b recordType") != -1);
+        for (int i = 0; i < RUNS; i++) {
+            assertEquals(expected,
+                    describe(load(true, new ArrayList<String>()).toXSModel()));
+        }
+    }
+
+    public void testErrors() throws Exception {
+        List<String> expected = new ArrayList<String>();
+        load(false, expected);
+        // the missing document and the undefined type
+        assertEquals(expected.toString(), 2, expected.size());
+        for (int i = 0; i < RUNS; i++) {
+            List<String> actual = new ArrayList<String>();
+            load(true, actual);
+            assertEquals(expected, actual);
+        }
+    }
+
+    public void testValidation() throws Exception {
+        List<String> expected = validate(load(false, new ArrayList<String>()));
+        assertTrue(expected.size() > 0);
+        for (int i = 0; i < RUNS; i++) {
+            assertEquals(expected, validate(load(true, new ArrayList<String>())));
+        }
+    }
+
+    private URL getResource(String file) throws FileNotFoundException {
+        String path = getClass().getPackage().getName().replace('.', '/') + "/" + file;
+        URL url = ClassLoader.getSystemResource(path);
+        if (url == null) {
+            throw new FileNotFoundException("Couldn't find file for test: " + path);
+        }
+        return url;
+    }
+
+    /**
+     * Loads the schema into a new pool, recording the errors reported.
+     */
+    private XSGrammarPool load(boolean parallel, final List<String> errors) throws Exception {
+        XSGrammarPool pool = new XSGrammarPool();
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setFeature(PARALLEL_SCHEMA_PARSING, parallel);
+        loader.setProperty(GRAMMAR_POOL, pool);
+        loader.setErrorHandler(new XMLErrorHandler() {
+            public void warning(String domain, String key, XMLParseException e) {
+                record("warning", domain, key, e);
+            }
+            public void error(String domain, String key, XMLParseException e) {
+                record("error", domain, key, e);
+            }
+            public void fatalError(String domain, String key, XMLParseException e) {
+                record("fatal", domain, key, e);
+            }
+            private void record(String kind, String domain, String key, XMLParseException e)
+            throws XNIException {
+                errors.add(kind + " " + key + " " + e.getExpandedSystemId() + " "
+                        + e.getLineNumber() + ":" + e.getColumnNumber() + " " + e.getMessage());
+            }
+        });
+        loader.loadGrammar(new XMLInputSource(null,
+                getResource("parallel.xsd").toExternalForm(), null));
+        return pool;
+    }
+
+    private List<String> validate(XMLGrammarPool pool) throws Exception {
+        final List<String> errors = new ArrayList<String>();
+        SAXParser parser = new SAXParser();
+        parser.setProperty(GRAMMAR_POOL, pool);
+        parser.setFeature(VALIDATION, true);
+        parser.setFeature(SCHEMA_VALIDATION, true);
+        parser.setFeature(USE_GRAMMAR_POOL_ONLY, true);
+        parser.setErrorHandler(new ErrorHandler() {
+            public void warning(SAXParseException e) {
+                record(e);
+            }
+            public void error(SAXParseException e) {
+                record(e);
+            }
+            public void fatalError(SAXParseException e) {
+                record(e);
+            }
+            private void record(SAXParseException e) {
+                errors.add(e.getLineNumber() + ":" + e.getColumnNumber() + " " + e.getMessage());
+            }
+        });
+        parser.parse(getResource("parallel.xml").toExternalForm());
+        return errors;
+    }
+
+    /** Describes the global components of all the namespaces of the model. */
+    private static String describe(XSModel model) {
+        StringBuffer buffer = new StringBuffer();
+        StringList namespaces = model.getNamespaces();
+        for (int i = 0; i < namespaces.getLength(); i++) {
+            String namespace = namespaces.item(i);
+            for (int j = 0; j < COMPONENT_TYPES.length; j++) {
+                XSNamedMap map = model.getComponentsByNamespace(COMPONENT_TYPES[j], namespace);
+                for (int k = 0; k < map.getLength(); k++) {
+                    describe(map.item(k), buffer);
+                    buffer.append('\n');
+                }
+            }
+        }
+        return buffer.toString();
+    }
+
+    private static void describe(XSObject component, StringBuffer buffer) {
+        buffer.append(component.getNamespace()).append(' ').append(component.getName());
+        if (component instanceof XSElementDeclaration) {
+            XSElementDeclaration element = (XSElementDeclaration) component;
+            buffer.append(" type=");
+            appendName(element.getTypeDefinition(), buffer);
+        }
+        else if (component instanceof XSTypeDefinition) {
+            XSTypeDefinition type = (XSTypeDefinition) component;
+            buffer.append(" base=");
+            appendName(type.getBaseType(), buffer);
+            if (type instanceof XSSimpleTypeDefinition) {
+                StringList patterns = ((XSSimpleTypeDefinition) type).getLexicalPattern();
+                for (int i = 0; i < patterns.getLength(); i++) {
+                    buffer.append(" pattern=").append(patterns.item(i));
+                }
+            }
+            else {
+                XSComplexTypeDefinition complexType = (XSComplexTypeDefinition) type;
+                buffer.append(" content=").append(complexType.getContentType());
+                XSObjectList uses = complexType.getAttributeUses();
+                for (int i = 0; i < uses.getLength(); i++) {
+                    XSAttributeUse use = (XSAttributeUse) uses.item(i);
+                    buffer.append(" @").append(use.getAttrDeclaration().getName())
+                        .append(use.getRequired() ? "!" : "");
+                }
+                if (complexType.getParticle() != null) {
+                    buffer.append(' ');
+                    describe(complexType.getParticle(), buffer);
+                }
+            }
+        }
+    }
+
+    private static void describe(XSParticle particle, StringBuffer buffer) {
+        XSTerm term = particle.getTerm();
+        if (term instanceof XSModelGroup) {
+            XSObjectList particles = ((XSModelGroup) term).getParticles();
+            buffer.append('(');
+            for (int i = 0; i < particles.getLength(); i++) {
+                describe((XSParticle) particles.item(i), buffer);
+                buffer.append(' ');
+            }
+            buffer.append(')');
+        }
+        else {
+            buffer.append(term.getNamespace()).append(':').append(term.getName());
+        }
+        buffer.append('{').append(particle.getMinOccurs()).append(',')
+            .append(particle.getMaxOccursUnbounded() ? "*" : String.valueOf(particle.getMaxOccurs()))
+            .append('}');
+    }
+
+    private static void appendName(XSTypeDefinition type, StringBuffer buffer) {
+        if (type == null) {
+            buffer.append("null");
+        }
+        else if (type.getAnonymous()) {
+            buffer.append('[');
+            describe(type, buffer);
+            buffer.append(']');
+        }
+        else {
+            buffer.append(type.getNamespace()).append(':').append(type.getName());
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.config;
+
+import java.io.FileNotFoundException;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.dv.util.Base64;
+import org.apache.xerces.impl.dv.util.HexBin;
+import org.apache.xerces.impl.dv.xs.StreamingValidator;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.util.XSGrammarPool;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Tests that the content of simple type elements longer than the
+ * streaming threshold of the validator, which is then checked as it is
+ * received, is found valid or invalid exactly as when the whole value is
+ * accumulated, and that the errors show the beginning of the value.
+ *
+ * @version $Id$
+ */
+public class StreamingValidationTest extends TestCase {
+
+    // the number of characters above which the content is streamed
+    private static final int STREAMING_THRESHOLD = 8192;
+
+    private static final String GRAMMAR_POOL = Constants.XERCES_PROPERTY_PREFIX
+        + Constants.XMLGRAMMAR_POOL_PROPERTY;
+
+    private static final String VALIDATION = Constants.SAX_FEATURE_PREFIX
+        + Constants.VALIDATION_FEATURE;
+
+    private static final String SCHEMA_VALIDATION = Constants.XERCES_FEATURE_PREFIX
+        + Constants.SCHEMA_VALIDATION_FEATURE;
+
+    private static final String USE_GRAMMAR_POOL_ONLY = Constants.XERCES_FEATURE_PREFIX
+        + Constants.USE_GRAMMAR_POOL_ONLY_FEATURE;
+
+    private static final String SCHEMA_AUGMENT_PSVI = Constants.XERCES_FEATURE_PREFIX
+        + Constants.SCHEMA_AUGMENT_PSVI;
+
+    private static final String SCHEMA_NORMALIZED_VALUE = Constants.XERCES_FEATURE_PREFIX
+        + Constants.SCHEMA_NORMALIZED_VALUE;
+
+    // the elements of the string types, named after their whiteSpace facet
+    private static final String[] WHITESPACE = { "preserve", "replace", "collapse" };
+
+    private XSGrammarPool fPool;
+
+    // whether the validator normalizes the content before checking it
+    private boolean fNormalizeData = true;
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(StreamingValidationTest.class);
+    }
+
+    public StreamingValidationTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        fPool = new XSGrammarPool();
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(GRAMMAR_POOL, fPool);
+        loader.loadGrammar(new XMLInputSource(null,
+                getResource("streaming.xsd").toExternalForm(), null));
+    }
+
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        fPool = null;
+    }
+
+    public void testThreshold() throws Exception {
+        // not longer than the threshold: the value is shown whole
+        String content = text(STREAMING_THRESHOLD, "preserve");
+        assertEquals(STREAMING_THRESHOLD, content.length());
+        assertFacetError("preserve", content, "minLength",
+                STREAMING_THRESHOLD, 8193, "preserveString");
+        List<String> errors = validate("preserve", content, true);
+        assertTrue(errors.get(0).indexOf(content) != -1);
+
+        // one more character: streamed, and only the beginning is shown
+        content = text(8201, "preserve");
+        assertFacetError("preserve", content, "maxLength", 8201, 8200, "preserveString");
+        errors = validate("preserve", content, true);
+        assertTrue(errors.get(0).indexOf(content) == -1);
+        assertTrue(errors.get(0).indexOf(
+                content.substring(0, StreamingValidator.MAX_RETAINED_CHARS) + "...'") != -1);
+    }
+
+    public void testStringLength() throws Exception {
+        for (int i = 0; i < WHITESPACE.length; i++) {
+            String element = WHITESPACE[i];
+            String type = element + "String";
+            assertValid(element, text(8193, element));
+            assertValid(element, text(8200, element));
+            assertFacetError(element, text(8201, element), "maxLength", 8201, 8200, type);
+            assertFacetError(element, text(9000, element), "maxLength", 9000, 8200, type);
+            assertFacetError(element, text(8192, element), "minLength", 8192, 8193, type);
+        }
+    }
+
+    public void testUnnormalizedContent() throws Exception {
+        // the content is then normalized only by the type
+        fNormalizeData = false;
+        testStringLength();
+        testLength();
+    }
+
+    public void testLength() throws Exception {
+        assertValid("length", text(8196, "collapse"));
+        assertFacetError("length", text(8197, "collapse"), "length", 8197, 8196, "lengthString");
+        assertFacetError("length", text(8195, "collapse"), "length", 8195, 8196, "lengthString");
+    }
+
+    public void testBase64Binary() throws Exception {
+        // no white space, MIME lines, and a space between each quantum
+        int[] widths = { 0, 76, 4 };
+        for (int i = 0; i < widths.length; i++) {
+            int width = widths[i];
+            // with no padding, and with one and two pad characters
+            assertValid("base64", base64(6147, width));
+            assertValid("base64", base64(6148, width));
+            assertValid("base64", base64(6149, width));
+            assertValid("base64", base64(6150, width));
+            assertFacetError("base64", base64(6151, width), "maxLength", 6151, 6150, "base64Data");
+            assertFacetError("base64", base64(6146, width), "minLength", 6146, 6147, "base64Data");
+            // not Base64 at the very end, and data after padding
+            assertInvalidValue("base64", base64(6147, width) + "!", "base64Binary");
+            assertInvalidValue("base64", base64(6148, width) + "AAAA", "base64Binary");
+        }
+    }
+
+    public void testHexBinary() throws Exception {
+        assertValid("hex", hex(4097));
+        assertValid("hex", hex(4100));
+        assertFacetError("hex", hex(4101), "maxLength", 4101, 4100, "hexData");
+        assertFacetError("hex", hex(4096), "minLength", 4096, 4097, "hexData");
+        // an odd number of digits, and a space between digits
+        assertInvalidValue("hex", hex(4098) + "A", "hexBinary");
+        String content = hex(4098);
+        assertInvalidValue("hex", content.substring(0, 4001) + " "
+                + content.substring(4001), "hexBinary");
+    }
+
+    private void assertValid(String element, String content) throws Exception {
+        assertEquals(0, validate(element, content, false).size());
+        assertEquals(0, validate(element, content, true).size());
+    }
+
+    private void assertFacetError(String element, String content, String facet,
+            int length, int value, String type) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            boolean stream = i == 1;
+            String shown = shownValue(element, content, stream);
+            List<String> expected = new ArrayList<String>();
+            expected.add("cvc-" + facet + "-valid: Value '" + shown + "' with length = '"
+                    + length + "' is not facet-valid with respect to " + facet + " '"
+                    + value + "' for type '" + type + "'.");
+            expected.add("cvc-type.3.1.3: The value '" + shown + "' of element '"
+                    + element + "' is not valid.");
+            assertEquals(expected, validate(element, content, stream));
+        }
+    }
+
+    private void assertInvalidValue(String element, String content, String type)
+        throws Exception {
+        for (int i = 0; i < 2; i++) {
+            boolean stream = i == 1;
+            String shown = shownValue(element, content, stream);
+            List<String> expected = new ArrayList<String>();
+            expected.add("cvc-datatype-valid.1.2.1: '" + shown
+                    + "' is not a valid value for '" + type + "'.");
+            expected.add("cvc-type.3.1.3: The value '" + shown + "' of element '"
+                    + element + "' is not valid.");
+            assertEquals(expected, validate(element, content, stream));
+        }
+    }
+
+    // the value as shown in the errors: only its beginning once the
+    // content accumulated, normalized or not, is streamed
+    private String shownValue(String element, String content, boolean stream) {
+        String value = normalize(element, content);
+        int length = fNormalizeData ? value.length() : content.length();
+        if (stream && length > STREAMING_THRESHOLD) {
+            return value.substring(0, StreamingValidator.MAX_RETAINED_CHARS) + "...";
+        }
+        return value;
+    }
+
+    // the content normalized according to the whiteSpace facet of the type
+    private static String normalize(String element, String content) {
+        if (element.equals("preserve")) {
+            return content;
+        }
+        String value = content.replace('\t', ' ').replace('\n', ' ');
+        if (element.equals("replace")) {
+            return value;
+        }
+        return value.replaceAll(" +", " ").trim();
+    }
+
+    // content which normalizes to a string of the given length for the
+    // whiteSpace facet: words separated by white space
+    private static String text(int length, String whiteSpace) {
+        StringBuffer words = new StringBuffer();
+        for (int i = 0; words.length() < length; i++) {
+            words.append(i % 5 == 4 ? ' ' : (char) ('a' + i % 26));
+        }
+        words.setCharAt(length - 1, 'z');
+        boolean collapse = whiteSpace.equals("collapse");
+        StringBuffer content = new StringBuffer();
+        if (collapse) {
+            content.append("\n  ");
+        }
+        for (int i = 0; i < length; i++) {
+            char c = words.charAt(i);
+            if (c != ' ') {
+                content.append(c);
+            }
+            else if (collapse) {
+                content.append(" \t\n ");
+            }
+            else {
+                content.append(" \t\n".charAt(i % 3));
+            }
+        }
+        if (collapse) {
+            content.append("\t\n");
+        }
+        return content.toString();
+    }
+
+    // the Base64 encoding of the given number of octets, broken into lines
+    // of the given width
+    private static String base64(int length, int width) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        String encoded = Base64.encode(data);
+        if (width == 0) {
+            return encoded;
+        }
+        StringBuffer content = new StringBuffer("\n");
+        for (int i = 0; i < encoded.length(); i += width) {
+            content.append(encoded.substring(i, Math.min(i + width, encoded.length())));
+            content.append(width == 4 ? " " : "\n");
+        }
+        return content.toString();
+    }
+
+    // the hex encoding of the given number of octets, between white space
+    private static String hex(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return "\n\t " + HexBin.encode(data) + " \n";
+    }
+
+    private URL getResource(String file) throws FileNotFoundException {
+        String path = getClass().getPackage().getName().replace('.', '/') + "/" + file;
+        URL url = ClassLoader.getSystemResource(path);
+        if (url == null) {
+            throw new FileNotFoundException("Couldn't find file for test: " + path);
+        }
+        return url;
+    }
+
+    // validates a document made of the given element only, with the
+    // content either streamed or accumulated (PSVI needs the whole value)
+    private List<String> validate(String element, String content, boolean stream)
+        throws Exception {
+        final List<String> errors = new ArrayList<String>();
+        SAXParser parser = new SAXParser();
+        parser.setProperty(GRAMMAR_POOL, fPool);
+        parser.setFeature(VALIDATION, true);
+        parser.setFeature(SCHEMA_VALIDATION, true);
+        parser.setFeature(USE_GRAMMAR_POOL_ONLY, true);
+        parser.setFeature(SCHEMA_AUGMENT_PSVI, !stream);
+        parser.setFeature(SCHEMA_NORMALIZED_VALUE, fNormalizeData);
+        parser.setErrorHandler(new ErrorHandler() {
+            public void warning(SAXParseException e) {
+                errors.add(e.getMessage());
+            }
+            public void error(SAXParseException e) {
+                errors.add(e.getMessage());
+            }
+            public void fatalError(SAXParseException e) {
+                errors.add(e.getMessage());
+            }
+        });
+        parser.parse(new InputSource(new StringReader(
+                "<" + element + ">" + content + "</" + element + ">")));
+        return errors;
+    }
+}
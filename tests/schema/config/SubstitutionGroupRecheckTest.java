@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package schema.config;
+
+import java.io.FileNotFoundException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.util.XSGrammarPool;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+
+/**
+ * Tests that the types of a pooled grammar are checked again when a
+ * grammar loaded later adds members to the substitution groups they
+ * refer to, and only then.
+ *
+ * @version $Id$
+ */
+public class SubstitutionGroupRecheckTest extends TestCase {
+
+    private static final String SCHEMA_FULL_CHECKING = Constants.XERCES_FEATURE_PREFIX
+        + Constants.SCHEMA_FULL_CHECKING;
+
+    private static final String GRAMMAR_POOL = Constants.XERCES_PROPERTY_PREFIX
+        + Constants.XMLGRAMMAR_POOL_PROPERTY;
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(SubstitutionGroupRecheckTest.class);
+    }
+
+    public SubstitutionGroupRecheckTest(String name) {
+        super(name);
+    }
+
+    public void testUniqueParticleAttribution() throws Exception {
+        List<String> errors = loadAfter("recheckUpa.xsd");
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).startsWith("cos-nonambig "));
+        assertTrue(errors.get(0), errors.get(0).indexOf("/recheck.xsd ") != -1);
+        assertEquals(getKeys(loadAlone("recheckUpa.xsd")), getKeys(errors));
+    }
+
+    public void testRestriction() throws Exception {
+        List<String> errors = loadAfter("recheckRestriction.xsd");
+        assertTrue(errors.toString(), errors.size() > 0);
+        List<String> keys = getKeys(errors);
+        assertTrue(keys.toString(), keys.contains("derivation-ok-restriction.5.4.2"));
+        for (int i = 0; i < errors.size(); i++) {
+            assertTrue(errors.get(i), errors.get(i).indexOf("/recheck.xsd ") != -1);
+        }
+        assertEquals(getKeys(loadAlone("recheckRestriction.xsd")), keys);
+    }
+
+    public void testUnrelatedGroup() throws Exception {
+        assertEquals(0, loadAfter("recheckOther.xsd").size());
+        assertEquals(0, loadAlone("recheckOther.xsd").size());
+
+        // the types already reported are not checked again for a group
+        // they do not refer to
+        List<String> errors = new ArrayList<String>();
+        XMLSchemaLoader loader = createLoader(errors);
+        XSGrammarPool pool = new XSGrammarPool();
+        load(loader, pool, "recheck.xsd");
+        load(loader, pool, "recheckUpa.xsd");
+        load(loader, pool, "recheckRestriction.xsd");
+        int reported = errors.size();
+        load(loader, pool, "recheckOther.xsd");
+        assertEquals(errors.toString(), reported, errors.size());
+    }
+
+    /**
+     * Loads the given schema into a pool which already holds the grammar
+     * it imports, and returns the errors reported.
+     */
+    private List<String> loadAfter(String file) throws Exception {
+        List<String> errors = new ArrayList<String>();
+        XMLSchemaLoader loader = createLoader(errors);
+        XSGrammarPool pool = new XSGrammarPool();
+        load(loader, pool, "recheck.xsd");
+        assertEquals(errors.toString(), 0, errors.size());
+        load(loader, pool, file);
+        return errors;
+    }
+
+    /**
+     * Loads the given schema, with the grammar it imports, into an empty
+     * pool and returns the errors reported.
+     */
+    private List<String> loadAlone(String file) throws Exception {
+        List<String> errors = new ArrayList<String>();
+        load(createLoader(errors), new XSGrammarPool(), file);
+        return errors;
+    }
+
+    private static List<String> getKeys(List<String> errors) {
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < errors.size(); i++) {
+            String error = errors.get(i);
+            keys.add(error.substring(0, error.indexOf(' ')));
+        }
+        return keys;
+    }
+
+    private URL getResource(String file) throws FileNotFoundException {
+        String path = getClass().getPackage().getName().replace('.', '/') + "/" + file;
+        URL url = ClassLoader.getSystemResource(path);
+        if (url == null) {
+            throw new FileNotFoundException("Couldn't find file for test: " + path);
+        }
+        return url;
+    }
+
+    private XMLSchemaLoader createLoader(final List<String> errors) {
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setFeature(SCHEMA_FULL_CHECKING, true);
+        loader.setErrorHandler(new XMLErrorHandler() {
+            public void warning(String domain, String key, XMLParseException e) {
+                record(key, e);
+            }
+            public void error(String domain, String key, XMLParseException e) {
+                record(key, e);
+            }
+            public void fatalError(String domain, String key, XMLParseException e) {
+                record(key, e);
+            }
+            private void record(String key, XMLParseException e) throws XNIException {
+                errors.add(key + " " + e.getExpandedSystemId() + " " + e.getMessage());
+            }
+        });
+        return loader;
+    }
+
+    private void load(XMLSchemaLoader loader, XSGrammarPool pool, String file) throws Exception {
+        loader.setProperty(GRAMMAR_POOL, pool);
+        loader.loadGrammar(new XMLInputSource(null, getResource(file).toExternalForm(), null));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package schema.config;
+
+import java.io.FileNotFoundException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.util.XSGrammarPool;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+
+/**
+ * Tests that the Unique Particle Attribution constraint reports, for each
+ * content model, the first of its overlapping pairs of particles, with
+ * elements, substitution groups and wildcards overlapping each other.
+ *
+ * @version $Id$
+ */
+public class UniqueParticleAttributionTest extends TestCase {
+
+    private static final String SCHEMA_FULL_CHECKING = Constants.XERCES_FEATURE_PREFIX
+        + Constants.SCHEMA_FULL_CHECKING;
+
+    private static final String GRAMMAR_POOL = Constants.XERCES_PROPERTY_PREFIX
+        + Constants.XMLGRAMMAR_POOL_PROPERTY;
+
+    /** The line of each type of upa.xsd reported, and the pair reported. */
+    private static final String[] EXPECTED = {
+        // a member of the group of an element and the member itself
+        "14 \"urn:upa\":head and \"urn:upa\":member",
+        "22 \"urn:upa\":member and \"urn:upa\":head",
+        // a member in another namespace and a wildcard of that namespace
+        "31 \"urn:upa\":head and WC[\"urn:upa:member\"]",
+        // an element and a list wildcard
+        "40 \"urn:upa\":local and WC[\"urn:upa\",\"urn:other\"]",
+        // an element and a wildcard of any other namespace
+        "48 WC[##other:\"urn:upa\"] and \"urn:upa:member\":extra",
+        // not the unqualified element and the wildcard of any other
+        "58 bare and bare",
+        "68 WC[##other:\"urn:upa\"] and WC[\"urn:upa:member\"]",
+        // the first of several pairs
+        "76 \"urn:upa\":plain and WC[##any]",
+        // counted elements, except when the count is exact
+        "96 \"urn:upa\":plain and \"urn:upa\":plain",
+        "110 \"urn:upa\":head and \"urn:upa\":member",
+    };
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(UniqueParticleAttributionTest.class);
+    }
+
+    public UniqueParticleAttributionTest(String name) {
+        super(name);
+    }
+
+    public void testOverlappingPairs() throws Exception {
+        final List<String> errors = new ArrayList<String>();
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setFeature(SCHEMA_FULL_CHECKING, true);
+        // the grammars are only fully checked when they are pooled
+        loader.setProperty(GRAMMAR_POOL, new XSGrammarPool());
+        loader.setErrorHandler(new XMLErrorHandler() {
+            public void warning(String domain, String key, XMLParseException e) {
+                record(key, e);
+            }
+            public void error(String domain, String key, XMLParseException e) {
+                record(key, e);
+            }
+            public void fatalError(String domain, String key, XMLParseException e) {
+                record(key, e);
+            }
+            private void record(String key, XMLParseException e) throws XNIException {
+                String message = e.getMessage();
+                int start = message.indexOf(": ") + 2;
+                int end = message.indexOf(" (or elements");
+                assertEquals(message, "cos-nonambig", key);
+                errors.add(e.getLineNumber() + " " + message.substring(start, end));
+            }
+        });
+        loader.loadGrammar(new XMLInputSource(null, getResource("upa.xsd").toExternalForm(), null));
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < EXPECTED.length; i++) {
+            expected.add(EXPECTED[i]);
+        }
+        assertEquals(expected, errors);
+    }
+
+    private URL getResource(String file) throws FileNotFoundException {
+        String path = getClass().getPackage().getName().replace('.', '/') + "/" + file;
+        URL url = ClassLoader.getSystemResource(path);
+        if (url == null) {
+            throw new FileNotFoundException("Couldn't find file for test: " + path);
+        }
+        return url;
+    }
+}